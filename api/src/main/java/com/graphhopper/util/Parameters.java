@@ -129,6 +129,20 @@ public class Parameters {
          * a rectangle lat1,lon1,lat2,lon2
          */
         public static final String BLOCK_AREA = "block_area";
+        /**
+         * the departure time in milliseconds since the epoch or in the ISO 8601 format with offset, e.g.
+         * 2019-10-07T08:00:00+02:00. If set the speed profiles of the graph are used (not for CH)
+         */
+        public static final String DEPARTURE_TIME = "departure_time";
+        /**
+         * if true the bidirectional algorithms borrow their maps and queues from a per-thread pool
+         */
+        public static final String SEARCH_STATE_POOL = "search_state_pool";
+        public static final String INIT_SEARCH_STATE_POOL = ROUTING_INIT_PREFIX + "search_state_pool";
+        /**
+         * the number of threads shared by all requests to calculate the legs between via points in parallel
+         */
+        public static final String INIT_VIA_THREADS = ROUTING_INIT_PREFIX + "via_threads";
     }
 
     /**
@@ -153,6 +167,10 @@ public class Parameters {
          * This property name configures at start if the DISABLE parameter can have an effect.
          */
         public static final String INIT_DISABLING_ALLOWED = ROUTING_INIT_PREFIX + "ch.disabling_allowed";
+        /**
+         * This property name configures at start if the changeGraph API can be used together with CH.
+         */
+        public static final String INIT_CHANGE_GRAPH_ALLOWED = ROUTING_INIT_PREFIX + "ch.change_graph_allowed";
         /**
          * The property name in HintsMap if heading should be used for CH regardless of the possible
          * routing errors.
@@ -0,0 +1,87 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.routing.profiles.BooleanEncodedValue;
+import com.graphhopper.routing.profiles.DecimalEncodedValue;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.IntsRef;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the speed and access flags of all edges. The IntsRef benchmarks measure the bit operations of the encoded
+ * values alone, the edge benchmarks include reading the flags from the storage.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodedValueBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class EdgeFlags {
+        IntsRef[] flags;
+        DecimalEncodedValue speedEnc;
+        BooleanEncodedValue accessEnc;
+
+        @Setup(Level.Trial)
+        public void setup(GraphState state) {
+            speedEnc = state.encoder.getAverageSpeedEnc();
+            accessEnc = state.encoder.getAccessEnc();
+            flags = new IntsRef[state.graph.getEdges()];
+            AllEdgesIterator iter = state.graph.getAllEdges();
+            while (iter.next()) {
+                flags[iter.getEdge()] = IntsRef.deepCopyOf(iter.getFlags());
+            }
+        }
+    }
+
+    @Benchmark
+    public double decodeSpeedFromIntsRef(EdgeFlags edgeFlags) {
+        double sum = 0;
+        for (IntsRef flags : edgeFlags.flags) {
+            sum += edgeFlags.speedEnc.getDecimal(false, flags) + edgeFlags.speedEnc.getDecimal(true, flags);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int decodeAccessFromIntsRef(EdgeFlags edgeFlags) {
+        int count = 0;
+        for (IntsRef flags : edgeFlags.flags) {
+            if (edgeFlags.accessEnc.getBool(false, flags))
+                count++;
+            if (edgeFlags.accessEnc.getBool(true, flags))
+                count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public double decodeSpeedFromEdges(GraphState state, EdgeFlags edgeFlags) {
+        AllEdgesIterator iter = state.graph.getAllEdges();
+        double sum = 0;
+        while (iter.next()) {
+            sum += iter.get(edgeFlags.speedEnc) + iter.getReverse(edgeFlags.speedEnc);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterating the edges of the base graph, which is what every search and every preparation does most of the time.
+ * One invocation visits the whole graph.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphIterationBenchmark {
+
+    @Benchmark
+    public double exploreAllNodes(GraphState state) {
+        EdgeExplorer explorer = state.graph.createEdgeExplorer();
+        double sum = 0;
+        for (int node = 0; node < state.graph.getNodes(); node++) {
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                sum += iter.getDistance() + iter.getAdjNode();
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double allEdges(GraphState state) {
+        AllEdgesIterator iter = state.graph.getAllEdges();
+        double sum = 0;
+        while (iter.next()) {
+            sum += iter.getDistance() + iter.getBaseNode() + iter.getAdjNode();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int fetchWayGeometry(GraphState state) {
+        AllEdgesIterator iter = state.graph.getAllEdges();
+        int points = 0;
+        while (iter.next()) {
+            points += iter.fetchWayGeometry(3).size();
+        }
+        return points;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.routing.AStarBidirection;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.lm.PrepareLandmarks;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+
+/**
+ * The graph shared by all benchmarks. It is a generated road network: a grid with jittered node positions where some
+ * edges are missing, some are one-way, half of them have a pillar node and the speeds vary. This is small enough to be
+ * prepared in a few seconds for every fork but large enough that the queries do not fit into the CPU caches completely.
+ * The size can be changed with e.g. -p gridSize=300.
+ * <p>
+ * Every benchmark invocation picks the next of QUERIES precalculated node pairs or points, so the results do not
+ * depend on a single lucky query.
+ */
+@State(Scope.Benchmark)
+public class GraphState {
+    static final int QUERIES = 1000;
+
+    @Param({"100"})
+    public int gridSize;
+
+    CarFlagEncoder encoder;
+    EncodingManager encodingManager;
+    Weighting weighting;
+    GraphHopperStorage graph;
+    CHGraph chGraph;
+    PrepareContractionHierarchies pch;
+    PrepareLandmarks lm;
+    LocationIndexTree locationIndex;
+    EdgeFilter edgeFilter;
+
+    int[] fromNodes = new int[QUERIES];
+    int[] toNodes = new int[QUERIES];
+    GHPoint[] fromPoints = new GHPoint[QUERIES];
+    GHPoint[] toPoints = new GHPoint[QUERIES];
+    private int query;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random rnd = new Random(123);
+        encoder = new CarFlagEncoder();
+        encodingManager = EncodingManager.create(encoder);
+        weighting = new FastestWeighting(encoder);
+        CHProfile chProfile = CHProfile.nodeBased(weighting);
+        graph = new GraphBuilder(encodingManager).setCHProfiles(chProfile).create();
+        buildGrid(rnd);
+        graph.freeze();
+
+        pch = PrepareContractionHierarchies.fromGraphHopperStorage(graph, chProfile);
+        pch.doWork();
+        chGraph = graph.getCHGraph(chProfile);
+        lm = new PrepareLandmarks(new RAMDirectory(), graph, weighting, 16, 8);
+        lm.doWork();
+        locationIndex = new LocationIndexTree(graph, new RAMDirectory());
+        locationIndex.prepareIndex();
+        edgeFilter = DefaultEdgeFilter.allEdges(encoder);
+
+        // only use connected pairs, the grid can contain a few small components
+        BBox bounds = graph.getBounds();
+        for (int i = 0; i < QUERIES; ) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            if (!createLMAlgo().calcPath(from, to).isFound())
+                continue;
+            fromNodes[i] = from;
+            toNodes[i] = to;
+            fromPoints[i] = randomPoint(rnd, bounds);
+            toPoints[i] = randomPoint(rnd, bounds);
+            i++;
+        }
+    }
+
+    private void buildGrid(Random rnd) {
+        NodeAccess na = graph.getNodeAccess();
+        double[] speeds = {20, 30, 50, 70, 90, 110};
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                na.setNode(row * gridSize + col, 49.4 + row * 0.001 + rnd.nextDouble() * 0.0005,
+                        9.7 + col * 0.0015 + rnd.nextDouble() * 0.0005);
+            }
+        }
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                int node = row * gridSize + col;
+                if (col + 1 < gridSize && rnd.nextDouble() < 0.9)
+                    addEdge(rnd, node, node + 1, speeds, "row " + row);
+                if (row + 1 < gridSize && rnd.nextDouble() < 0.9)
+                    addEdge(rnd, node, node + gridSize, speeds, "column " + col);
+            }
+        }
+    }
+
+    private void addEdge(Random rnd, int from, int to, double[] speeds, String name) {
+        NodeAccess na = graph.getNodeAccess();
+        double fromLat = na.getLat(from), fromLon = na.getLon(from);
+        double toLat = na.getLat(to), toLon = na.getLon(to);
+        EdgeIteratorState edge = graph.edge(from, to).setName(name);
+        GHUtility.setProperties(edge, encoder, speeds[rnd.nextInt(speeds.length)], true, rnd.nextDouble() > 0.1);
+        if (rnd.nextBoolean()) {
+            double pillarLat = (fromLat + toLat) / 2 + (rnd.nextDouble() - 0.5) * 0.0002;
+            double pillarLon = (fromLon + toLon) / 2 + (rnd.nextDouble() - 0.5) * 0.0002;
+            PointList pillars = new PointList(1, false);
+            pillars.add(pillarLat, pillarLon);
+            edge.setWayGeometry(pillars);
+            edge.setDistance(Helper.DIST_EARTH.calcDist(fromLat, fromLon, pillarLat, pillarLon)
+                    + Helper.DIST_EARTH.calcDist(pillarLat, pillarLon, toLat, toLon));
+        } else {
+            edge.setDistance(Helper.DIST_EARTH.calcDist(fromLat, fromLon, toLat, toLon));
+        }
+    }
+
+    private static GHPoint randomPoint(Random rnd, BBox bounds) {
+        return new GHPoint(bounds.minLat + rnd.nextDouble() * (bounds.maxLat - bounds.minLat),
+                bounds.minLon + rnd.nextDouble() * (bounds.maxLon - bounds.minLon));
+    }
+
+    /**
+     * @return the index of the query to be used by the next benchmark invocation
+     */
+    int nextQuery() {
+        query = (query + 1) % QUERIES;
+        return query;
+    }
+
+    AlgorithmOptions createAlgoOptions() {
+        return AlgorithmOptions.start().weighting(weighting).traversalMode(TraversalMode.NODE_BASED).build();
+    }
+
+    RoutingAlgorithm createCHAlgo(Graph graph) {
+        return pch.createAlgo(graph, createAlgoOptions());
+    }
+
+    RoutingAlgorithm createLMAlgo() {
+        return createLMAlgo(graph);
+    }
+
+    RoutingAlgorithm createLMAlgo(Graph graph) {
+        AlgorithmOptions opts = createAlgoOptions();
+        return lm.getDecoratedAlgorithm(graph, new AStarBidirection(graph, weighting, TraversalMode.NODE_BASED), opts);
+    }
+
+    QueryResult findClosest(GHPoint point) {
+        return locationIndex.findClosest(point.lat, point.lon, edgeFilter);
+    }
+
+    Path calcLMPath(int query) {
+        return createLMAlgo().calcPath(fromNodes[query], toNodes[query]);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.routing.lm.LMApproximator;
+import com.graphhopper.routing.lm.LandmarkStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The landmark approximation of the hybrid mode in isolation: every invocation approximates the weight of NODES
+ * random nodes to the target of the next query, like the A* searches do for every node they visit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LMApproximatorBenchmark {
+    private static final int NODES = 1000;
+
+    private final int[] nodes = new int[NODES];
+    private LMApproximator approximator;
+
+    @Setup(Level.Trial)
+    public void setup(GraphState state) {
+        Random rnd = new Random(456);
+        for (int i = 0; i < NODES; i++) {
+            nodes[i] = rnd.nextInt(state.graph.getNodes());
+        }
+        LandmarkStorage lms = state.lm.getLandmarkStorage();
+        approximator = new LMApproximator(state.graph, state.graph.getNodes(), lms, 8, lms.getFactor(), false);
+    }
+
+    @Benchmark
+    public double approximate(GraphState state) {
+        int query = state.nextQuery();
+        approximator.setTo(state.toNodes[query]);
+        approximator.triggerActiveLandmarkRecalculation();
+        double sum = 0;
+        for (int node : nodes) {
+            sum += approximator.approximate(node);
+        }
+        return sum;
+    }
+}
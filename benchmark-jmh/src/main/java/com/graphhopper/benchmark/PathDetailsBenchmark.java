@@ -0,0 +1,63 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.routing.Path;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.details.PathDetail;
+import com.graphhopper.util.details.PathDetailsBuilderFactory;
+import com.graphhopper.util.details.PathDetailsFromEdges;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculating the path details of already calculated paths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathDetailsBenchmark {
+    private static final List<String> DETAILS = Arrays.asList(Parameters.Details.AVERAGE_SPEED,
+            Parameters.Details.STREET_NAME, Parameters.Details.EDGE_ID, Parameters.Details.TIME, Parameters.Details.DISTANCE);
+
+    @State(Scope.Benchmark)
+    public static class Paths {
+        static final int PATHS = 100;
+        Path[] paths = new Path[PATHS];
+        PathDetailsBuilderFactory builderFactory = new PathDetailsBuilderFactory();
+
+        @Setup(Level.Trial)
+        public void setup(GraphState state) {
+            for (int i = 0; i < PATHS; i++) {
+                paths[i] = state.calcLMPath(i);
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<PathDetail>> calcDetails(GraphState state, Paths paths) {
+        Path path = paths.paths[state.nextQuery() % Paths.PATHS];
+        return PathDetailsFromEdges.calcDetails(path, state.encodingManager, state.weighting, DETAILS, paths.builderFactory, 0);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.storage.index.QueryResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating the QueryGraph for a request with two snapped points, on the base graph for the flexible and hybrid mode and
+ * on the CHGraph for the speed mode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryGraphBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SnappedPoints {
+        QueryResult[] fromResults = new QueryResult[GraphState.QUERIES];
+        QueryResult[] toResults = new QueryResult[GraphState.QUERIES];
+
+        @Setup(Level.Trial)
+        public void setup(GraphState state) {
+            for (int i = 0; i < GraphState.QUERIES; i++) {
+                fromResults[i] = state.findClosest(state.fromPoints[i]);
+                toResults[i] = state.findClosest(state.toPoints[i]);
+            }
+        }
+    }
+
+    // the lookup modifies the query results, but only the first time, so re-using them is fine
+    @Benchmark
+    public QueryGraph lookup(GraphState state, SnappedPoints points) {
+        int query = state.nextQuery();
+        return QueryGraph.lookup(state.graph, points.fromResults[query], points.toResults[query]);
+    }
+
+    @Benchmark
+    public QueryGraph lookupCH(GraphState state, SnappedPoints points) {
+        int query = state.nextQuery();
+        return QueryGraph.lookup(state.chGraph, points.fromResults[query], points.toResults[query]);
+    }
+}
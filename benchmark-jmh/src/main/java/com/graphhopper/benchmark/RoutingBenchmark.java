@@ -0,0 +1,49 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.benchmark;
+
+import com.graphhopper.routing.Path;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point to point queries between tower nodes with the speed mode (DijkstraBidirectionCH) and the hybrid mode
+ * (AStarBidirection with landmarks). The creation of the algorithm is included, like for a real request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    @Benchmark
+    public double routeCH(GraphState state) {
+        int query = state.nextQuery();
+        Path path = state.createCHAlgo(state.chGraph).calcPath(state.fromNodes[query], state.toNodes[query]);
+        return path.getWeight();
+    }
+
+    @Benchmark
+    public double routeLM(GraphState state) {
+        int query = state.nextQuery();
+        Path path = state.createLMAlgo().calcPath(state.fromNodes[query], state.toNodes[query]);
+        return path.getWeight();
+    }
+}
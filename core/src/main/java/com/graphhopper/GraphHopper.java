@@ -17,19 +17,23 @@
  */
 package com.graphhopper;
 
+import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.json.geo.JsonFeature;
 import com.graphhopper.reader.DataReader;
 import com.graphhopper.reader.dem.*;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.ch.CHAlgoFactoryDecorator;
+import com.graphhopper.routing.ch.CHParameters;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.lm.LMAlgoFactoryDecorator;
+import com.graphhopper.routing.lm.PrepareLandmarks;
 import com.graphhopper.routing.profiles.DefaultEncodedValueFactory;
 import com.graphhopper.routing.profiles.EncodedValueFactory;
 import com.graphhopper.routing.profiles.EnumEncodedValue;
 import com.graphhopper.routing.profiles.RoadEnvironment;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks;
+import com.graphhopper.routing.template.AbstractRoutingTemplate;
 import com.graphhopper.routing.template.AlternativeRoutingTemplate;
 import com.graphhopper.routing.template.RoundTripRoutingTemplate;
 import com.graphhopper.routing.template.RoutingTemplate;
@@ -44,6 +48,7 @@ import com.graphhopper.storage.change.ChangeGraphResponse;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.storage.index.QueryResultCache;
 import com.graphhopper.util.*;
 import com.graphhopper.util.Parameters.CH;
 import com.graphhopper.util.Parameters.Landmark;
@@ -60,9 +65,16 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.graphhopper.routing.ch.CHAlgoFactoryDecorator.EdgeBasedCHMode.EDGE_OR_NODE;
 import static com.graphhopper.routing.ch.CHAlgoFactoryDecorator.EdgeBasedCHMode.OFF;
@@ -91,6 +103,10 @@ public class GraphHopper implements GraphHopperAPI {
     private String ghLocation = "";
     private DAType dataAccessType = DAType.RAM_STORE;
     private boolean sortGraph = false;
+    private String sortType = "dfs";
+    private boolean compressWayGeometry = false;
+    private boolean speedProfiles = false;
+    private TimeZone speedProfileTimeZone = TimeZone.getTimeZone("UTC");
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
@@ -100,12 +116,17 @@ public class GraphHopper implements GraphHopperAPI {
     private int maxRoundTripRetries = 3;
     private boolean simplifyResponse = true;
     private int maxVisitedNodes = Integer.MAX_VALUE;
+    private boolean searchStatePool = false;
+    private ExecutorService viaExecutor;
+    private RoutingPhaseListener routingPhaseListener;
 
     private int nonChMaxWaypointDistance = Integer.MAX_VALUE;
     // for index
     private LocationIndex locationIndex;
     private int preciseIndexResolution = 300;
     private int maxRegionSearch = 4;
+    private int snapCacheSize = 0;
+    private QueryResultCache snapCache;
     // for prepare
     private int minNetworkSize = 200;
     private int minOneWayNetworkSize = 0;
@@ -120,12 +141,16 @@ public class GraphHopper implements GraphHopperAPI {
     private String dataReaderFile;
     private double dataReaderWayPointMaxDistance = 1;
     private int dataReaderWorkerThreads = 2;
+    private int dataReaderWayWorkerThreads = 1;
+    // null means the OSM node map is kept on the Java heap
+    private DAType dataReaderNodeMapDAType;
     private boolean calcPoints = true;
     private ElevationProvider eleProvider = ElevationProvider.NOOP;
     private FlagEncoderFactory flagEncoderFactory = new DefaultFlagEncoderFactory();
     private EncodedValueFactory encodedValueFactory = new DefaultEncodedValueFactory();
     private TagParserFactory tagParserFactory = new DefaultTagParserFactory();
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    private final Lock changeGraphLock = new ReentrantLock();
+    private final AtomicLong graphVersion = new AtomicLong();
     private PathDetailsBuilderFactory pathBuilderFactory = new PathDetailsBuilderFactory();
 
     public GraphHopper() {
@@ -191,6 +216,21 @@ public class GraphHopper implements GraphHopperAPI {
         return dataReaderWorkerThreads;
     }
 
+    /**
+     * Threads for parsing the tags of the ways during data reading.
+     */
+    protected int getWayWorkerThreads() {
+        return dataReaderWayWorkerThreads;
+    }
+
+    /**
+     * The DataAccess type for the temporary map from OSM node IDs to internal node IDs or null if this map should be
+     * kept on the Java heap.
+     */
+    protected DAType getDataReaderNodeMapDAType() {
+        return dataReaderNodeMapDAType;
+    }
+
     /**
      * Return maximum distance (in meter) to reduce points via douglas peucker while OSM import.
      */
@@ -216,6 +256,15 @@ public class GraphHopper implements GraphHopperAPI {
         return pathBuilderFactory;
     }
 
+    /**
+     * Sets the listener that is notified about the duration of the phases of every route request, like the location
+     * lookup or the search. Null disables the notifications.
+     */
+    public GraphHopper setRoutingPhaseListener(RoutingPhaseListener routingPhaseListener) {
+        this.routingPhaseListener = routingPhaseListener;
+        return this;
+    }
+
     /**
      * Configures the underlying storage and response to be used on a well equipped server. Result
      * also optimized for usage in the web module i.e. try reduce network IO.
@@ -337,6 +386,56 @@ public class GraphHopper implements GraphHopperAPI {
         this.maxVisitedNodes = maxVisitedNodes;
     }
 
+    /**
+     * If enabled the bidirectional algorithms reuse the maps and queues of the request thread instead of allocating
+     * them for every request. Every thread then keeps collections as large as its largest search.
+     */
+    public GraphHopper setSearchStatePool(boolean searchStatePool) {
+        this.searchStatePool = searchStatePool;
+        return this;
+    }
+
+    /**
+     * Calculates the legs of requests with more than two points with the specified number of threads, which are
+     * shared by all requests. Only legs that are independent of each other are calculated in parallel, i.e. if the
+     * request has no headings, curbsides or pass_through. The default is 1, i.e. the legs are calculated one after
+     * the other in the request thread.
+     * <p>
+     * At most 8 legs per thread wait for a free thread. If more legs are submitted under high load the request
+     * thread calculates them itself, so the waiting legs cannot pile up without limit.
+     */
+    public GraphHopper setViaThreads(int viaThreads) {
+        if (viaThreads < 1)
+            throw new IllegalArgumentException("via threads must be at least 1 but was " + viaThreads);
+        if (viaExecutor != null)
+            viaExecutor.shutdown();
+        if (viaThreads == 1) {
+            viaExecutor = null;
+            return this;
+        }
+        viaExecutor = new ThreadPoolExecutor(viaThreads, viaThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(8 * viaThreads), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "gh-via-" + counter.incrementAndGet());
+                // do not prevent the JVM from exiting if close() is not called
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.CallerRunsPolicy() {
+            @Override
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                // CallerRunsPolicy silently discards the leg after shutdown and the request would wait for it forever
+                if (executor.isShutdown())
+                    throw new RejectedExecutionException("The via threads were shut down");
+                super.rejectedExecution(runnable, executor);
+            }
+        });
+        return this;
+    }
+
     /**
      * @return true if storing and fetching elevation data is enabled. Default is false
      */
@@ -433,6 +532,25 @@ public class GraphHopper implements GraphHopperAPI {
 
     protected void setLocationIndex(LocationIndex locationIndex) {
         this.locationIndex = locationIndex;
+        if (snapCache != null)
+            snapCache.clear();
+    }
+
+    /**
+     * Enables a cache for the snapping of the request points with at most the specified number of entries. This helps
+     * if the same coordinates are requested over and over again. 0 disables the cache, which is the default.
+     */
+    public GraphHopper setSnapCacheSize(int snapCacheSize) {
+        ensureNotLoaded();
+        this.snapCacheSize = snapCacheSize;
+        return this;
+    }
+
+    /**
+     * @return the cache for the snapping of the request points or null if it is disabled
+     */
+    public QueryResultCache getSnapCache() {
+        return snapCache;
     }
 
     /**
@@ -444,6 +562,50 @@ public class GraphHopper implements GraphHopperAPI {
         return this;
     }
 
+    /**
+     * Stores the geometry of the edges compressed, which needs less space on disk and in memory but makes reading it a
+     * bit slower. Only used for a new import, the format of an existing graph is kept.
+     */
+    public GraphHopper setCompressWayGeometry(boolean compressWayGeometry) {
+        ensureNotLoaded();
+        this.compressWayGeometry = compressWayGeometry;
+        return this;
+    }
+
+    /**
+     * Adds a storage for time-dependent speed profiles to the graph, see {@link GraphHopperStorage#getSpeedProfileStorage()}.
+     * The profiles are used for requests with a departure time.
+     */
+    public GraphHopper setSpeedProfiles(boolean speedProfiles) {
+        ensureNotLoaded();
+        this.speedProfiles = speedProfiles;
+        return this;
+    }
+
+    /**
+     * Specifies the time zone of the buckets of the speed profiles, e.g. Europe/Berlin. Default is UTC.
+     */
+    public GraphHopper setSpeedProfileTimeZone(String timeZoneId) {
+        TimeZone timeZone = TimeZone.getTimeZone(timeZoneId);
+        // getTimeZone falls back to GMT for unknown IDs
+        if (!timeZone.getID().equals(timeZoneId))
+            throw new IllegalArgumentException("Unknown time zone " + timeZoneId);
+        this.speedProfileTimeZone = timeZone;
+        return this;
+    }
+
+    /**
+     * Specifies how the graph is sorted if enabled via setSortGraph: 'dfs' (default) orders the nodes as a depth-first
+     * search visits them, 'hilbert' orders them along a Hilbert curve and the edges by their base node.
+     */
+    public GraphHopper setSortType(String sortType) {
+        ensureNotLoaded();
+        if (!"dfs".equals(sortType) && !"hilbert".equals(sortType))
+            throw new IllegalArgumentException("Unknown sort type " + sortType + ", supported are dfs and hilbert");
+        this.sortType = sortType;
+        return this;
+    }
+
     public boolean isAllowWrites() {
         return allowWrites;
     }
@@ -511,9 +673,16 @@ public class GraphHopper implements GraphHopperAPI {
 
         String graphDATypeStr = args.get("graph.dataaccess", "RAM_STORE");
         dataAccessType = DAType.fromString(graphDATypeStr);
+        // the graph has to be imported and prepared before, e.g. with MMAP
+        if (!dataAccessType.isAllowWrites())
+            allowWrites = false;
 
         sortGraph = args.getBool("graph.do_sort", sortGraph);
+        setSortType(args.get("graph.sort_type", sortType));
         removeZipped = args.getBool("graph.remove_zipped", removeZipped);
+        compressWayGeometry = args.getBool("graph.compress_geometry", compressWayGeometry);
+        speedProfiles = args.getBool("graph.speed_profiles", speedProfiles);
+        setSpeedProfileTimeZone(args.get("graph.speed_profiles.time_zone", speedProfileTimeZone.getID()));
         EncodingManager.Builder emBuilder = new EncodingManager.Builder();
         String flagEncodersStr = args.get("graph.flag_encoders", "");
         String encodedValueStr = args.get("graph.encoded_values", "");
@@ -587,13 +756,20 @@ public class GraphHopper implements GraphHopperAPI {
         dataReaderWayPointMaxDistance = args.getDouble(Routing.INIT_WAY_POINT_MAX_DISTANCE, dataReaderWayPointMaxDistance);
 
         dataReaderWorkerThreads = args.getInt("datareader.worker_threads", dataReaderWorkerThreads);
+        dataReaderWayWorkerThreads = args.getInt("datareader.way_worker_threads", dataReaderWayWorkerThreads);
+        String nodeMapDATypeStr = args.get("datareader.node_map.dataaccess", "");
+        dataReaderNodeMapDAType = nodeMapDATypeStr.isEmpty() ? null : DAType.fromString(nodeMapDATypeStr);
 
         // index
         preciseIndexResolution = args.getInt("index.high_resolution", preciseIndexResolution);
         maxRegionSearch = args.getInt("index.max_region_search", maxRegionSearch);
+        snapCacheSize = args.getInt("index.snap_cache_size", snapCacheSize);
 
         // routing
         maxVisitedNodes = args.getInt(Routing.INIT_MAX_VISITED_NODES, Integer.MAX_VALUE);
+        searchStatePool = args.getBool(Routing.INIT_SEARCH_STATE_POOL, searchStatePool);
+        if (args.has(Routing.INIT_VIA_THREADS))
+            setViaThreads(args.getInt(Routing.INIT_VIA_THREADS, 1));
         maxRoundTripRetries = args.getInt(RoundTrip.INIT_MAX_RETRIES, maxRoundTripRetries);
         nonChMaxWaypointDistance = args.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, Integer.MAX_VALUE);
 
@@ -755,7 +931,8 @@ public class GraphHopper implements GraphHopperAPI {
             chProfiles = Collections.emptyList();
         }
 
-        ghStorage = new GraphHopperStorage(chProfiles, dir, encodingManager, hasElevation(), encodingManager.needsTurnCostsSupport(), defaultSegmentSize);
+        ghStorage = new GraphHopperStorage(chProfiles, dir, encodingManager, hasElevation(), encodingManager.needsTurnCostsSupport(), defaultSegmentSize).
+                setCompressedWayGeometry(compressWayGeometry).setSpeedProfiles(speedProfiles);
 
         if (!new File(graphHopperFolder).exists())
             return false;
@@ -868,8 +1045,11 @@ public class GraphHopper implements GraphHopperAPI {
                 throw new IllegalArgumentException("Sorting a prepared CHGraph is not possible yet. See #12");
 
             GraphHopperStorage newGraph = GHUtility.newStorage(ghStorage);
-            GHUtility.sortDFS(ghStorage, newGraph);
-            logger.info("graph sorted (" + getMemInfo() + ")");
+            if ("hilbert".equals(sortType))
+                GHUtility.sortHilbert(ghStorage, newGraph);
+            else
+                GHUtility.sortDFS(ghStorage, newGraph);
+            logger.info("graph sorted via " + sortType + " (" + getMemInfo() + ")");
             ghStorage = newGraph;
         }
 
@@ -885,8 +1065,72 @@ public class GraphHopper implements GraphHopperAPI {
 
         if (chFactoryDecorator.isEnabled())
             chFactoryDecorator.createPreparations(ghStorage);
-        if (!isCHPrepared())
+        if (!isCHPrepared()) {
             prepareCH(closeEarly);
+        } else {
+            checkCustomizableCH();
+            loadStaleCH();
+        }
+    }
+
+    /**
+     * The customization of a CH graph that was not prepared as customizable CH would produce wrong shortcut weights
+     */
+    private void checkCustomizableCH() {
+        if (!chFactoryDecorator.isEnabled())
+            return;
+        for (PrepareContractionHierarchies pch : chFactoryDecorator.getPreparations()) {
+            String key = CH.PREPARE + "customizable." + pch.getCHProfile().toFileName();
+            if (pch.isCustomizable() != "true".equals(ghStorage.getProperties().get(key)))
+                throw new IllegalStateException("The CH graph for " + pch.getCHProfile() + " was prepared with "
+                        + CHParameters.CUSTOMIZABLE + "=" + !pch.isCustomizable() + ", but the configuration has "
+                        + pch.isCustomizable() + ". Remove the graph folder to prepare it again.");
+        }
+    }
+
+    /**
+     * A CH graph that was stale when the graph was stored is still stale, see changeGraph. The shortcut weights of a
+     * customizable CH that are stale or belong to another weighting than the one of the CH profile are customized
+     * again, because only the CH profile is available after loading, see customizeCH. Without writes they stay stale.
+     */
+    private void loadStaleCH() {
+        if (!chFactoryDecorator.isEnabled())
+            return;
+        Set<String> stalePreparations = new HashSet<>();
+        for (PrepareContractionHierarchies pch : chFactoryDecorator.getPreparations()) {
+            boolean stale = "true".equals(ghStorage.getProperties().get(getStaleCHKey(pch)));
+            if (pch.isCustomizable()) {
+                String customizationWeighting = ghStorage.getProperties().get(getCustomizationWeightingKey(pch));
+                if (!stale && customizationWeighting.isEmpty())
+                    continue;
+                if (!allowWrites) {
+                    stalePreparations.add(getPreparationName(pch));
+                } else {
+                    logger.warn("The CH graph for " + pch.getCHProfile() + " was stored with "
+                            + (stale ? "stale shortcut weights" : "the shortcut weights for " + customizationWeighting)
+                            + ", customizing it again for the weighting of the CH profile");
+                    pch.customize();
+                    ghStorage.getProperties().put(getStaleCHKey(pch), false);
+                    ghStorage.getProperties().put(getCustomizationWeightingKey(pch), "");
+                    ghStorage.flush();
+                }
+            } else if (stale) {
+                stalePreparations.add(getPreparationName(pch));
+            }
+        }
+        if (!stalePreparations.isEmpty())
+            ghStorage.setStalePreparations(stalePreparations);
+    }
+
+    private static String getStaleCHKey(PrepareContractionHierarchies pch) {
+        return CH.PREPARE + "stale." + pch.getCHProfile().toFileName();
+    }
+
+    /**
+     * The value is empty if the shortcut weights belong to the weighting of the CH profile
+     */
+    private static String getCustomizationWeightingKey(PrepareContractionHierarchies pch) {
+        return CH.PREPARE + "customization_weighting." + pch.getCHProfile().toFileName();
     }
 
     private static final String INTERPOLATION_KEY = "prepare.elevation_interpolation.done";
@@ -964,6 +1208,20 @@ public class GraphHopper implements GraphHopperAPI {
         return weighting;
     }
 
+    /**
+     * Potentially wraps the specified weighting into a TimeDependentWeighting instance if the hints contain a
+     * departure time.
+     */
+    public Weighting createTimeDependentWeighting(Graph graph, Weighting weighting, HintsMap hints) {
+        if (!hints.has(Routing.DEPARTURE_TIME))
+            return weighting;
+        SpeedProfileStorage speedProfileStorage = ghStorage.getSpeedProfileStorage();
+        if (speedProfileStorage == null)
+            throw new IllegalArgumentException("To make use of the " + Routing.DEPARTURE_TIME + " parameter you need to enable graph.speed_profiles");
+        long departureTime = TimeDependentWeighting.parseDepartureTime(hints.get(Routing.DEPARTURE_TIME, ""));
+        return new TimeDependentWeighting(weighting, graph, speedProfileStorage, departureTime, speedProfileTimeZone);
+    }
+
     @Override
     public GHResponse route(GHRequest request) {
         GHResponse response = new GHResponse();
@@ -988,14 +1246,16 @@ public class GraphHopper implements GraphHopperAPI {
             request.setVehicle(vehicle);
         }
 
-        Lock readLock = readWriteLock.readLock();
-        readLock.lock();
+        // the request sees the same edge flags and preparations until it is finished, even if changeGraph is called meanwhile
+        GraphEpoch epoch = ghStorage.pinEpoch();
         try {
             if (!encodingManager.hasEncoder(vehicle))
                 throw new IllegalArgumentException("Vehicle not supported: " + vehicle + ". Supported are: " + encodingManager.toString());
 
             FlagEncoder encoder = encodingManager.getEncoder(vehicle);
             HintsMap hints = request.getHints();
+            if (searchStatePool && !hints.has(Routing.SEARCH_STATE_POOL))
+                hints.put(Routing.SEARCH_STATE_POOL, true);
 
             // we use edge-based routing if the encoder supports turn-costs *unless* the edge_based parameter is set
             // explicitly.
@@ -1015,13 +1275,26 @@ public class GraphHopper implements GraphHopperAPI {
             if (!chFactoryDecorator.isDisablingAllowed() && disableCH)
                 throw new IllegalArgumentException("Disabling CH not allowed on the server-side");
 
+            if (hints.has(Routing.DEPARTURE_TIME) && chFactoryDecorator.isEnabled() && !disableCH)
+                throw new IllegalArgumentException("The " + Routing.DEPARTURE_TIME + " parameter is not supported for CH, use " + CH.DISABLE + "=true");
+
             boolean disableLM = hints.getBool(Landmark.DISABLE, false);
             if (!lmFactoryDecorator.isDisablingAllowed() && disableLM)
                 throw new IllegalArgumentException("Disabling LM not allowed on the server-side");
 
+            RoutingAlgorithmFactory tmpAlgoFactory = getAlgorithmFactory(hints);
+            boolean useCH = chFactoryDecorator.isEnabled() && !disableCH;
+            if (useCH && isStale(epoch, tmpAlgoFactory)) {
+                // the shortcut weights are updated by changeGraph, so we fall back to LM or flexible routing meanwhile
+                useCH = false;
+                tmpAlgoFactory = getAlgorithmFactory(new HintsMap(hints).put(CH.DISABLE, true));
+            }
+            if (tmpAlgoFactory instanceof LMAlgoFactoryDecorator.LMRAFactory && isStale(epoch, tmpAlgoFactory))
+                tmpAlgoFactory = ((LMAlgoFactoryDecorator.LMRAFactory) tmpAlgoFactory).getDefaultAlgoFactory();
+
             String algoStr = request.getAlgorithm();
             if (algoStr.isEmpty())
-                algoStr = chFactoryDecorator.isEnabled() && !disableCH ? DIJKSTRA_BI : ASTAR_BI;
+                algoStr = useCH ? DIJKSTRA_BI : ASTAR_BI;
 
             List<GHPoint> points = request.getPoints();
             // TODO Maybe we should think about a isRequestValid method that checks all that stuff that we could do to fail fast
@@ -1033,25 +1306,34 @@ public class GraphHopper implements GraphHopperAPI {
                 routingTemplate = new RoundTripRoutingTemplate(request, ghRsp, locationIndex, encodingManager, maxRoundTripRetries);
             else if (ALT_ROUTE.equalsIgnoreCase(algoStr))
                 routingTemplate = new AlternativeRoutingTemplate(request, ghRsp, locationIndex, encodingManager);
-            else
+            else {
                 routingTemplate = new ViaRoutingTemplate(request, ghRsp, locationIndex, encodingManager);
+                ((ViaRoutingTemplate) routingTemplate).setLegExecutor(viaExecutor);
+            }
+            ((AbstractRoutingTemplate) routingTemplate).setSnapCache(snapCache);
 
             List<Path> altPaths = null;
             int maxRetries = routingTemplate.getMaxRetries();
             Locale locale = request.getLocale();
             Translation tr = trMap.getWithFallBack(locale);
+            boolean tmpEnableInstructions = hints.getBool(Routing.INSTRUCTIONS, getEncodingManager().isEnableInstructions());
+            // the phases are summed over all passes, e.g. of a round trip, and reported once
+            long lookupNanos = 0, queryGraphNanos = 0, extractionNanos = 0, instructionsNanos = 0, pathDetailsNanos = 0;
+            String profile = null;
+            String routingMode = null;
             for (int i = 0; i < maxRetries; i++) {
                 StopWatch sw = new StopWatch().start();
                 List<QueryResult> qResults = routingTemplate.lookup(points, encoder);
-                ghRsp.addDebugInfo("idLookup:" + sw.stop().getSeconds() + "s");
+                lookupNanos += sw.stop().getNanos();
+                ghRsp.addDebugInfo("idLookup:" + sw.getSeconds() + "s");
                 if (ghRsp.hasErrors())
                     return Collections.emptyList();
 
-                RoutingAlgorithmFactory tmpAlgoFactory = getAlgorithmFactory(hints);
                 Weighting weighting;
                 QueryGraph queryGraph;
+                sw = new StopWatch().start();
 
-                if (chFactoryDecorator.isEnabled() && !disableCH) {
+                if (useCH) {
                     boolean forceCHHeading = hints.getBool(CH.FORCE_HEADING, false);
                     if (!forceCHHeading && request.hasFavoredHeading(0))
                         throw new IllegalArgumentException("Heading is not (fully) supported for CHGraph. See issue #483");
@@ -1065,6 +1347,7 @@ public class GraphHopper implements GraphHopperAPI {
                         CHProfile chProfile = ((PrepareContractionHierarchies) chAlgoFactory).getCHProfile();
                         queryGraph = QueryGraph.lookup(ghStorage.getCHGraph(chProfile), qResults);
                         weighting = chProfile.getWeighting();
+                        routingMode = "ch";
                     } else {
                         throw new IllegalStateException("Although CH was enabled a non-CH algorithm factory was returned " + tmpAlgoFactory);
                     }
@@ -1072,7 +1355,10 @@ public class GraphHopper implements GraphHopperAPI {
                     checkNonChMaxWaypointDistance(points);
                     queryGraph = QueryGraph.lookup(ghStorage, qResults);
                     weighting = createWeighting(hints, encoder, queryGraph);
+                    routingMode = tmpAlgoFactory instanceof LMAlgoFactoryDecorator.LMRAFactory ? "lm" : "flex";
                 }
+                queryGraphNanos += sw.stop().getNanos();
+                profile = encoder.toString() + "_" + weighting.getName();
                 ghRsp.addDebugInfo("tmode:" + tMode.toString());
 
                 int maxVisitedNodesForRequest = hints.getInt(Routing.MAX_VISITED_NODES, maxVisitedNodes);
@@ -1085,6 +1371,7 @@ public class GraphHopper implements GraphHopperAPI {
                 }
                 double uTurnCosts = uTurnCostInt == INFINITE_U_TURN_COSTS ? Double.POSITIVE_INFINITY : uTurnCostInt;
                 weighting = createTurnWeighting(queryGraph, weighting, tMode, uTurnCosts);
+                weighting = createTimeDependentWeighting(queryGraph, weighting, hints);
 
                 AlgorithmOptions algoOpts = AlgorithmOptions.start().
                         algorithm(algoStr).traversalMode(tMode).weighting(weighting).
@@ -1094,8 +1381,10 @@ public class GraphHopper implements GraphHopperAPI {
 
                 // do the actual route calculation !
                 altPaths = routingTemplate.calcPaths(queryGraph, tmpAlgoFactory, algoOpts, encoder);
+                for (Path path : altPaths) {
+                    extractionNanos += path.getExtractionNanos();
+                }
 
-                boolean tmpEnableInstructions = hints.getBool(Routing.INSTRUCTIONS, getEncodingManager().isEnableInstructions());
                 boolean tmpCalcPoints = hints.getBool(Routing.CALC_POINTS, calcPoints);
                 double wayPointMaxDistance = hints.getDouble(Routing.WAY_POINT_MAX_DISTANCE, 1d);
 
@@ -1110,41 +1399,201 @@ public class GraphHopper implements GraphHopperAPI {
                 if (request.hasFavoredHeading(0))
                     pathMerger.setFavoredHeading(request.getFavoredHeading(0));
 
-                if (routingTemplate.isReady(pathMerger, tr))
+                boolean ready = routingTemplate.isReady(pathMerger, tr);
+                instructionsNanos += pathMerger.getInstructionsNanos();
+                pathDetailsNanos += pathMerger.getPathDetailsNanos();
+                if (ready)
                     break;
             }
 
+            if (routingPhaseListener != null) {
+                long searchNanos = ((AbstractRoutingTemplate) routingTemplate).getSearchNanos();
+                routingPhaseListener.onPhaseFinished(RoutingPhaseListener.Phase.LOOKUP, profile, routingMode, lookupNanos);
+                routingPhaseListener.onPhaseFinished(RoutingPhaseListener.Phase.QUERY_GRAPH, profile, routingMode, queryGraphNanos);
+                routingPhaseListener.onPhaseFinished(RoutingPhaseListener.Phase.SEARCH, profile, routingMode, searchNanos);
+                routingPhaseListener.onPhaseFinished(RoutingPhaseListener.Phase.PATH_EXTRACTION, profile, routingMode, extractionNanos);
+                if (tmpEnableInstructions)
+                    routingPhaseListener.onPhaseFinished(RoutingPhaseListener.Phase.INSTRUCTIONS, profile, routingMode, instructionsNanos);
+                if (!request.getPathDetails().isEmpty())
+                    routingPhaseListener.onPhaseFinished(RoutingPhaseListener.Phase.PATH_DETAILS, profile, routingMode, pathDetailsNanos);
+            }
             return altPaths;
 
         } catch (IllegalArgumentException ex) {
             ghRsp.addError(ex);
             return Collections.emptyList();
         } finally {
-            readLock.unlock();
+            epoch.unpin();
         }
     }
 
     /**
-     * This method applies the changes to the graph specified as feature collection. It does so by locking the routing
-     * to avoid concurrent changes which could result in incorrect routing (like when done while a Dijkstra search) or
-     * also while just reading one edge row (inconsistent edge properties).
+     * Pins the current epoch of the graph to the calling thread like calcPaths does, so location lookups, query graphs
+     * and algorithms created by this thread keep seeing the same edge flags while changeGraph is called meanwhile.
+     * Every call has to be followed by a call of GraphEpoch.unpin, e.g. in a finally block.
+     */
+    public GraphEpoch pinEpoch() {
+        return ghStorage.pinEpoch();
+    }
+
+    /**
+     * @return true if the preparation of the specified algorithm factory must not be used by a request pinned to the
+     * specified epoch, e.g. because changeGraph updates its weights meanwhile
+     */
+    public static boolean isStale(GraphEpoch epoch, RoutingAlgorithmFactory algoFactory) {
+        if (algoFactory instanceof LMAlgoFactoryDecorator.LMRAFactory) {
+            LMAlgoFactoryDecorator.LMRAFactory lmFactory = (LMAlgoFactoryDecorator.LMRAFactory) algoFactory;
+            if (epoch.isStale(getPreparationName(lmFactory.getPreparation())))
+                return true;
+            algoFactory = lmFactory.getDefaultAlgoFactory();
+        }
+        return algoFactory instanceof PrepareContractionHierarchies
+                && epoch.isStale(getPreparationName((PrepareContractionHierarchies) algoFactory));
+    }
+
+    private static String getPreparationName(PrepareContractionHierarchies pch) {
+        return "ch_" + pch.getCHProfile().toFileName();
+    }
+
+    private static String getPreparationName(PrepareLandmarks plm) {
+        return "lm_" + AbstractWeighting.weightingToFileName(plm.getWeighting());
+    }
+
+    /**
+     * This method applies the changes to the graph specified as feature collection. The new edge flags are calculated
+     * first and then published all at once in a new epoch of the graph, see GraphHopperStorage.changeEdgeFlags.
+     * Routing requests are not blocked: a request that is already running keeps the edge flags of its epoch and this
+     * method waits until it is finished before the flags are written to the storage.
+     * <p>
+     * Afterwards the landmark weights are updated for the changed edges instead of preparing them again and for a
+     * customizable CH only the shortcuts that can depend on the changed edges are customized again. The shortcuts of a normal CH cannot be repaired without contracting the
+     * graph again, so if allowed via routing.ch.change_graph_allowed such a CH stays stale for this graph: its
+     * requests fall back to LM or flexible routing. The preparations are marked as stale before the flags are
+     * changed, so meanwhile requests fall back as well instead of seeing a mix of old and new weights. Concurrent
+     * calls of this method are applied one after the other.
      */
     public ChangeGraphResponse changeGraph(Collection<JsonFeature> collection) {
-        // TODO allow calling this method if called before CH preparation
-        if (getCHFactoryDecorator().isEnabled())
-            throw new IllegalArgumentException("To use the changeGraph API you need to turn off CH");
+        if (chFactoryDecorator.isEnabled()) {
+            for (PrepareContractionHierarchies pch : chFactoryDecorator.getPreparations()) {
+                if (pch.isEdgeBased())
+                    throw new IllegalArgumentException("The changeGraph API does not support edge-based CH");
+                if (!pch.isCustomizable() && !chFactoryDecorator.isChangeGraphAllowed())
+                    throw new IllegalArgumentException("To use the changeGraph API you need to turn off CH, enable "
+                            + CH.INIT_CHANGE_GRAPH_ALLOWED + " or prepare a customizable CH via " + CHParameters.CUSTOMIZABLE);
+            }
+        }
 
-        Lock writeLock = readWriteLock.writeLock();
-        writeLock.lock();
+        changeGraphLock.lock();
         try {
-            ChangeGraphHelper overlay = createChangeGraphHelper(ghStorage, locationIndex);
-            long updateCount = overlay.applyChanges(encodingManager, collection);
-            return new ChangeGraphResponse(updateCount);
+            Set<String> stalePreparations = ghStorage.getEpoch().getStalePreparations();
+            Set<String> updatedPreparations = new HashSet<>(stalePreparations);
+            if (chFactoryDecorator.isEnabled()) {
+                for (PrepareContractionHierarchies pch : chFactoryDecorator.getPreparations()) {
+                    updatedPreparations.add(getPreparationName(pch));
+                }
+            }
+            if (lmFactoryDecorator.isEnabled()) {
+                for (PrepareLandmarks plm : lmFactoryDecorator.getPreparations()) {
+                    updatedPreparations.add(getPreparationName(plm));
+                }
+            }
+            ghStorage.setStalePreparations(updatedPreparations);
+
+            boolean weightsConsistent = true;
+            try {
+                ChangeGraphHelper overlay = createChangeGraphHelper(ghStorage, locationIndex);
+                long updateCount = overlay.applyChanges(encodingManager, collection);
+                IntHashSet changedEdges = overlay.getChangedEdges();
+                if (!changedEdges.isEmpty()) {
+                    weightsConsistent = false;
+                    if (chFactoryDecorator.isEnabled()) {
+                        // the changed flags of a memory mapped graph are stored already, so the stale CH has to be too
+                        for (PrepareContractionHierarchies pch : chFactoryDecorator.getPreparations()) {
+                            ghStorage.getProperties().put(getStaleCHKey(pch), true);
+                        }
+                        ghStorage.getProperties().flush();
+                        stalePreparations = new HashSet<>(stalePreparations);
+                        for (PrepareContractionHierarchies pch : chFactoryDecorator.getPreparations()) {
+                            if (pch.isCustomizable()) {
+                                // only the shortcuts that can depend on the changed edges are calculated again
+                                pch.customize(changedEdges);
+                                ghStorage.getProperties().put(getStaleCHKey(pch), false);
+                            } else {
+                                stalePreparations.add(getPreparationName(pch));
+                            }
+                        }
+                        ghStorage.getProperties().flush();
+                    }
+                    if (lmFactoryDecorator.isEnabled()) {
+                        for (PrepareLandmarks plm : lmFactoryDecorator.getPreparations()) {
+                            plm.updateWeights(changedEdges);
+                        }
+                    }
+                    weightsConsistent = true;
+                }
+                if (snapCache != null)
+                    snapCache.invalidateEdges(changedEdges);
+                graphVersion.incrementAndGet();
+                return new ChangeGraphResponse(updateCount);
+            } finally {
+                // if an update failed the preparations stay stale instead of being used with partially updated weights
+                if (weightsConsistent)
+                    ghStorage.setStalePreparations(stalePreparations);
+            }
         } finally {
-            writeLock.unlock();
+            changeGraphLock.unlock();
         }
     }
 
+    /**
+     * Calculates the shortcut weights of the customizable CH graph of the specified CH profile for the specified
+     * weighting, e.g. to apply the current traffic every few minutes without a new preparation. The weighting has to
+     * use the flag encoder of the CH profile. Afterwards the CH requests of this profile use the weighting, see
+     * CHAlgoFactoryDecorator.getDecoratedAlgorithmFactory. Requests running meanwhile fall back to LM or flexible
+     * routing like during changeGraph.
+     * <p>
+     * When the graph is loaded again its CH graph is customized for the weighting of the CH profile.
+     */
+    public void customizeCH(CHProfile chProfile, Weighting weighting) {
+        if (!chFactoryDecorator.isEnabled())
+            throw new IllegalStateException("CH is not enabled");
+        PrepareContractionHierarchies pch = chFactoryDecorator.getPreparation(chProfile);
+        if (!pch.isCustomizable())
+            throw new IllegalArgumentException("The CH graph for " + chProfile + " was not prepared as customizable CH, see "
+                    + CHParameters.CUSTOMIZABLE);
+
+        changeGraphLock.lock();
+        try {
+            Set<String> stalePreparations = ghStorage.getEpoch().getStalePreparations();
+            Set<String> updatedPreparations = new HashSet<>(stalePreparations);
+            updatedPreparations.add(getPreparationName(pch));
+            ghStorage.setStalePreparations(updatedPreparations);
+            boolean weightsConsistent = false;
+            try {
+                ghStorage.getProperties().put(getStaleCHKey(pch), true);
+                ghStorage.getProperties().flush();
+                pch.customize(weighting);
+                ghStorage.getProperties().put(getStaleCHKey(pch), false);
+                ghStorage.getProperties().put(getCustomizationWeightingKey(pch),
+                        weighting == chProfile.getWeighting() ? "" : weighting.toString());
+                ghStorage.getProperties().flush();
+                weightsConsistent = true;
+            } finally {
+                if (weightsConsistent)
+                    ghStorage.setStalePreparations(stalePreparations);
+            }
+        } finally {
+            changeGraphLock.unlock();
+        }
+    }
+
+    /**
+     * @return a counter that is increased by every call of changeGraph, e.g. to invalidate cached routes
+     */
+    public long getGraphVersion() {
+        return graphVersion.get();
+    }
+
     protected ChangeGraphHelper createChangeGraphHelper(Graph graph, LocationIndex locationIndex) {
         return new ChangeGraphHelper(graph, locationIndex);
     }
@@ -1200,6 +1649,8 @@ public class GraphHopper implements GraphHopperAPI {
             throw new IllegalStateException("Cannot initialize locationIndex twice!");
 
         locationIndex = createLocationIndex(ghStorage.getDirectory());
+        if (snapCacheSize > 0)
+            snapCache = new QueryResultCache(ghStorage, snapCacheSize);
     }
 
     private boolean isCHPrepared() {
@@ -1215,7 +1666,9 @@ public class GraphHopper implements GraphHopperAPI {
     protected void prepareCH(boolean closeEarly) {
         boolean tmpPrepare = chFactoryDecorator.isEnabled();
         if (tmpPrepare) {
-            ensureWriteAccess();
+            if (!allowWrites)
+                throw new IllegalStateException("Contraction hierarchies are not prepared for " + chFactoryDecorator.getCHProfileStrings()
+                        + " but writes are not allowed");
 
             if (closeEarly) {
                 locationIndex.flush();
@@ -1235,7 +1688,14 @@ public class GraphHopper implements GraphHopperAPI {
     protected void loadOrPrepareLM(boolean closeEarly) {
         boolean tmpPrepare = lmFactoryDecorator.isEnabled() && !lmFactoryDecorator.getPreparations().isEmpty();
         if (tmpPrepare) {
-            ensureWriteAccess();
+            if (!allowWrites) {
+                // only load, the preparation would write into the read-only storage
+                for (PrepareLandmarks plm : lmFactoryDecorator.getPreparations()) {
+                    if (!plm.loadExisting())
+                        throw new IllegalStateException("Landmarks are not prepared for " + plm.getWeighting() + " but writes are not allowed");
+                }
+                return;
+            }
             ghStorage.freeze();
             if (lmFactoryDecorator.loadOrDoWork(ghStorage.getProperties(), closeEarly))
                 ghStorage.getProperties().put(Landmark.PREPARE + "done", true);
@@ -1271,6 +1731,9 @@ public class GraphHopper implements GraphHopperAPI {
      * remove the files created in graphhopperLocation you have to call clean().
      */
     public void close() {
+        if (viaExecutor != null)
+            viaExecutor.shutdown();
+
         if (ghStorage != null)
             ghStorage.close();
 
@@ -0,0 +1,73 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.IntArrayList;
+
+/**
+ * A GHIntObjectHashMap that remembers the keys added since the last {@link #reset()}, so that a map which is reused
+ * for many small searches can be emptied in time proportional to the number of its entries instead of its capacity.
+ * The capacity grows with the largest content and is kept.
+ */
+public class GHIntObjectResettableHashMap<T> extends GHIntObjectHashMap<T> {
+    private final IntArrayList addedKeys = new IntArrayList();
+
+    public GHIntObjectResettableHashMap() {
+        super();
+    }
+
+    public GHIntObjectResettableHashMap(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    public T put(int key, T value) {
+        int oldSize = size();
+        T oldValue = super.put(key, value);
+        if (size() > oldSize)
+            addedKeys.add(key);
+        return oldValue;
+    }
+
+    @Override
+    public void indexInsert(int index, int key, T value) {
+        super.indexInsert(index, key, value);
+        addedKeys.add(key);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        addedKeys.clear();
+    }
+
+    /**
+     * Removes all entries. If only a small part of the table is used the entries are removed one by one, otherwise
+     * the whole table is cleared.
+     */
+    public void reset() {
+        if (addedKeys.size() > keys.length / 8) {
+            clear();
+            return;
+        }
+        for (int i = 0; i < addedKeys.size(); i++) {
+            remove(addedKeys.get(i));
+        }
+        addedKeys.clear();
+    }
+}
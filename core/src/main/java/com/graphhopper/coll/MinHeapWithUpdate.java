@@ -0,0 +1,151 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap of int ids with double keys. The position of every id in the heap is stored in an array, so the
+ * key of an id in the heap can be changed in O(log n) via {@link #update(int, double)} instead of searching the
+ * whole heap like in IntDoubleBinaryHeap. The ids have to be in the range [0, capacity), so this heap is meant for
+ * searches that already keep arrays of the size of the graph.
+ */
+public class MinHeapWithUpdate {
+    private static final int NOT_PRESENT = -1;
+    // the position of every id in the tree or NOT_PRESENT
+    private final int[] positions;
+    private int[] tree;
+    private double[] keys;
+    private int size;
+
+    /**
+     * @param capacity the ids have to be smaller than this value
+     */
+    public MinHeapWithUpdate(int capacity) {
+        positions = new int[capacity];
+        Arrays.fill(positions, NOT_PRESENT);
+        int initialSize = Math.max(2, Math.min(capacity, 1000));
+        tree = new int[initialSize];
+        keys = new double[initialSize];
+    }
+
+    public void push(int id, double key) {
+        if (positions[id] != NOT_PRESENT)
+            throw new IllegalStateException("Id is already in the heap: " + id);
+        if (size == tree.length) {
+            tree = Arrays.copyOf(tree, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        siftUp(size++, id, key);
+    }
+
+    public boolean contains(int id) {
+        return positions[id] != NOT_PRESENT;
+    }
+
+    /**
+     * Changes the key of an id that is in the heap. The new key can be lower or higher than the old one.
+     */
+    public void update(int id, double key) {
+        int index = positions[id];
+        if (index == NOT_PRESENT)
+            throw new IllegalStateException("Id is not in the heap: " + id);
+        if (key < keys[index])
+            siftUp(index, id, key);
+        else
+            siftDown(index, id, key);
+    }
+
+    public int peekId() {
+        if (size == 0)
+            throw new NoSuchElementException("Heap is empty");
+        return tree[0];
+    }
+
+    public double peekKey() {
+        if (size == 0)
+            throw new NoSuchElementException("Heap is empty");
+        return keys[0];
+    }
+
+    /**
+     * @return the id with the smallest key
+     */
+    public int poll() {
+        int id = peekId();
+        positions[id] = NOT_PRESENT;
+        size--;
+        if (size > 0)
+            siftDown(0, tree[size], keys[size]);
+        return id;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all ids in O(size).
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[tree[i]] = NOT_PRESENT;
+        }
+        size = 0;
+    }
+
+    public int getCapacity() {
+        return positions.length;
+    }
+
+    private void siftUp(int index, int id, double key) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (keys[parent] <= key)
+                break;
+            set(index, tree[parent], keys[parent]);
+            index = parent;
+        }
+        set(index, id, key);
+    }
+
+    private void siftDown(int index, int id, double key) {
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child])
+                child++;
+            if (key <= keys[child])
+                break;
+            set(index, tree[child], keys[child]);
+            index = child;
+        }
+        set(index, id, key);
+    }
+
+    private void set(int index, int id, double key) {
+        tree[index] = id;
+        keys[index] = key;
+        positions[id] = index;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Helper;
+
+import java.io.File;
+
+/**
+ * An open addressing hash map from long to int with linear probing. In contrast to GHLongIntBTree the entries are
+ * stored in a DataAccess and not in Java objects, so with e.g. DAType.MMAP or DAType.UNSAFE_STORE the map lives
+ * off-heap and does not put pressure on the garbage collector. Keys can be inserted in arbitrary order. Every entry
+ * uses 12 bytes and the table is doubled when it is filled to 75%, so during such a resize the old and the new table
+ * exist at the same time.
+ * <p>
+ * Call {@link #release()} when the map is no longer needed to free the memory and to remove the backing file.
+ */
+public class OffHeapLongIntMap implements LongIntMap {
+    // key (8 bytes) and value (4 bytes). All ints are 4-byte aligned and cannot cross a segment border.
+    private static final int ENTRY_BYTES = 12;
+    private static final int VALUE_OFFSET = 8;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+    // a zero key marks an empty slot, so the value of the key 0 is stored separately
+    private static final long EMPTY_KEY = 0;
+    private final Directory dir;
+    private final String name;
+    private final DAType daType;
+    private final int noEntryValue;
+    private DataAccess entries;
+    private int resizeCounter;
+    private long slots;
+    private long mask;
+    private long resizeAt;
+    private long size;
+    private boolean hasEmptyKey;
+    private int emptyKeyValue;
+
+    public OffHeapLongIntMap(Directory dir, String name, DAType daType) {
+        this(dir, name, daType, 1 << 16);
+    }
+
+    /**
+     * @param initialSize the number of entries that can be stored without a resize
+     */
+    public OffHeapLongIntMap(Directory dir, String name, DAType daType, long initialSize) {
+        this.dir = dir;
+        this.name = name;
+        this.daType = daType;
+        this.noEntryValue = -1;
+        long initialSlots = Long.highestOneBit(Math.max(16, (long) (initialSize / MAX_LOAD_FACTOR)));
+        if (initialSlots * MAX_LOAD_FACTOR < initialSize)
+            initialSlots <<= 1;
+        entries = createEntries(initialSlots);
+        setSlots(initialSlots);
+    }
+
+    private DataAccess createEntries(long slots) {
+        String daName = name + "_" + resizeCounter++;
+        // the memory has to be empty, so do not re-use a file left from an earlier run
+        if (daType.isStoring()) {
+            new File(dir.getLocation()).mkdirs();
+            Helper.removeDir(new File(dir.getLocation() + daName));
+        }
+        DataAccess da = dir.find(daName, daType);
+        da.create(slots * ENTRY_BYTES);
+        return da;
+    }
+
+    private void setSlots(long slots) {
+        this.slots = slots;
+        this.mask = slots - 1;
+        this.resizeAt = (long) (slots * MAX_LOAD_FACTOR);
+    }
+
+    @Override
+    public int put(long key, int value) {
+        if (key == EMPTY_KEY) {
+            int oldValue = hasEmptyKey ? emptyKeyValue : noEntryValue;
+            if (!hasEmptyKey)
+                size++;
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return oldValue;
+        }
+
+        long slot = findSlot(entries, mask, key);
+        long pointer = slot * ENTRY_BYTES;
+        if (getKey(entries, pointer) == key) {
+            int oldValue = entries.getInt(pointer + VALUE_OFFSET);
+            entries.setInt(pointer + VALUE_OFFSET, value);
+            return oldValue;
+        }
+
+        setEntry(entries, pointer, key, value);
+        size++;
+        if (size >= resizeAt)
+            resize();
+        return noEntryValue;
+    }
+
+    @Override
+    public int get(long key) {
+        if (key == EMPTY_KEY)
+            return hasEmptyKey ? emptyKeyValue : noEntryValue;
+
+        long pointer = findSlot(entries, mask, key) * ENTRY_BYTES;
+        if (getKey(entries, pointer) == key)
+            return entries.getInt(pointer + VALUE_OFFSET);
+        return noEntryValue;
+    }
+
+    /**
+     * @return the slot containing the key or the empty slot where the key has to be inserted
+     */
+    private static long findSlot(DataAccess da, long mask, long key) {
+        long slot = hash(key) & mask;
+        while (true) {
+            long existingKey = getKey(da, slot * ENTRY_BYTES);
+            if (existingKey == key || existingKey == EMPTY_KEY)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void resize() {
+        long newSlots = slots << 1;
+        long newMask = newSlots - 1;
+        DataAccess newEntries = createEntries(newSlots);
+        for (long slot = 0; slot < slots; slot++) {
+            long pointer = slot * ENTRY_BYTES;
+            long key = getKey(entries, pointer);
+            if (key == EMPTY_KEY)
+                continue;
+            long newPointer = findSlot(newEntries, newMask, key) * ENTRY_BYTES;
+            setEntry(newEntries, newPointer, key, entries.getInt(pointer + VALUE_OFFSET));
+        }
+        dir.remove(entries);
+        entries = newEntries;
+        setSlots(newSlots);
+    }
+
+    private static long getKey(DataAccess da, long pointer) {
+        return ((long) da.getInt(pointer + 4) << 32) | (da.getInt(pointer) & 0xFFFFFFFFL);
+    }
+
+    private static void setEntry(DataAccess da, long pointer, long key, int value) {
+        da.setInt(pointer, (int) key);
+        da.setInt(pointer + 4, (int) (key >>> 32));
+        da.setInt(pointer + VALUE_OFFSET, value);
+    }
+
+    /**
+     * The finalization step of MurmurHash3, which spreads the mostly consecutive OSM IDs over the whole table.
+     */
+    static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    public long getCapacity() {
+        return entries.getCapacity();
+    }
+
+    /**
+     * @return memory usage in MB. This memory is outside of the Java heap unless a heap based DAType is used.
+     */
+    @Override
+    public int getMemoryUsage() {
+        return Math.round(getCapacity() / Helper.MB);
+    }
+
+    @Override
+    public void optimize() {
+    }
+
+    /**
+     * Frees the memory of this map, which cannot be used afterwards.
+     */
+    public void release() {
+        dir.remove(entries);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + ", " + daType + ", size: " + size + ", slots: " + slots;
+    }
+}
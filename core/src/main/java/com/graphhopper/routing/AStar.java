@@ -24,10 +24,9 @@ import com.graphhopper.routing.weighting.WeightApproximator;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.storage.SPTEntryHeap;
 import com.graphhopper.util.*;
 
-import java.util.PriorityQueue;
-
 /**
  * This class implements the A* algorithm according to
  * http://en.wikipedia.org/wiki/A*_search_algorithm
@@ -39,7 +38,7 @@ import java.util.PriorityQueue;
  */
 public class AStar extends AbstractRoutingAlgorithm {
     private GHIntObjectHashMap<AStarEntry> fromMap;
-    private PriorityQueue<AStarEntry> fromHeap;
+    private SPTEntryHeap<AStarEntry> fromHeap;
     private AStarEntry currEdge;
     private int visitedNodes;
     private int to = -1;
@@ -64,7 +63,7 @@ public class AStar extends AbstractRoutingAlgorithm {
 
     protected void initCollections(int size) {
         fromMap = new GHIntObjectHashMap<>();
-        fromHeap = new PriorityQueue<>(size);
+        fromHeap = new SPTEntryHeap<>(size);
     }
 
     @Override
@@ -108,21 +107,24 @@ public class AStar extends AbstractRoutingAlgorithm {
                     estimationFullWeight = tmpWeight + currWeightToGoal;
                     if (ase == null) {
                         ase = new AStarEntry(iter.getEdge(), neighborNode, estimationFullWeight, tmpWeight);
+                        ase.parent = currEdge;
                         fromMap.put(traversalId, ase);
+                        fromHeap.add(ase);
                     } else {
 //                        assert (ase.weight > 0.9999999 * estimationFullWeight) : "Inconsistent distance estimate. It is expected weight >= estimationFullWeight but was "
 //                                + ase.weight + " < " + estimationFullWeight + " (" + ase.weight / estimationFullWeight + "), and weightOfVisitedPath:"
 //                                + ase.weightOfVisitedPath + " vs. alreadyVisitedWeight:" + alreadyVisitedWeight + " (" + ase.weightOfVisitedPath / alreadyVisitedWeight + ")";
 
-                        fromHeap.remove(ase);
                         ase.edge = iter.getEdge();
                         ase.weight = estimationFullWeight;
                         ase.weightOfVisitedPath = tmpWeight;
+                        ase.parent = currEdge;
+                        if (fromHeap.contains(ase))
+                            fromHeap.update(ase);
+                        else
+                            fromHeap.add(ase);
                     }
 
-                    ase.parent = currEdge;
-                    fromHeap.add(ase);
-
                     updateBestPath(iter, ase, traversalId);
                 }
             }
@@ -131,29 +131,24 @@ public class AStarBidirection extends AbstractBidirAlgo implements Recalculation
 
             // update PQ due to heuristic change (i.e. weight changed)
             if (!pqOpenSetFrom.isEmpty()) {
-                // copy into temporary array to avoid pointer change of PQ
-                AStarEntry[] entries = pqOpenSetFrom.toArray(new AStarEntry[pqOpenSetFrom.size()]);
-                pqOpenSetFrom.clear();
-                for (AStarEntry value : entries) {
+                for (int i = 0; i < pqOpenSetFrom.size(); i++) {
+                    AStarEntry value = (AStarEntry) pqOpenSetFrom.get(i);
                     value.weight = value.weightOfVisitedPath + weightApprox.approximate(value.adjNode, false);
                     // does not work for edge based
                     // ignoreExplorationFrom.add(value.adjNode);
-
-                    pqOpenSetFrom.add(value);
                 }
+                pqOpenSetFrom.updateAll();
             }
         }
 
         if (backward) {
             if (!pqOpenSetTo.isEmpty()) {
-                AStarEntry[] entries = pqOpenSetTo.toArray(new AStarEntry[pqOpenSetTo.size()]);
-                pqOpenSetTo.clear();
-                for (AStarEntry value : entries) {
+                for (int i = 0; i < pqOpenSetTo.size(); i++) {
+                    AStarEntry value = (AStarEntry) pqOpenSetTo.get(i);
                     value.weight = value.weightOfVisitedPath + weightApprox.approximate(value.adjNode, true);
                     // ignoreExplorationTo.add(value.adjNode);
-
-                    pqOpenSetTo.add(value);
                 }
+                pqOpenSetTo.updateAll();
             }
         }
     }
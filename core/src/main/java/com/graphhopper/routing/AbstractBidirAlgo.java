@@ -24,13 +24,12 @@ import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.storage.SPTEntryHeap;
 import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.GHUtility;
 
-import java.util.PriorityQueue;
-
 import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
 
 /**
@@ -53,28 +52,71 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
     protected SPTEntry bestFwdEntry;
     protected SPTEntry bestBwdEntry;
     protected double bestWeight;
-    PriorityQueue<SPTEntry> pqOpenSetFrom;
-    PriorityQueue<SPTEntry> pqOpenSetTo;
+    SPTEntryHeap<SPTEntry> pqOpenSetFrom;
+    SPTEntryHeap<SPTEntry> pqOpenSetTo;
     private boolean updateBestPath = true;
     protected boolean finishedFrom;
     protected boolean finishedTo;
     int visitedCountFrom;
     int visitedCountTo;
+    private final int collectionSize;
+    private boolean useSearchStatePool;
+    private SearchStatePool.BidirState pooledState;
 
     public AbstractBidirAlgo(Graph graph, Weighting weighting, TraversalMode tMode) {
         super(graph, weighting, tMode);
         fromOutEdge = ANY_EDGE;
         toInEdge = ANY_EDGE;
         bestWeight = Double.MAX_VALUE;
-        int size = Math.min(Math.max(200, graph.getNodes() / 10), 150_000);
-        initCollections(size);
+        collectionSize = Math.min(Math.max(200, graph.getNodes() / 10), 150_000);
+    }
+
+    /**
+     * Borrows the maps and queues from a pool of the current thread instead of allocating them, which reduces the
+     * garbage of routing requests. The collections are given back at the end of {@link #calcPath(int, int, int, int)},
+     * so the shortest path trees cannot be inspected afterwards.
+     */
+    public AbstractBidirAlgo setUseSearchStatePool(boolean useSearchStatePool) {
+        this.useSearchStatePool = useSearchStatePool;
+        return this;
+    }
+
+    /**
+     * The collections are created before the first search starts, either via {@link #initCollections(int)} or from
+     * the pool.
+     */
+    private void ensureCollections() {
+        if (pqOpenSetFrom != null)
+            return;
+        if (useSearchStatePool)
+            pooledState = SearchStatePool.acquire();
+        if (pooledState == null) {
+            initCollections(collectionSize);
+            return;
+        }
+        pqOpenSetFrom = pooledState.fromQueue;
+        bestWeightMapFrom = pooledState.fromMap;
+        pqOpenSetTo = pooledState.toQueue;
+        bestWeightMapTo = pooledState.toMap;
+    }
+
+    private void releaseCollections() {
+        if (pooledState == null)
+            return;
+        SearchStatePool.release(pooledState);
+        pooledState = null;
+        pqOpenSetFrom = null;
+        bestWeightMapFrom = null;
+        pqOpenSetTo = null;
+        bestWeightMapTo = null;
+        bestWeightMapOther = null;
     }
 
     protected void initCollections(int size) {
-        pqOpenSetFrom = new PriorityQueue<>(size);
+        pqOpenSetFrom = new SPTEntryHeap<>(size);
         bestWeightMapFrom = new GHIntObjectHashMap<>(size);
 
-        pqOpenSetTo = new PriorityQueue<>(size);
+        pqOpenSetTo = new SPTEntryHeap<>(size);
         bestWeightMapTo = new GHIntObjectHashMap<>(size);
     }
 
@@ -118,9 +160,13 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
         this.fromOutEdge = fromOutEdge;
         this.toInEdge = toInEdge;
         checkAlreadyRun();
-        init(from, 0, to, 0);
-        runAlgo();
-        return extractPath();
+        try {
+            init(from, 0, to, 0);
+            runAlgo();
+            return extractPath();
+        } finally {
+            releaseCollections();
+        }
     }
 
     protected BidirPathExtractor createPathExtractor(Graph graph, Weighting weighting) {
@@ -134,6 +180,7 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
     }
 
     protected void initFrom(int from, double weight) {
+        ensureCollections();
         this.from = from;
         currFrom = createStartEntry(from, weight, false);
         pqOpenSetFrom.add(currFrom);
@@ -143,6 +190,7 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
     }
 
     protected void initTo(int to, double weight) {
+        ensureCollections();
         this.to = to;
         currTo = createStartEntry(to, weight, true);
         pqOpenSetTo.add(currTo);
@@ -282,7 +330,7 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
         return true;
     }
 
-    private void fillEdges(SPTEntry currEdge, PriorityQueue<SPTEntry> prioQueue,
+    private void fillEdges(SPTEntry currEdge, SPTEntryHeap<SPTEntry> prioQueue,
                            IntObjectMap<SPTEntry> bestWeightMap, EdgeExplorer explorer, boolean reverse) {
         EdgeIterator iter = explorer.setBaseNode(currEdge.adjNode);
         while (iter.next()) {
@@ -301,9 +349,11 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm {
                 bestWeightMap.put(traversalId, entry);
                 prioQueue.add(entry);
             } else if (entry.getWeightOfVisitedPath() > weight) {
-                prioQueue.remove(entry);
                 updateEntry(entry, iter, origEdgeId, weight, currEdge, reverse);
-                prioQueue.add(entry);
+                if (prioQueue.contains(entry))
+                    prioQueue.update(entry);
+                else
+                    prioQueue.add(entry);
             } else
                 continue;
 
@@ -37,9 +37,9 @@ import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
  * @author easbar
  */
 public abstract class AbstractBidirectionEdgeCHNoSOD extends AbstractBidirAlgo {
-    private final EdgeExplorer innerInExplorer;
-    private final EdgeExplorer innerOutExplorer;
-    private final TurnWeighting turnWeighting;
+    protected final EdgeExplorer innerInExplorer;
+    protected final EdgeExplorer innerOutExplorer;
+    protected final TurnWeighting turnWeighting;
 
     public AbstractBidirectionEdgeCHNoSOD(Graph graph, TurnWeighting weighting) {
         super(graph, weighting, TraversalMode.EDGE_BASED);
@@ -23,13 +23,12 @@ import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.storage.SPTEntryHeap;
 import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.Parameters;
 
-import java.util.PriorityQueue;
-
 /**
  * Implements a single source shortest path algorithm
  * http://en.wikipedia.org/wiki/Dijkstra's_algorithm
@@ -39,7 +38,7 @@ import java.util.PriorityQueue;
  */
 public class Dijkstra extends AbstractRoutingAlgorithm {
     protected IntObjectMap<SPTEntry> fromMap;
-    protected PriorityQueue<SPTEntry> fromHeap;
+    protected SPTEntryHeap<SPTEntry> fromHeap;
     protected SPTEntry currEdge;
     private int visitedNodes;
     private int to = -1;
@@ -51,7 +50,7 @@ public class Dijkstra extends AbstractRoutingAlgorithm {
     }
 
     protected void initCollections(int size) {
-        fromHeap = new PriorityQueue<>(size);
+        fromHeap = new SPTEntryHeap<>(size);
         fromMap = new GHIntObjectHashMap<>(size);
     }
 
@@ -93,11 +92,13 @@ public class Dijkstra extends AbstractRoutingAlgorithm {
                     fromMap.put(traversalId, nEdge);
                     fromHeap.add(nEdge);
                 } else if (nEdge.weight > tmpWeight) {
-                    fromHeap.remove(nEdge);
                     nEdge.edge = iter.getEdge();
                     nEdge.weight = tmpWeight;
                     nEdge.parent = currEdge;
-                    fromHeap.add(nEdge);
+                    if (fromHeap.contains(nEdge))
+                        fromHeap.update(nEdge);
+                    else
+                        fromHeap.add(nEdge);
                 } else
                     continue;
 
@@ -0,0 +1,95 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.routing.ch.CHEntry;
+import com.graphhopper.routing.weighting.TurnWeighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+/**
+ * The edge-based version of the simple stall-on-demand (SOD) used in {@link DijkstraBidirectionCH}. In edge-based CH
+ * the search state is the node together with the original edge it was reached with, so an entry that is about to be
+ * settled can only be stalled if a neighbor entry of the same search reaches the node via the same original edge with
+ * a smaller weight, including the turn costs at the neighbor node.
+ */
+public class DijkstraBidirectionEdgeCHSOD extends DijkstraBidirectionEdgeCHNoSOD {
+
+    public DijkstraBidirectionEdgeCHSOD(Graph graph, TurnWeighting weighting) {
+        super(graph, weighting);
+    }
+
+    @Override
+    protected boolean fromEntryCanBeSkipped() {
+        return entryIsStallable(currFrom, bestWeightMapFrom, inEdgeExplorer, innerInExplorer, false);
+    }
+
+    @Override
+    protected boolean toEntryCanBeSkipped() {
+        return entryIsStallable(currTo, bestWeightMapTo, outEdgeExplorer, innerOutExplorer, true);
+    }
+
+    @Override
+    public String getName() {
+        return "dijkstrabi|ch|edge_based";
+    }
+
+    private boolean entryIsStallable(SPTEntry entry, IntObjectMap<SPTEntry> bestWeightMap, EdgeExplorer edgeExplorer,
+                                     EdgeExplorer innerExplorer, boolean reverse) {
+        final int incEdge = ((CHEntry) entry).incEdge;
+        if (!EdgeIterator.Edge.isValid(incEdge)) {
+            return false;
+        }
+        // We check for all 'incoming' edges that end with the same original edge as the current entry if we can prove
+        // that the current entry (that is about to be settled) is reached via a suboptimal path. We do this regardless
+        // of the CH level of the adjacent nodes.
+        EdgeIterator iter = edgeExplorer.setBaseNode(entry.adjNode);
+        while (iter.next()) {
+            // no need to inspect the edge we are coming from
+            if (iter.getEdge() == entry.edge || getOrigEdgeId(iter, reverse) != incEdge) {
+                continue;
+            }
+            final int neighbor = iter.getAdjNode();
+            final int neighborOrigEdge = getOrigEdgeId(iter, !reverse);
+            final double edgeWeight = weighting.calcWeight(iter, !reverse, EdgeIterator.NO_EDGE);
+            // the neighbor can have been reached via every original edge, so we look at all of them
+            EdgeIterator innerIter = innerExplorer.setBaseNode(neighbor);
+            while (innerIter.next()) {
+                final int edgeId = innerIter.getEdge();
+                int key = GHUtility.createEdgeKey(graph.getOtherNode(edgeId, neighbor), neighbor, edgeId, reverse);
+                SPTEntry neighborEntry = bestWeightMap.get(key);
+                if (neighborEntry == null) {
+                    continue;
+                }
+                double turnWeight = reverse ?
+                        turnWeighting.calcTurnWeight(neighborOrigEdge, neighbor, edgeId) :
+                        turnWeighting.calcTurnWeight(edgeId, neighbor, neighborOrigEdge);
+                // we have to be careful because of rounded shortcut weights in combination with virtual via nodes, see #1574
+                final double precision = 0.001;
+                if (neighborEntry.getWeightOfVisitedPath() + turnWeight + edgeWeight - entry.getWeightOfVisitedPath() < -precision) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -18,7 +18,7 @@
 package com.graphhopper.routing;
 
 import com.carrotsearch.hppc.IntArrayList;
-import com.graphhopper.apache.commons.collections.IntDoubleBinaryHeap;
+import com.graphhopper.coll.MinHeapWithUpdate;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
@@ -43,7 +43,7 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
     protected double[] weights;
     private int[] parents;
     private int[] edgeIds;
-    private IntDoubleBinaryHeap heap;
+    private MinHeapWithUpdate heap;
     private int visitedNodes;
     private boolean doClear = true;
     private int endNode;
@@ -63,7 +63,7 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
 
         Arrays.fill(weights, Double.MAX_VALUE);
 
-        heap = new IntDoubleBinaryHeap(1000);
+        heap = new MinHeapWithUpdate(graph.getNodes());
         changedNodes = new IntArrayListWithCap();
     }
 
@@ -150,12 +150,12 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
             if (heap.isEmpty() || isMaxVisitedNodesExceeded())
                 return NOT_FOUND;
 
-            currNode = heap.poll_element();
+            currNode = heap.poll();
         }
 
         visitedNodes = 0;
 
-        // we call 'finished' before heap.peek_element but this would add unnecessary overhead for this special case so we do it outside of the loop
+        // we call 'finished' before heap.peekId but this would add unnecessary overhead for this special case so we do it outside of the loop
         if (finished()) {
             // then we need a small workaround for special cases see #707
             if (heap.isEmpty())
@@ -180,14 +180,15 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
                 if (w == Double.MAX_VALUE) {
                     parents[adjNode] = currNode;
                     weights[adjNode] = tmpWeight;
-                    heap.insert_(tmpWeight, adjNode);
+                    heap.push(adjNode, tmpWeight);
                     changedNodes.add(adjNode);
                     edgeIds[adjNode] = iter.getEdge();
 
                 } else if (w > tmpWeight) {
                     parents[adjNode] = currNode;
                     weights[adjNode] = tmpWeight;
-                    heap.update_(tmpWeight, adjNode);
+                    if (heap.contains(adjNode))
+                        heap.update(adjNode, tmpWeight);
                     changedNodes.add(adjNode);
                     edgeIds[adjNode] = iter.getEdge();
                 }
@@ -197,11 +198,11 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
                 return NOT_FOUND;
 
             // calling just peek and not poll is important if the next query is cached
-            currNode = heap.peek_element();
+            currNode = heap.peekId();
             if (finished())
                 return currNode;
 
-            heap.poll_element();
+            heap.poll();
         }
     }
 
@@ -242,7 +243,7 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm {
         long len = weights.length;
         return ((8L + 4L + 4L) * len
                 + changedNodes.getCapacity() * 4L
-                + heap.getCapacity() * (4L + 4L)) / Helper.MB
+                + heap.getCapacity() * (4L + 4L + 8L)) / Helper.MB
                 + "MB";
     }
 
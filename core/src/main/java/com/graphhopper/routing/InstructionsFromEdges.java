@@ -20,6 +20,7 @@ package com.graphhopper.routing;
 import com.graphhopper.routing.profiles.BooleanEncodedValue;
 import com.graphhopper.routing.util.DefaultEdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.IntsRef;
@@ -78,6 +79,8 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
     private String prevName;
     private String prevInstructionName;
     private InstructionAnnotation prevAnnotation;
+    // the time since the start of the path when the current edge is entered
+    private long elapsedMillis;
 
     private final int MAX_U_TURN_DISTANCE = 35;
 
@@ -445,8 +448,9 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
         }
         double newDist = edge.getDistance();
         prevInstruction.setDistance(newDist + prevInstruction.getDistance());
-        prevInstruction.setTime(weighting.calcMillis(edge, false, EdgeIterator.NO_EDGE)
-                + prevInstruction.getTime());
+        long edgeMillis = TimeDependentWeighting.calcMillis(weighting, edge, false, EdgeIterator.NO_EDGE, elapsedMillis);
+        elapsedMillis += edgeMillis;
+        prevInstruction.setTime(edgeMillis + prevInstruction.getTime());
     }
 
 }
\ No newline at end of file
@@ -52,6 +52,7 @@ public class Path {
     private double weight;
     private NodeAccess nodeAccess;
     private String debugInfo = "";
+    private long extractionNanos;
 
     public Path(Graph graph) {
         this.weight = Double.MAX_VALUE;
@@ -183,6 +184,17 @@ public class Path {
         return debugInfo;
     }
 
+    public void setExtractionNanos(long extractionNanos) {
+        this.extractionNanos = extractionNanos;
+    }
+
+    /**
+     * @return the time it took to extract this path from the shortest path tree in nanoseconds
+     */
+    public long getExtractionNanos() {
+        return extractionNanos;
+    }
+
     /**
      * Iterates over all edges in this path sorted from start to end and calls the visitor callback
      * for every edge.
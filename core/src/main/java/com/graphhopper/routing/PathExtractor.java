@@ -72,6 +72,7 @@ public class PathExtractor {
     }
 
     private void setExtractionTime(long nanos) {
+        path.setExtractionNanos(nanos);
         path.setDebugInfo("path extraction: " + nanos / 1000 + " micros");
     }
 
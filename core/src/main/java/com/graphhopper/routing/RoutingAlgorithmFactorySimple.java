@@ -18,6 +18,7 @@
 package com.graphhopper.routing;
 
 import com.graphhopper.routing.weighting.BeelineWeightApproximator;
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
 import com.graphhopper.routing.weighting.WeightApproximator;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.NodeAccess;
@@ -25,6 +26,7 @@ import com.graphhopper.util.Helper;
 
 import static com.graphhopper.util.Parameters.Algorithms.*;
 import static com.graphhopper.util.Parameters.Algorithms.AltRoute.*;
+import static com.graphhopper.util.Parameters.Routing.SEARCH_STATE_POOL;
 
 /**
  * A simple factory creating normal algorithms (RoutingAlgorithm) without preparation.
@@ -37,8 +39,20 @@ public class RoutingAlgorithmFactorySimple implements RoutingAlgorithmFactory {
     public RoutingAlgorithm createAlgo(Graph g, AlgorithmOptions opts) {
         RoutingAlgorithm ra;
         String algoStr = opts.getAlgorithm();
-        if (DIJKSTRA_BI.equalsIgnoreCase(algoStr)) {
-            ra = new DijkstraBidirectionRef(g, opts.getWeighting(), opts.getTraversalMode());
+        if (opts.getWeighting() instanceof TimeDependentWeighting) {
+            // the time an edge is entered is only known for a forward search, so the shortest path algorithms are
+            // all replaced by the time-dependent A*
+            if (!DIJKSTRA_BI.equalsIgnoreCase(algoStr) && !DIJKSTRA.equalsIgnoreCase(algoStr)
+                    && !ASTAR_BI.equalsIgnoreCase(algoStr) && !ASTAR.equalsIgnoreCase(algoStr))
+                throw new IllegalArgumentException("Algorithm " + algoStr + " does not support a departure time");
+            TimeDependentAStar tdAStar = new TimeDependentAStar(g, (TimeDependentWeighting) opts.getWeighting(),
+                    opts.getTraversalMode());
+            tdAStar.setApproximation(getApproximation(ASTAR, opts, g.getNodeAccess()));
+            ra = tdAStar;
+
+        } else if (DIJKSTRA_BI.equalsIgnoreCase(algoStr)) {
+            ra = new DijkstraBidirectionRef(g, opts.getWeighting(), opts.getTraversalMode()).
+                    setUseSearchStatePool(opts.getHints().getBool(SEARCH_STATE_POOL, false));
         } else if (DIJKSTRA.equalsIgnoreCase(algoStr)) {
             ra = new Dijkstra(g, opts.getWeighting(), opts.getTraversalMode());
 
@@ -46,6 +60,7 @@ public class RoutingAlgorithmFactorySimple implements RoutingAlgorithmFactory {
             AStarBidirection aStarBi = new AStarBidirection(g, opts.getWeighting(),
                     opts.getTraversalMode());
             aStarBi.setApproximation(getApproximation(ASTAR_BI, opts, g.getNodeAccess()));
+            aStarBi.setUseSearchStatePool(opts.getHints().getBool(SEARCH_STATE_POOL, false));
             ra = aStarBi;
 
         } else if (DIJKSTRA_ONE_TO_MANY.equalsIgnoreCase(algoStr)) {
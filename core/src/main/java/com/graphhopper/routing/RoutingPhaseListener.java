@@ -0,0 +1,47 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.util.Helper;
+
+/**
+ * Is notified about the duration of the phases of every route request, e.g. to collect metrics about which phase
+ * is responsible for slow requests. See GraphHopper.setRoutingPhaseListener. Implementations are called from the
+ * request threads and have to be thread-safe.
+ */
+public interface RoutingPhaseListener {
+    /**
+     * SEARCH is the time of the routing algorithms without the PATH_EXTRACTION. Both are summed over all legs, so with
+     * parallel legs (see GraphHopper.setViaThreads) they can be larger than the wall-clock time of the request. All
+     * phases are summed over the passes of a request, e.g. the retries of a round trip.
+     */
+    enum Phase {
+        LOOKUP, QUERY_GRAPH, SEARCH, PATH_EXTRACTION, INSTRUCTIONS, PATH_DETAILS;
+
+        public String getName() {
+            return Helper.toLowerCase(name());
+        }
+    }
+
+    /**
+     * @param profile the vehicle and the weighting, e.g. car_fastest
+     * @param mode    the routing mode, which is ch, lm or flex
+     * @param nanos   the duration of the phase for a single request
+     */
+    void onPhaseFinished(Phase phase, String profile, String mode, long nanos);
+}
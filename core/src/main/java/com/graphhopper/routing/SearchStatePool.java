@@ -0,0 +1,69 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.coll.GHIntObjectResettableHashMap;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.storage.SPTEntryHeap;
+
+/**
+ * Keeps the maps and queues of the bidirectional searches per thread, so that routing requests do not allocate them
+ * again for every request. After a search the collections are emptied in time proportional to the number of visited
+ * entries and not to their capacity. Every thread keeps collections as large as the largest search it has done.
+ * <p>
+ * A thread borrows only one state at a time; nested searches of the same thread get null and have to allocate their
+ * own collections.
+ */
+final class SearchStatePool {
+    private static final ThreadLocal<BidirState> STATES = new ThreadLocal<BidirState>() {
+        @Override
+        protected BidirState initialValue() {
+            return new BidirState();
+        }
+    };
+
+    private SearchStatePool() {
+    }
+
+    /**
+     * @return the state of the current thread or null if it is already borrowed
+     */
+    static BidirState acquire() {
+        BidirState state = STATES.get();
+        if (state.inUse)
+            return null;
+        state.inUse = true;
+        return state;
+    }
+
+    static void release(BidirState state) {
+        state.fromMap.reset();
+        state.toMap.reset();
+        state.fromQueue.clear();
+        state.toQueue.clear();
+        state.inUse = false;
+    }
+
+    static final class BidirState {
+        final GHIntObjectResettableHashMap<SPTEntry> fromMap = new GHIntObjectResettableHashMap<>(1000);
+        final GHIntObjectResettableHashMap<SPTEntry> toMap = new GHIntObjectResettableHashMap<>(1000);
+        final SPTEntryHeap<SPTEntry> fromQueue = new SPTEntryHeap<>(1000);
+        final SPTEntryHeap<SPTEntry> toQueue = new SPTEntryHeap<>(1000);
+        private boolean inUse;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.BeelineWeightApproximator;
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
+import com.graphhopper.routing.weighting.WeightApproximator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.storage.SPTEntryHeap;
+import com.graphhopper.util.*;
+
+/**
+ * A* for a {@link TimeDependentWeighting}: every entry stores the time it is reached, starting with the departure
+ * time, and the weight of an edge is calculated for the time it is entered. Only a forward search is possible as the
+ * arrival time at the destination is not known in advance. The approximation has to be a lower bound of the weight
+ * for every time, i.e. the {@link BeelineWeightApproximator} of the time-dependent weighting or an approximation of
+ * the wrapped weighting divided by {@link TimeDependentWeighting#getMaxSpeedFactor()}.
+ * <p>
+ * The speed profiles can violate the FIFO property at the bucket boundaries, where waiting could lead to an earlier
+ * arrival. This is ignored, the route is optimal for departing without waiting.
+ */
+public class TimeDependentAStar extends AbstractRoutingAlgorithm {
+    private final TimeDependentWeighting tdWeighting;
+    private GHIntObjectHashMap<TimeDependentEntry> fromMap;
+    private SPTEntryHeap<TimeDependentEntry> fromHeap;
+    private TimeDependentEntry currEdge;
+    private int visitedNodes;
+    private int to = -1;
+    private WeightApproximator weightApprox;
+
+    public TimeDependentAStar(Graph graph, TimeDependentWeighting weighting, TraversalMode tMode) {
+        super(graph, weighting, tMode);
+        this.tdWeighting = weighting;
+        int size = Math.min(Math.max(200, graph.getNodes() / 10), 2000);
+        fromMap = new GHIntObjectHashMap<>();
+        fromHeap = new SPTEntryHeap<>(size);
+        BeelineWeightApproximator defaultApprox = new BeelineWeightApproximator(nodeAccess, weighting);
+        defaultApprox.setDistanceCalc(Helper.DIST_PLANE);
+        setApproximation(defaultApprox);
+    }
+
+    /**
+     * @param approx defines how distance to goal Node is approximated, see the class comment
+     */
+    public TimeDependentAStar setApproximation(WeightApproximator approx) {
+        weightApprox = approx;
+        return this;
+    }
+
+    public TimeDependentWeighting getTimeDependentWeighting() {
+        return tdWeighting;
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        checkAlreadyRun();
+        this.to = to;
+        weightApprox.setTo(to);
+        currEdge = new TimeDependentEntry(EdgeIterator.NO_EDGE, from, weightApprox.approximate(from), 0, tdWeighting.getDepartureTime());
+        if (!traversalMode.isEdgeBased()) {
+            fromMap.put(from, currEdge);
+        }
+        runAlgo();
+        return extractPath();
+    }
+
+    private void runAlgo() {
+        EdgeExplorer explorer = outEdgeExplorer;
+        while (true) {
+            visitedNodes++;
+            if (isMaxVisitedNodesExceeded() || finished())
+                break;
+
+            EdgeIterator iter = explorer.setBaseNode(currEdge.adjNode);
+            while (iter.next()) {
+                if (!accept(iter, currEdge.edge))
+                    continue;
+
+                double tmpWeight = tdWeighting.calcWeight(iter, false, currEdge.edge, currEdge.time) + currEdge.weightOfVisitedPath;
+                if (Double.isInfinite(tmpWeight))
+                    continue;
+
+                int traversalId = traversalMode.createTraversalId(iter, false);
+                TimeDependentEntry entry = fromMap.get(traversalId);
+                if (entry == null || entry.weightOfVisitedPath > tmpWeight) {
+                    int neighborNode = iter.getAdjNode();
+                    double estimationFullWeight = tmpWeight + weightApprox.approximate(neighborNode);
+                    long time = currEdge.time + tdWeighting.calcMillis(iter, false, currEdge.edge, currEdge.time);
+                    if (entry == null) {
+                        entry = new TimeDependentEntry(iter.getEdge(), neighborNode, estimationFullWeight, tmpWeight, time);
+                        entry.parent = currEdge;
+                        fromMap.put(traversalId, entry);
+                        fromHeap.add(entry);
+                    } else {
+                        entry.edge = iter.getEdge();
+                        entry.weight = estimationFullWeight;
+                        entry.weightOfVisitedPath = tmpWeight;
+                        entry.time = time;
+                        entry.parent = currEdge;
+                        if (fromHeap.contains(entry))
+                            fromHeap.update(entry);
+                        else
+                            fromHeap.add(entry);
+                    }
+                }
+            }
+
+            if (fromHeap.isEmpty())
+                break;
+
+            currEdge = fromHeap.poll();
+            if (currEdge == null)
+                throw new AssertionError("Empty edge cannot happen");
+        }
+    }
+
+    @Override
+    protected boolean finished() {
+        return currEdge.adjNode == to;
+    }
+
+    @Override
+    protected Path extractPath() {
+        if (currEdge == null || !finished())
+            return createEmptyPath();
+
+        return new TimeDependentPathExtractor(graph, weighting, currEdge).extract(currEdge);
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getName() {
+        return "time_dependent_" + Parameters.Algorithms.ASTAR + "|" + weightApprox;
+    }
+
+    public static class TimeDependentEntry extends AStar.AStarEntry {
+        // the time in milliseconds since the epoch when adjNode is reached
+        long time;
+
+        public TimeDependentEntry(int edgeId, int adjNode, double weightForHeap, double weightOfVisitedPath, long time) {
+            super(edgeId, adjNode, weightForHeap, weightOfVisitedPath);
+            this.time = time;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public TimeDependentEntry getParent() {
+            return (TimeDependentEntry) parent;
+        }
+    }
+
+    /**
+     * Takes the time of the edges from the entries, because the weighting cannot know when an edge was entered.
+     */
+    private static class TimeDependentPathExtractor extends PathExtractor {
+        private final Graph graph;
+        // the edges are visited from the destination to the start, this is the entry of the current edge
+        private TimeDependentEntry currEntry;
+
+        TimeDependentPathExtractor(Graph graph, Weighting weighting, SPTEntry lastEntry) {
+            super(graph, weighting);
+            this.graph = graph;
+            currEntry = (TimeDependentEntry) lastEntry;
+        }
+
+        @Override
+        protected void onEdge(int edge, int adjNode, int prevEdge) {
+            EdgeIteratorState edgeState = graph.getEdgeIteratorState(edge, adjNode);
+            path.addDistance(edgeState.getDistance());
+            path.addTime(currEntry.time - currEntry.getParent().time);
+            path.addEdge(edge);
+            currEntry = currEntry.getParent();
+        }
+    }
+}
@@ -75,6 +75,15 @@ abstract class AbstractNodeContractor implements NodeContractor {
         originalEdges.setInt(tmp, value);
     }
 
+    /**
+     * Makes sure that the original edge count of every edge of the graph can be read without growing the storage,
+     * because growing it is not thread-safe. Has to be called before threads use {@link #getOrigEdgeCount}.
+     */
+    void ensureOrigEdgeCountCapacity() {
+        long shortcuts = Math.max(0, prepareGraph.getEdges() - maxEdgesCount);
+        originalEdges.ensureCapacity(shortcuts * 4 + 4);
+    }
+
     int getOrigEdgeCount(int edgeId) {
         edgeId -= maxEdgesCount;
         if (edgeId < 0)
@@ -51,6 +51,7 @@ public class CHAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
     private final List<CHProfile> chProfiles = new ArrayList<>();
     private final Set<String> chProfileStrings = new LinkedHashSet<>();
     private boolean disablingAllowed = false;
+    private boolean changeGraphAllowed = false;
     // for backward compatibility enable CH by default.
     private boolean enabled = true;
     private EdgeBasedCHMode edgeBasedCHMode = EdgeBasedCHMode.OFF;
@@ -91,6 +92,7 @@ public class CHAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
         setEnabled(enableThis);
         if (enableThis)
             setDisablingAllowed(args.getBool(CH.INIT_DISABLING_ALLOWED, isDisablingAllowed()));
+        setChangeGraphAllowed(args.getBool(CH.INIT_CHANGE_GRAPH_ALLOWED, isChangeGraphAllowed()));
 
         String edgeBasedCHStr = args.get(CH.PREPARE + "edge_based", "off").trim();
         edgeBasedCHStr = edgeBasedCHStr.equals("false") ? "off" : edgeBasedCHStr;
@@ -124,6 +126,20 @@ public class CHAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
         return this;
     }
 
+    public final boolean isChangeGraphAllowed() {
+        return changeGraphAllowed;
+    }
+
+    /**
+     * This method specifies if the changeGraph API can be used although a CH graph is not customizable. Such a CH
+     * graph is stale after the first change and its requests fall back to LM or flexible routing, see
+     * GraphHopper.changeGraph.
+     */
+    public final CHAlgoFactoryDecorator setChangeGraphAllowed(boolean changeGraphAllowed) {
+        this.changeGraphAllowed = changeGraphAllowed;
+        return this;
+    }
+
     /**
      * This method specifies whether or not edge-based CH preparation (needed for turn costs) should be performed.
      *
@@ -295,6 +311,8 @@ public class CHAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
                         prepare.close();
 
                     properties.put(CH.PREPARE + "date." + name, createFormatter().format(new Date()));
+                    if (prepare.isCustomizable())
+                        properties.put(CH.PREPARE + "customizable." + name, true);
                 }
             }, name);
         }
@@ -0,0 +1,142 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.util.CHEdgeExplorer;
+import com.graphhopper.util.CHEdgeIterator;
+
+import java.util.Locale;
+
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * Contracts the nodes of a customizable CH (CCH) graph. No witness searches are run, so the shortcuts only depend on
+ * the node ordering and the structure of the graph but not on the weighting or the access flags: for every pair of
+ * remaining neighbors of a contracted node two shortcuts are added, one for each direction. Their weights and skipped
+ * edges are calculated afterwards by the {@link ShortcutCustomizer}, which can be repeated for every change of the
+ * edge weights.
+ */
+class CustomizableNodeContractor implements NodeContractor {
+    private final CHGraph prepareGraph;
+    private final IntArrayList neighbors = new IntArrayList();
+    private final IntArrayList neighborEdges = new IntArrayList();
+    private final IntHashSet neighborSet = new IntHashSet();
+    private final IntHashSet connectedNeighbors = new IntHashSet();
+    private CHEdgeExplorer explorer;
+    private int maxLevel;
+    private long addedShortcutsCount;
+
+    CustomizableNodeContractor(CHGraph prepareGraph) {
+        if (prepareGraph.getCHProfile().isEdgeBased())
+            throw new IllegalArgumentException("Customizable CH is only supported for node-based CH");
+        this.prepareGraph = prepareGraph;
+    }
+
+    @Override
+    public void initFromGraph() {
+        // the access flags are ignored, because an edge that is blocked now might be opened by a later customization
+        explorer = prepareGraph.createEdgeExplorer(EdgeFilter.ALL_EDGES);
+        maxLevel = prepareGraph.getNodes();
+    }
+
+    @Override
+    public void prepareContraction() {
+        // nothing to do
+    }
+
+    @Override
+    public void close() {
+        // nothing to do
+    }
+
+    /**
+     * The node ordering is fixed for customizable CH
+     */
+    @Override
+    public float calculatePriority(int node) {
+        throw new UnsupportedOperationException("Customizable CH requires a fixed node ordering");
+    }
+
+    @Override
+    public void contractNode(int node) {
+        neighbors.clear();
+        neighborEdges.clear();
+        neighborSet.clear();
+        CHEdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            int adjNode = iter.getAdjNode();
+            if (adjNode == node || prepareGraph.getLevel(adjNode) != maxLevel || !neighborSet.add(adjNode))
+                continue;
+            neighbors.add(adjNode);
+            neighborEdges.add(iter.getEdge());
+        }
+
+        for (int i = 0; i < neighbors.size(); i++) {
+            int nodeA = neighbors.get(i);
+            findShortcutNeighbors(nodeA);
+            for (int j = i + 1; j < neighbors.size(); j++) {
+                int nodeB = neighbors.get(j);
+                if (connectedNeighbors.contains(nodeB))
+                    continue;
+                // the weights are calculated by the customization, until then the shortcuts are not usable. the
+                // skipped edges are just a valid placeholder, they are replaced by the customization as well.
+                int skippedEdgeA = neighborEdges.get(i), skippedEdgeB = neighborEdges.get(j);
+                prepareGraph.shortcut(nodeA, nodeB, PrepareEncoder.getScFwdDir(), Double.POSITIVE_INFINITY, skippedEdgeA, skippedEdgeB);
+                prepareGraph.shortcut(nodeA, nodeB, PrepareEncoder.getScBwdDir(), Double.POSITIVE_INFINITY, skippedEdgeA, skippedEdgeB);
+                addedShortcutsCount += 2;
+            }
+        }
+    }
+
+    /**
+     * Collects the nodes that are already connected to the specified node via shortcuts, i.e. because a common
+     * neighbor was contracted before.
+     */
+    private void findShortcutNeighbors(int node) {
+        connectedNeighbors.clear();
+        CHEdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            if (iter.isShortcut())
+                connectedNeighbors.add(iter.getAdjNode());
+        }
+    }
+
+    @Override
+    public long getAddedShortcutsCount() {
+        return addedShortcutsCount;
+    }
+
+    @Override
+    public String getStatisticsString() {
+        return String.format(Locale.ROOT, "shortcuts: %s", nf(addedShortcutsCount));
+    }
+
+    @Override
+    public long getDijkstraCount() {
+        return 0;
+    }
+
+    @Override
+    public float getDijkstraSeconds() {
+        return 0;
+    }
+}
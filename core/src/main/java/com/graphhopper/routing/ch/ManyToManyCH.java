@@ -0,0 +1,299 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.*;
+import com.carrotsearch.hppc.cursors.ObjectCursor;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.LevelEdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.storage.SPTEntryHeap;
+import com.graphhopper.storage.ShortcutUnpacker;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.Arrays;
+
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * Calculates the weights, distances and times between many sources and many targets with a node-based contraction
+ * hierarchy. Instead of one bidirectional search per pair only one backward search per target and one forward search
+ * per source are necessary: every node settled in the backward upward search of a target gets an entry in its bucket
+ * and the forward upward search of a source scans the buckets of all its settled nodes. See "Computing Many-to-Many
+ * Shortest Paths Using Highway Hierarchies" by Knopp et al.
+ * <p>
+ * The graph is usually a QueryGraph created from the CHGraph. Shortcuts only store their weight, so for distances and
+ * times they have to be unpacked. Both can be disabled if only the weights are needed.
+ */
+public class ManyToManyCH {
+    private final Weighting weighting;
+    private final PreparationWeighting prepareWeighting;
+    private final LevelEdgeFilter levelEdgeFilter;
+    private final EdgeExplorer outExplorer;
+    private final EdgeExplorer inExplorer;
+    private final ShortcutUnpacker shortcutUnpacker;
+    // the distance and time of already unpacked shortcuts, the key is the edge id times two plus one for the reverse
+    // direction
+    private final IntDoubleMap shortcutDistances = new IntDoubleHashMap();
+    private final IntLongMap shortcutTimes = new IntLongHashMap();
+    private boolean calcDistances = true;
+    private boolean calcTimes = true;
+    private double unpackedDistance;
+    private long unpackedTime;
+    private int visitedNodes;
+
+    // the buckets are linked lists stored in arrays: bucketHeads points to the last entry added for a node
+    private final IntIntMap bucketHeads = new IntIntHashMap();
+    private final IntArrayList bucketNext = new IntArrayList();
+    private final IntArrayList bucketTargets = new IntArrayList();
+    private final DoubleArrayList bucketWeights = new DoubleArrayList();
+    private final DoubleArrayList bucketDistances = new DoubleArrayList();
+    private final LongArrayList bucketTimes = new LongArrayList();
+
+    /**
+     * @param graph     the graph to search, usually a QueryGraph created from the chGraph
+     * @param chGraph   the CHGraph of a node-based preparation
+     * @param weighting the weighting of the CH profile
+     */
+    public ManyToManyCH(Graph graph, CHGraph chGraph, Weighting weighting) {
+        if (chGraph.getCHProfile().isEdgeBased())
+            throw new IllegalArgumentException("Many-to-many calculation is only supported for node-based CH profiles");
+
+        this.weighting = weighting;
+        this.prepareWeighting = new PreparationWeighting(weighting);
+        this.levelEdgeFilter = new LevelEdgeFilter(chGraph);
+        this.outExplorer = graph.createEdgeExplorer(DefaultEdgeFilter.outEdges(weighting.getFlagEncoder()));
+        this.inExplorer = graph.createEdgeExplorer(DefaultEdgeFilter.inEdges(weighting.getFlagEncoder()));
+        this.shortcutUnpacker = new ShortcutUnpacker(graph, new ShortcutUnpacker.Visitor() {
+            @Override
+            public void visit(EdgeIteratorState edge, boolean reverse, int prevOrNextEdgeId) {
+                unpackedDistance += edge.getDistance();
+                if (calcTimes)
+                    unpackedTime += ManyToManyCH.this.weighting.calcMillis(edge, reverse, NO_EDGE);
+            }
+        }, false);
+    }
+
+    /**
+     * Disables the calculation of the distances, which makes the searches faster.
+     */
+    public ManyToManyCH setCalcDistances(boolean calcDistances) {
+        this.calcDistances = calcDistances;
+        return this;
+    }
+
+    /**
+     * Disables the calculation of the times, which makes the searches faster.
+     */
+    public ManyToManyCH setCalcTimes(boolean calcTimes) {
+        this.calcTimes = calcTimes;
+        return this;
+    }
+
+    /**
+     * Calculates the matrix from all sources to all targets. Negative node IDs can be used for points that could not
+     * be found; they are not connected to any other node.
+     */
+    public Matrix calcMatrix(int[] sources, int[] targets) {
+        Matrix matrix = new Matrix(sources.length, targets.length);
+        clearBuckets();
+        for (int targetIndex = 0; targetIndex < targets.length; targetIndex++) {
+            if (targets[targetIndex] < 0)
+                continue;
+            IntObjectMap<Entry> settled = search(targets[targetIndex], true);
+            for (ObjectCursor<Entry> cursor : settled.values()) {
+                addToBucket(cursor.value, targetIndex);
+            }
+        }
+
+        for (int sourceIndex = 0; sourceIndex < sources.length; sourceIndex++) {
+            if (sources[sourceIndex] < 0)
+                continue;
+            IntObjectMap<Entry> settled = search(sources[sourceIndex], false);
+            for (ObjectCursor<Entry> cursor : settled.values()) {
+                Entry entry = cursor.value;
+                int index = bucketHeads.getOrDefault(entry.adjNode, -1);
+                while (index >= 0) {
+                    int targetIndex = bucketTargets.get(index);
+                    double weight = entry.weight + bucketWeights.get(index);
+                    if (weight < matrix.weights[sourceIndex][targetIndex]) {
+                        matrix.weights[sourceIndex][targetIndex] = weight;
+                        if (calcDistances)
+                            matrix.distances[sourceIndex][targetIndex] = entry.distance + bucketDistances.get(index);
+                        if (calcTimes)
+                            matrix.times[sourceIndex][targetIndex] = entry.time + bucketTimes.get(index);
+                    }
+                    index = bucketNext.get(index);
+                }
+            }
+        }
+        return matrix;
+    }
+
+    private void clearBuckets() {
+        bucketHeads.clear();
+        bucketNext.clear();
+        bucketTargets.clear();
+        bucketWeights.clear();
+        bucketDistances.clear();
+        bucketTimes.clear();
+    }
+
+    private void addToBucket(Entry entry, int targetIndex) {
+        int index = bucketTargets.size();
+        bucketNext.add(bucketHeads.getOrDefault(entry.adjNode, -1));
+        bucketHeads.put(entry.adjNode, index);
+        bucketTargets.add(targetIndex);
+        bucketWeights.add(entry.weight);
+        bucketDistances.add(entry.distance);
+        bucketTimes.add(entry.time);
+    }
+
+    /**
+     * Runs a full upward search from the specified node, which is cheap as the search space of a contraction
+     * hierarchy is small.
+     *
+     * @return all settled nodes
+     */
+    private IntObjectMap<Entry> search(int startNode, boolean reverse) {
+        IntObjectMap<Entry> settled = new IntObjectHashMap<>();
+        IntObjectMap<Entry> entries = new IntObjectHashMap<>();
+        SPTEntryHeap<Entry> heap = new SPTEntryHeap<>();
+        Entry start = new Entry(NO_EDGE, startNode, 0);
+        entries.put(startNode, start);
+        heap.add(start);
+        EdgeExplorer explorer = reverse ? inExplorer : outExplorer;
+        while (!heap.isEmpty()) {
+            Entry curr = heap.poll();
+            settled.put(curr.adjNode, curr);
+            visitedNodes++;
+
+            EdgeIterator iter = explorer.setBaseNode(curr.adjNode);
+            while (iter.next()) {
+                if (!levelEdgeFilter.accept(iter) || settled.containsKey(iter.getAdjNode()))
+                    continue;
+
+                double weight = curr.weight + prepareWeighting.calcWeight(iter, reverse, NO_EDGE);
+                if (Double.isInfinite(weight))
+                    continue;
+
+                Entry entry = entries.get(iter.getAdjNode());
+                if (entry == null) {
+                    entry = new Entry(iter.getEdge(), iter.getAdjNode(), weight);
+                    entries.put(iter.getAdjNode(), entry);
+                    heap.add(entry);
+                } else if (entry.weight > weight) {
+                    // the entry is not settled yet, so it is still in the heap
+                    entry.edge = iter.getEdge();
+                    entry.weight = weight;
+                    heap.update(entry);
+                } else {
+                    continue;
+                }
+                entry.parent = curr;
+                if (calcDistances || calcTimes)
+                    setDistanceAndTime(entry, curr, (CHEdgeIteratorState) iter, reverse);
+            }
+        }
+        return settled;
+    }
+
+    private void setDistanceAndTime(Entry entry, Entry parent, CHEdgeIteratorState edge, boolean reverse) {
+        if (!edge.isShortcut()) {
+            entry.distance = parent.distance + edge.getDistance();
+            if (calcTimes)
+                entry.time = parent.time + weighting.calcMillis(edge, reverse, NO_EDGE);
+            return;
+        }
+
+        int key = edge.getEdge() * 2 + (reverse ? 1 : 0);
+        if (!shortcutDistances.containsKey(key)) {
+            unpackedDistance = 0;
+            unpackedTime = 0;
+            if (reverse)
+                shortcutUnpacker.visitOriginalEdgesBwd(edge.getEdge(), edge.getAdjNode(), false, NO_EDGE);
+            else
+                shortcutUnpacker.visitOriginalEdgesFwd(edge.getEdge(), edge.getAdjNode(), false, NO_EDGE);
+            shortcutDistances.put(key, unpackedDistance);
+            shortcutTimes.put(key, unpackedTime);
+        }
+        entry.distance = parent.distance + shortcutDistances.get(key);
+        entry.time = parent.time + shortcutTimes.get(key);
+    }
+
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    private static class Entry extends SPTEntry {
+        double distance;
+        long time;
+
+        Entry(int edgeId, int adjNode, double weight) {
+            super(edgeId, adjNode, weight);
+        }
+    }
+
+    /**
+     * The result of a many-to-many calculation. Unconnected pairs have an infinite weight, distance and time.
+     */
+    public static class Matrix {
+        private final double[][] weights;
+        private final double[][] distances;
+        private final long[][] times;
+
+        Matrix(int sources, int targets) {
+            weights = new double[sources][targets];
+            distances = new double[sources][targets];
+            times = new long[sources][targets];
+            for (int i = 0; i < sources; i++) {
+                Arrays.fill(weights[i], Double.POSITIVE_INFINITY);
+                Arrays.fill(distances[i], Double.POSITIVE_INFINITY);
+                Arrays.fill(times[i], Long.MAX_VALUE);
+            }
+        }
+
+        public boolean isConnected(int source, int target) {
+            return !Double.isInfinite(weights[source][target]);
+        }
+
+        public double getWeight(int source, int target) {
+            return weights[source][target];
+        }
+
+        /**
+         * @return the distance in meter or infinity if not connected or distances were not calculated
+         */
+        public double getDistance(int source, int target) {
+            return distances[source][target];
+        }
+
+        /**
+         * @return the time in milliseconds or Long.MAX_VALUE if not connected or times were not calculated
+         */
+        public long getTime(int source, int target) {
+            return times[source][target];
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+/**
+ * A node ordering that only depends on the structure and the coordinates of the graph, but not on any weighting. The
+ * nodes are split recursively at the median of their latitudes or longitudes (whichever has the bigger extent) and
+ * the nodes of the smaller side that are connected to the other side form a separator. The separator gets the highest
+ * levels of its cell and both sides are ordered recursively below it. This is a simple geometric nested dissection,
+ * which keeps the number of shortcuts of a contraction without witness searches small, see
+ * {@link CustomizableNodeContractor}.
+ */
+public class NestedDissectionNodeOrdering implements NodeOrderingProvider {
+    // cells up to this size are not split any further
+    private static final int MAX_CELL_SIZE = 4;
+    private final EdgeExplorer explorer;
+    private final double[] lats;
+    private final double[] lons;
+    // the nodes ordered by increasing level
+    private final int[] nodes;
+    private final int[] tmp;
+    // the nodes of the current 'right' side are marked with the current marker
+    private final int[] markers;
+    private int marker;
+
+    public NestedDissectionNodeOrdering(Graph graph) {
+        int numNodes = graph.getNodes();
+        explorer = graph.createEdgeExplorer(EdgeFilter.ALL_EDGES);
+        lats = new double[numNodes];
+        lons = new double[numNodes];
+        nodes = new int[numNodes];
+        tmp = new int[numNodes];
+        markers = new int[numNodes];
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        for (int node = 0; node < numNodes; node++) {
+            lats[node] = nodeAccess.getLat(node);
+            lons[node] = nodeAccess.getLon(node);
+            nodes[node] = node;
+        }
+        orderCell(0, numNodes);
+    }
+
+    @Override
+    public int getNodeIdForLevel(int level) {
+        return nodes[level];
+    }
+
+    @Override
+    public int getNumNodes() {
+        return nodes.length;
+    }
+
+    /**
+     * Reorders nodes[from, to) such that both sides come first and the separator last
+     */
+    private void orderCell(int from, int to) {
+        if (to - from <= MAX_CELL_SIZE)
+            return;
+
+        double[] coordinates = getExtent(lats, from, to) > getExtent(lons, from, to) ? lats : lons;
+        int mid = (from + to) >>> 1;
+        select(coordinates, from, to - 1, mid);
+
+        // the separator is taken from the side with fewer nodes next to the other side
+        int leftBoundary = countBoundaryNodes(from, mid, mid, to);
+        int rightBoundary = countBoundaryNodes(mid, to, from, mid);
+        int leftSize, rightSize, separatorSize;
+        if (leftBoundary <= rightBoundary) {
+            separatorSize = splitBoundary(from, mid, mid, to);
+            leftSize = mid - from - separatorSize;
+            rightSize = to - mid;
+        } else {
+            separatorSize = splitBoundary(mid, to, from, mid);
+            leftSize = mid - from;
+            rightSize = to - mid - separatorSize;
+        }
+
+        // splitBoundary moves the separator to the end of its side, so it is already last if it was taken from the
+        // right side. otherwise the layout is [left|separator|right] and it has to be moved behind the right side.
+        if (leftBoundary <= rightBoundary) {
+            int separatorFrom = from + leftSize;
+            System.arraycopy(nodes, separatorFrom, tmp, 0, separatorSize);
+            System.arraycopy(nodes, mid, nodes, separatorFrom, rightSize);
+            System.arraycopy(tmp, 0, nodes, to - separatorSize, separatorSize);
+        }
+
+        orderCell(from, from + leftSize);
+        orderCell(from + leftSize, from + leftSize + rightSize);
+    }
+
+    private double getExtent(double[] coordinates, int from, int to) {
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            double value = coordinates[nodes[i]];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return max - min;
+    }
+
+    /**
+     * @return the number of nodes in nodes[from, to) that have an edge to a node in nodes[otherFrom, otherTo)
+     */
+    private int countBoundaryNodes(int from, int to, int otherFrom, int otherTo) {
+        markOtherSide(otherFrom, otherTo);
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (isBoundaryNode(nodes[i]))
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Moves the nodes of nodes[from, to) that have an edge to a node in nodes[otherFrom, otherTo) to the end of
+     * nodes[from, to).
+     *
+     * @return the number of moved nodes
+     */
+    private int splitBoundary(int from, int to, int otherFrom, int otherTo) {
+        markOtherSide(otherFrom, otherTo);
+        int end = to;
+        int i = from;
+        while (i < end) {
+            if (isBoundaryNode(nodes[i])) {
+                end--;
+                swap(i, end);
+            } else {
+                i++;
+            }
+        }
+        return to - end;
+    }
+
+    private void markOtherSide(int otherFrom, int otherTo) {
+        marker++;
+        for (int i = otherFrom; i < otherTo; i++) {
+            markers[nodes[i]] = marker;
+        }
+    }
+
+    private boolean isBoundaryNode(int node) {
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            if (markers[iter.getAdjNode()] == marker)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reorders nodes[left, right] such that nodes[k] has the coordinate it would have if the range was sorted by
+     * coordinate, the nodes before it are not bigger and the nodes after it are not smaller (quickselect).
+     */
+    private void select(double[] coordinates, int left, int right, int k) {
+        while (left < right) {
+            double pivot = coordinates[nodes[(left + right) >>> 1]];
+            int i = left, j = right;
+            while (i <= j) {
+                while (coordinates[nodes[i]] < pivot)
+                    i++;
+                while (coordinates[nodes[j]] > pivot)
+                    j--;
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j)
+                right = j;
+            else if (k >= i)
+                left = i;
+            else
+                return;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int tmpNode = nodes[i];
+        nodes[i] = nodes[j];
+        nodes[j] = tmpNode;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.routing.DijkstraOneToMany;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.weighting.Weighting;
@@ -25,33 +26,37 @@ import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Locale;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
 import static com.graphhopper.util.Helper.nf;
 
 class NodeBasedNodeContractor extends AbstractNodeContractor {
     private final PreparationWeighting prepareWeighting;
-    private final Map<Shortcut, Shortcut> shortcuts = new HashMap<>();
-    private final AddShortcutHandler addScHandler = new AddShortcutHandler();
-    private final CalcShortcutHandler calcScHandler = new CalcShortcutHandler();
     private final Params params = new Params();
-    private CHEdgeExplorer remainingEdgeExplorer;
-    private IgnoreNodeFilter ignoreNodeFilter;
-    private DijkstraOneToMany prepareAlgo;
+    private final ShortcutFinder[] shortcutFinders;
+    private ShortcutFinder shortcutFinder;
+    private ExecutorService executorService;
     private int addedShortcutsCount;
-    private long dijkstraCount;
-    private StopWatch dijkstraSW = new StopWatch();
     // meanDegree is the number of edges / number of nodes ratio of the graph, not really the average degree, because
     // each edge can exist in both directions
     private double meanDegree;
 
     NodeBasedNodeContractor(CHGraph prepareGraph, Weighting weighting, PMap pMap) {
+        this(prepareGraph, weighting, pMap, 1);
+    }
+
+    /**
+     * @param threads the number of threads used by {@link #calculatePriorities} and {@link #contractNodes}. Every
+     *                thread uses its own witness search which requires memory in the order of the number of nodes.
+     */
+    NodeBasedNodeContractor(CHGraph prepareGraph, Weighting weighting, PMap pMap, int threads) {
         super(prepareGraph, weighting.getFlagEncoder());
+        if (threads < 1)
+            throw new IllegalArgumentException("threads has to be positive but was " + threads);
         this.prepareWeighting = new PreparationWeighting(weighting);
+        this.shortcutFinders = new ShortcutFinder[threads];
         extractParams(pMap);
     }
 
@@ -64,16 +69,20 @@ class NodeBasedNodeContractor extends AbstractNodeContractor {
     @Override
     public void initFromGraph() {
         super.initFromGraph();
-        ignoreNodeFilter = new IgnoreNodeFilter(prepareGraph, maxLevel);
-        final EdgeFilter allFilter = DefaultEdgeFilter.allEdges(encoder);
-        final EdgeFilter remainingNodesFilter = new LevelEdgeFilter(prepareGraph) {
-            @Override
-            public final boolean accept(EdgeIteratorState edgeState) {
-                return super.accept(edgeState) && allFilter.accept(edgeState);
-            }
-        };
-        remainingEdgeExplorer = prepareGraph.createEdgeExplorer(remainingNodesFilter);
-        prepareAlgo = new DijkstraOneToMany(prepareGraph, prepareWeighting, TraversalMode.NODE_BASED);
+        for (int i = 0; i < shortcutFinders.length; i++) {
+            shortcutFinders[i] = new ShortcutFinder();
+        }
+        shortcutFinder = shortcutFinders[0];
+        if (shortcutFinders.length > 1)
+            executorService = Executors.newFixedThreadPool(shortcutFinders.length, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, Thread.currentThread().getName() + "-contraction");
+                    // do not prevent the JVM from exiting when the preparation fails before close() is called
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
     }
 
     @Override
@@ -89,7 +98,11 @@ class NodeBasedNodeContractor extends AbstractNodeContractor {
     @Override
     public void close() {
         super.close();
-        prepareAlgo.close();
+        for (ShortcutFinder finder : shortcutFinders) {
+            finder.prepareAlgo.close();
+        }
+        if (executorService != null)
+            executorService.shutdownNow();
     }
 
     /**
@@ -99,56 +112,96 @@ class NodeBasedNodeContractor extends AbstractNodeContractor {
      */
     @Override
     public float calculatePriority(int node) {
-        CalcShortcutsResult calcShortcutsResult = calcShortcutCount(node);
-
-        // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
-        //
-        // every adjNode has an 'original edge' number associated. initially it is r=1
-        // when a new shortcut is introduced then r of the associated edges is summed up:
-        // r(u,w)=r(u,v)+r(v,w) now we can define
-        // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
-        int originalEdgesCount = calcShortcutsResult.originalEdgesCount;
-
-        // # lowest influence on preparation speed or shortcut creation count
-        // (but according to paper should speed up queries)
-        //
-        // number of already contracted neighbors of v
-        int contractedNeighbors = 0;
-        int degree = 0;
-        CHEdgeIterator iter = remainingEdgeExplorer.setBaseNode(node);
-        while (iter.next()) {
-            degree++;
-            if (iter.isShortcut())
-                contractedNeighbors++;
-        }
+        return shortcutFinder.calculatePriority(node);
+    }
 
-        // from shortcuts we can compute the edgeDifference
-        // # low influence: with it the shortcut creation is slightly faster
-        //
-        // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|
-        // meanDegree is used instead of outDegree+inDegree as if one adjNode is in both directions
-        // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
-        int edgeDifference = calcShortcutsResult.shortcutsCount - degree;
-
-        // according to the paper do a simple linear combination of the properties to get the priority.
-        return params.edgeDifferenceWeight * edgeDifference +
-                params.originalEdgesCountWeight * originalEdgesCount +
-                params.contractedNeighborsWeight * contractedNeighbors;
+    /**
+     * Calculates the priorities of the given nodes and writes them to priorities[node]. The work is split among all
+     * threads of this contractor, which is possible because the graph is only read while doing this.
+     */
+    void calculatePriorities(final IntArrayList nodes, final float[] priorities) {
+        runInParallel(nodes.size(), new ChunkTask() {
+            @Override
+            public void run(ShortcutFinder finder, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    int node = nodes.get(i);
+                    priorities[node] = finder.calculatePriority(node);
+                }
+            }
+        });
     }
 
     @Override
     public void contractNode(int node) {
-        shortcuts.clear();
-        long degree = findShortcuts(addScHandler.setNode(node));
-        addedShortcutsCount += addShortcuts(shortcuts.keySet());
+        long degree = shortcutFinder.findShortcuts(shortcutFinder.addScHandler.setNode(node));
+        addedShortcutsCount += addShortcuts(shortcutFinder.addScHandler.shortcuts.keySet());
         // put weight factor on meanDegree instead of taking the average => meanDegree is more stable
         meanDegree = (meanDegree * 2 + degree) / 3;
     }
 
+    /**
+     * Adds the required shortcuts for all the given nodes. The witness searches run in parallel and the shortcuts are
+     * added to the graph afterwards in the order of the given nodes, so the result does not depend on the thread
+     * scheduling. The given nodes must already have their final level, must not be adjacent to each other and must
+     * not share any neighbors, i.e. they have to form an independent set in which every node can be contracted without
+     * affecting the shortcuts of the other nodes.
+     */
+    void contractNodes(final IntArrayList nodes) {
+        final List<List<Shortcut>> shortcutsPerNode = new ArrayList<>(Collections.<List<Shortcut>>nCopies(nodes.size(), null));
+        final long[] degrees = new long[nodes.size()];
+        runInParallel(nodes.size(), new ChunkTask() {
+            @Override
+            public void run(ShortcutFinder finder, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    degrees[i] = finder.findShortcuts(finder.addScHandler.setNode(nodes.get(i)));
+                    shortcutsPerNode.set(i, new ArrayList<>(finder.addScHandler.shortcuts.keySet()));
+                }
+            }
+        });
+        for (int i = 0; i < nodes.size(); i++) {
+            addedShortcutsCount += addShortcuts(shortcutsPerNode.get(i));
+            meanDegree = (meanDegree * 2 + degrees[i]) / 3;
+        }
+    }
+
+    private void runInParallel(int size, final ChunkTask task) {
+        if (executorService == null || size < shortcutFinders.length) {
+            task.run(shortcutFinder, 0, size);
+            return;
+        }
+        ensureOrigEdgeCountCapacity();
+        List<Callable<Object>> callables = new ArrayList<>(shortcutFinders.length);
+        final int chunkSize = (size + shortcutFinders.length - 1) / shortcutFinders.length;
+        for (int i = 0; i < shortcutFinders.length; i++) {
+            final ShortcutFinder finder = shortcutFinders[i];
+            final int from = i * chunkSize;
+            final int to = Math.min(size, from + chunkSize);
+            if (from >= to)
+                break;
+            callables.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    task.run(finder, from, to);
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Object> future : executorService.invokeAll(callables)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     @Override
     public String getStatisticsString() {
         return String.format(Locale.ROOT, "meanDegree: %.2f, dijkstras: %10s, mem: %10s",
-                meanDegree, nf(dijkstraCount), prepareAlgo.getMemoryUsageAsString());
+                meanDegree, nf(getDijkstraCount()), shortcutFinder.prepareAlgo.getMemoryUsageAsString());
     }
 
     @Override
@@ -156,75 +209,6 @@ class NodeBasedNodeContractor extends AbstractNodeContractor {
         return false;
     }
 
-    /**
-     * Searches for shortcuts and calls the given handler on each shortcut that is found. The graph is not directly
-     * changed by this method.
-     * Returns the 'degree' of the handler's node (disregarding edges from/to already contracted nodes). Note that
-     * here the degree is not the total number of adjacent edges, but only the number of incoming edges
-     */
-    private long findShortcuts(ShortcutHandler sch) {
-        int maxVisitedNodes = getMaxVisitedNodesEstimate();
-        long degree = 0;
-        EdgeIterator incomingEdges = inEdgeExplorer.setBaseNode(sch.getNode());
-        // collect outgoing nodes (goal-nodes) only once
-        while (incomingEdges.next()) {
-            int fromNode = incomingEdges.getAdjNode();
-            // accept only not-contracted nodes, do not consider loops at the node that is being contracted
-            if (fromNode == sch.getNode() || isContracted(fromNode))
-                continue;
-
-            final double incomingEdgeWeight = prepareWeighting.calcWeight(incomingEdges, true, EdgeIterator.NO_EDGE);
-            // this check is important to prevent calling calcMillis on inaccessible edges and also allows early exit
-            if (Double.isInfinite(incomingEdgeWeight)) {
-                continue;
-            }
-            int incomingEdge = incomingEdges.getEdge();
-            int inOrigEdgeCount = getOrigEdgeCount(incomingEdge);
-            // collect outgoing nodes (goal-nodes) only once
-            EdgeIterator outgoingEdges = outEdgeExplorer.setBaseNode(sch.getNode());
-            // force fresh maps etc as this cannot be determined by from node alone (e.g. same from node but different avoidNode)
-            prepareAlgo.clear();
-            degree++;
-            while (outgoingEdges.next()) {
-                int toNode = outgoingEdges.getAdjNode();
-                // add only not-contracted nodes, do not consider loops at the node that is being contracted
-                if (toNode == sch.getNode() || isContracted(toNode) || fromNode == toNode)
-                    continue;
-
-                // Limit weight as ferries or forbidden edges can increase local search too much.
-                // If we decrease the correct weight we only explore less and introduce more shortcuts.
-                // I.e. no change to accuracy is made.
-                double existingDirectWeight = incomingEdgeWeight + prepareWeighting.calcWeight(outgoingEdges, false, incomingEdges.getEdge());
-                if (Double.isNaN(existingDirectWeight))
-                    throw new IllegalStateException("Weighting should never return NaN values"
-                            + ", in:" + getCoords(incomingEdges, prepareGraph) + ", out:" + getCoords(outgoingEdges, prepareGraph)
-                            + ", dist:" + outgoingEdges.getDistance());
-
-                if (Double.isInfinite(existingDirectWeight))
-                    continue;
-
-                prepareAlgo.setWeightLimit(existingDirectWeight);
-                prepareAlgo.setMaxVisitedNodes(maxVisitedNodes);
-                prepareAlgo.setEdgeFilter(ignoreNodeFilter.setAvoidNode(sch.getNode()));
-
-                dijkstraSW.start();
-                dijkstraCount++;
-                int endNode = prepareAlgo.findEndNode(fromNode, toNode);
-                dijkstraSW.stop();
-
-                // compare end node as the limit could force dijkstra to finish earlier
-                if (endNode == toNode && prepareAlgo.getWeight(endNode) <= existingDirectWeight)
-                    // FOUND witness path, so do not add shortcut
-                    continue;
-
-                sch.foundShortcut(fromNode, toNode, existingDirectWeight,
-                        outgoingEdges.getEdge(), getOrigEdgeCount(outgoingEdges.getEdge()),
-                        incomingEdge, inOrigEdgeCount);
-            }
-        }
-        return degree;
-    }
-
     /**
      * Adds the given shortcuts to the graph.
      *
@@ -280,11 +264,6 @@ class NodeBasedNodeContractor extends AbstractNodeContractor {
         return tmpNewShortcuts;
     }
 
-    private CalcShortcutsResult calcShortcutCount(int node) {
-        findShortcuts(calcScHandler.setNode(node));
-        return calcScHandler.calcShortcutsResult;
-    }
-
     private String getCoords(EdgeIteratorState edge, Graph graph) {
         NodeAccess na = graph.getNodeAccess();
         int base = edge.getBaseNode();
@@ -300,12 +279,24 @@ class NodeBasedNodeContractor extends AbstractNodeContractor {
 
     @Override
     public long getDijkstraCount() {
+        long dijkstraCount = 0;
+        for (ShortcutFinder finder : shortcutFinders) {
+            dijkstraCount += finder.dijkstraCount;
+        }
         return dijkstraCount;
     }
 
+    /**
+     * @return the time spent in witness searches. When multiple threads are used this is the sum over all threads and
+     * can exceed the wall clock time.
+     */
     @Override
     public float getDijkstraSeconds() {
-        return dijkstraSW.getCurrentSeconds();
+        float dijkstraSeconds = 0;
+        for (ShortcutFinder finder : shortcutFinders) {
+            dijkstraSeconds += finder.dijkstraSW.getCurrentSeconds();
+        }
+        return dijkstraSeconds;
     }
 
     private int getMaxVisitedNodesEstimate() {
@@ -314,6 +305,149 @@ class NodeBasedNodeContractor extends AbstractNodeContractor {
         return (int) meanDegree * 100;
     }
 
+    private interface ChunkTask {
+        void run(ShortcutFinder finder, int from, int to);
+    }
+
+    /**
+     * Holds everything that is needed to search for shortcuts of a node. The graph is not changed by the searches,
+     * so for parallel contraction every thread can use its own instance.
+     */
+    private class ShortcutFinder {
+        private final AddShortcutHandler addScHandler = new AddShortcutHandler();
+        private final CalcShortcutHandler calcScHandler = new CalcShortcutHandler();
+        private final CHEdgeExplorer inEdgeExplorer;
+        private final CHEdgeExplorer outEdgeExplorer;
+        private final CHEdgeExplorer remainingEdgeExplorer;
+        private final IgnoreNodeFilter ignoreNodeFilter;
+        private final DijkstraOneToMany prepareAlgo;
+        private final StopWatch dijkstraSW = new StopWatch();
+        private long dijkstraCount;
+
+        ShortcutFinder() {
+            inEdgeExplorer = prepareGraph.createEdgeExplorer(DefaultEdgeFilter.inEdges(encoder));
+            outEdgeExplorer = prepareGraph.createEdgeExplorer(DefaultEdgeFilter.outEdges(encoder));
+            ignoreNodeFilter = new IgnoreNodeFilter(prepareGraph, maxLevel);
+            final EdgeFilter allFilter = DefaultEdgeFilter.allEdges(encoder);
+            final EdgeFilter remainingNodesFilter = new LevelEdgeFilter(prepareGraph) {
+                @Override
+                public final boolean accept(EdgeIteratorState edgeState) {
+                    return super.accept(edgeState) && allFilter.accept(edgeState);
+                }
+            };
+            remainingEdgeExplorer = prepareGraph.createEdgeExplorer(remainingNodesFilter);
+            prepareAlgo = new DijkstraOneToMany(prepareGraph, prepareWeighting, TraversalMode.NODE_BASED);
+        }
+
+        float calculatePriority(int node) {
+            findShortcuts(calcScHandler.setNode(node));
+            CalcShortcutsResult calcShortcutsResult = calcScHandler.calcShortcutsResult;
+
+            // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
+            //
+            // every adjNode has an 'original edge' number associated. initially it is r=1
+            // when a new shortcut is introduced then r of the associated edges is summed up:
+            // r(u,w)=r(u,v)+r(v,w) now we can define
+            // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
+            int originalEdgesCount = calcShortcutsResult.originalEdgesCount;
+
+            // # lowest influence on preparation speed or shortcut creation count
+            // (but according to paper should speed up queries)
+            //
+            // number of already contracted neighbors of v
+            int contractedNeighbors = 0;
+            int degree = 0;
+            CHEdgeIterator iter = remainingEdgeExplorer.setBaseNode(node);
+            while (iter.next()) {
+                degree++;
+                if (iter.isShortcut())
+                    contractedNeighbors++;
+            }
+
+            // from shortcuts we can compute the edgeDifference
+            // # low influence: with it the shortcut creation is slightly faster
+            //
+            // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|
+            // meanDegree is used instead of outDegree+inDegree as if one adjNode is in both directions
+            // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
+            int edgeDifference = calcShortcutsResult.shortcutsCount - degree;
+
+            // according to the paper do a simple linear combination of the properties to get the priority.
+            return params.edgeDifferenceWeight * edgeDifference +
+                    params.originalEdgesCountWeight * originalEdgesCount +
+                    params.contractedNeighborsWeight * contractedNeighbors;
+        }
+
+        /**
+         * Searches for shortcuts and calls the given handler on each shortcut that is found. The graph is not directly
+         * changed by this method.
+         * Returns the 'degree' of the handler's node (disregarding edges from/to already contracted nodes). Note that
+         * here the degree is not the total number of adjacent edges, but only the number of incoming edges
+         */
+        long findShortcuts(ShortcutHandler sch) {
+            int maxVisitedNodes = getMaxVisitedNodesEstimate();
+            long degree = 0;
+            EdgeIterator incomingEdges = inEdgeExplorer.setBaseNode(sch.getNode());
+            // collect outgoing nodes (goal-nodes) only once
+            while (incomingEdges.next()) {
+                int fromNode = incomingEdges.getAdjNode();
+                // accept only not-contracted nodes, do not consider loops at the node that is being contracted
+                if (fromNode == sch.getNode() || isContracted(fromNode))
+                    continue;
+
+                final double incomingEdgeWeight = prepareWeighting.calcWeight(incomingEdges, true, EdgeIterator.NO_EDGE);
+                // this check is important to prevent calling calcMillis on inaccessible edges and also allows early exit
+                if (Double.isInfinite(incomingEdgeWeight)) {
+                    continue;
+                }
+                int incomingEdge = incomingEdges.getEdge();
+                int inOrigEdgeCount = getOrigEdgeCount(incomingEdge);
+                // collect outgoing nodes (goal-nodes) only once
+                EdgeIterator outgoingEdges = outEdgeExplorer.setBaseNode(sch.getNode());
+                // force fresh maps etc as this cannot be determined by from node alone (e.g. same from node but different avoidNode)
+                prepareAlgo.clear();
+                degree++;
+                while (outgoingEdges.next()) {
+                    int toNode = outgoingEdges.getAdjNode();
+                    // add only not-contracted nodes, do not consider loops at the node that is being contracted
+                    if (toNode == sch.getNode() || isContracted(toNode) || fromNode == toNode)
+                        continue;
+
+                    // Limit weight as ferries or forbidden edges can increase local search too much.
+                    // If we decrease the correct weight we only explore less and introduce more shortcuts.
+                    // I.e. no change to accuracy is made.
+                    double existingDirectWeight = incomingEdgeWeight + prepareWeighting.calcWeight(outgoingEdges, false, incomingEdges.getEdge());
+                    if (Double.isNaN(existingDirectWeight))
+                        throw new IllegalStateException("Weighting should never return NaN values"
+                                + ", in:" + getCoords(incomingEdges, prepareGraph) + ", out:" + getCoords(outgoingEdges, prepareGraph)
+                                + ", dist:" + outgoingEdges.getDistance());
+
+                    if (Double.isInfinite(existingDirectWeight))
+                        continue;
+
+                    prepareAlgo.setWeightLimit(existingDirectWeight);
+                    prepareAlgo.setMaxVisitedNodes(maxVisitedNodes);
+                    prepareAlgo.setEdgeFilter(ignoreNodeFilter.setAvoidNode(sch.getNode()));
+
+                    dijkstraSW.start();
+                    dijkstraCount++;
+                    int endNode = prepareAlgo.findEndNode(fromNode, toNode);
+                    dijkstraSW.stop();
+
+                    // compare end node as the limit could force dijkstra to finish earlier
+                    if (endNode == toNode && prepareAlgo.getWeight(endNode) <= existingDirectWeight)
+                        // FOUND witness path, so do not add shortcut
+                        continue;
+
+                    sch.foundShortcut(fromNode, toNode, existingDirectWeight,
+                            outgoingEdges.getEdge(), getOrigEdgeCount(outgoingEdges.getEdge()),
+                            incomingEdge, inOrigEdgeCount);
+                }
+            }
+            return degree;
+        }
+    }
+
     private static class Shortcut {
         int from;
         int to;
@@ -395,6 +529,7 @@ class NodeBasedNodeContractor extends AbstractNodeContractor {
     }
 
     private class AddShortcutHandler implements ShortcutHandler {
+        final Map<Shortcut, Shortcut> shortcuts = new HashMap<>();
         int node;
 
         @Override
@@ -17,8 +17,10 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntSet;
+import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.coll.GHTreeMapComposed;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.util.*;
@@ -47,13 +49,21 @@ import static com.graphhopper.util.Parameters.Algorithms.DIJKSTRA_BI;
  * The only difference is that we use two skipped edges instead of one skipped node for faster
  * unpacking.
  * <p>
+ * For node-based CH the graph can also be prepared as customizable CH (CCH), see {@link CHParameters#CUSTOMIZABLE}.
+ * The node ordering and the shortcuts then do not depend on the weighting and the shortcut weights are calculated in
+ * a separate and much faster customization phase, which can be repeated for changed edges or another weighting, see
+ * {@link #customize(Weighting)}.
+ * <p>
  *
  * @author Peter Karich
  */
 public class PrepareContractionHierarchies extends AbstractAlgoPreparation implements RoutingAlgorithmFactory {
+    // in parallel mode every round polls 1/x of the remaining nodes as candidates for the next independent node set
+    private static final int PARALLEL_CANDIDATES_DIVISOR = 100;
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final CHProfile chProfile;
-    private final PreparationWeighting prepareWeighting;
+    // replaced by the customization of a customizable CH with another weighting
+    private volatile PreparationWeighting prepareWeighting;
     private final CHGraph prepareGraph;
     private final Random rand = new Random(123);
     private final IntSet updatedNeighbors;
@@ -65,6 +75,8 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
     private final Params params;
     private NodeContractor nodeContractor;
     private NodeOrderingProvider nodeOrderingProvider;
+    private ShortcutCustomizer shortcutCustomizer;
+    private volatile Weighting customizationWeighting;
     private CHEdgeExplorer vehicleAllExplorer;
     private CHEdgeExplorer vehicleAllTmpExplorer;
     private int maxLevel;
@@ -78,6 +90,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         this.prepareGraph = chGraph;
         this.chProfile = chGraph.getCHProfile();
         prepareWeighting = new PreparationWeighting(chProfile.getWeighting());
+        customizationWeighting = chProfile.getWeighting();
         this.params = Params.forTraversalMode(chProfile.getTraversalMode());
         updatedNeighbors = new IntHashSet(50);
     }
@@ -93,13 +106,18 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         params.setNeighborUpdatePercentage(pMap.getInt(NEIGHBOR_UPDATES, params.getNeighborUpdatePercentage()));
         params.setNodesContractedPercentage(pMap.getInt(CONTRACTED_NODES, params.getNodesContractedPercentage()));
         params.setLogMessagesPercentage(pMap.getInt(LOG_MESSAGES, params.getLogMessagesPercentage()));
+        params.setContractionThreads(pMap.getInt(CONTRACTION_THREADS, params.getContractionThreads()));
+        // customizable CH is only implemented for node-based CH, edge-based CH profiles are prepared as usual
+        params.setCustomizable(pMap.getBool(CUSTOMIZABLE, params.isCustomizable()) && !chProfile.isEdgeBased());
+        params.setCustomizationThreads(pMap.getInt(CUSTOMIZATION_THREADS, params.getCustomizationThreads()));
         return this;
     }
 
     /**
      * Instead of heuristically determining a node ordering for the graph contraction it is also possible
      * to use a fixed ordering. For example this allows re-using a previously calculated node ordering.
-     * This will speed up CH preparation, but might lead to slower queries.
+     * This will speed up CH preparation, but might lead to slower queries. For customizable CH the ordering must not
+     * depend on the weighting, by default a {@link NestedDissectionNodeOrdering} is used.
      */
     public PrepareContractionHierarchies useFixedNodeOrdering(NodeOrderingProvider nodeOrderingProvider) {
         if (nodeOrderingProvider.getNumNodes() != prepareGraph.getNodes()) {
@@ -136,8 +154,15 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         if (prepareGraph.getNodes() < 1)
             return;
         setMaxLevelOnAllNodes();
-        if (nodeOrderingProvider != null) {
+        if (params.isCustomizable()) {
+            if (nodeOrderingProvider == null)
+                nodeOrderingProvider = new NestedDissectionNodeOrdering(prepareGraph.getBaseGraph());
+            contractNodesUsingFixedNodeOrdering();
+            customize();
+        } else if (nodeOrderingProvider != null) {
             contractNodesUsingFixedNodeOrdering();
+        } else if (isParallelContraction()) {
+            contractNodesUsingHeuristicNodeOrderingInParallel();
         } else {
             contractNodesUsingHeuristicNodeOrdering();
         }
@@ -149,6 +174,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         AbstractBidirAlgo algo = doCreateAlgo(graph, opts);
         algo.setEdgeFilter(new LevelEdgeFilter(prepareGraph));
         algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+        algo.setUseSearchStatePool(opts.getHints().getBool(Parameters.Routing.SEARCH_STATE_POOL, false));
         return algo;
     }
 
@@ -165,7 +191,11 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             return new AStarBidirectionEdgeCHNoSOD(graph, createTurnWeightingForEdgeBased(graph))
                     .setApproximation(RoutingAlgorithmFactorySimple.getApproximation(ASTAR_BI, opts, graph.getNodeAccess()));
         } else if (DIJKSTRA_BI.equals(opts.getAlgorithm())) {
-            return new DijkstraBidirectionEdgeCHNoSOD(graph, createTurnWeightingForEdgeBased(graph));
+            if (opts.getHints().getBool("stall_on_demand", true)) {
+                return new DijkstraBidirectionEdgeCHSOD(graph, createTurnWeightingForEdgeBased(graph));
+            } else {
+                return new DijkstraBidirectionEdgeCHNoSOD(graph, createTurnWeightingForEdgeBased(graph));
+            }
         } else {
             throw new IllegalArgumentException("Algorithm " + opts.getAlgorithm() + " not supported for edge-based Contraction Hierarchies. Try with ch.disable=true");
         }
@@ -190,9 +220,82 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         return chProfile.isEdgeBased();
     }
 
+    public boolean isCustomizable() {
+        return params.isCustomizable();
+    }
+
+    /**
+     * Calculates the weights of all shortcuts of a customizable CH from the current edge flags and the weighting of
+     * the CH profile.
+     *
+     * @see #customize(Weighting)
+     */
+    public void customize() {
+        customize(chProfile.getWeighting());
+    }
+
+    /**
+     * Calculates the weights of all shortcuts of a customizable CH for the specified weighting, which has to use the
+     * flag encoder of the CH profile. Afterwards the created algorithms use this weighting. This is much faster than
+     * a new preparation and can be done after the graph was loaded, e.g. to apply a weighting for the current traffic
+     * every few minutes. Not thread-safe, no routing request must use the CH graph meanwhile, which
+     * GraphHopper.customizeCH makes sure.
+     */
+    public synchronized void customize(Weighting weighting) {
+        checkCustomizable();
+        StopWatch sw = new StopWatch().start();
+        getShortcutCustomizer().customize(weighting);
+        customizationWeighting = weighting;
+        prepareWeighting = new PreparationWeighting(weighting);
+        logger.info("customized " + nf(prepareGraph.getEdges() - prepareGraph.getOriginalEdges()) + " shortcuts for "
+                + weighting + ", threads: " + params.getCustomizationThreads() + ", took: " + sw.stop().getSeconds() + "s");
+    }
+
+    /**
+     * Calculates only the shortcut weights of a customizable CH that can depend on the specified changed edges again,
+     * for the weighting of the last customization. Not thread-safe like {@link #customize(Weighting)}.
+     *
+     * @return the number of nodes whose shortcuts were calculated again
+     */
+    public synchronized int customize(IntHashSet changedEdges) {
+        checkCustomizable();
+        StopWatch sw = new StopWatch().start();
+        int nodes = getShortcutCustomizer().customize(customizationWeighting, changedEdges);
+        logger.info("customized the shortcuts of " + nf(nodes) + " nodes for " + nf(changedEdges.size()) + " changed edges and "
+                + customizationWeighting + ", took: " + sw.stop().getSeconds() + "s");
+        return nodes;
+    }
+
+    /**
+     * @return the weighting of the last customization of a customizable CH, otherwise the weighting of the CH profile
+     */
+    public Weighting getCustomizationWeighting() {
+        return customizationWeighting;
+    }
+
+    private void checkCustomizable() {
+        if (!params.isCustomizable())
+            throw new IllegalStateException("The CH graph for " + chProfile + " was not prepared as customizable CH, see " + CUSTOMIZABLE);
+    }
+
+    private ShortcutCustomizer getShortcutCustomizer() {
+        if (shortcutCustomizer == null)
+            shortcutCustomizer = new ShortcutCustomizer(prepareGraph, params.getCustomizationThreads());
+        return shortcutCustomizer;
+    }
+
+    /**
+     * Parallel contraction is only implemented for node-based CH and cannot be combined with a fixed node ordering.
+     */
+    private boolean isParallelContraction() {
+        return params.getContractionThreads() > 1 && !chProfile.isEdgeBased() && nodeOrderingProvider == null
+                && !params.isCustomizable();
+    }
+
     private void initFromGraph() {
         FlagEncoder prepareFlagEncoder = prepareWeighting.getFlagEncoder();
-        final EdgeFilter allFilter = DefaultEdgeFilter.allEdges(prepareFlagEncoder);
+        // the shortcuts of a customizable CH do not depend on the access flags, so disconnect them regardless
+        final EdgeFilter allFilter = params.isCustomizable() ? EdgeFilter.ALL_EDGES : DefaultEdgeFilter.allEdges(prepareFlagEncoder);
         maxLevel = prepareGraph.getNodes();
         vehicleAllExplorer = prepareGraph.createEdgeExplorer(allFilter);
         vehicleAllTmpExplorer = prepareGraph.createEdgeExplorer(allFilter);
@@ -228,6 +331,22 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         periodicUpdateSW.stop();
     }
 
+    private void updatePrioritiesOfRemainingNodesInParallel(NodeBasedNodeContractor contractor) {
+        periodicUpdateSW.start();
+        sortedNodes.clear();
+        final int nodes = prepareGraph.getNodes();
+        IntArrayList remainingNodes = new IntArrayList();
+        for (int node = 0; node < nodes; node++) {
+            if (prepareGraph.getLevel(node) == maxLevel)
+                remainingNodes.add(node);
+        }
+        contractor.calculatePriorities(remainingNodes, oldPriorities);
+        for (IntCursor cursor : remainingNodes) {
+            sortedNodes.insert(cursor.value, oldPriorities[cursor.value]);
+        }
+        periodicUpdateSW.stop();
+    }
+
     private void contractNodesUsingHeuristicNodeOrdering() {
         // note that we update the priorities before preparing the node contractor. this does not make much sense,
         // but has always been like that and changing it would possibly require retuning the contraction parameters
@@ -340,6 +459,167 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
         _close();
     }
 
+    /**
+     * Contracts the nodes in rounds. In every round the nodes with the lowest priorities are polled and a subset of them
+     * is selected such that no two selected nodes are adjacent or share a neighbor. The witness searches for these
+     * nodes do not affect each other, so they are run in parallel and the shortcuts are added afterwards, see
+     * {@link NodeBasedNodeContractor#contractNodes}. The result only depends on the node priorities and not on the
+     * thread scheduling.
+     */
+    private void contractNodesUsingHeuristicNodeOrderingInParallel() {
+        NodeBasedNodeContractor contractor = (NodeBasedNodeContractor) nodeContractor;
+        updatePrioritiesOfRemainingNodesInParallel(contractor);
+        nodeContractor.prepareContraction();
+        final int initSize = sortedNodes.getSize();
+        int level = 0;
+        checkCounter = 0;
+        final long logSize = params.getLogMessagesPercentage() == 0
+                ? Long.MAX_VALUE
+                : Math.round(Math.max(10, initSize * (params.getLogMessagesPercentage() / 100d)));
+        final long periodicUpdatesCount = params.getPeriodicUpdatesPercentage() == 0
+                ? Long.MAX_VALUE
+                : Math.round(Math.max(10, initSize * (params.getPeriodicUpdatesPercentage() / 100d)));
+        int updateCounter = 0;
+        long nextPeriodicUpdate = periodicUpdatesCount;
+        long nextLog = 0;
+        final long lastNodesLazyUpdates = Math.round(initSize * (params.getLastNodesLazyUpdatePercentage() / 100d));
+        final long nodesToAvoidContract = Math.round(initSize * ((100 - params.getNodesContractedPercentage()) / 100d));
+        final boolean neighborUpdate = (params.getNeighborUpdatePercentage() != 0);
+
+        IntArrayList candidates = new IntArrayList();
+        IntArrayList independentNodes = new IntArrayList();
+        IntArrayList neighborsToUpdate = new IntArrayList();
+        // the selected nodes and all their neighbors
+        IntSet blockedNodes = new IntHashSet();
+        while (!sortedNodes.isEmpty()) {
+            stopIfInterrupted();
+            if (checkCounter >= nextPeriodicUpdate) {
+                updatePrioritiesOfRemainingNodesInParallel(contractor);
+                updateCounter++;
+                nextPeriodicUpdate += periodicUpdatesCount;
+            }
+
+            if (checkCounter >= nextLog) {
+                logHeuristicStats(updateCounter);
+                nextLog += logSize;
+            }
+
+            // poll the candidates with the lowest priorities, more candidates mean more parallelism but the
+            // contraction order deviates more from the sequential one
+            long maxCandidates = Math.max(1, Math.min(sortedNodes.getSize() / PARALLEL_CANDIDATES_DIVISOR,
+                    sortedNodes.getSize() - nodesToAvoidContract));
+            candidates.clear();
+            while (!sortedNodes.isEmpty() && candidates.size() < maxCandidates) {
+                candidates.add(sortedNodes.pollKey());
+            }
+
+            if (!sortedNodes.isEmpty() && sortedNodes.getSize() < lastNodesLazyUpdates) {
+                // candidates that got more important than the remaining nodes are inserted again and contracted later
+                lazyUpdateSW.start();
+                contractor.calculatePriorities(candidates, oldPriorities);
+                int lazyCount = 0;
+                for (IntCursor cursor : candidates) {
+                    if (oldPriorities[cursor.value] > sortedNodes.peekValue())
+                        sortedNodes.insert(cursor.value, oldPriorities[cursor.value]);
+                    else
+                        candidates.set(lazyCount++, cursor.value);
+                }
+                candidates.removeRange(lazyCount, candidates.size());
+                lazyUpdateSW.stop();
+                if (candidates.isEmpty())
+                    continue;
+            }
+
+            independentNodes.clear();
+            blockedNodes.clear();
+            for (IntCursor cursor : candidates) {
+                int candidate = cursor.value;
+                if (isIndependent(candidate, blockedNodes)) {
+                    blockedNodes.add(candidate);
+                    CHEdgeIterator iter = vehicleAllExplorer.setBaseNode(candidate);
+                    while (iter.next()) {
+                        blockedNodes.add(iter.getAdjNode());
+                    }
+                    independentNodes.add(candidate);
+                } else {
+                    sortedNodes.insert(candidate, oldPriorities[candidate]);
+                }
+            }
+
+            // contract the independent nodes! the levels need to be set before the witness searches so they are
+            // excluded from each others searches.
+            contractionSW.start();
+            for (IntCursor cursor : independentNodes) {
+                prepareGraph.setLevel(cursor.value, level);
+                level++;
+            }
+            contractor.contractNodes(independentNodes);
+            contractionSW.stop();
+            checkCounter += independentNodes.size();
+
+            if (sortedNodes.getSize() < nodesToAvoidContract)
+                // skipped nodes are already set to maxLevel
+                break;
+
+            // the selected nodes do not share neighbors, so every neighbor is found for at most one of them
+            neighborsToUpdate.clear();
+            updatedNeighbors.clear();
+            for (IntCursor cursor : independentNodes) {
+                CHEdgeIterator iter = vehicleAllExplorer.setBaseNode(cursor.value);
+                while (iter.next()) {
+                    int nn = iter.getAdjNode();
+                    if (prepareGraph.getLevel(nn) != maxLevel)
+                        continue;
+
+                    if (neighborUpdate && updatedNeighbors.add(nn) && rand.nextInt(100) < params.getNeighborUpdatePercentage())
+                        neighborsToUpdate.add(nn);
+
+                    prepareGraph.disconnect(vehicleAllTmpExplorer, iter);
+                }
+            }
+
+            if (!neighborsToUpdate.isEmpty()) {
+                neighborUpdateSW.start();
+                float[] oldNeighborPriorities = new float[neighborsToUpdate.size()];
+                for (int i = 0; i < neighborsToUpdate.size(); i++) {
+                    oldNeighborPriorities[i] = oldPriorities[neighborsToUpdate.get(i)];
+                }
+                contractor.calculatePriorities(neighborsToUpdate, oldPriorities);
+                for (int i = 0; i < neighborsToUpdate.size(); i++) {
+                    int nn = neighborsToUpdate.get(i);
+                    if (oldPriorities[nn] != oldNeighborPriorities[i])
+                        sortedNodes.update(nn, oldNeighborPriorities[i], oldPriorities[nn]);
+                }
+                neighborUpdateSW.stop();
+            }
+        }
+
+        logHeuristicStats(updateCounter);
+
+        logger.info(
+                "new shortcuts: " + nf(nodeContractor.getAddedShortcutsCount())
+                        + ", initSize:" + nf(initSize)
+                        + ", " + prepareWeighting
+                        + ", periodic:" + params.getPeriodicUpdatesPercentage()
+                        + ", neighbor:" + params.getNeighborUpdatePercentage()
+                        + ", threads:" + params.getContractionThreads()
+                        + ", " + getTimesAsString()
+                        + ", " + Helper.getMemInfo());
+
+        _close();
+    }
+
+    private boolean isIndependent(int node, IntSet blockedNodes) {
+        if (blockedNodes.contains(node))
+            return false;
+        CHEdgeIterator iter = vehicleAllExplorer.setBaseNode(node);
+        while (iter.next()) {
+            if (blockedNodes.contains(iter.getAdjNode()))
+                return false;
+        }
+        return true;
+    }
+
     private void contractNodesUsingFixedNodeOrdering() {
         nodeContractor.prepareContraction();
         final int nodesToContract = nodeOrderingProvider.getNumNodes();
@@ -460,11 +740,14 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
     }
 
     private NodeContractor createNodeContractor(Graph graph, TraversalMode traversalMode) {
-        if (traversalMode.isEdgeBased()) {
+        if (params.isCustomizable()) {
+            return new CustomizableNodeContractor(prepareGraph);
+        } else if (traversalMode.isEdgeBased()) {
             TurnWeighting chTurnWeighting = createTurnWeightingForEdgeBased(graph);
             return new EdgeBasedNodeContractor(prepareGraph, chTurnWeighting, pMap);
         } else {
-            return new NodeBasedNodeContractor(prepareGraph, chProfile.getWeighting(), pMap);
+            int threads = isParallelContraction() ? params.getContractionThreads() : 1;
+            return new NodeBasedNodeContractor(prepareGraph, chProfile.getWeighting(), pMap, threads);
         }
     }
 
@@ -525,6 +808,22 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
          * @see #periodicUpdatesPercentage
          */
         private int logMessagesPercentage;
+        /**
+         * Specifies how many threads are used to contract a single graph. Values larger than one enable the parallel
+         * contraction of independent node sets, which is only supported for node-based CH. Every thread needs its own
+         * witness search, so make sure you have enough memory when increasing this number.
+         */
+        private int contractionThreads = 1;
+        /**
+         * Specifies if the graph is prepared as customizable CH: the nodes are contracted in a metric-independent
+         * order and without witness searches. This creates more shortcuts and slower queries, but the shortcut weights
+         * can be recalculated for a new weighting in a fraction of the preparation time.
+         */
+        private boolean customizable;
+        /**
+         * Specifies how many threads are used to calculate the shortcut weights of a customizable CH.
+         */
+        private int customizationThreads = 1;
 
         static Params forTraversalMode(TraversalMode traversalMode) {
             if (traversalMode.isEdgeBased()) {
@@ -589,6 +888,34 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation imple
             this.logMessagesPercentage = logMessagesPercentage;
         }
 
+        int getContractionThreads() {
+            return contractionThreads;
+        }
+
+        void setContractionThreads(int contractionThreads) {
+            if (contractionThreads < 1)
+                throw new IllegalArgumentException(CONTRACTION_THREADS + " has to be positive");
+            this.contractionThreads = contractionThreads;
+        }
+
+        boolean isCustomizable() {
+            return customizable;
+        }
+
+        void setCustomizable(boolean customizable) {
+            this.customizable = customizable;
+        }
+
+        int getCustomizationThreads() {
+            return customizationThreads;
+        }
+
+        void setCustomizationThreads(int customizationThreads) {
+            if (customizationThreads < 1)
+                throw new IllegalArgumentException(CUSTOMIZATION_THREADS + " has to be positive");
+            this.customizationThreads = customizationThreads;
+        }
+
         private void checkPercentage(String name, int value) {
             if (value < 0 || value > 100) {
                 throw new IllegalArgumentException(name + " has to be in [0, 100], to disable it use 0");
@@ -0,0 +1,433 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.routing.profiles.BooleanEncodedValue;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.util.CHEdgeExplorer;
+import com.graphhopper.util.CHEdgeIterator;
+import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Calculates the weights and skipped edges of all shortcuts of a customizable CH graph for a weighting, see
+ * {@link CustomizableNodeContractor}. Every shortcut from a node v to a higher node w gets the weight of the best
+ * path v-x-w over a node x that is lower than v and connected to both of them ('lower triangle'). The weights of the
+ * edges v-x and x-w are final before v is processed, because they belong to the lower node x. So the nodes are
+ * processed bottom up and the shortcuts are the shortest paths between their nodes for the weighting.
+ * <p>
+ * With more than one thread the nodes are processed in rounds: a node gets the round after the latest round of its
+ * lower neighbors, so the nodes of one round only read shortcuts of earlier rounds and write their own shortcuts.
+ * <p>
+ * After a change of some edges only the shortcuts that can depend on them are calculated again: an edge v-x is only
+ * read by the lower triangles of the upper neighbors of its lower node x. If a shortcut of such a node changes, the
+ * upper neighbors of this node have to be calculated again as well and so on.
+ */
+class ShortcutCustomizer {
+    // rounds with fewer nodes are processed by the calling thread
+    private static final int MIN_PARALLEL_ROUND_SIZE = 1_000;
+    private final CHGraph chGraph;
+    private final int threads;
+    // the distinct lower neighbors of every node in a compressed form: lowerNeighbors[lowerNeighborsStart[node]..
+    // lowerNeighborsStart[node + 1])
+    private int[] lowerNeighborsStart;
+    private int[] lowerNeighbors;
+    // the nodes sorted by level, or by round and level when multiple threads are used
+    private int[] nodes;
+    private int[] roundsStart;
+
+    ShortcutCustomizer(CHGraph chGraph, int threads) {
+        if (chGraph.getCHProfile().isEdgeBased())
+            throw new IllegalArgumentException("Customizable CH is only supported for node-based CH");
+        if (threads < 1)
+            throw new IllegalArgumentException("threads has to be positive but was " + threads);
+        this.chGraph = chGraph;
+        this.threads = threads;
+        init();
+    }
+
+    /**
+     * The shortcuts do not change after the contraction, so the lower neighbors and rounds are only calculated once
+     */
+    private void init() {
+        int numNodes = chGraph.getNodes();
+        nodes = new int[numNodes];
+        for (int node = 0; node < numNodes; node++) {
+            nodes[chGraph.getLevel(node)] = node;
+        }
+
+        // the shortcuts to lower nodes are disconnected from the higher node, so the lower neighbors are found via the
+        // edges of the lower nodes
+        CHEdgeExplorer explorer = chGraph.createEdgeExplorer(EdgeFilter.ALL_EDGES);
+        int[] lastLowerNeighbor = new int[numNodes];
+        Arrays.fill(lastLowerNeighbor, -1);
+        lowerNeighborsStart = new int[numNodes + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int node : nodes) {
+                int level = chGraph.getLevel(node);
+                CHEdgeIterator iter = explorer.setBaseNode(node);
+                while (iter.next()) {
+                    int adjNode = iter.getAdjNode();
+                    // parallel edges to the same higher node must not add the node twice
+                    if (chGraph.getLevel(adjNode) <= level || lastLowerNeighbor[adjNode] == node)
+                        continue;
+                    lastLowerNeighbor[adjNode] = node;
+                    if (pass == 0)
+                        lowerNeighborsStart[adjNode + 1]++;
+                    else
+                        lowerNeighbors[lowerNeighborsStart[adjNode + 1]++] = node;
+                }
+            }
+            if (pass == 0) {
+                for (int node = 0; node < numNodes; node++) {
+                    lowerNeighborsStart[node + 1] += lowerNeighborsStart[node];
+                }
+                lowerNeighbors = new int[lowerNeighborsStart[numNodes]];
+                // the second pass uses lowerNeighborsStart[node + 1] as the fill position of node, which ends at
+                // the start of the next node
+                System.arraycopy(lowerNeighborsStart, 0, lowerNeighborsStart, 1, numNodes);
+                Arrays.fill(lastLowerNeighbor, -1);
+            }
+        }
+
+        if (threads > 1) {
+            int[] rounds = new int[numNodes];
+            int maxRound = 0;
+            for (int node : nodes) {
+                int round = 0;
+                for (int i = lowerNeighborsStart[node]; i < lowerNeighborsStart[node + 1]; i++) {
+                    round = Math.max(round, rounds[lowerNeighbors[i]] + 1);
+                }
+                rounds[node] = round;
+                maxRound = Math.max(maxRound, round);
+            }
+            // sort the nodes by round, within a round they keep their order by level
+            roundsStart = new int[maxRound + 2];
+            for (int node = 0; node < numNodes; node++) {
+                roundsStart[rounds[node] + 1]++;
+            }
+            for (int round = 0; round <= maxRound; round++) {
+                roundsStart[round + 1] += roundsStart[round];
+            }
+            int[] positions = Arrays.copyOf(roundsStart, maxRound + 1);
+            int[] nodesByRound = new int[numNodes];
+            for (int node : nodes) {
+                nodesByRound[positions[rounds[node]]++] = node;
+            }
+            nodes = nodesByRound;
+        } else {
+            roundsStart = new int[]{0, numNodes};
+        }
+    }
+
+    /**
+     * Calculates the weights and skipped edges of all shortcuts for the specified weighting. The original edges are
+     * read from the graph, so a changed edge is taken into account as well.
+     */
+    void customize(Weighting weighting) {
+        checkWeighting(weighting);
+        final Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(weighting);
+        }
+        if (threads == 1) {
+            workers[0].customize(0, nodes.length);
+            return;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, Thread.currentThread().getName() + "-customization");
+                // do not prevent the JVM from exiting when the customization fails
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Callable<Object>> callables = new ArrayList<>(threads);
+            for (int round = 0; round < roundsStart.length - 1; round++) {
+                int from = roundsStart[round], to = roundsStart[round + 1];
+                if (to - from < MIN_PARALLEL_ROUND_SIZE) {
+                    workers[0].customize(from, to);
+                    continue;
+                }
+                callables.clear();
+                int chunkSize = (to - from + threads - 1) / threads;
+                for (int i = 0; i < threads; i++) {
+                    final Worker worker = workers[i];
+                    final int chunkFrom = from + i * chunkSize;
+                    final int chunkTo = Math.min(to, chunkFrom + chunkSize);
+                    callables.add(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            worker.customize(chunkFrom, chunkTo);
+                            return null;
+                        }
+                    });
+                }
+                for (Future<Object> future : executorService.invokeAll(callables)) {
+                    future.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Calculates the shortcuts that can depend on the specified changed edges again. The shortcuts have to be
+     * customized for the specified weighting before.
+     *
+     * @return the number of nodes whose shortcuts were calculated again
+     */
+    int customize(Weighting weighting, IntHashSet changedEdges) {
+        checkWeighting(weighting);
+        Worker worker = new Worker(weighting);
+        GHBitSet dirtyNodes = new GHBitSetImpl(chGraph.getNodes());
+        for (IntCursor cursor : changedEdges) {
+            EdgeIteratorState edge = chGraph.getBaseGraph().getEdgeIteratorState(cursor.value, Integer.MIN_VALUE);
+            int lowerNode = chGraph.getLevel(edge.getBaseNode()) < chGraph.getLevel(edge.getAdjNode())
+                    ? edge.getBaseNode() : edge.getAdjNode();
+            worker.addUpperNeighbors(lowerNode, dirtyNodes);
+        }
+
+        // the nodes are sorted by level or round, so the lower neighbors of a node are always processed before it
+        int count = 0;
+        for (int node : nodes) {
+            if (!dirtyNodes.contains(node))
+                continue;
+            count++;
+            if (worker.customizeNode(node))
+                worker.addUpperNeighbors(node, dirtyNodes);
+        }
+        return count;
+    }
+
+    private void checkWeighting(Weighting weighting) {
+        if (!weighting.getFlagEncoder().equals(chGraph.getCHProfile().getWeighting().getFlagEncoder()))
+            throw new IllegalArgumentException("The weighting " + weighting + " has to use the flag encoder of the CH profile "
+                    + chGraph.getCHProfile());
+    }
+
+    /**
+     * Customizes the shortcuts of a part of the nodes. Every thread uses its own worker.
+     */
+    private class Worker {
+        private final Weighting weighting;
+        private final BooleanEncodedValue accessEnc;
+        private final CHEdgeExplorer explorer;
+        // maps the higher neighbors of the current node to the index of the shortcuts in the arrays below
+        private final IntIntHashMap shortcutIndices = new IntIntHashMap();
+        // the shortcuts from the current node to a higher node (fwd) and back (bwd)
+        private int[] fwdShortcuts = new int[16];
+        private int[] bwdShortcuts = new int[16];
+        private double[] fwdWeights = new double[16];
+        private double[] bwdWeights = new double[16];
+        private int[] fwdSkippedEdges = new int[32];
+        private int[] bwdSkippedEdges = new int[32];
+        // the edges from the current lower neighbor to the higher neighbors of the current node
+        private int[] upperEdgeIndices = new int[16];
+        private int[] upperEdges = new int[16];
+        private double[] fromLowerUpperWeights = new double[16];
+        private double[] toLowerUpperWeights = new double[16];
+
+        Worker(Weighting weighting) {
+            this.weighting = weighting;
+            this.accessEnc = weighting.getFlagEncoder().getAccessEnc();
+            this.explorer = chGraph.createEdgeExplorer(EdgeFilter.ALL_EDGES);
+        }
+
+        void customize(int from, int to) {
+            for (int i = from; i < to; i++) {
+                customizeNode(nodes[i]);
+            }
+        }
+
+        /**
+         * @return true if the weight of a shortcut of the specified node changed
+         */
+        private boolean customizeNode(int node) {
+            int level = chGraph.getLevel(node);
+            shortcutIndices.clear();
+            CHEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (!iter.isShortcut() || chGraph.getLevel(iter.getAdjNode()) <= level)
+                    continue;
+                int index = shortcutIndices.getOrDefault(iter.getAdjNode(), -1);
+                if (index < 0) {
+                    index = shortcutIndices.size();
+                    shortcutIndices.put(iter.getAdjNode(), index);
+                    ensureCapacity(index + 1);
+                    fwdShortcuts[index] = bwdShortcuts[index] = EdgeIterator.NO_EDGE;
+                    fwdWeights[index] = bwdWeights[index] = Double.POSITIVE_INFINITY;
+                }
+                if (iter.get(accessEnc))
+                    fwdShortcuts[index] = iter.getEdge();
+                else
+                    bwdShortcuts[index] = iter.getEdge();
+            }
+            if (shortcutIndices.isEmpty())
+                return false;
+
+            for (int i = lowerNeighborsStart[node]; i < lowerNeighborsStart[node + 1]; i++) {
+                relaxLowerTriangles(node, lowerNeighbors[i]);
+            }
+
+            boolean changed = false;
+            for (int index = 0; index < shortcutIndices.size(); index++) {
+                changed |= setShortcut(fwdShortcuts[index], fwdWeights[index], fwdSkippedEdges, index);
+                changed |= setShortcut(bwdShortcuts[index], bwdWeights[index], bwdSkippedEdges, index);
+            }
+            return changed;
+        }
+
+        private void addUpperNeighbors(int node, GHBitSet nodes) {
+            int level = chGraph.getLevel(node);
+            CHEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (chGraph.getLevel(iter.getAdjNode()) > level)
+                    nodes.add(iter.getAdjNode());
+            }
+        }
+
+        /**
+         * Updates the shortcuts of the specified node with the paths via the specified lower neighbor
+         */
+        private void relaxLowerTriangles(int node, int lowerNeighbor) {
+            // the best edges between the node and its lower neighbor
+            double toLowerWeight = Double.POSITIVE_INFINITY, fromLowerWeight = Double.POSITIVE_INFINITY;
+            int toLowerEdge = EdgeIterator.NO_EDGE, fromLowerEdge = EdgeIterator.NO_EDGE;
+            // the edges from the lower neighbor to the higher neighbors of the node are only combined with the best
+            // edges to the node after all edges were read, so the edges of the lower neighbor are iterated only once
+            int upperEdgesCount = 0;
+            CHEdgeIterator iter = explorer.setBaseNode(lowerNeighbor);
+            while (iter.next()) {
+                int adjNode = iter.getAdjNode();
+                if (adjNode == node) {
+                    double weight = calcWeight(iter, true);
+                    if (weight < toLowerWeight) {
+                        toLowerWeight = weight;
+                        toLowerEdge = iter.getEdge();
+                    }
+                    weight = calcWeight(iter, false);
+                    if (weight < fromLowerWeight) {
+                        fromLowerWeight = weight;
+                        fromLowerEdge = iter.getEdge();
+                    }
+                    continue;
+                }
+                // only the higher neighbors of the node are contained, they are all higher than the lower neighbor
+                int index = shortcutIndices.getOrDefault(adjNode, -1);
+                if (index < 0)
+                    continue;
+                ensureUpperEdgesCapacity(upperEdgesCount + 1);
+                upperEdgeIndices[upperEdgesCount] = index;
+                upperEdges[upperEdgesCount] = iter.getEdge();
+                fromLowerUpperWeights[upperEdgesCount] = calcWeight(iter, false);
+                toLowerUpperWeights[upperEdgesCount] = calcWeight(iter, true);
+                upperEdgesCount++;
+            }
+
+            for (int i = 0; i < upperEdgesCount; i++) {
+                int index = upperEdgeIndices[i];
+                // node -> lowerNeighbor -> higher node
+                double weight = toLowerWeight + fromLowerUpperWeights[i];
+                if (weight < fwdWeights[index]) {
+                    fwdWeights[index] = weight;
+                    fwdSkippedEdges[2 * index] = toLowerEdge;
+                    fwdSkippedEdges[2 * index + 1] = upperEdges[i];
+                }
+                // higher node -> lowerNeighbor -> node
+                weight = toLowerUpperWeights[i] + fromLowerWeight;
+                if (weight < bwdWeights[index]) {
+                    bwdWeights[index] = weight;
+                    bwdSkippedEdges[2 * index] = upperEdges[i];
+                    bwdSkippedEdges[2 * index + 1] = fromLowerEdge;
+                }
+            }
+        }
+
+        /**
+         * @param reverse false to calculate the weight from the base node to the adjacent node of the specified edge
+         * @return the weight of the edge or infinity if it cannot be traversed in this direction
+         */
+        private double calcWeight(CHEdgeIteratorState edge, boolean reverse) {
+            if (reverse ? !edge.getReverse(accessEnc) : !edge.get(accessEnc))
+                return Double.POSITIVE_INFINITY;
+            if (edge.isShortcut())
+                return edge.getWeight();
+            return weighting.calcWeight(edge, reverse, EdgeIterator.NO_EDGE);
+        }
+
+        /**
+         * @return true if the stored weight of the shortcut changed
+         */
+        private boolean setShortcut(int shortcut, double weight, int[] skippedEdges, int index) {
+            if (shortcut == EdgeIterator.NO_EDGE)
+                return false;
+            CHEdgeIteratorState shortcutState = chGraph.getEdgeIteratorState(shortcut, Integer.MIN_VALUE);
+            // without a path the old skipped edges are kept, they are still valid but never used
+            if (!Double.isInfinite(weight))
+                shortcutState.setSkippedEdges(skippedEdges[2 * index], skippedEdges[2 * index + 1]);
+            double oldWeight = shortcutState.getWeight();
+            shortcutState.setWeight(weight);
+            return shortcutState.getWeight() != oldWeight;
+        }
+
+        private void ensureCapacity(int size) {
+            if (size <= fwdShortcuts.length)
+                return;
+            int newSize = Math.max(size, 2 * fwdShortcuts.length);
+            fwdShortcuts = Arrays.copyOf(fwdShortcuts, newSize);
+            bwdShortcuts = Arrays.copyOf(bwdShortcuts, newSize);
+            fwdWeights = Arrays.copyOf(fwdWeights, newSize);
+            bwdWeights = Arrays.copyOf(bwdWeights, newSize);
+            fwdSkippedEdges = Arrays.copyOf(fwdSkippedEdges, 2 * newSize);
+            bwdSkippedEdges = Arrays.copyOf(bwdSkippedEdges, 2 * newSize);
+        }
+
+        private void ensureUpperEdgesCapacity(int size) {
+            if (size <= upperEdges.length)
+                return;
+            int newSize = Math.max(size, 2 * upperEdges.length);
+            upperEdgeIndices = Arrays.copyOf(upperEdgeIndices, newSize);
+            upperEdges = Arrays.copyOf(upperEdges, newSize);
+            fromLowerUpperWeights = Arrays.copyOf(fromLowerUpperWeights, newSize);
+            toLowerUpperWeights = Arrays.copyOf(toLowerUpperWeights, newSize);
+        }
+    }
+}
@@ -20,7 +20,7 @@ package com.graphhopper.routing.ch;
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntObjectHashMap;
 import com.carrotsearch.hppc.IntObjectMap;
-import com.graphhopper.apache.commons.collections.IntDoubleBinaryHeap;
+import com.graphhopper.coll.MinHeapWithUpdate;
 import com.graphhopper.routing.util.DefaultEdgeFilter;
 import com.graphhopper.routing.weighting.TurnWeighting;
 import com.graphhopper.storage.CHGraph;
@@ -96,7 +96,7 @@ public class WitnessPathSearcher {
     private boolean[] isPathToCenters;
     private IntObjectMap<CHEntry> initialEntryParents;
     private IntArrayList changedEdges;
-    private IntDoubleBinaryHeap dijkstraHeap;
+    private MinHeapWithUpdate dijkstraHeap;
 
     // we keep track of the average number and distribution width of settled edges during the last searches to estimate
     // an appropriate maximum of settled edges for the next searches
@@ -155,7 +155,7 @@ public class WitnessPathSearcher {
         currentBatchStats.maxNumSettledEdges += maxSettledEdges;
         totalStats.numSearches++;
         totalStats.maxNumSettledEdges += maxSettledEdges;
-        return dijkstraHeap.getSize();
+        return dijkstraHeap.size();
     }
 
     /**
@@ -202,14 +202,20 @@ public class WitnessPathSearcher {
                 // that could yield a bridge-path
                 break;
             }
-            final int currKey = dijkstraHeap.peek_element();
-            if (weights[currKey] > bestPathWeight) {
+            if (numPathsToCenter < 1 && numSettledEdges > maxSettledEdges) {
+                // the remaining entries will not be expanded anymore and none of them can yield a bridge-path, so the
+                // best path cannot change. polling them would only remove them from the heap for future searches
+                break;
+            }
+            final int currKey = dijkstraHeap.peekId();
+            if (weights[currKey] > bestPathWeight || (!bestPathIsBridgePath && weights[currKey] >= bestPathWeight)) {
                 // just reaching this edge is more expensive than the best path found so far including the turn costs
-                // to reach the target edge -> we can stop
+                // to reach the target edge -> we can stop. if the best path is a witness path already an equal weight
+                // is enough, because a bridge-path needs to be strictly better to replace it.
                 // important: we only peeked so far, so we keep the entry for future searches
                 break;
             }
-            dijkstraHeap.poll_element();
+            dijkstraHeap.poll();
             numPolledEdges++;
             currentBatchStats.numPolledEdges++;
             totalStats.numPolledEdges++;
@@ -242,13 +248,14 @@ public class WitnessPathSearcher {
                 if (!EdgeIterator.Edge.isValid(edges[key])) {
                     setEntry(key, iter, weight, currKey, isPathToCenter);
                     changedEdges.add(key);
-                    dijkstraHeap.insert_(weight, key);
+                    dijkstraHeap.push(key, weight);
                     if (!isZeroWeightLoop) {
                         updateBestPath(targetNode, targetEdge, key);
                     }
                 } else if (weight < weights[key]) {
                     updateEntry(key, iter, weight, currKey, isPathToCenter);
-                    dijkstraHeap.update_(weight, key);
+                    if (dijkstraHeap.contains(key))
+                        dijkstraHeap.update(key, weight);
                     if (!isZeroWeightLoop) {
                         updateBestPath(targetNode, targetEdge, key);
                     }
@@ -322,7 +329,7 @@ public class WitnessPathSearcher {
     private void initCollections() {
         initialEntryParents = new IntObjectHashMap<>(10);
         changedEdges = new IntArrayList(1000);
-        dijkstraHeap = new IntDoubleBinaryHeap(1000);
+        dijkstraHeap = new MinHeapWithUpdate(weights.length);
     }
 
     private void setInitialEntries(int sourceNode, int sourceEdge, int centerNode) {
@@ -375,7 +382,7 @@ public class WitnessPathSearcher {
             if (isPathToCenters[key]) {
                 numPathsToCenter++;
             }
-            dijkstraHeap.insert_(weights[key], key);
+            dijkstraHeap.push(key, weights[key]);
         }
     }
 
@@ -66,6 +66,7 @@ public class LMAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
     private boolean disablingAllowed = false;
     private final List<String> lmSuggestionsLocations = new ArrayList<>(5);
     private int preparationThreads;
+    private int landmarkThreads = 1;
     private ExecutorService threadPool;
     private boolean logDetails = false;
 
@@ -76,6 +77,7 @@ public class LMAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
     @Override
     public void init(CmdArgs args) {
         setPreparationThreads(args.getInt(Parameters.Landmark.PREPARE + "threads", getPreparationThreads()));
+        setLandmarkThreads(args.getInt(Parameters.Landmark.PREPARE + "landmark_threads", getLandmarkThreads()));
 
         landmarkCount = args.getInt(Parameters.Landmark.COUNT, landmarkCount);
         activeLandmarkCount = args.getInt(Landmark.ACTIVE_COUNT_DEFAULT, Math.min(8, landmarkCount));
@@ -128,6 +130,20 @@ public class LMAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
         return preparationThreads;
     }
 
+    public int getLandmarkThreads() {
+        return landmarkThreads;
+    }
+
+    /**
+     * This method changes the number of threads that calculate the landmark weights within one preparation, i.e.
+     * for one weighting. Default is 1.
+     */
+    public void setLandmarkThreads(int landmarkThreads) {
+        if (landmarkThreads < 1)
+            throw new IllegalArgumentException("landmark threads has to be positive but was " + landmarkThreads);
+        this.landmarkThreads = landmarkThreads;
+    }
+
     /**
      * This method changes the number of threads used for preparation on import. Default is 1. Make
      * sure that you have enough memory when increasing this number!
@@ -261,6 +277,10 @@ public class LMAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
             return defaultAlgoFactory;
         }
 
+        public PrepareLandmarks getPreparation() {
+            return p;
+        }
+
         @Override
         public RoutingAlgorithm createAlgo(Graph g, AlgorithmOptions opts) {
             RoutingAlgorithm algo = defaultAlgoFactory.createAlgo(g, opts);
@@ -343,6 +363,7 @@ public class LMAlgoFactoryDecorator implements RoutingAlgorithmFactoryDecorator
                     weighting, landmarkCount, activeLandmarkCount).
                     setLandmarkSuggestions(lmSuggestions).
                     setMaximumWeight(maximumWeight).
+                    setLandmarkThreads(landmarkThreads).
                     setLogDetails(logDetails);
             if (minNodes > 1)
                 tmpPrepareLM.setMinimumNodes(minNodes);
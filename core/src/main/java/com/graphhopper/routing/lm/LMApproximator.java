@@ -48,6 +48,8 @@ public class LMApproximator implements WeightApproximator {
     // store weights as int
     private int[] activeFromIntWeights;
     private int[] activeToIntWeights;
+    // the stored values of the active landmarks for the currently approximated node
+    private final int[] packedWeights;
     private double epsilon = 1;
     private int toTowerNode = -1;
     // do activate landmark recalculation
@@ -73,6 +75,7 @@ public class LMApproximator implements WeightApproximator {
         Arrays.fill(activeLandmarks, -1);
         activeFromIntWeights = new int[activeCount];
         activeToIntWeights = new int[activeCount];
+        packedWeights = new int[activeCount];
 
         this.graph = graph;
         this.fallBackApproximation = new BeelineWeightApproximator(graph.getNodeAccess(), lms.getWeighting());
@@ -156,9 +159,11 @@ public class LMApproximator implements WeightApproximator {
     }
 
     int getMaxWeight(int node, int virtEdgeWeightInt, int[] activeLandmarks, int[] activeFromIntWeights, int[] activeToIntWeights) {
+        // fetch the row of the node once and decode it from the local array
+        lms.getPackedWeights(node, activeLandmarks, packedWeights);
         int maxWeightInt = -1;
         for (int activeLMIdx = 0; activeLMIdx < activeLandmarks.length; activeLMIdx++) {
-            int landmarkIndex = activeLandmarks[activeLMIdx];
+            int packedWeight = packedWeights[activeLMIdx];
 
             // 1. assume route from a to b: a--->v--->b and a landmark LM.
             //    From this we get two inequality formulas where v is the start (or current node) and b is the 'to' node:
@@ -167,8 +172,8 @@ public class LMApproximator implements WeightApproximator {
             // 2. for the case a->v the sign is reverse as we need to know the vector av not va => if(reverse) "-weight"
             // 3. as weight is the full edge weight for now (and not the precise weight to the virt node) we can only add it to the subtrahend
             //    to avoid overestimating (keep the result strictly lower)
-            int fromWeightInt = activeFromIntWeights[activeLMIdx] - (lms.getFromWeight(landmarkIndex, node) + virtEdgeWeightInt);
-            int toWeightInt = lms.getToWeight(landmarkIndex, node) - activeToIntWeights[activeLMIdx];
+            int fromWeightInt = activeFromIntWeights[activeLMIdx] - (LandmarkStorage.toFromWeight(packedWeight) + virtEdgeWeightInt);
+            int toWeightInt = LandmarkStorage.toToWeight(packedWeight) - activeToIntWeights[activeLMIdx];
             if (reverse) {
                 fromWeightInt = -fromWeightInt;
                 // we need virtEntryWeight for the minuend
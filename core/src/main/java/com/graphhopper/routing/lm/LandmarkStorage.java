@@ -19,10 +19,14 @@ package com.graphhopper.routing.lm;
 
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntDoubleHashMap;
 import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.IntDoubleCursor;
 import com.carrotsearch.hppc.predicates.IntObjectPredicate;
 import com.carrotsearch.hppc.procedures.IntObjectProcedure;
 import com.graphhopper.coll.MapEntry;
+import com.graphhopper.coll.MinHeapWithUpdate;
 import com.graphhopper.routing.DijkstraBidirectionRef;
 import com.graphhopper.routing.profiles.BooleanEncodedValue;
 import com.graphhopper.routing.subnetwork.SubnetworkStorage;
@@ -42,6 +46,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -78,6 +83,8 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
     private List<LandmarkSuggestion> landmarkSuggestions = Collections.emptyList();
     private SpatialRuleLookup ruleLookup;
     private boolean logDetails = false;
+    private int landmarkThreads = 1;
+    private ExecutorService landmarkExecutor;
 
     public LandmarkStorage(GraphHopperStorage graph, Directory dir, final Weighting weighting, int landmarks) {
         this.graph = graph;
@@ -199,6 +206,18 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
         return initialized;
     }
 
+    /**
+     * This method changes the number of threads that calculate the weights of the landmarks of one subnetwork. Every
+     * thread does one forward and one backward search through the whole subnetwork at a time and needs the RAM for it.
+     * Default is 1.
+     */
+    public LandmarkStorage setLandmarkThreads(int landmarkThreads) {
+        if (landmarkThreads < 1)
+            throw new IllegalArgumentException("landmark threads has to be positive but was " + landmarkThreads);
+        this.landmarkThreads = landmarkThreads;
+        return this;
+    }
+
     /**
      * This method calculates the landmarks and initial weightings to & from them.
      */
@@ -206,6 +225,27 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
         if (isInitialized())
             throw new IllegalStateException("Initialize the landmark storage only once!");
 
+        if (landmarkThreads > 1)
+            landmarkExecutor = Executors.newFixedThreadPool(landmarkThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, Thread.currentThread().getName() + "-landmarks");
+                    // do not prevent the JVM from exiting when the preparation fails
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        try {
+            createLandmarksForAllSubnetworks();
+        } finally {
+            if (landmarkExecutor != null) {
+                landmarkExecutor.shutdownNow();
+                landmarkExecutor = null;
+            }
+        }
+    }
+
+    private void createLandmarksForAllSubnetworks() {
         // fill 'from' and 'to' weights with maximum value
         long maxBytes = (long) graph.getNodes() * LM_ROW_LENGTH;
         this.landmarkWeightDA.create(2000);
@@ -400,37 +440,49 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
         }
 
         // 2) calculate weights for all landmarks -> 'from' and 'to' weight
-        for (int lmIdx = 0; lmIdx < tmpLandmarkNodeIds.length; lmIdx++) {
-            if (Thread.currentThread().isInterrupted()) {
-                throw new RuntimeException("Thread was interrupted");
-            }
-            int lmNodeId = tmpLandmarkNodeIds[lmIdx];
-            LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, true);
-            explorer.setStartNode(lmNodeId);
-            explorer.setFilter(blockedEdges, true, false);
-            explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH);
+        // the searches of the first landmark also set the subnetwork id of all explored nodes and can fail
+        if (!calcLandmarkWeights(0, tmpLandmarkNodeIds[0], blockedEdges, subnetworks, subnetworkId))
+            return false;
+        logLandmarkWeightsProgress(0, tmpLandmarkNodeIds.length, logOffset);
 
-            // set subnetwork id to all explored nodes, but do this only for the first landmark
-            if (lmIdx == 0) {
-                if (explorer.setSubnetworks(subnetworks, subnetworkId))
-                    return false;
+        if (landmarkExecutor == null) {
+            for (int lmIdx = 1; lmIdx < tmpLandmarkNodeIds.length; lmIdx++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new RuntimeException("Thread was interrupted");
+                }
+                calcLandmarkWeights(lmIdx, tmpLandmarkNodeIds[lmIdx], blockedEdges, null, subnetworkId);
+                logLandmarkWeightsProgress(lmIdx, tmpLandmarkNodeIds.length, logOffset);
             }
-
-            explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, false);
-            explorer.setStartNode(lmNodeId);
-            explorer.setFilter(blockedEdges, false, true);
-            explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH);
-
-            if (lmIdx == 0) {
-                if (explorer.setSubnetworks(subnetworks, subnetworkId))
-                    return false;
+        } else {
+            // every landmark has its own int in the row of a node, so the searches of different landmarks never
+            // write to the same position of the DataAccess and can run concurrently
+            List<Callable<Object>> callables = new ArrayList<>(tmpLandmarkNodeIds.length - 1);
+            final AtomicInteger finished = new AtomicInteger(1);
+            for (int lmIdx = 1; lmIdx < tmpLandmarkNodeIds.length; lmIdx++) {
+                final int finalLmIdx = lmIdx;
+                final int lmNodeId = tmpLandmarkNodeIds[lmIdx];
+                final int landmarkCount = tmpLandmarkNodeIds.length;
+                final int finalLogOffset = logOffset;
+                final IntHashSet finalBlockedEdges = blockedEdges;
+                callables.add(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        calcLandmarkWeights(finalLmIdx, lmNodeId, finalBlockedEdges, null, subnetworkId);
+                        logLandmarkWeightsProgress(finished.getAndIncrement(), landmarkCount, finalLogOffset);
+                        return null;
+                    }
+                });
+            }
+            try {
+                for (Future<Object> future : landmarkExecutor.invokeAll(callables)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Thread was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
             }
-
-            if (logDetails && lmIdx % logOffset == 0)
-                LOGGER.info("Set landmarks weights [" + weighting + "]. "
-                        + "Progress " + (int) (100.0 * lmIdx / tmpLandmarkNodeIds.length) + "%");
         }
 
         // TODO set weight to SHORT_MAX if entry has either no 'from' or no 'to' entry
@@ -438,6 +490,89 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
         return true;
     }
 
+    /**
+     * Calculates the 'from' and 'to' weights of all nodes for the specified landmark. If subnetworks is not null the
+     * explored nodes are assigned to the specified subnetwork.
+     *
+     * @return false if the subnetwork of an explored node was already set to a different one
+     */
+    private boolean calcLandmarkWeights(int lmIdx, int lmNodeId, IntHashSet blockedEdges, byte[] subnetworks, int subnetworkId) {
+        LandmarkExplorer fromExplorer = new LandmarkExplorer(graph, this, weighting, traversalMode, true);
+        fromExplorer.setStartNode(lmNodeId);
+        fromExplorer.setFilter(blockedEdges, true, false);
+        fromExplorer.runAlgo();
+
+        if (subnetworks != null && fromExplorer.setSubnetworks(subnetworks, subnetworkId))
+            return false;
+
+        LandmarkExplorer toExplorer = new LandmarkExplorer(graph, this, weighting, traversalMode, false);
+        toExplorer.setStartNode(lmNodeId);
+        toExplorer.setFilter(blockedEdges, false, true);
+        toExplorer.runAlgo();
+
+        if (subnetworks != null && toExplorer.setSubnetworks(subnetworks, subnetworkId))
+            return false;
+
+        // both searches are finished before the first weight is written, so that 'from' and 'to' weight of a node
+        // are written together
+        setLandmarkWeights(lmIdx, lmNodeId, fromExplorer.getWeights(), toExplorer.getWeights());
+        return true;
+    }
+
+    private void setLandmarkWeights(final int lmIdx, int lmNodeId, IntObjectMap<SPTEntry> fromWeights,
+                                    final IntObjectMap<SPTEntry> toWeights) {
+        final AtomicInteger fromMaxedOut = new AtomicInteger(0);
+        final AtomicInteger toMaxedOut = new AtomicInteger(0);
+        final Map.Entry<Double, Double> finalMaxWeight = new MapEntry<>(0d, 0d);
+        fromWeights.forEach(new IntObjectProcedure<SPTEntry>() {
+            @Override
+            public void apply(int nodeId, SPTEntry b) {
+                SPTEntry toEntry = toWeights.get(nodeId);
+                double toWeight = toEntry == null ? Integer.MAX_VALUE : toEntry.weight / factor;
+                int maxedOut = setScaledWeights(lmIdx, nodeId, LM_ROW_LENGTH, b.weight / factor, toWeight);
+                if ((maxedOut & FROM_MAXED_OUT) != 0) {
+                    fromMaxedOut.incrementAndGet();
+                    finalMaxWeight.setValue(Math.max(b.weight, finalMaxWeight.getValue()));
+                }
+                if ((maxedOut & TO_MAXED_OUT) != 0) {
+                    toMaxedOut.incrementAndGet();
+                    finalMaxWeight.setValue(Math.max(toEntry.weight, finalMaxWeight.getValue()));
+                }
+            }
+        });
+        final IntObjectMap<SPTEntry> finalFromWeights = fromWeights;
+        toWeights.forEach(new IntObjectProcedure<SPTEntry>() {
+            @Override
+            public void apply(int nodeId, SPTEntry b) {
+                if (finalFromWeights.containsKey(nodeId))
+                    return;
+                int maxedOut = setScaledWeights(lmIdx, nodeId, LM_ROW_LENGTH, getFromWeight(lmIdx, nodeId), b.weight / factor);
+                if ((maxedOut & TO_MAXED_OUT) != 0) {
+                    toMaxedOut.incrementAndGet();
+                    finalMaxWeight.setValue(Math.max(b.weight, finalMaxWeight.getValue()));
+                }
+            }
+        });
+
+        warnIfMaxedOut(lmIdx, lmNodeId, fromMaxedOut.get(), fromWeights.size(), "backward", finalMaxWeight.getValue());
+        warnIfMaxedOut(lmIdx, lmNodeId, toMaxedOut.get(), toWeights.size(), "delta", finalMaxWeight.getValue());
+    }
+
+    private void warnIfMaxedOut(int lmIdx, int lmNodeId, int maxedOut, int size, String name, double maxWeight) {
+        if ((double) maxedOut / size > 0.1) {
+            NodeAccess nodeAccess = graph.getNodeAccess();
+            LOGGER.warn("landmark " + lmIdx + " (" + nodeAccess.getLatitude(lmNodeId) + "," + nodeAccess.getLongitude(lmNodeId) + "): " +
+                    "too many " + name + " weights were maxed out (" + maxedOut + "/" + size + "). Factor is too small " + factor
+                    + ". To fix this increase maximum in config.yml: prepare.lm.weighting: " + weighting.getName() + "|maximum=" + maxWeight * 1.2);
+        }
+    }
+
+    private void logLandmarkWeightsProgress(int lmIdx, int landmarkCount, int logOffset) {
+        if (logDetails && lmIdx % logOffset == 0)
+            LOGGER.info("Set landmarks weights [" + weighting + "]. "
+                    + "Progress " + (int) (100.0 * lmIdx / landmarkCount) + "%");
+    }
+
     /**
      * This method specifies the polygons which should be used to split the world wide area to improve performance and
      * quality in this scenario.
@@ -470,7 +605,7 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
     /**
      * The factor is used to convert double values into more compact int values.
      */
-    double getFactor() {
+    public double getFactor() {
         return factor;
     }
 
@@ -479,13 +614,7 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
      * a node ID but the internal index of the landmark array.
      */
     int getFromWeight(int landmarkIndex, int node) {
-        //only the right bits of this integer store the backward value
-        int res = landmarkWeightDA.getInt((long) node * LM_ROW_LENGTH + landmarkIndex * 4) & FROM_WEIGHT_INF;
-
-        if (res == FROM_WEIGHT_INF)
-            return Integer.MAX_VALUE;
-        // throw new IllegalStateException("Do not call getFromWeight for wrong landmark[" + landmarkIndex + "]=" + landmarkIDs[landmarkIndex] + " and node " + node);
-
+        int res = toFromWeight(getPackedWeight(landmarkIndex, node));
         assert res >= 0 : "Negative backward weight " + res + ", landmark index:" + landmarkIndex + ", node:" + node;
         return res;
     }
@@ -494,32 +623,62 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
      * @return the weight from the specified node to the landmark (specified *as index*)
      */
     int getToWeight(int landmarkIndex, int node) {
-        int res = landmarkWeightDA.getInt((long) node * LM_ROW_LENGTH + landmarkIndex * 4);
+        int res = toToWeight(getPackedWeight(landmarkIndex, node));
+        assert res >= 0 : "Negative forward weight " + res + ", landmark index:" + landmarkIndex + ", node:" + node;
+        return res;
+    }
+
+    /**
+     * Fetches the stored values of the specified landmarks for the node in one go. The values of all landmarks of a
+     * node are stored next to each other in one row (64 bytes for 16 landmarks), so this touches a single cache line
+     * instead of accessing the storage twice per landmark. Decode the values with toFromWeight and toToWeight.
+     */
+    void getPackedWeights(int node, int[] landmarkIndices, int[] packedWeights) {
+        long rowPointer = (long) node * LM_ROW_LENGTH;
+        for (int i = 0; i < landmarkIndices.length; i++) {
+            packedWeights[i] = landmarkWeightDA.getInt(rowPointer + landmarkIndices[i] * 4);
+        }
+    }
+
+    private int getPackedWeight(int landmarkIndex, int node) {
+        return landmarkWeightDA.getInt((long) node * LM_ROW_LENGTH + landmarkIndex * 4);
+    }
 
-        //the left bits of "res" store the difference between forward and backward value
-        int delta = res >> FROM_WEIGHT_BITS;
+    /**
+     * @return the weight from the landmark to the node, decoded from the stored value
+     */
+    static int toFromWeight(int packedWeight) {
+        //only the right bits of this integer store the backward value
+        int res = packedWeight & FROM_WEIGHT_INF;
+        if (res == FROM_WEIGHT_INF)
+            return Integer.MAX_VALUE;
+        return res;
+    }
+
+    /**
+     * @return the weight from the node to the landmark, decoded from the stored value
+     */
+    static int toToWeight(int packedWeight) {
+        //the left bits of the integer store the difference between forward and backward value
+        int delta = packedWeight >> FROM_WEIGHT_BITS;
 
         if (delta == DELTA_INF)
             return Integer.MAX_VALUE;
-        // throw new IllegalStateException("Do not call getToWeight for wrong landmark[" + landmarkIndex + "]=" + landmarkIDs[landmarkIndex] + " and node " + node);
 
         // If delta is 'maxed out' (minned out, really), we can only return 0, since we can't give a better
         // under-approximation of the weight, since it can be arbitrarily smaller than 'from'.
         if (delta == DELTA_MIN)
             return 0;
 
-        //the right bits of "res" store the backward value
-        int from = res & FROM_WEIGHT_INF;
+        //the right bits store the backward value
+        int from = packedWeight & FROM_WEIGHT_INF;
 
         if (from == FROM_WEIGHT_INF) {
             from = DELTA_INF + 1;
         }
 
         //to get the forward value you have to add the backward to the delta value
-        res = from + delta;
-
-        assert res >= 0 : "Negative forward weight " + res + ", landmark index:" + landmarkIndex + ", node:" + node;
-        return res;
+        return from + delta;
     }
 
     // 'to' and 'from' fit into 32 bit => 16 bit for each of them => 65536
@@ -538,44 +697,194 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
     private static final int DELTA_MAX = DELTA_INF - 1;
     // This value will be used if the difference between these weights is too large and forward < backward
     private static final int DELTA_MIN = -DELTA_INF - 1;
+    private static final int FROM_MAXED_OUT = 1;
+    private static final int TO_MAXED_OUT = 2;
 
     /**
      * @return false if the value capacity was reached and instead of the real value the MAX was stored.
      */
     final boolean setWeight(int lmIdx, int nodeId, long rowSize, double value, boolean from) {
-        double tmpVal = value / factor;
-        if (tmpVal > Integer.MAX_VALUE)
-            throw new UnsupportedOperationException("Cannot store infinity explicitly, landmark: " + lmIdx + ", node: " + nodeId + ", value: " + value);
+        return setScaledWeight(lmIdx, nodeId, rowSize, value / factor, from);
+    }
 
-        if (from) {
-            if (tmpVal >= FROM_WEIGHT_MAX) {
-                landmarkWeightDA.setInt(nodeId * rowSize + lmIdx * 4, (DELTA_INF << FROM_WEIGHT_BITS) | FROM_WEIGHT_MAX);
-                return false;
-            } else {
-                landmarkWeightDA.setInt(nodeId * rowSize + lmIdx * 4, (DELTA_INF << FROM_WEIGHT_BITS) | (int) tmpVal);
-                return true;
-            }
+    /**
+     * Like setWeight but for a value that is already divided by the factor, like the values returned from
+     * getFromWeight and getToWeight. Writing the 'from' weight resets the 'to' weight to infinity.
+     */
+    private boolean setScaledWeight(int lmIdx, int nodeId, long rowSize, double tmpVal, boolean from) {
+        if (from)
+            return (setScaledWeights(lmIdx, nodeId, rowSize, tmpVal, Integer.MAX_VALUE) & FROM_MAXED_OUT) == 0;
+        return (setScaledWeights(lmIdx, nodeId, rowSize, getFromWeight(lmIdx, nodeId), tmpVal) & TO_MAXED_OUT) == 0;
+    }
+
+    /**
+     * Writes the 'from' and the 'to' weight of a node with a single int. As only the difference of the 'to' weight to
+     * the 'from' weight is stored, writing them one after another would let a concurrent reader see an infinite 'to'
+     * weight in between. The values have to be divided by the factor already and Integer.MAX_VALUE means infinity.
+     *
+     * @return FROM_MAXED_OUT and/or TO_MAXED_OUT if the value capacity was reached and instead of the real value the
+     * MAX was stored
+     */
+    private int setScaledWeights(int lmIdx, int nodeId, long rowSize, double fromVal, double toVal) {
+        if (fromVal > Integer.MAX_VALUE || toVal > Integer.MAX_VALUE)
+            throw new UnsupportedOperationException("Cannot store infinity explicitly, landmark: " + lmIdx + ", node: " + nodeId
+                    + ", values: " + fromVal * factor + ", " + toVal * factor);
+
+        int maxedOut = 0;
+        int fromWeight;
+        if (fromVal == Integer.MAX_VALUE) {
+            fromWeight = FROM_WEIGHT_INF;
+        } else if (fromVal >= FROM_WEIGHT_MAX) {
+            fromWeight = FROM_WEIGHT_MAX;
+            maxedOut |= FROM_MAXED_OUT;
         } else {
-            int fromWeight = getFromWeight(lmIdx, nodeId);
-            int delta;
-            if (fromWeight == Integer.MAX_VALUE) {
-                fromWeight = FROM_WEIGHT_INF;
-                delta = (int) tmpVal - DELTA_INF + 1;
-            } else {
-                delta = (int) tmpVal - fromWeight;
-            }
+            fromWeight = (int) fromVal;
+        }
 
+        int delta;
+        if (toVal == Integer.MAX_VALUE) {
+            delta = DELTA_INF;
+        } else {
+            delta = fromWeight == FROM_WEIGHT_INF ? (int) toVal - DELTA_INF + 1 : (int) toVal - fromWeight;
             if (delta >= DELTA_MAX) {
-                landmarkWeightDA.setInt(nodeId * rowSize + lmIdx * 4, (DELTA_MAX << FROM_WEIGHT_BITS) | fromWeight);
-                return false;
+                delta = DELTA_MAX;
+                maxedOut |= TO_MAXED_OUT;
             } else if (delta <= DELTA_MIN) {
-                landmarkWeightDA.setInt(nodeId * rowSize + lmIdx * 4, (DELTA_MIN << FROM_WEIGHT_BITS) | fromWeight);
-                return false;
-            } else {
-                landmarkWeightDA.setInt(nodeId * rowSize + lmIdx * 4, (delta << FROM_WEIGHT_BITS) | fromWeight);
-                return true;
+                delta = DELTA_MIN;
+                maxedOut |= TO_MAXED_OUT;
             }
         }
+        landmarkWeightDA.setInt(nodeId * rowSize + lmIdx * 4, (delta << FROM_WEIGHT_BITS) | fromWeight);
+        return maxedOut;
+    }
+
+    /**
+     * Updates the stored weights after the weights of the specified edges changed, e.g. via the changeGraph API.
+     * Stored weights that are too big would make the approximation overestimate, which can only happen if edge weights
+     * decrease. So, starting from the changed edges, only the nodes whose weight from or to a landmark decreases are
+     * visited, i.e. the affected parts of the shortest path trees of the landmarks. Increased edge weights keep the
+     * stored weights, which are then still lower bounds but less precise. Decreases below the storage precision are
+     * ignored. The landmarks and subnetworks are not changed, so edges between two subnetworks are skipped. If a 'to'
+     * weight on the way is only stored as a bound, because its difference to the 'from' weight is too big, all weights
+     * of the landmark in this subnetwork are calculated again.
+     * <p>
+     * This method is not thread-safe. A request running meanwhile reads for every node and landmark either the old or
+     * the new weights, because both are written with a single int, but it can combine the old weights of one node
+     * with the new weights of another one and then find a suboptimal route. GraphHopper.changeGraph blocks routing
+     * requests while this method runs.
+     *
+     * @return the number of updated weights
+     */
+    public int updateWeights(IntHashSet changedEdges) {
+        if (!isInitialized())
+            throw new IllegalStateException("Initialize the landmark storage before updating its weights");
+
+        MinHeapWithUpdate heap = new MinHeapWithUpdate(graph.getNodes());
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        IntHashSet blockedEdges = null;
+        int updates = 0;
+        for (int lmIdx = 0; lmIdx < landmarks; lmIdx++) {
+            IntHashSet recalcSubnetworks = new IntHashSet();
+            IntDoubleHashMap fromWeights = findDecreasedWeights(lmIdx, changedEdges, true, heap, explorer, recalcSubnetworks);
+            IntDoubleHashMap toWeights = findDecreasedWeights(lmIdx, changedEdges, false, heap, explorer, recalcSubnetworks);
+            for (IntDoubleCursor cursor : fromWeights) {
+                int node = cursor.key;
+                // the 'to' weight is stored as difference to 'from', so it has to be written again
+                double toWeight = toWeights.containsKey(node) ? toWeights.get(node) : getToWeight(lmIdx, node);
+                if (!toWeights.containsKey(node) && toWeight != Integer.MAX_VALUE && !isExactToWeight(lmIdx, node))
+                    recalcSubnetworks.add(subnetworkStorage.getSubnetwork(node));
+                setScaledWeights(lmIdx, node, LM_ROW_LENGTH, cursor.value, toWeight);
+            }
+            for (IntDoubleCursor cursor : toWeights) {
+                if (!fromWeights.containsKey(cursor.key))
+                    setScaledWeight(lmIdx, cursor.key, LM_ROW_LENGTH, cursor.value, false);
+            }
+            updates += fromWeights.size() + toWeights.size();
+
+            for (IntCursor cursor : recalcSubnetworks) {
+                if (blockedEdges == null)
+                    blockedEdges = ruleLookup != null && ruleLookup.size() > 0 ? findBorderEdgeIds(ruleLookup) : new IntHashSet();
+                calcLandmarkWeights(lmIdx, landmarkIDs.get(cursor.value)[lmIdx], blockedEdges, null, cursor.value);
+                updates += graph.getNodes();
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * Runs a Dijkstra that starts at the changed edges and only continues at nodes whose weight from the landmark
+     * (if from is true) or to the landmark decreases.
+     *
+     * @return the decreased weights per node
+     */
+    private IntDoubleHashMap findDecreasedWeights(int lmIdx, IntHashSet changedEdges, boolean from,
+                                               MinHeapWithUpdate heap, EdgeExplorer explorer, IntHashSet recalcSubnetworks) {
+        IntDoubleHashMap weights = new IntDoubleHashMap();
+        heap.clear();
+        for (IntCursor cursor : changedEdges) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(cursor.value, Integer.MIN_VALUE);
+            relax(lmIdx, edge, from, weights, heap, recalcSubnetworks);
+            relax(lmIdx, edge.detach(true), from, weights, heap, recalcSubnetworks);
+        }
+        while (!heap.isEmpty()) {
+            EdgeIterator iter = explorer.setBaseNode(heap.poll());
+            while (iter.next()) {
+                relax(lmIdx, iter, from, weights, heap, recalcSubnetworks);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Tries to decrease the weight of the adjacent node of the specified edge via its base node. If from is false the
+     * edge is traversed from the adjacent to the base node.
+     */
+    private void relax(int lmIdx, EdgeIteratorState edge, boolean from, IntDoubleHashMap weights, MinHeapWithUpdate heap,
+                       IntHashSet recalcSubnetworks) {
+        int baseNode = edge.getBaseNode(), adjNode = edge.getAdjNode();
+        int subnetwork = subnetworkStorage.getSubnetwork(baseNode);
+        if (subnetwork <= UNCLEAR_SUBNETWORK || subnetwork != subnetworkStorage.getSubnetwork(adjNode)
+                || recalcSubnetworks.contains(subnetwork))
+            return;
+
+        double baseWeight = getCurrentWeight(lmIdx, baseNode, from, weights);
+        // for unreachable or maxed out 'from' weights the weights of all nodes behind them are maxed out too
+        if (baseWeight == Integer.MAX_VALUE || from && baseWeight >= FROM_WEIGHT_MAX)
+            return;
+        // the weighting does not check the access, this is usually done by the edge filter
+        if (from ? !edge.get(encoder.getAccessEnc()) : !edge.getReverse(encoder.getAccessEnc()))
+            return;
+        double edgeWeight = weighting.calcWeight(edge, !from, EdgeIterator.NO_EDGE);
+        if (Double.isInfinite(edgeWeight))
+            return;
+
+        double newWeight = baseWeight + edgeWeight / factor;
+        // the stored weights are rounded down, so only a decrease of more than one unit is a real decrease. the new
+        // weights are kept as double until they are stored to avoid accumulating the rounding errors.
+        if (newWeight >= getCurrentWeight(lmIdx, adjNode, from, weights) - 1)
+            return;
+        if (!from && !weights.containsKey(baseNode) && !isExactToWeight(lmIdx, baseNode)) {
+            // the stored 'to' weight is only a lower bound, because its difference to the 'from' weight was too big to
+            // be stored. the real weights are unknown, so the weights of this landmark have to be calculated again.
+            recalcSubnetworks.add(subnetwork);
+            return;
+        }
+        weights.put(adjNode, newWeight);
+        if (heap.contains(adjNode))
+            heap.update(adjNode, newWeight);
+        else
+            heap.push(adjNode, newWeight);
+    }
+
+    private boolean isExactToWeight(int lmIdx, int node) {
+        int delta = getPackedWeight(lmIdx, node) >> FROM_WEIGHT_BITS;
+        return delta > DELTA_MIN && delta < DELTA_MAX;
+    }
+
+    private double getCurrentWeight(int lmIdx, int node, boolean from, IntDoubleHashMap weights) {
+        if (weights.containsKey(node))
+            return weights.get(node);
+        return from ? getFromWeight(lmIdx, node) : getToWeight(lmIdx, node);
     }
 
     boolean isInfinity(long pointer) {
@@ -858,26 +1167,8 @@ public class LandmarkStorage implements Storable<LandmarkStorage> {
             return failed.get();
         }
 
-        public void initLandmarkWeights(final int lmIdx, int lmNodeId, final long rowSize) {
-            IntObjectMap<SPTEntry> map = from ? bestWeightMapFrom : bestWeightMapTo;
-            final AtomicInteger maxedout = new AtomicInteger(0);
-            final Map.Entry<Double, Double> finalMaxWeight = new MapEntry<>(0d, 0d);
-
-            map.forEach(new IntObjectProcedure<SPTEntry>() {
-                @Override
-                public void apply(int nodeId, SPTEntry b) {
-                    if (!lms.setWeight(lmIdx, nodeId, rowSize, b.weight, from)) {
-                        maxedout.incrementAndGet();
-                        finalMaxWeight.setValue(Math.max(b.weight, finalMaxWeight.getValue()));
-                    }
-                }
-            });
-
-            if ((double) maxedout.get() / map.size() > 0.1) {
-                LOGGER.warn("landmark " + lmIdx + " (" + nodeAccess.getLatitude(lmNodeId) + "," + nodeAccess.getLongitude(lmNodeId) + "): " +
-                        "too many " + (from ? "backward" : "delta") + " weights were maxed out (" + maxedout.get() + "/" + map.size() + "). Factor is too small " + lms.factor
-                        + ". To fix this increase maximum in config.yml: prepare.lm.weighting: " + weighting.getName() + "|maximum=" + finalMaxWeight.getValue() * 1.2);
-            }
+        IntObjectMap<SPTEntry> getWeights() {
+            return from ? bestWeightMapFrom : bestWeightMapTo;
         }
     }
 
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.lm;
 
+import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.util.AbstractAlgoPreparation;
 import com.graphhopper.routing.util.spatialrules.SpatialRuleLookup;
@@ -75,6 +76,14 @@ public class PrepareLandmarks extends AbstractAlgoPreparation {
         return this;
     }
 
+    /**
+     * @see LandmarkStorage#setLandmarkThreads(int)
+     */
+    public PrepareLandmarks setLandmarkThreads(int landmarkThreads) {
+        lms.setLandmarkThreads(landmarkThreads);
+        return this;
+    }
+
     /**
      * @see LandmarkStorage#setMaximumWeight(double)
      */
@@ -105,10 +114,17 @@ public class PrepareLandmarks extends AbstractAlgoPreparation {
         return this;
     }
 
-    LandmarkStorage getLandmarkStorage() {
+    public LandmarkStorage getLandmarkStorage() {
         return lms;
     }
 
+    /**
+     * @see LandmarkStorage#updateWeights(IntHashSet)
+     */
+    public int updateWeights(IntHashSet changedEdges) {
+        return lms.updateWeights(changedEdges);
+    }
+
     public int getSubnetworksWithLandmarks() {
         return lms.getSubnetworksWithLandmarks();
     }
@@ -155,6 +171,18 @@ public class PrepareLandmarks extends AbstractAlgoPreparation {
             astarbi.setApproximation(new LMApproximator(qGraph, this.graph.getNodes(), lms, activeLM, lms.getFactor(), false).
                     setEpsilon(epsilon));
             return algo;
+        } else if (algo instanceof TimeDependentAStar) {
+            if (!lms.isInitialized())
+                throw new IllegalStateException("Initialize landmark storage before creating algorithms");
+
+            double epsilon = opts.getHints().getDouble(Parameters.Algorithms.AStar.EPSILON, 1);
+            TimeDependentAStar tdAStar = (TimeDependentAStar) algo;
+            // the landmark weights are calculated without speed profiles, so they have to be scaled down to stay a
+            // lower bound for the faster buckets
+            double maxSpeedFactor = tdAStar.getTimeDependentWeighting().getMaxSpeedFactor();
+            tdAStar.setApproximation(new LMApproximator(qGraph, this.graph.getNodes(), lms, activeLM, lms.getFactor(), false).
+                    setEpsilon(epsilon / maxSpeedFactor));
+            return algo;
         } else if (algo instanceof AlternativeRoute) {
             if (!lms.isInitialized())
                 throw new IllegalStateException("Initialize landmark storage before creating algorithms");
@@ -17,9 +17,6 @@
  */
 package com.graphhopper.routing.querygraph;
 
-import com.carrotsearch.hppc.IntObjectMap;
-import com.carrotsearch.hppc.procedures.IntObjectProcedure;
-import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.ExtendedNodeAccess;
@@ -59,7 +56,6 @@ public class QueryGraph implements Graph {
 
     // Use LinkedHashSet for predictable iteration order.
     private final Set<VirtualEdgeIteratorState> unfavoredEdges = new LinkedHashSet<>(5);
-    private final IntObjectMap<List<EdgeIteratorState>> virtualEdgesAtRealNodes;
     private final List<List<EdgeIteratorState>> virtualEdgesAtVirtualNodes;
 
     public static QueryGraph lookup(Graph graph, QueryResult qr) {
@@ -87,10 +83,8 @@ public class QueryGraph implements Graph {
         else
             turnCostStorage = null;
 
-        // build data structures holding the virtual edges at all real/virtual nodes that are modified compared to the
-        // mainGraph.
-        final EdgeExplorer mainExplorer = mainGraph.createEdgeExplorer();
-        virtualEdgesAtRealNodes = buildVirtualEdgesAtRealNodes(mainExplorer);
+        // The edges at modified real nodes are not copied: the explorer iterates the additional virtual edges of
+        // GraphModification.EdgeChanges and then the edges of the mainGraph that were not removed.
         virtualEdgesAtVirtualNodes = buildVirtualEdgesAtVirtualNodes();
 
         // create very lightweight QueryGraph which uses variables from this QueryGraph (same virtual edges)
@@ -108,8 +102,7 @@ public class QueryGraph implements Graph {
         mainEdges = superQueryGraph.mainEdges;
         graphModification = superQueryGraph.graphModification;
         nodeAccess = superQueryGraph.nodeAccess;
-        virtualEdgesAtRealNodes = buildVirtualEdgesAtRealNodes(graph.createEdgeExplorer());
-        virtualEdgesAtVirtualNodes = buildVirtualEdgesAtVirtualNodes();
+        virtualEdgesAtVirtualNodes = superQueryGraph.virtualEdgesAtVirtualNodes;
     }
 
     @Override
@@ -292,36 +285,18 @@ public class QueryGraph implements Graph {
                     List<EdgeIteratorState> virtualEdges = virtualEdgesAtVirtualNodes.get(baseNode - mainNodes);
                     return virtualEdgeIterator.reset(virtualEdges);
                 } else {
-                    List<EdgeIteratorState> virtualEdges = virtualEdgesAtRealNodes.get(baseNode);
-                    if (virtualEdges == null) {
+                    GraphModification.EdgeChanges edgeChanges = graphModification.getEdgeChangesAtRealNodes().get(baseNode);
+                    if (edgeChanges == null) {
                         return mainExplorer.setBaseNode(baseNode);
                     } else {
-                        return virtualEdgeIterator.reset(virtualEdges);
+                        return virtualEdgeIterator.reset(edgeChanges.getAdditionalEdges(), mainExplorer, baseNode,
+                                edgeChanges.getRemovedEdges());
                     }
                 }
             }
         };
     }
 
-    private IntObjectMap<List<EdgeIteratorState>> buildVirtualEdgesAtRealNodes(final EdgeExplorer mainExplorer) {
-        final IntObjectMap<List<EdgeIteratorState>> virtualEdgesAtRealNodes =
-                new GHIntObjectHashMap<>(graphModification.getEdgeChangesAtRealNodes().size());
-        graphModification.getEdgeChangesAtRealNodes().forEach(new IntObjectProcedure<GraphModification.EdgeChanges>() {
-            @Override
-            public void apply(int node, GraphModification.EdgeChanges edgeChanges) {
-                List<EdgeIteratorState> virtualEdges = new ArrayList<>(edgeChanges.getAdditionalEdges());
-                EdgeIterator mainIter = mainExplorer.setBaseNode(node);
-                while (mainIter.next()) {
-                    if (!edgeChanges.getRemovedEdges().contains(mainIter.getEdge())) {
-                        virtualEdges.add(mainIter.detach(false));
-                    }
-                }
-                virtualEdgesAtRealNodes.put(node, virtualEdges);
-            }
-        });
-        return virtualEdgesAtRealNodes;
-    }
-
     private List<List<EdgeIteratorState>> buildVirtualEdgesAtVirtualNodes() {
         final List<List<EdgeIteratorState>> virtualEdgesAtVirtualNodes = new ArrayList<>();
         final int[] vEdges = {VE_BASE_REV, VE_ADJ};
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.querygraph;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.routing.profiles.BooleanEncodedValue;
 import com.graphhopper.routing.profiles.DecimalEncodedValue;
 import com.graphhopper.routing.profiles.EnumEncodedValue;
@@ -24,19 +25,31 @@ import com.graphhopper.routing.profiles.IntEncodedValue;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.IntsRef;
 import com.graphhopper.util.CHEdgeIteratorState;
+import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.PointList;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * Iterates over a list of virtual edges. At modified real nodes the remaining edges of the main graph are iterated
+ * afterwards directly from its edge iterator, which avoids detaching them for every new QueryGraph.
+ *
  * @author Peter Karich
  */
 class VirtualEdgeIterator implements EdgeIterator, CHEdgeIteratorState {
     private final EdgeFilter edgeFilter;
     private List<EdgeIteratorState> edges;
     private int current;
+    private EdgeExplorer mainExplorer;
+    private EdgeIterator mainIter;
+    private IntArrayList removedEdges;
+    private int baseNode;
+    private boolean onMainEdges;
+    // the number of edges mainIter moved over, to restore its position in getEdges
+    private int mainPosition;
 
     VirtualEdgeIterator(EdgeFilter edgeFilter, List<EdgeIteratorState> edges) {
         this.edges = edges;
@@ -45,24 +58,52 @@ class VirtualEdgeIterator implements EdgeIterator, CHEdgeIteratorState {
     }
 
     EdgeIterator reset(List<EdgeIteratorState> edges) {
+        return reset(edges, null, -1, null);
+    }
+
+    /**
+     * @param mainExplorer the explorer of the main graph whose edges at baseNode are iterated after the virtual edges,
+     *                     except those contained in removedEdges. It has to use the same edge filter as this iterator.
+     */
+    EdgeIterator reset(List<EdgeIteratorState> edges, EdgeExplorer mainExplorer, int baseNode, IntArrayList removedEdges) {
         this.edges = edges;
+        this.mainExplorer = mainExplorer;
+        this.mainIter = mainExplorer == null ? null : mainExplorer.setBaseNode(baseNode);
+        this.baseNode = baseNode;
+        this.removedEdges = removedEdges;
+        onMainEdges = false;
+        mainPosition = 0;
         current = -1;
         return this;
     }
 
     @Override
     public boolean next() {
-        current++;
-        while (current < edges.size() && !edgeFilter.accept(edges.get(current))) {
+        if (!onMainEdges) {
             current++;
+            while (current < edges.size() && !edgeFilter.accept(edges.get(current))) {
+                current++;
+            }
+            if (current < edges.size())
+                return true;
+            if (mainIter == null)
+                return false;
+            onMainEdges = true;
         }
-        return current < edges.size();
+        while (mainIter.next()) {
+            mainPosition++;
+            if (!removedEdges.contains(mainIter.getEdge()))
+                return true;
+        }
+        return false;
     }
 
     @Override
     public EdgeIteratorState detach(boolean reverse) {
         if (reverse)
             throw new IllegalStateException("Not yet supported");
+        if (onMainEdges)
+            return mainIter.detach(false);
         return getCurrentEdge();
     }
 
@@ -211,10 +252,10 @@ class VirtualEdgeIterator implements EdgeIterator, CHEdgeIteratorState {
 
     @Override
     public String toString() {
-        if (current >= 0 && current < edges.size()) {
-            return "virtual edge: " + getCurrentEdge() + ", all: " + edges.toString();
+        if (onMainEdges || current >= 0 && current < edges.size()) {
+            return "virtual edge: " + getCurrentEdge() + ", all: " + getEdges().toString();
         } else {
-            return "virtual edge: (invalid)" + ", all: " + edges.toString();
+            return "virtual edge: (invalid)" + ", all: " + getEdges().toString();
         }
     }
 
@@ -281,10 +322,27 @@ class VirtualEdgeIterator implements EdgeIterator, CHEdgeIteratorState {
     }
 
     private EdgeIteratorState getCurrentEdge() {
-        return edges.get(current);
+        return onMainEdges ? mainIter : edges.get(current);
     }
 
+    /**
+     * @return all edges of the current base node including the remaining edges of the main graph. The current
+     * iteration is not affected.
+     */
     public List<EdgeIteratorState> getEdges() {
-        return edges;
+        if (mainExplorer == null)
+            return edges;
+        List<EdgeIteratorState> result = new ArrayList<>(edges);
+        // the explorer re-uses its iterator, so mainIter is restarted here and moved back to its position afterwards
+        EdgeIterator iter = mainExplorer.setBaseNode(baseNode);
+        while (iter.next()) {
+            if (!removedEdges.contains(iter.getEdge()))
+                result.add(iter.detach(false));
+        }
+        mainIter = mainExplorer.setBaseNode(baseNode);
+        for (int i = 0; i < mainPosition; i++) {
+            mainIter.next();
+        }
+        return result;
     }
 }
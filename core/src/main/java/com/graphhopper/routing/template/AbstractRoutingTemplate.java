@@ -1,8 +1,16 @@
 package com.graphhopper.routing.template;
 
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.storage.index.QueryResultCache;
 import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -11,6 +19,81 @@ import java.util.List;
 public class AbstractRoutingTemplate {
     // result from lookup
     protected List<QueryResult> queryResults;
+    private QueryResultCache snapCache;
+    private long searchNanos;
+
+    /**
+     * @param snapCache the cache for the snapping of the points or null to look up every point in the location index
+     */
+    public void setSnapCache(QueryResultCache snapCache) {
+        this.snapCache = snapCache;
+    }
+
+    /**
+     * @return the time the routing algorithms needed in all calls of calcPaths without the path extraction, summed
+     * over all legs
+     */
+    public long getSearchNanos() {
+        return searchNanos;
+    }
+
+    /**
+     * @param nanos the time the algorithm needed to calculate the specified paths including their extraction
+     */
+    protected void addSearchNanos(long nanos, List<Path> paths) {
+        for (Path path : paths) {
+            nanos -= path.getExtractionNanos();
+        }
+        searchNanos += nanos;
+    }
+
+    /**
+     * Finds the closest edges for all points with the same filter. Points that are not in the snap cache are looked up
+     * together if the location index supports it.
+     *
+     * @param filterKey identifies the edgeFilter in the snap cache
+     */
+    protected List<QueryResult> findClosest(LocationIndex locationIndex, List<GHPoint> points, EdgeFilter edgeFilter,
+                                            String filterKey) {
+        QueryResult[] results = new QueryResult[points.size()];
+        int cacheVersion = snapCache == null ? 0 : snapCache.getVersion();
+        IntArrayList missing = new IntArrayList(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            if (snapCache != null)
+                results[i] = snapCache.get(points.get(i).lat, points.get(i).lon, filterKey);
+            if (results[i] == null)
+                missing.add(i);
+        }
+        if (missing.isEmpty())
+            return Arrays.asList(results);
+
+        if (locationIndex instanceof LocationIndexTree) {
+            double[] lats = new double[missing.size()];
+            double[] lons = new double[missing.size()];
+            for (int i = 0; i < missing.size(); i++) {
+                lats[i] = points.get(missing.get(i)).lat;
+                lons[i] = points.get(missing.get(i)).lon;
+            }
+            List<QueryResult> batchResults = ((LocationIndexTree) locationIndex).findClosestBatch(lats, lons, edgeFilter);
+            for (int i = 0; i < missing.size(); i++) {
+                results[missing.get(i)] = batchResults.get(i);
+            }
+        } else {
+            for (int i = 0; i < missing.size(); i++) {
+                GHPoint point = points.get(missing.get(i));
+                results[missing.get(i)] = locationIndex.findClosest(point.lat, point.lon, edgeFilter);
+            }
+        }
+
+        if (snapCache != null) {
+            for (int i = 0; i < missing.size(); i++) {
+                QueryResult qr = results[missing.get(i)];
+                if (qr.isValid())
+                    snapCache.put(qr, filterKey, cacheVersion);
+            }
+        }
+        return Arrays.asList(results);
+    }
 
     protected PointList getWaypoints() {
         PointList pointList = new PointList(queryResults.size(), true);
@@ -39,6 +39,7 @@ import com.graphhopper.util.Parameters;
 import com.graphhopper.util.Parameters.Algorithms;
 import com.graphhopper.util.Parameters.Algorithms.RoundTrip;
 import com.graphhopper.util.PathMerger;
+import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.Translation;
 import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.shapes.GHPoint;
@@ -85,7 +86,7 @@ public class RoundTripRoutingTemplate extends AbstractRoutingTemplate implements
         TourStrategy strategy = new MultiPointTour(new Random(seed), distanceInMeter, roundTripPointCount, initialHeading);
         queryResults = new ArrayList<>(2 + strategy.getNumberOfGeneratedPoints());
         EdgeFilter edgeFilter = DefaultEdgeFilter.allEdges(encoder);
-        QueryResult startQR = locationIndex.findClosest(start.lat, start.lon, edgeFilter);
+        QueryResult startQR = findClosest(locationIndex, Collections.singletonList(start), edgeFilter, encoder.toString()).get(0);
         if (!startQR.isValid())
             throw new PointNotFoundException("Cannot find point 0: " + start, 0);
 
@@ -134,7 +135,9 @@ public class RoundTripRoutingTemplate extends AbstractRoutingTemplate implements
             QueryResult endQR = queryResults.get(qrIndex);
             int endNode = (endQR == start) ? endQR.getClosestNode() : endQR.getClosestEdge().getBaseNode();
 
+            StopWatch sw = new StopWatch().start();
             Path path = algo.calcPath(startNode, endNode);
+            addSearchNanos(sw.stop().getNanos(), Collections.singletonList(path));
             visitedNodesSum += algo.getVisitedNodes();
 
             pathList.add(path);
@@ -25,6 +25,8 @@ import com.graphhopper.routing.profiles.RoadClass;
 import com.graphhopper.routing.profiles.RoadEnvironment;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.util.*;
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
+import com.graphhopper.storage.GraphEpoch;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.*;
@@ -35,6 +37,10 @@ import com.graphhopper.util.shapes.GHPoint;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
 import static com.graphhopper.util.EdgeIterator.NO_EDGE;
@@ -53,6 +59,7 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
     protected final EncodingManager encodingManager;
     // result from route
     protected List<Path> pathList;
+    private ExecutorService legExecutor;
 
     public ViaRoutingTemplate(GHRequest ghRequest, GHResponse ghRsp, LocationIndex locationIndex, EncodingManager encodingManager) {
         this.locationIndex = locationIndex;
@@ -61,6 +68,14 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
         this.encodingManager = encodingManager;
     }
 
+    /**
+     * Calculates the legs between the via points with the specified executor if they are independent of each other,
+     * i.e. if there are no headings, curbsides or pass_through. The executor is usually shared by all requests.
+     */
+    public void setLegExecutor(ExecutorService legExecutor) {
+        this.legExecutor = legExecutor;
+    }
+
     @Override
     public List<QueryResult> lookup(List<GHPoint> points, FlagEncoder encoder) {
         if (points.size() < 2)
@@ -70,15 +85,25 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
         EdgeFilter strictEdgeFilter = !ghRequest.hasSnapPreventions() ? edgeFilter : new SnapPreventionEdgeFilter(edgeFilter,
                 encoder.getEnumEncodedValue(RoadClass.KEY, RoadClass.class),
                 encoder.getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class), ghRequest.getSnapPreventions());
+        // without point hints all points use the same filter and can be looked up together
+        List<QueryResult> batchResults = null;
+        if (!ghRequest.hasPointHints()) {
+            String filterKey = encoder + (ghRequest.hasSnapPreventions() ? "|" + ghRequest.getSnapPreventions() : "");
+            batchResults = findClosest(locationIndex, points, strictEdgeFilter, filterKey);
+        }
+
         queryResults = new ArrayList<>(points.size());
         for (int placeIndex = 0; placeIndex < points.size(); placeIndex++) {
             GHPoint point = points.get(placeIndex);
             QueryResult qr = null;
-            if (ghRequest.hasPointHints())
+            if (batchResults != null)
+                qr = batchResults.get(placeIndex);
+            else if (ghRequest.hasPointHints())
                 qr = locationIndex.findClosest(point.lat, point.lon, new NameSimilarityEdgeFilter(strictEdgeFilter, ghRequest.getPointHints().get(placeIndex)));
             else if (ghRequest.hasSnapPreventions())
                 qr = locationIndex.findClosest(point.lat, point.lon, strictEdgeFilter);
-            if (qr == null || !qr.isValid())
+            // a batch lookup without snap preventions already used edgeFilter
+            if (qr == null || !qr.isValid() && (batchResults == null || ghRequest.hasSnapPreventions()))
                 qr = locationIndex.findClosest(point.lat, point.lon, edgeFilter);
             if (!qr.isValid())
                 ghResponse.addError(new PointNotFoundException("Cannot find point " + placeIndex + ": " + point, placeIndex));
@@ -94,6 +119,13 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
         long visitedNodesSum = 0L;
         final boolean viaTurnPenalty = ghRequest.getHints().getBool(Routing.PASS_THROUGH, false);
         final int pointsCount = ghRequest.getPoints().size();
+        // with a departure time every leg starts when the previous one arrives
+        TimeDependentWeighting tdWeighting = algoOpts.getWeighting() instanceof TimeDependentWeighting
+                ? (TimeDependentWeighting) algoOpts.getWeighting() : null;
+        if (legExecutor != null && pointsCount > 2 && !viaTurnPenalty && ghRequest.getCurbsides().isEmpty() && !hasFavoredHeadings()
+                && tdWeighting == null)
+            return calcPathsInParallel(queryGraph, algoFactory, algoOpts);
+
         pathList = new ArrayList<>(pointsCount - 1);
 
         List<DirectionResolverResult> directions = Collections.emptyList();
@@ -127,7 +159,10 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
             queryGraph.enforceHeading(toQResult.getClosestNode(), ghRequest.getFavoredHeading(placeIndex), true);
 
             sw = new StopWatch().start();
-            RoutingAlgorithm algo = algoFactory.createAlgo(queryGraph, algoOpts);
+            AlgorithmOptions legAlgoOpts = algoOpts;
+            if (tdWeighting != null && placeIndex > 1)
+                legAlgoOpts = AlgorithmOptions.start(algoOpts).weighting(tdWeighting).build();
+            RoutingAlgorithm algo = algoFactory.createAlgo(queryGraph, legAlgoOpts);
             String debug = ", algoInit:" + sw.stop().getSeconds() + "s";
 
             sw = new StopWatch().start();
@@ -168,6 +203,7 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
                 tmpPathList = algo.calcPaths(fromQResult.getClosestNode(), toQResult.getClosestNode());
             }
             debug += ", " + algo.getName() + "-routing:" + sw.stop().getSeconds() + "s";
+            addSearchNanos(sw.getNanos(), tmpPathList);
             if (tmpPathList.isEmpty())
                 throw new IllegalStateException("At least one path has to be returned for " + fromQResult + " -> " + toQResult);
 
@@ -182,6 +218,8 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
             }
 
             altResponse.addDebugInfo(debug);
+            if (tdWeighting != null)
+                tdWeighting = tdWeighting.withDepartureTime(tdWeighting.getDepartureTime() + tmpPathList.get(0).getTime());
 
             // reset all direction enforcements in queryGraph to avoid influencing next path
             queryGraph.clearUnfavoredStatus();
@@ -200,6 +238,110 @@ public class ViaRoutingTemplate extends AbstractRoutingTemplate implements Routi
         return pathList;
     }
 
+    private boolean hasFavoredHeadings() {
+        for (int i = 0; i < ghRequest.getPoints().size(); i++) {
+            if (ghRequest.hasFavoredHeading(i))
+                return true;
+        }
+        return false;
+    }
+
+    private static class Leg {
+        List<Path> paths;
+        int visitedNodes;
+        long searchNanos;
+        String debug;
+    }
+
+    /**
+     * Without headings and pass_through nothing is changed in the queryGraph between the legs, so every leg can use
+     * its own algorithm in parallel. The paths are merged in the order of the points like for the sequential case.
+     */
+    private List<Path> calcPathsInParallel(final QueryGraph queryGraph, final RoutingAlgorithmFactory algoFactory, final AlgorithmOptions algoOpts) {
+        final int pointsCount = ghRequest.getPoints().size();
+        // the legs have to read the same edge flags like the lookup, see GraphEpoch
+        final GraphEpoch epoch = GraphEpoch.getPinned();
+        List<Future<Leg>> futures = new ArrayList<>(pointsCount - 1);
+        for (int placeIndex = 1; placeIndex < pointsCount; placeIndex++) {
+            final QueryResult fromQResult = queryResults.get(placeIndex - 1);
+            final QueryResult toQResult = queryResults.get(placeIndex);
+            futures.add(legExecutor.submit(new Callable<Leg>() {
+                @Override
+                public Leg call() {
+                    if (epoch == null)
+                        return calcLeg();
+
+                    epoch.pin();
+                    try {
+                        return calcLeg();
+                    } finally {
+                        epoch.unpin();
+                    }
+                }
+
+                private Leg calcLeg() {
+                    StopWatch sw = new StopWatch().start();
+                    RoutingAlgorithm algo = algoFactory.createAlgo(queryGraph, algoOpts);
+                    String debug = ", algoInit:" + sw.stop().getSeconds() + "s";
+
+                    sw = new StopWatch().start();
+                    List<Path> tmpPathList = algo.calcPaths(fromQResult.getClosestNode(), toQResult.getClosestNode());
+                    debug += ", " + algo.getName() + "-routing:" + sw.stop().getSeconds() + "s";
+                    long searchNanos = sw.getNanos();
+                    if (tmpPathList.isEmpty())
+                        throw new IllegalStateException("At least one path has to be returned for " + fromQResult + " -> " + toQResult);
+
+                    int idx = 0;
+                    for (Path path : tmpPathList) {
+                        if (path.getTime() < 0)
+                            throw new RuntimeException("Time was negative " + path.getTime() + " for index " + idx + ". Please report as bug and include:" + ghRequest);
+
+                        debug += ", " + path.getDebugInfo();
+                        idx++;
+                    }
+                    Leg leg = new Leg();
+                    leg.paths = tmpPathList;
+                    leg.debug = debug;
+                    leg.visitedNodes = algo.getVisitedNodes();
+                    leg.searchNanos = searchNanos;
+                    return leg;
+                }
+            }));
+        }
+
+        pathList = new ArrayList<>(pointsCount - 1);
+        long visitedNodesSum = 0L;
+        try {
+            for (Future<Leg> future : futures) {
+                Leg leg = future.get();
+                if (leg.visitedNodes >= algoOpts.getMaxVisitedNodes())
+                    throw new IllegalArgumentException("No path found due to maximum nodes exceeded " + algoOpts.getMaxVisitedNodes());
+
+                pathList.addAll(leg.paths);
+                addSearchNanos(leg.searchNanos, leg.paths);
+                altResponse.addDebugInfo(leg.debug);
+                visitedNodesSum += leg.visitedNodes;
+                altResponse.addDebugInfo("visited nodes sum: " + visitedNodesSum);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while calculating the legs", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            // do not waste the shared threads on the remaining legs of a failed request
+            for (Future<Leg> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        ghResponse.getHints().put("visited_nodes.sum", visitedNodesSum);
+        ghResponse.getHints().put("visited_nodes.average", (float) visitedNodesSum / (pointsCount - 1));
+        return pathList;
+    }
+
     private int ignoreThrowOrAcceptImpossibleCurbsides(int edge, int placeIndex, boolean forceCurbsides) {
         if (edge != NO_EDGE) {
             return edge;
@@ -0,0 +1,186 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SpeedProfileStorage;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Divides the weight and the time of the wrapped weighting by the speed factor of the {@link SpeedProfileStorage} at
+ * the time the edge is entered. Turn costs of a wrapped {@link TurnWeighting} are scaled with the edge they lead to.
+ * The methods without a time use the departure time for every edge. The time-dependent routing algorithm uses
+ * {@link #calcWeight(EdgeIteratorState, boolean, int, long)} with the arrival time at the edge and the
+ * post-processing uses {@link #calcMillis(Weighting, EdgeIteratorState, boolean, int, long)} with the time elapsed
+ * since the departure.
+ * <p>
+ * The buckets are calculated in the specified time zone, but a change of the UTC offset during the week of the
+ * departure (daylight saving time) is ignored.
+ */
+public class TimeDependentWeighting extends AbstractAdjustedWeighting {
+    private static final String DEPARTURE_TIME_PATTERN = "yyyy-MM-dd'T'HH:mm:ssXXX";
+    private final SpeedProfileStorage speedProfiles;
+    private final Graph graph;
+    // only set if virtual edges have to be mapped to their original edge
+    private final QueryGraph queryGraph;
+    private final long departureTime;
+    private final TimeZone timeZone;
+    private final long weekStart;
+    private final double maxSpeedFactor;
+
+    public TimeDependentWeighting(Weighting superWeighting, Graph graph, SpeedProfileStorage speedProfiles,
+                                  long departureTime, TimeZone timeZone) {
+        super(superWeighting);
+        if (speedProfiles == null)
+            throw new IllegalArgumentException("No speed profiles set");
+        this.speedProfiles = speedProfiles;
+        this.graph = graph;
+        this.queryGraph = graph instanceof QueryGraph ? (QueryGraph) graph : null;
+        this.departureTime = departureTime;
+        this.timeZone = timeZone;
+        this.weekStart = getWeekStart(departureTime, timeZone);
+        this.maxSpeedFactor = speedProfiles.getMaxSpeedFactor();
+    }
+
+    /**
+     * @return the time in milliseconds since the epoch
+     */
+    public long getDepartureTime() {
+        return departureTime;
+    }
+
+    /**
+     * @return a copy of this weighting with the specified departure time, e.g. for the next leg of a route
+     */
+    public TimeDependentWeighting withDepartureTime(long departureTime) {
+        return new TimeDependentWeighting(superWeighting, graph, speedProfiles, departureTime, timeZone);
+    }
+
+    /**
+     * @return the factor by which the weight of an edge can be smaller than the weight of the wrapped weighting
+     */
+    public double getMaxSpeedFactor() {
+        return maxSpeedFactor;
+    }
+
+    @Override
+    public double getMinWeight(double distance) {
+        return superWeighting.getMinWeight(distance) / maxSpeedFactor;
+    }
+
+    @Override
+    public double calcWeight(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId) {
+        return calcWeight(edgeState, reverse, prevOrNextEdgeId, departureTime);
+    }
+
+    /**
+     * @param time the time in milliseconds since the epoch when the edge is entered
+     */
+    public double calcWeight(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId, long time) {
+        return superWeighting.calcWeight(edgeState, reverse, prevOrNextEdgeId) / getSpeedFactor(edgeState, reverse, time);
+    }
+
+    @Override
+    public long calcMillis(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId) {
+        return calcMillis(edgeState, reverse, prevOrNextEdgeId, departureTime);
+    }
+
+    /**
+     * @param time the time in milliseconds since the epoch when the edge is entered
+     */
+    public long calcMillis(EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId, long time) {
+        return Math.round(superWeighting.calcMillis(edgeState, reverse, prevOrNextEdgeId) / getSpeedFactor(edgeState, reverse, time));
+    }
+
+    /**
+     * Calculates the time of an edge that is entered the specified milliseconds after the departure. Used to sum up
+     * the edges of a path in the same way as the time-dependent routing algorithm, e.g. for the instructions. Other
+     * weightings ignore the elapsed time.
+     */
+    public static long calcMillis(Weighting weighting, EdgeIteratorState edgeState, boolean reverse, int prevOrNextEdgeId,
+                                  long elapsedMillis) {
+        if (weighting instanceof TimeDependentWeighting) {
+            TimeDependentWeighting tdWeighting = (TimeDependentWeighting) weighting;
+            return tdWeighting.calcMillis(edgeState, reverse, prevOrNextEdgeId, tdWeighting.departureTime + elapsedMillis);
+        }
+        return weighting.calcMillis(edgeState, reverse, prevOrNextEdgeId);
+    }
+
+    private double getSpeedFactor(EdgeIteratorState edgeState, boolean reverse, long time) {
+        int edge = edgeState.getEdge();
+        if (queryGraph != null && queryGraph.isVirtualEdge(edge)) {
+            VirtualEdgeIteratorState virtualEdge = (VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            edge = GHUtility.getEdgeFromEdgeKey(virtualEdge.getOriginalEdgeKey());
+        }
+        // the direction of the profile is relative to the stored edge
+        boolean storageReverse = reverse != edgeState.get(EdgeIteratorState.REVERSE_STATE);
+        return speedProfiles.getSpeedFactor(edge, storageReverse, SpeedProfileStorage.getBucket(time - weekStart));
+    }
+
+    @Override
+    public boolean matches(HintsMap reqMap) {
+        return superWeighting.matches(reqMap);
+    }
+
+    @Override
+    public String getName() {
+        return "time_dependent";
+    }
+
+    /**
+     * @return the start of the week (Monday 00:00) of the specified time in the specified time zone
+     */
+    static long getWeekStart(long time, TimeZone timeZone) {
+        Calendar calendar = Calendar.getInstance(timeZone, Locale.ROOT);
+        calendar.setTimeInMillis(time);
+        int daysSinceMonday = (calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, -daysSinceMonday);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Parses the departure time of a request, either in milliseconds since the epoch or in the ISO 8601 format with
+     * an offset, e.g. 2019-10-07T08:00:00+02:00 or 2019-10-07T06:00:00Z.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public static long parseDepartureTime(String departureTime) {
+        try {
+            if (departureTime.matches("\\d+"))
+                return Long.parseLong(departureTime);
+            return new SimpleDateFormat(DEPARTURE_TIME_PATTERN, Locale.ROOT).parse(departureTime).getTime();
+        } catch (NumberFormatException | ParseException ex) {
+            throw new IllegalArgumentException("Cannot parse departure time " + departureTime
+                    + ", use the milliseconds since the epoch or e.g. 2019-10-07T08:00:00+02:00", ex);
+        }
+    }
+}
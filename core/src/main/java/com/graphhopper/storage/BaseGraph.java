@@ -17,8 +17,11 @@
  */
 package com.graphhopper.storage;
 
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.graphhopper.coll.GHBitSet;
 import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.coll.SparseIntIntArray;
 import com.graphhopper.routing.profiles.*;
 import com.graphhopper.routing.util.AllEdgesIterator;
@@ -29,8 +32,7 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.Locale;
+import java.util.*;
 
 import static com.graphhopper.util.Helper.nf;
 
@@ -59,6 +61,7 @@ class BaseGraph implements Graph {
     final StringIndex stringIndex;
     // can be null if turn costs are not supported
     final TurnCostStorage turnCostStorage;
+    SpeedProfileStorage speedProfileStorage;
     final BitUtil bitUtil;
     final EncodingManager encodingManager;
     final EdgeAccess edgeAccess;
@@ -93,7 +96,13 @@ class BaseGraph implements Graph {
     private GHBitSet removedNodes;
     private int edgeEntryIndex, nodeEntryIndex;
     private long maxGeoRef;
+    // if true the pillar nodes are stored as varint encoded deltas, see createCompressedWayGeometryBytes
+    private boolean compressedWayGeometry;
     private boolean frozen = false;
+    // the edge flags and stale preparations visible to threads that are not pinned to an older epoch
+    private volatile GraphEpoch epoch = new GraphEpoch(this, new GHIntObjectHashMap<IntsRef>(0), Collections.<String>emptySet());
+    // replaced epochs that might still be pinned by a thread, only accessed by the writer
+    private final List<GraphEpoch> retiredEpochs = new ArrayList<>();
 
     public BaseGraph(Directory dir, final EncodingManager encodingManager, boolean withElevation,
                      InternalGraphEventListener listener, boolean withTurnCosts, int segmentSize) {
@@ -233,15 +242,32 @@ class BaseGraph implements Graph {
 
     protected int loadWayGeometryHeader() {
         maxGeoRef = bitUtil.combineIntsToLong(wayGeometry.getHeader(0), wayGeometry.getHeader(4));
+        // the format of the loaded geometry wins, older files are not compressed
+        compressedWayGeometry = wayGeometry.getHeader(8) == 1;
         return 1;
     }
 
     protected int setWayGeometryHeader() {
         wayGeometry.setHeader(0, bitUtil.getIntLow(maxGeoRef));
         wayGeometry.setHeader(4, bitUtil.getIntHigh(maxGeoRef));
+        wayGeometry.setHeader(8, compressedWayGeometry ? 1 : 0);
         return 1;
     }
 
+    /**
+     * Stores the pillar nodes as varint encoded deltas instead of fixed 4 byte integers, which makes the geometry
+     * usually less than half as big. Has to be called before create, for an existing graph the stored format is used.
+     * The first pillar node is stored relative to the tower node A of the edge, so the location of a tower node must
+     * not change after the geometry of one of its edges was set.
+     */
+    void setCompressedWayGeometry(boolean compressedWayGeometry) {
+        this.compressedWayGeometry = compressedWayGeometry;
+    }
+
+    boolean isCompressedWayGeometry() {
+        return compressedWayGeometry;
+    }
+
     void initStorage() {
         edgeEntryIndex = 0;
         nodeEntryIndex = 0;
@@ -277,6 +303,17 @@ class BaseGraph implements Graph {
         return turnCostStorage != null;
     }
 
+    /**
+     * Adds a storage for time-dependent speed profiles. Has to be called before create or loadExisting.
+     */
+    void setSpeedProfiles(boolean speedProfiles) {
+        speedProfileStorage = speedProfiles ? new SpeedProfileStorage(dir) : null;
+    }
+
+    boolean supportsSpeedProfiles() {
+        return speedProfileStorage != null;
+    }
+
     /**
      * Initializes the node storage such that each node has no edge and no turn cost entry
      */
@@ -391,6 +428,9 @@ class BaseGraph implements Graph {
         if (supportsTurnCosts()) {
             turnCostStorage.create(initSize);
         }
+        if (supportsSpeedProfiles()) {
+            speedProfileStorage.create(initSize);
+        }
         initStorage();
         // 0 stands for no separate geoRef
         maxGeoRef = 4;
@@ -467,6 +507,9 @@ class BaseGraph implements Graph {
         if (supportsTurnCosts()) {
             turnCostStorage.flush();
         }
+        if (supportsSpeedProfiles()) {
+            speedProfileStorage.flush();
+        }
     }
 
     public void close() {
@@ -479,11 +522,15 @@ class BaseGraph implements Graph {
         if (supportsTurnCosts()) {
             turnCostStorage.close();
         }
+        if (supportsSpeedProfiles()) {
+            speedProfileStorage.close();
+        }
     }
 
     long getCapacity() {
         return edges.getCapacity() + nodes.getCapacity() + stringIndex.getCapacity()
-                + wayGeometry.getCapacity() + (supportsTurnCosts() ? turnCostStorage.getCapacity() : 0);
+                + wayGeometry.getCapacity() + (supportsTurnCosts() ? turnCostStorage.getCapacity() : 0)
+                + (supportsSpeedProfiles() ? speedProfileStorage.getCapacity() : 0);
     }
 
     long getMaxGeoRef() {
@@ -510,6 +557,9 @@ class BaseGraph implements Graph {
         if (supportsTurnCosts() && !turnCostStorage.loadExisting())
             throw new IllegalStateException("Cannot load turn cost storage. corrupt file or directory? " + dir);
 
+        if (supportsSpeedProfiles() && !speedProfileStorage.loadExisting())
+            throw new IllegalStateException("Cannot load speed profile storage. corrupt file or directory? " + dir);
+
         // first define header indices of this storage
         initStorage();
 
@@ -554,6 +604,98 @@ class BaseGraph implements Graph {
         return iter;
     }
 
+    /**
+     * Pins the current epoch to the calling thread, see GraphEpoch. If the thread is already pinned to an epoch of
+     * this graph this epoch is returned and pinned again.
+     */
+    GraphEpoch pinEpoch() {
+        GraphEpoch pinned = GraphEpoch.getPinned();
+        if (pinned != null && pinned.owner == this) {
+            pinned.pin();
+            return pinned;
+        }
+
+        while (true) {
+            GraphEpoch current = epoch;
+            current.pin();
+            // the epoch could have been replaced before we were registered as reader, and the writer does not wait for us then
+            if (current == epoch)
+                return current;
+            current.unpin();
+        }
+    }
+
+    /**
+     * @return the epoch the calling thread is pinned to or the current epoch if it is not pinned
+     */
+    GraphEpoch getReadEpoch() {
+        GraphEpoch pinned = GraphEpoch.getPinned();
+        return pinned != null && pinned.owner == this ? pinned : epoch;
+    }
+
+    GraphEpoch getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Replaces the flags of the specified edges. All edges and flags are checked before the first one is written, so
+     * an invalid change leaves the graph untouched. The new flags are published in a new epoch first and written to
+     * the edges storage only after all threads pinned to an older epoch are finished, so a pinned thread never sees
+     * the change in the middle of its work. Threads that read the graph without pinning it could read partially
+     * written flags.
+     */
+    synchronized void changeEdgeFlags(IntObjectMap<IntsRef> edgeFlags) {
+        IntObjectMap<IntsRef> changedFlags = new GHIntObjectHashMap<>(edgeFlags.size());
+        for (IntObjectCursor<IntsRef> cursor : edgeFlags) {
+            if (cursor.key < 0 || cursor.key >= edgeCount)
+                throw new IllegalArgumentException("Edge " + cursor.key + " does not exist, edges: " + edgeCount);
+            if (cursor.value.length != intsForFlags)
+                throw new IllegalArgumentException("Edge flags need " + intsForFlags + " ints but were " + cursor.value.length);
+            changedFlags.put(cursor.key, IntsRef.deepCopyOf(cursor.value));
+        }
+
+        Set<String> stalePreparations = epoch.getStalePreparations();
+        publishEpoch(changedFlags, stalePreparations);
+        awaitRetiredEpochs();
+        // now every pinned thread reads the changed edges from the epoch and not from the storage
+        for (IntObjectCursor<IntsRef> cursor : changedFlags) {
+            edgeAccess.writeFlags(edgeAccess.toPointer(cursor.key), cursor.value);
+        }
+        publishEpoch(new GHIntObjectHashMap<IntsRef>(0), stalePreparations);
+    }
+
+    /**
+     * Publishes a new epoch where the specified preparations are stale and waits until no thread is pinned to an
+     * older epoch, so afterwards no thread can use a preparation that is newly marked as stale.
+     */
+    synchronized void setStalePreparations(Set<String> stalePreparations) {
+        publishEpoch(epoch.getChangedFlags(), Collections.unmodifiableSet(new HashSet<>(stalePreparations)));
+        awaitRetiredEpochs();
+    }
+
+    private void publishEpoch(IntObjectMap<IntsRef> changedFlags, Set<String> stalePreparations) {
+        retiredEpochs.add(epoch);
+        epoch = new GraphEpoch(this, changedFlags, stalePreparations);
+    }
+
+    private void awaitRetiredEpochs() {
+        GraphEpoch pinned = GraphEpoch.getPinned();
+        if (pinned != null && pinned.owner == this)
+            throw new IllegalStateException("Cannot wait for the pinned epochs from a thread that is pinned itself");
+
+        for (GraphEpoch retired : retiredEpochs) {
+            while (retired.hasReaders()) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the routing requests of an older epoch", ex);
+                }
+            }
+        }
+        retiredEpochs.clear();
+    }
+
     // for test only
     void setEdgeCount(int cnt) {
         edgeCount = cnt;
@@ -649,6 +791,11 @@ class BaseGraph implements Graph {
             turnCostStorage.copyTo(clonedG.turnCostStorage);
         }
 
+        // speed profiles
+        if (supportsSpeedProfiles() && clonedG.supportsSpeedProfiles()) {
+            speedProfileStorage.copyTo(clonedG.speedProfileStorage);
+        }
+
         if (removedNodes == null)
             clonedG.removedNodes = null;
         else
@@ -834,6 +981,10 @@ class BaseGraph implements Graph {
         return turnCostStorage;
     }
 
+    public SpeedProfileStorage getSpeedProfileStorage() {
+        return speedProfileStorage;
+    }
+
     @Override
     public int getOtherNode(int edge, int node) {
         long edgePointer = edgeAccess.toPointer(edge);
@@ -880,6 +1031,11 @@ class BaseGraph implements Graph {
                 throw new IllegalArgumentException("Cannot use pointlist which is " + pillarNodes.getDimension()
                         + "D for graph which is " + nodeAccess.getDimension() + "D");
 
+            if (compressedWayGeometry) {
+                setCompressedWayGeometry_(pillarNodes, edgePointer, reverse);
+                return;
+            }
+
             long existingGeoRef = Helper.toUnsignedLong(edges.getInt(edgePointer + E_GEO));
 
             int len = pillarNodes.getSize();
@@ -936,17 +1092,114 @@ class BaseGraph implements Graph {
         return bytes;
     }
 
+    private void setCompressedWayGeometry_(PointList pillarNodes, long edgePointer, boolean reverse) {
+        byte[] bytes = createCompressedWayGeometryBytes(pillarNodes, reverse, edgeAccess.getNodeA(edgePointer));
+        long geoRef = Helper.toUnsignedLong(edges.getInt(edgePointer + E_GEO));
+        // an entry starts with the number of its ints, so a shorter geometry can reuse the space
+        int ints = geoRef == 0 ? 0 : readVarInt(wayGeometry, geoRef * 4L);
+        if (ints * 4 - varIntLength(ints) < bytes.length) {
+            ints = bytes.length / 4 + 1;
+            while (ints * 4 - varIntLength(ints) < bytes.length) {
+                ints++;
+            }
+            geoRef = nextGeoRef(ints - 1);
+            ensureGeometry(geoRef * 4L, ints * 4);
+            byte[] intsBytes = new byte[5];
+            wayGeometry.setBytes(geoRef * 4L, intsBytes, writeVarInt(intsBytes, 0, ints));
+        }
+        wayGeometry.setBytes(geoRef * 4L + varIntLength(ints), bytes, bytes.length);
+        edges.setInt(edgePointer + E_GEO, Helper.toSignedInt(geoRef));
+    }
+
+    /**
+     * Encodes the number of points followed by the differences of lat, lon (and ele) to the previous point. The first
+     * point is encoded as the difference to the tower node A of the edge, the elevation of the first point as the
+     * difference to 0 as the elevation of tower nodes can still change, see NodeElevationInterpolator. All values are
+     * zigzag encoded varints, so pillar nodes that are close to each other need only one or two bytes per value.
+     */
+    private byte[] createCompressedWayGeometryBytes(PointList pillarNodes, boolean reverse, int nodeA) {
+        if (reverse)
+            pillarNodes.reverse();
+
+        int len = pillarNodes.getSize();
+        boolean is3D = nodeAccess.is3D();
+        // a varint needs at most 5 bytes
+        byte[] bytes = new byte[5 + len * nodeAccess.getDimension() * 5];
+        int pos = writeVarInt(bytes, 0, len);
+        int prevLat = Helper.degreeToInt(nodeAccess.getLatitude(nodeA));
+        int prevLon = Helper.degreeToInt(nodeAccess.getLongitude(nodeA));
+        int prevEle = 0;
+        for (int i = 0; i < len; i++) {
+            // an overflow of the differences does not matter as the decoding overflows in the same way
+            int lat = Helper.degreeToInt(pillarNodes.getLatitude(i));
+            pos = writeVarInt(bytes, pos, zigZag(lat - prevLat));
+            prevLat = lat;
+            int lon = Helper.degreeToInt(pillarNodes.getLongitude(i));
+            pos = writeVarInt(bytes, pos, zigZag(lon - prevLon));
+            prevLon = lon;
+            if (is3D) {
+                int ele = Helper.eleToInt(pillarNodes.getElevation(i));
+                pos = writeVarInt(bytes, pos, zigZag(ele - prevEle));
+                prevEle = ele;
+            }
+        }
+        return Arrays.copyOf(bytes, pos);
+    }
+
+    static int writeVarInt(byte[] bytes, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+        return pos;
+    }
+
+    static int readVarInt(DataAccess da, long pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = da.getByte(pos++);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+    }
+
+    /**
+     * @return the number of bytes writeVarInt needs for the specified value
+     */
+    static int varIntLength(int value) {
+        return value == 0 ? 1 : (38 - Integer.numberOfLeadingZeros(value)) / 7;
+    }
+
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     private PointList fetchWayGeometry_(long edgePointer, boolean reverse, int mode, int baseNode, int adjNode) {
         long geoRef = Helper.toUnsignedLong(edges.getInt(edgePointer + E_GEO));
         int count = 0;
         byte[] bytes = null;
+        int index = 0;
+        long pos = 0;
         if (geoRef > 0) {
             geoRef *= 4L;
-            count = wayGeometry.getInt(geoRef);
+            if (compressedWayGeometry) {
+                // the points are decoded directly from the storage, see createCompressedWayGeometryBytes
+                pos = geoRef + varIntLength(readVarInt(wayGeometry, geoRef));
+                count = readVarInt(wayGeometry, pos);
+                pos += varIntLength(count);
+            } else {
+                count = wayGeometry.getInt(geoRef);
 
-            geoRef += 4L;
-            bytes = new byte[count * nodeAccess.getDimension() * 4];
-            wayGeometry.getBytes(geoRef, bytes, bytes.length);
+                geoRef += 4L;
+                bytes = new byte[count * nodeAccess.getDimension() * 4];
+                wayGeometry.getBytes(geoRef, bytes, bytes.length);
+            }
         } else if (mode == 0)
             return PointList.EMPTY;
 
@@ -957,17 +1210,39 @@ class BaseGraph implements Graph {
         } else if ((mode & 1) != 0)
             pillarNodes.add(nodeAccess, baseNode);
 
-        int index = 0;
-        for (int i = 0; i < count; i++) {
-            double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            if (nodeAccess.is3D()) {
-                pillarNodes.add(lat, lon, Helper.intToEle(bitUtil.toInt(bytes, index)));
+        if (compressedWayGeometry && count > 0) {
+            int nodeA = edgeAccess.getNodeA(edgePointer);
+            int lat = Helper.degreeToInt(nodeAccess.getLatitude(nodeA));
+            int lon = Helper.degreeToInt(nodeAccess.getLongitude(nodeA));
+            int ele = 0;
+            for (int i = 0; i < count; i++) {
+                int value = readVarInt(wayGeometry, pos);
+                pos += varIntLength(value);
+                lat += unZigZag(value);
+                value = readVarInt(wayGeometry, pos);
+                pos += varIntLength(value);
+                lon += unZigZag(value);
+                if (nodeAccess.is3D()) {
+                    value = readVarInt(wayGeometry, pos);
+                    pos += varIntLength(value);
+                    ele += unZigZag(value);
+                    pillarNodes.add(Helper.intToDegree(lat), Helper.intToDegree(lon), Helper.intToEle(ele));
+                } else {
+                    pillarNodes.add(Helper.intToDegree(lat), Helper.intToDegree(lon));
+                }
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
                 index += 4;
-            } else {
-                pillarNodes.add(lat, lon);
+                double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
+                index += 4;
+                if (nodeAccess.is3D()) {
+                    pillarNodes.add(lat, lon, Helper.intToEle(bitUtil.toInt(bytes, index)));
+                    index += 4;
+                } else {
+                    pillarNodes.add(lat, lon);
+                }
             }
         }
 
@@ -1179,6 +1454,7 @@ class BaseGraph implements Graph {
         boolean freshFlags;
         int edgeId = -1;
         private final IntsRef edgeFlags;
+        private final GraphEpoch epoch;
         int chFlags;
 
         public CommonEdgeIterator(long edgePointer, EdgeAccess edgeAccess, BaseGraph baseGraph) {
@@ -1186,6 +1462,7 @@ class BaseGraph implements Graph {
             this.edgeAccess = edgeAccess;
             this.baseGraph = baseGraph;
             this.edgeFlags = new IntsRef(baseGraph.intsForFlags);
+            this.epoch = baseGraph.getReadEpoch();
         }
 
         @Override
@@ -1212,7 +1489,11 @@ class BaseGraph implements Graph {
         @Override
         public IntsRef getFlags() {
             if (!freshFlags) {
-                edgeAccess.readFlags(edgePointer, edgeFlags);
+                IntsRef changedFlags = epoch.getChangedFlags(edgeId);
+                if (changedFlags == null)
+                    edgeAccess.readFlags(edgePointer, edgeFlags);
+                else
+                    System.arraycopy(changedFlags.ints, changedFlags.offset, edgeFlags.ints, 0, edgeFlags.length);
                 freshFlags = true;
             }
             return edgeFlags;
@@ -50,7 +50,8 @@ public class DAType {
 
     /**
      * Read-only memory mapped DA object. To avoid write access useful for reading on mobile or
-     * embedded data stores.
+     * embedded data stores. Also several processes on one host can load the same graph without
+     * copying it into their heap: they all map the same files and share the page cache.
      */
     public static final DAType MMAP_RO = new DAType(MemRef.MMAP, true, false, false);
     /**
@@ -78,6 +79,8 @@ public class DAType {
         DAType type;
         if (dataAccess.contains("SYNC"))
             throw new IllegalArgumentException("SYNC option is no longer supported, see #982");
+        else if (dataAccess.contains("MMAP_RO"))
+            type = DAType.MMAP_RO;
         else if (dataAccess.contains("MMAP"))
             type = DAType.MMAP;
         else if (dataAccess.contains("UNSAFE"))
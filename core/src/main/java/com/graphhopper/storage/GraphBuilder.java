@@ -36,6 +36,8 @@ public class GraphBuilder {
     private boolean turnCosts;
     private long bytes = 100;
     private int segmentSize = -1;
+    private boolean compressedWayGeometry;
+    private boolean speedProfiles;
     private List<CHProfile> chProfiles = new ArrayList<>();
 
     public static GraphBuilder start(EncodingManager encodingManager) {
@@ -97,13 +99,24 @@ public class GraphBuilder {
         return this;
     }
 
+    public GraphBuilder setCompressedWayGeometry(boolean compressedWayGeometry) {
+        this.compressedWayGeometry = compressedWayGeometry;
+        return this;
+    }
+
+    public GraphBuilder setSpeedProfiles(boolean speedProfiles) {
+        this.speedProfiles = speedProfiles;
+        return this;
+    }
+
     /**
      * Default graph is a {@link GraphHopperStorage} with an in memory directory and disabled storing on flush.
      * Afterwards you'll need to call {@link GraphHopperStorage#create} to have a usable object. Better use
      * {@link #create} directly.
      */
     public GraphHopperStorage build() {
-        return new GraphHopperStorage(chProfiles, dir, encodingManager, elevation, turnCosts, segmentSize);
+        return new GraphHopperStorage(chProfiles, dir, encodingManager, elevation, turnCosts, segmentSize).
+                setCompressedWayGeometry(compressedWayGeometry).setSpeedProfiles(speedProfiles);
     }
 
     /**
@@ -0,0 +1,122 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.carrotsearch.hppc.IntObjectMap;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable state of the parts of a graph that can change while it is used for routing, i.e. the edge flags and
+ * the preparations that are currently stale, see GraphHopper.changeGraph.
+ * <p>
+ * A routing request pins the current epoch for its whole duration via GraphHopperStorage.pinEpoch, so all edge
+ * explorers and edge states created by the pinning thread read the edge flags of this epoch, even if a newer epoch is
+ * published meanwhile. A writer first publishes the changed edge flags in a new epoch and waits until no thread is
+ * pinned to an older epoch before it writes them to the storage. So requests never wait for a writer, only a writer
+ * waits for the requests that started before its change.
+ */
+public final class GraphEpoch {
+    private static final ThreadLocal<Pin> PINNED = new ThreadLocal<>();
+    final BaseGraph owner;
+    private final IntObjectMap<IntsRef> changedFlags;
+    private final Set<String> stalePreparations;
+    private final AtomicInteger readers = new AtomicInteger();
+
+    GraphEpoch(BaseGraph owner, IntObjectMap<IntsRef> changedFlags, Set<String> stalePreparations) {
+        this.owner = owner;
+        this.changedFlags = changedFlags;
+        this.stalePreparations = stalePreparations;
+    }
+
+    /**
+     * @return the epoch the current thread is pinned to or null if it is not pinned
+     */
+    public static GraphEpoch getPinned() {
+        Pin pin = PINNED.get();
+        return pin == null ? null : pin.epoch;
+    }
+
+    /**
+     * Pins this epoch to the current thread, e.g. to use the epoch of a request in another thread. The caller has to
+     * make sure that this epoch is still pinned by another thread or is the current epoch of the graph, see
+     * GraphHopperStorage.pinEpoch. Every call has to be followed by a call of unpin.
+     */
+    public void pin() {
+        Pin pin = PINNED.get();
+        if (pin == null) {
+            readers.incrementAndGet();
+            PINNED.set(new Pin(this));
+        } else if (pin.epoch == this) {
+            pin.depth++;
+        } else {
+            throw new IllegalStateException("The current thread is already pinned to another epoch");
+        }
+    }
+
+    public void unpin() {
+        Pin pin = PINNED.get();
+        if (pin == null || pin.epoch != this)
+            throw new IllegalStateException("The current thread is not pinned to this epoch");
+
+        if (pin.depth > 0) {
+            pin.depth--;
+        } else {
+            PINNED.remove();
+            readers.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return true if the specified preparation must not be used by a request pinned to this epoch, e.g. because its
+     * weights are updated meanwhile
+     */
+    public boolean isStale(String preparation) {
+        return stalePreparations.contains(preparation);
+    }
+
+    public Set<String> getStalePreparations() {
+        return stalePreparations;
+    }
+
+    /**
+     * @return the flags of the specified edge if they are changed in this epoch but maybe not yet in the storage,
+     * otherwise null
+     */
+    IntsRef getChangedFlags(int edgeId) {
+        return changedFlags.isEmpty() ? null : changedFlags.get(edgeId);
+    }
+
+    IntObjectMap<IntsRef> getChangedFlags() {
+        return changedFlags;
+    }
+
+    boolean hasReaders() {
+        return readers.get() > 0;
+    }
+
+    private static class Pin {
+        final GraphEpoch epoch;
+        int depth;
+
+        Pin(GraphEpoch epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.storage;
 
+import com.carrotsearch.hppc.IntObjectMap;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.EncodingManager;
@@ -352,6 +353,71 @@ public final class GraphHopperStorage implements GraphStorage, Graph {
         return baseGraph.isFrozen();
     }
 
+    /**
+     * Stores the way geometry as varint encoded deltas, which reduces its size on disk and in memory. This has to be
+     * called before create. When loading an existing graph the stored format is used.
+     */
+    public GraphHopperStorage setCompressedWayGeometry(boolean compressedWayGeometry) {
+        baseGraph.checkInit();
+        baseGraph.setCompressedWayGeometry(compressedWayGeometry);
+        return this;
+    }
+
+    public boolean isCompressedWayGeometry() {
+        return baseGraph.isCompressedWayGeometry();
+    }
+
+    /**
+     * Adds a {@link SpeedProfileStorage} for time-dependent routing. This has to be called before create or
+     * loadExisting, for an existing graph the speed profiles have to exist as well.
+     */
+    public GraphHopperStorage setSpeedProfiles(boolean speedProfiles) {
+        baseGraph.checkInit();
+        baseGraph.setSpeedProfiles(speedProfiles);
+        return this;
+    }
+
+    /**
+     * @return the {@link SpeedProfileStorage} or null if not enabled via {@link #setSpeedProfiles}
+     */
+    public SpeedProfileStorage getSpeedProfileStorage() {
+        return baseGraph.getSpeedProfileStorage();
+    }
+
+    /**
+     * Pins the current epoch of this graph to the calling thread, so all edge explorers and edge states created by
+     * this thread read the same edge flags even if changeEdgeFlags is called meanwhile. Every call has to be followed
+     * by a call of GraphEpoch.unpin, see GraphEpoch.
+     */
+    public GraphEpoch pinEpoch() {
+        return baseGraph.pinEpoch();
+    }
+
+    /**
+     * @return the most recently published epoch
+     */
+    public GraphEpoch getEpoch() {
+        return baseGraph.getEpoch();
+    }
+
+    /**
+     * Changes the flags of the specified edges of a frozen graph. Nothing is written if one of the edges or flags is
+     * invalid. Threads that pinned an epoch before keep seeing the old flags, but this method waits until they unpin
+     * it, see GraphEpoch.
+     */
+    public void changeEdgeFlags(IntObjectMap<IntsRef> edgeFlags) {
+        baseGraph.changeEdgeFlags(edgeFlags);
+    }
+
+    /**
+     * Marks the specified preparations as stale for all threads that pin an epoch afterwards and waits until no
+     * thread is pinned to an older epoch. The preparations are not interpreted by the storage, see
+     * GraphEpoch.isStale.
+     */
+    public void setStalePreparations(Set<String> stalePreparations) {
+        baseGraph.setStalePreparations(stalePreparations);
+    }
+
     @Override
     public String toDetailsString() {
         String str = baseGraph.toDetailsString();
@@ -30,6 +30,8 @@ public class SPTEntry implements Cloneable, Comparable<SPTEntry> {
     public int adjNode;
     public double weight;
     public SPTEntry parent;
+    // the position in a SPTEntryHeap or -1 if the entry is not in a heap
+    int heapIndex = -1;
 
     public SPTEntry(int edgeId, int adjNode, double weight) {
         this.edge = edgeId;
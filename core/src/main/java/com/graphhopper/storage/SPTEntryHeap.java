@@ -0,0 +1,167 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap of shortest path tree entries ordered by their weight. In contrast to java.util.PriorityQueue
+ * every entry knows its position in the heap, so the weight of an entry that is already in the heap can be changed
+ * in O(log n) via {@link #update(SPTEntry)} instead of removing it in O(n) and adding it again. The weights are
+ * copied into a separate array, so comparing two entries does not need to access the entries.
+ * <p>
+ * An entry can be in only one heap at a time.
+ */
+public class SPTEntryHeap<E extends SPTEntry> {
+    private E[] entries;
+    private double[] keys;
+    private int size;
+
+    public SPTEntryHeap() {
+        this(16);
+    }
+
+    @SuppressWarnings("unchecked")
+    public SPTEntryHeap(int initialCapacity) {
+        entries = (E[]) new SPTEntry[Math.max(2, initialCapacity)];
+        keys = new double[entries.length];
+    }
+
+    public void add(E entry) {
+        if (entry.heapIndex >= 0)
+            throw new IllegalStateException("Entry is already in a heap: " + entry);
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        siftUp(size++, entry, entry.weight);
+    }
+
+    /**
+     * Moves the entry to the position matching its changed weight, which can be lower or higher than before.
+     */
+    public void update(E entry) {
+        int index = entry.heapIndex;
+        if (index < 0 || index >= size || entries[index] != entry)
+            throw new IllegalStateException("Entry is not in this heap: " + entry);
+        if (entry.weight < keys[index])
+            siftUp(index, entry, entry.weight);
+        else
+            siftDown(index, entry, entry.weight);
+    }
+
+    /**
+     * Re-reads the weight of all entries, e.g. after the weight approximation of an A* search was changed.
+     */
+    public void updateAll() {
+        for (int i = 0; i < size; i++) {
+            keys[i] = entries[i].weight;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i, entries[i], keys[i]);
+        }
+    }
+
+    /**
+     * @return the entry at the specified position, which can be used to iterate over all entries in no particular order
+     */
+    public E get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " is not below size " + size);
+        return entries[index];
+    }
+
+    public boolean contains(E entry) {
+        int index = entry.heapIndex;
+        return index >= 0 && index < size && entries[index] == entry;
+    }
+
+    public E peek() {
+        if (size == 0)
+            throw new NoSuchElementException("Heap is empty");
+        return entries[0];
+    }
+
+    /**
+     * @return the entry with the smallest weight or null if the heap is empty
+     */
+    public E poll() {
+        if (size == 0)
+            return null;
+        E result = entries[0];
+        result.heapIndex = -1;
+        size--;
+        E last = entries[size];
+        double lastKey = keys[size];
+        entries[size] = null;
+        if (size > 0)
+            siftDown(0, last, lastKey);
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all entries in O(size). The capacity is kept.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            entries[i].heapIndex = -1;
+            entries[i] = null;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int index, E entry, double key) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (keys[parent] <= key)
+                break;
+            set(index, entries[parent], keys[parent]);
+            index = parent;
+        }
+        set(index, entry, key);
+    }
+
+    private void siftDown(int index, E entry, double key) {
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child])
+                child++;
+            if (key <= keys[child])
+                break;
+            set(index, entries[child], keys[child]);
+            index = child;
+        }
+        set(index, entry, key);
+    }
+
+    private void set(int index, E entry, double key) {
+        entries[index] = entry;
+        keys[index] = key;
+        entry.heapIndex = index;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds time-dependent speed profiles for the edges. A profile has one speed factor for every 15 minutes of a week,
+ * starting on Monday 00:00, and every factor is stored as a percentage of the speed the weighting calculates without
+ * a departure time in one byte, i.e. from 1% to 255%. Equal profiles are stored only once, so edges of the same class
+ * (e.g. all motorway edges around a city) share one profile and every edge direction only needs a 2 byte reference
+ * to it.
+ *
+ * @see com.graphhopper.routing.weighting.TimeDependentWeighting
+ */
+public class SpeedProfileStorage implements Storable<SpeedProfileStorage> {
+    public static final int NO_PROFILE = 0;
+    public static final int BUCKET_MINUTES = 15;
+    public static final int BUCKETS_PER_DAY = 24 * 60 / BUCKET_MINUTES;
+    public static final int BUCKETS = 7 * BUCKETS_PER_DAY;
+    // the profile IDs are stored as unsigned short and 0 is NO_PROFILE
+    private static final int MAX_PROFILES = 0xFFFF;
+    // every edge has one profile reference for each direction
+    private static final int BYTES_PER_EDGE = 4;
+
+    private final DataAccess profiles;
+    private final DataAccess edgeProfiles;
+    private int profileCount;
+    private int maxPercentage = 100;
+    // maps the factors to the profile ID to share equal profiles, created lazily for loaded profiles
+    private Map<ByteBuffer, Integer> profileIds;
+
+    public SpeedProfileStorage(Directory dir) {
+        this.profiles = dir.find("speed_profiles");
+        this.edgeProfiles = dir.find("speed_profile_edges");
+    }
+
+    public void setSegmentSize(int bytes) {
+        profiles.setSegmentSize(bytes);
+        edgeProfiles.setSegmentSize(bytes);
+    }
+
+    @Override
+    public SpeedProfileStorage create(long initBytes) {
+        profiles.create(initBytes);
+        edgeProfiles.create(initBytes);
+        profileIds = new HashMap<>();
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        profiles.setHeader(0, BUCKETS);
+        profiles.setHeader(1 * 4, profileCount);
+        profiles.setHeader(2 * 4, maxPercentage);
+        profiles.flush();
+        edgeProfiles.flush();
+    }
+
+    @Override
+    public void close() {
+        profiles.close();
+        edgeProfiles.close();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return profiles.isClosed();
+    }
+
+    @Override
+    public long getCapacity() {
+        return profiles.getCapacity() + edgeProfiles.getCapacity();
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (!profiles.loadExisting() || !edgeProfiles.loadExisting())
+            return false;
+
+        if (profiles.getHeader(0) != BUCKETS)
+            throw new IllegalStateException("Number of buckets per speed profile does not match the current configuration: " + profiles.getHeader(0) + " vs. " + BUCKETS);
+        profileCount = profiles.getHeader(4);
+        maxPercentage = profiles.getHeader(8);
+        return true;
+    }
+
+    /**
+     * Adds the specified profile or returns the ID of an equal profile that was added before.
+     *
+     * @param percentages the speed factor in percent for every bucket of the week, see {@link #getBucket}
+     * @return the ID of the profile that can be used for {@link #setEdgeProfile}
+     */
+    public int addProfile(int[] percentages) {
+        if (percentages.length != BUCKETS)
+            throw new IllegalArgumentException("A speed profile needs " + BUCKETS + " values but had " + percentages.length);
+
+        byte[] bytes = new byte[BUCKETS];
+        int max = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (percentages[i] < 1 || percentages[i] > 255)
+                throw new IllegalArgumentException("Speed percentage has to be in [1, 255] but was " + percentages[i] + " for bucket " + i);
+            bytes[i] = (byte) percentages[i];
+            max = Math.max(max, percentages[i]);
+        }
+
+        if (profileIds == null)
+            initProfileIds();
+        ByteBuffer key = ByteBuffer.wrap(bytes);
+        Integer existingId = profileIds.get(key);
+        if (existingId != null)
+            return existingId;
+
+        if (profileCount >= MAX_PROFILES)
+            throw new IllegalStateException("Cannot store more than " + MAX_PROFILES + " distinct speed profiles");
+        profileCount++;
+        int profileId = profileCount;
+        long pointer = (long) (profileId - 1) * BUCKETS;
+        profiles.ensureCapacity(pointer + BUCKETS);
+        profiles.setBytes(pointer, bytes, BUCKETS);
+        maxPercentage = Math.max(maxPercentage, max);
+        profileIds.put(key, profileId);
+        return profileId;
+    }
+
+    private void initProfileIds() {
+        profileIds = new HashMap<>();
+        for (int profileId = 1; profileId <= profileCount; profileId++) {
+            byte[] bytes = new byte[BUCKETS];
+            profiles.getBytes((long) (profileId - 1) * BUCKETS, bytes, BUCKETS);
+            profileIds.put(ByteBuffer.wrap(bytes), profileId);
+        }
+    }
+
+    /**
+     * @param reverse false for the direction from the base node to the adjacent node of the stored edge
+     */
+    public void setEdgeProfile(int edge, boolean reverse, int profileId) {
+        if (profileId < NO_PROFILE || profileId > profileCount)
+            throw new IllegalArgumentException("Speed profile " + profileId + " does not exist, profiles: " + profileCount);
+
+        long pointer = getEdgePointer(edge, reverse);
+        edgeProfiles.ensureCapacity(pointer + 2);
+        edgeProfiles.setShort(pointer, (short) profileId);
+    }
+
+    public int getEdgeProfile(int edge, boolean reverse) {
+        long pointer = getEdgePointer(edge, reverse);
+        // edges that were never set are outside of the capacity
+        if (pointer + 2 > edgeProfiles.getCapacity())
+            return NO_PROFILE;
+        return edgeProfiles.getShort(pointer) & 0xFFFF;
+    }
+
+    private long getEdgePointer(int edge, boolean reverse) {
+        return (long) edge * BYTES_PER_EDGE + (reverse ? 2 : 0);
+    }
+
+    /**
+     * @return the factor that has to be applied to the speed of the specified edge direction in the specified bucket,
+     * 1 if the edge has no profile
+     */
+    public double getSpeedFactor(int edge, boolean reverse, int bucket) {
+        int profileId = getEdgeProfile(edge, reverse);
+        if (profileId == NO_PROFILE)
+            return 1;
+        return (profiles.getByte((long) (profileId - 1) * BUCKETS + bucket) & 0xFF) / 100d;
+    }
+
+    /**
+     * @return an upper bound of all speed factors, at least 1. Used to keep the A* heuristics a lower bound.
+     */
+    public double getMaxSpeedFactor() {
+        return maxPercentage / 100d;
+    }
+
+    public int getProfileCount() {
+        return profileCount;
+    }
+
+    /**
+     * @param millisSinceWeekStart the milliseconds since Monday 00:00, values of a week or more wrap around
+     * @return the bucket of the specified time
+     */
+    public static int getBucket(long millisSinceWeekStart) {
+        return (int) ((millisSinceWeekStart / (BUCKET_MINUTES * 60_000L)) % BUCKETS);
+    }
+
+    public SpeedProfileStorage copyTo(SpeedProfileStorage speedProfileStorage) {
+        profiles.copyTo(speedProfileStorage.profiles);
+        edgeProfiles.copyTo(speedProfileStorage.edgeProfiles);
+        speedProfileStorage.profileCount = profileCount;
+        speedProfileStorage.maxPercentage = maxPercentage;
+        speedProfileStorage.profileIds = null;
+        return speedProfileStorage;
+    }
+
+    @Override
+    public String toString() {
+        return "speed_profiles";
+    }
+}
@@ -17,8 +17,12 @@
  */
 package com.graphhopper.storage.change;
 
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntObjectMap;
 import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.json.geo.JsonFeature;
 import com.graphhopper.routing.profiles.BooleanEncodedValue;
 import com.graphhopper.routing.profiles.DecimalEncodedValue;
@@ -28,8 +32,9 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphEdgeIdFinder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.IntsRef;
 import com.graphhopper.storage.index.LocationIndex;
-import com.graphhopper.util.EdgeIteratorState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +46,9 @@ import java.util.Map;
 /**
  * This graph applies permanent changes passed as JsonFeature to the specified graph.
  * <p>
+ * The new edge flags are calculated on copies and, for a GraphHopperStorage, written all at once via
+ * GraphHopperStorage.changeEdgeFlags, so an invalid feature does not leave a partially changed graph behind.
+ * <p>
  * This class is not thread-safe. It is currently only safe to use it via GraphHopper.changeGraph
  *
  * @author Peter Karich
@@ -50,6 +58,7 @@ public class ChangeGraphHelper {
     private final Graph graph;
     private final GraphEdgeIdFinder graphBrowser;
     private boolean enableLogging = false;
+    private final GHIntHashSet changedEdges = new GHIntHashSet();
 
     public ChangeGraphHelper(Graph graph, LocationIndex locationIndex) {
         this.graph = graph;
@@ -69,6 +78,8 @@ public class ChangeGraphHelper {
         if (em == null)
             throw new NullPointerException("EncodingManager cannot be null to change existing graph");
 
+        IntObjectMap<IntsRef> changedFlags = new GHIntObjectHashMap<>();
+        changedEdges.clear();
         long updates = 0;
         for (JsonFeature jsonFeature : features) {
             if (!jsonFeature.hasProperties())
@@ -77,19 +88,37 @@ public class ChangeGraphHelper {
             List<String> encodersAsStr = (List) jsonFeature.getProperty("vehicles");
             if (encodersAsStr == null) {
                 for (FlagEncoder encoder : em.fetchEdgeEncoders()) {
-                    updates += applyChange(jsonFeature, encoder);
+                    updates += applyChange(jsonFeature, encoder, changedFlags);
                 }
             } else {
                 for (String encoderStr : encodersAsStr) {
-                    updates += applyChange(jsonFeature, em.getEncoder(encoderStr));
+                    updates += applyChange(jsonFeature, em.getEncoder(encoderStr), changedFlags);
                 }
             }
         }
 
+        for (IntCursor cursor : changedFlags.keys()) {
+            changedEdges.add(cursor.value);
+        }
+        if (graph instanceof GraphHopperStorage) {
+            ((GraphHopperStorage) graph).changeEdgeFlags(changedFlags);
+        } else {
+            for (IntObjectCursor<IntsRef> cursor : changedFlags) {
+                graph.getEdgeIteratorState(cursor.key, Integer.MIN_VALUE).setFlags(cursor.value);
+            }
+        }
+
         return updates;
     }
 
-    private long applyChange(JsonFeature jsonFeature, FlagEncoder encoder) {
+    /**
+     * @return the IDs of the edges that were changed by the last call of applyChanges
+     */
+    public IntHashSet getChangedEdges() {
+        return changedEdges;
+    }
+
+    private long applyChange(JsonFeature jsonFeature, FlagEncoder encoder, IntObjectMap<IntsRef> changedFlags) {
         BooleanEncodedValue accessEnc = encoder.getAccessEnc();
         DecimalEncodedValue avSpeedEnc = encoder.getAverageSpeedEnc();
         long updates = 0;
@@ -106,23 +135,29 @@ public class ChangeGraphHelper {
         Map<String, Object> props = jsonFeature.getProperties();
         while (iter.hasNext()) {
             int edgeId = iter.next().value;
-            EdgeIteratorState edge = graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
+            // a previous feature could have changed the edge already
+            IntsRef flags = changedFlags.get(edgeId);
+            if (flags == null)
+                flags = IntsRef.deepCopyOf(graph.getEdgeIteratorState(edgeId, Integer.MIN_VALUE).getFlags());
             if (props.containsKey("access")) {
                 boolean value = (boolean) props.get("access");
                 updates++;
                 if (enableLogging)
                     logger.info(encoder.toString() + " - access change via feature " + jsonFeature.getId());
-                edge.set(accessEnc, value).setReverse(accessEnc, value);
+                accessEnc.setBool(false, flags, value);
+                accessEnc.setBool(true, flags, value);
+                changedFlags.put(edgeId, flags);
 
             } else if (props.containsKey("speed")) {
                 // TODO use different speed for the different directions (see e.g. Bike2WeightFlagEncoder)
                 double value = ((Number) props.get("speed")).doubleValue();
-                double oldSpeed = edge.get(avSpeedEnc);
+                double oldSpeed = avSpeedEnc.getDecimal(false, flags);
                 if (oldSpeed != value) {
                     updates++;
                     if (enableLogging)
                         logger.info(encoder.toString() + " - speed change via feature " + jsonFeature.getId() + ". Old: " + oldSpeed + ", new:" + value);
-                    edge.set(avSpeedEnc, value);
+                    avSpeedEnc.setDecimal(false, flags, value);
+                    changedFlags.put(edgeId, flags);
                 }
             }
         }
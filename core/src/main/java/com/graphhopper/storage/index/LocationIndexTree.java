@@ -19,6 +19,8 @@ package com.graphhopper.storage.index;
 
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.LongObjectMap;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.carrotsearch.hppc.predicates.IntPredicate;
 import com.graphhopper.coll.GHBitSet;
@@ -524,24 +526,29 @@ public class LocationIndexTree implements LocationIndex {
      */
     final boolean findNetworkEntries(double queryLat, double queryLon,
                                      GHIntHashSet foundEntries, int iteration) {
+        return findNetworkEntries(queryLat, queryLon, foundEntries, iteration, null);
+    }
+
+    private boolean findNetworkEntries(double queryLat, double queryLon,
+                                       GHIntHashSet foundEntries, int iteration, LongObjectMap<int[]> tileCache) {
         // find entries in border of searchbox
         for (int yreg = -iteration; yreg <= iteration; yreg++) {
             double subqueryLat = queryLat + yreg * deltaLat;
             double subqueryLonA = queryLon - iteration * deltaLon;
             double subqueryLonB = queryLon + iteration * deltaLon;
-            findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonA);
+            findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonA, tileCache);
 
             // minor optimization for iteration == 0
             if (iteration > 0)
-                findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonB);
+                findNetworkEntriesSingleRegion(foundEntries, subqueryLat, subqueryLonB, tileCache);
         }
 
         for (int xreg = -iteration + 1; xreg <= iteration - 1; xreg++) {
             double subqueryLon = queryLon + xreg * deltaLon;
             double subqueryLatA = queryLat - iteration * deltaLat;
             double subqueryLatB = queryLat + iteration * deltaLat;
-            findNetworkEntriesSingleRegion(foundEntries, subqueryLatA, subqueryLon);
-            findNetworkEntriesSingleRegion(foundEntries, subqueryLatB, subqueryLon);
+            findNetworkEntriesSingleRegion(foundEntries, subqueryLatA, subqueryLon, tileCache);
+            findNetworkEntriesSingleRegion(foundEntries, subqueryLatB, subqueryLon, tileCache);
         }
 
         if (iteration % 2 != 0) {
@@ -579,8 +586,31 @@ public class LocationIndexTree implements LocationIndex {
     }
 
     final void findNetworkEntriesSingleRegion(GHIntHashSet storedNetworkEntryIds, double queryLat, double queryLon) {
+        findNetworkEntriesSingleRegion(storedNetworkEntryIds, queryLat, queryLon, null);
+    }
+
+    /**
+     * @param tileCache if not null the node IDs of every tile are read only once from the tree. The reverse spatial
+     *                  key has exactly the bits of all layers, i.e. it identifies the leaf tile.
+     */
+    private void findNetworkEntriesSingleRegion(GHIntHashSet storedNetworkEntryIds, double queryLat, double queryLon,
+                                                LongObjectMap<int[]> tileCache) {
         long keyPart = createReverseKey(queryLat, queryLon);
-        fillIDs(keyPart, START_POINTER, storedNetworkEntryIds, 0);
+        if (tileCache == null) {
+            fillIDs(keyPart, START_POINTER, storedNetworkEntryIds, 0);
+            return;
+        }
+
+        int[] tileEntries = tileCache.get(keyPart);
+        if (tileEntries == null) {
+            GHIntHashSet set = new GHIntHashSet();
+            fillIDs(keyPart, START_POINTER, set, 0);
+            tileEntries = set.toArray();
+            tileCache.put(keyPart, tileEntries);
+        }
+        for (int entry : tileEntries) {
+            storedNetworkEntryIds.add(entry);
+        }
     }
 
     @Override
@@ -588,18 +618,62 @@ public class LocationIndexTree implements LocationIndex {
         if (isClosed())
             throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
 
-        GHIntHashSet allCollectedEntryIds = new GHIntHashSet();
+        return findClosest(queryLat, queryLon, edgeFilter, new FindClosestBuffers(graph.createEdgeExplorer(), null));
+    }
+
+    /**
+     * Does the same as {@link #findClosest(double, double, EdgeFilter)} for many points, e.g. for the points of a
+     * matrix or a GPX track. The points are processed in the order of their spatial key so that nearby points are
+     * looked up one after another, the node IDs of every visited tile are read only once and the sets of the searches
+     * are reused.
+     *
+     * @return the results in the order of the specified points
+     */
+    public List<QueryResult> findClosestBatch(double[] lats, double[] lons, EdgeFilter edgeFilter) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        if (lats.length != lons.length)
+            throw new IllegalArgumentException("Number of latitudes " + lats.length + " and longitudes " + lons.length + " must be equal");
+
+        final long[] keys = new long[lats.length];
+        Integer[] order = new Integer[lats.length];
+        for (int i = 0; i < lats.length; i++) {
+            keys[i] = keyAlgo.encode(lats[i], lons[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(keys[o1], keys[o2]);
+            }
+        });
+
+        FindClosestBuffers buffers = new FindClosestBuffers(graph.createEdgeExplorer(), new LongObjectHashMap<int[]>());
+        QueryResult[] results = new QueryResult[lats.length];
+        for (int index : order) {
+            results[index] = findClosest(lats[index], lons[index], edgeFilter, buffers);
+        }
+        return Arrays.asList(results);
+    }
+
+    private QueryResult findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter,
+                                    FindClosestBuffers buffers) {
+        GHIntHashSet allCollectedEntryIds = buffers.allCollectedEntryIds;
+        allCollectedEntryIds.clear();
         final QueryResult closestMatch = new QueryResult(queryLat, queryLon);
         for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
-            GHIntHashSet storedNetworkEntryIds = new GHIntHashSet();
-            boolean earlyFinish = findNetworkEntries(queryLat, queryLon, storedNetworkEntryIds, iteration);
+            GHIntHashSet storedNetworkEntryIds = buffers.storedNetworkEntryIds;
+            storedNetworkEntryIds.clear();
+            boolean earlyFinish = findNetworkEntries(queryLat, queryLon, storedNetworkEntryIds, iteration, buffers.tileCache);
             storedNetworkEntryIds.removeAll(allCollectedEntryIds);
             allCollectedEntryIds.addAll(storedNetworkEntryIds);
 
-            // clone storedIds to avoid interference with forEach
-            final GHBitSet checkBitset = new GHTBitSet(new GHIntHashSet(storedNetworkEntryIds));
+            // copy storedIds to avoid interference with forEach
+            buffers.checkedEntryIds.clear();
+            buffers.checkedEntryIds.addAll(storedNetworkEntryIds);
+            final GHBitSet checkBitset = buffers.checkBitset;
             // find nodes from the network entries which are close to 'point'
-            final EdgeExplorer explorer = graph.createEdgeExplorer();
+            final EdgeExplorer explorer = buffers.explorer;
             storedNetworkEntryIds.forEach(new IntPredicate() {
                 @Override
                 public boolean apply(int networkEntryNodeId) {
@@ -1013,6 +1087,23 @@ public class LocationIndexTree implements LocationIndex {
         }
     }
 
+    /**
+     * The sets and the explorer used by a findClosest search. They are created once for a batch of points.
+     */
+    private class FindClosestBuffers {
+        final GHIntHashSet allCollectedEntryIds = new GHIntHashSet();
+        final GHIntHashSet storedNetworkEntryIds = new GHIntHashSet();
+        final GHIntHashSet checkedEntryIds = new GHIntHashSet();
+        final GHBitSet checkBitset = new GHTBitSet(checkedEntryIds);
+        final EdgeExplorer explorer;
+        final LongObjectMap<int[]> tileCache;
+
+        FindClosestBuffers(EdgeExplorer explorer, LongObjectMap<int[]> tileCache) {
+            this.explorer = explorer;
+            this.tileCache = tileCache;
+        }
+    }
+
     /**
      * Make it possible to collect nearby location also for other purposes.
      */
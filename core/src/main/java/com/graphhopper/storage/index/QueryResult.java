@@ -135,6 +135,10 @@ public class QueryResult {
         return snappedPoint;
     }
 
+    void setSnappedPoint(GHPoint3D snappedPoint) {
+        this.snappedPoint = snappedPoint;
+    }
+
     /**
      * Calculates the closet point on the edge from the query point.
      */
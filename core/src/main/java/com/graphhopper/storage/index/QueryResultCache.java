@@ -0,0 +1,186 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.index;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.shapes.GHPoint3D;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of snapping results, for requests that use the same coordinates over and over again like depots
+ * or airports. The results are keyed by the coordinates rounded to 1e-6 degrees (about 0.1m) and a string which has to
+ * identify the edge filter, e.g. the vehicle and the snap preventions. Only the snapping is cached: every call of get
+ * returns a new QueryResult for the specified coordinates, which can be modified by QueryGraph.lookup.
+ * <p>
+ * Entries are removed if the snapped edge is changed, see {@link #invalidateEdges(IntHashSet)}. Note that a change can
+ * also make another edge the closest one, e.g. if an edge is opened, which is not detected.
+ * <p>
+ * This class is thread-safe.
+ */
+public class QueryResultCache {
+    private static final double PRECISION = 1e6;
+    private final Graph graph;
+    private final LinkedHashMap<Key, Entry> entries;
+    private long hits;
+    private long misses;
+    private int version;
+
+    public QueryResultCache(Graph graph, final int maxEntries) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("The snap cache needs a positive size but was " + maxEntries);
+        this.graph = graph;
+        this.entries = new LinkedHashMap<Key, Entry>(Math.min(maxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return a new QueryResult or null if the coordinates are not cached for the specified filter
+     */
+    public QueryResult get(double lat, double lon, String filterKey) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(new Key(lat, lon, filterKey));
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+
+        QueryResult qr = new QueryResult(lat, lon);
+        qr.setQueryDistance(entry.queryDistance);
+        qr.setWayIndex(entry.wayIndex);
+        qr.setClosestNode(entry.closestNode);
+        qr.setClosestEdge(graph.getEdgeIteratorState(entry.edge, entry.adjNode));
+        qr.setSnappedPosition(entry.snappedPosition);
+        qr.setSnappedPoint(new GHPoint3D(entry.snappedLat, entry.snappedLon, entry.snappedEle));
+        return qr;
+    }
+
+    /**
+     * The version changes with every invalidation. Get it before the lookup and pass it to put, so that a result
+     * calculated before a graph change is not stored.
+     */
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    /**
+     * Stores the snapping of the specified valid result. It must not be modified by QueryGraph.lookup before.
+     */
+    public void put(QueryResult qr, String filterKey, int version) {
+        if (!qr.isValid())
+            throw new IllegalArgumentException("Only valid results can be cached " + qr);
+
+        Entry entry = new Entry(qr);
+        Key key = new Key(qr.getQueryPoint().lat, qr.getQueryPoint().lon, filterKey);
+        synchronized (this) {
+            if (version == this.version)
+                entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Removes all entries that were snapped to one of the specified edges.
+     */
+    public synchronized void invalidateEdges(IntHashSet edges) {
+        version++;
+        Iterator<Entry> iter = entries.values().iterator();
+        while (iter.hasNext()) {
+            if (edges.contains(iter.next().edge))
+                iter.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        version++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static class Key {
+        final long lat;
+        final long lon;
+        final String filterKey;
+
+        Key(double lat, double lon, String filterKey) {
+            this.lat = Math.round(lat * PRECISION);
+            this.lon = Math.round(lon * PRECISION);
+            this.filterKey = filterKey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return lat == other.lat && lon == other.lon && filterKey.equals(other.filterKey);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (lat ^ (lat >>> 32));
+            result = 31 * result + (int) (lon ^ (lon >>> 32));
+            return 31 * result + filterKey.hashCode();
+        }
+    }
+
+    private static class Entry {
+        final double queryDistance;
+        final int wayIndex;
+        final int closestNode;
+        final int edge;
+        final int adjNode;
+        final QueryResult.Position snappedPosition;
+        final double snappedLat;
+        final double snappedLon;
+        final double snappedEle;
+
+        Entry(QueryResult qr) {
+            queryDistance = qr.getQueryDistance();
+            wayIndex = qr.getWayIndex();
+            closestNode = qr.getClosestNode();
+            edge = qr.getClosestEdge().getEdge();
+            adjNode = qr.getClosestEdge().getAdjNode();
+            snappedPosition = qr.getSnappedPosition();
+            GHPoint3D snappedPoint = qr.getSnappedPoint();
+            snappedLat = snappedPoint.lat;
+            snappedLon = snappedPoint.lon;
+            snappedEle = snappedPoint.ele;
+        }
+    }
+}
@@ -45,6 +45,8 @@ import static com.graphhopper.util.Helper.DIST_EARTH;
  */
 public class GHUtility {
     private static final Logger LOGGER = LoggerFactory.getLogger(GHUtility.class);
+    // a Hilbert index of this order needs 30 bits, so it can be combined with a node ID in one long
+    private static final int HILBERT_ORDER = 15;
 
     /**
      * This method could throw an exception if problems like index out of bounds etc
@@ -370,6 +372,77 @@ public class GHUtility {
         return createSortedGraph(g, sortedGraph, nodeList, edgeList);
     }
 
+    /**
+     * Sorts the nodes along a Hilbert curve over the bounds of the graph, so nodes that are close to each other on the
+     * map are mostly close in the storage too. The edges are sorted by their new base node, which places them and
+     * their geometry next to the edges of the neighbouring nodes. Compared to sortDFS this does not depend on the
+     * connectivity, which makes the layout predictable e.g. for the location index.
+     */
+    public static Graph sortHilbert(Graph g, Graph sortedGraph) {
+        if (g.getTurnCostStorage() != null) {
+            throw new IllegalArgumentException("Sorting the graph is currently not supported in the presence of turn costs");
+        }
+        int nodes = g.getNodes();
+        BBox bounds = g.getBounds();
+        NodeAccess na = g.getNodeAccess();
+        // the hilbert index uses the upper bits, so sorting the keys sorts by the index and then by the node ID
+        long[] nodeKeys = new long[nodes];
+        for (int node = 0; node < nodes; node++) {
+            int x = toHilbertCoordinate(na.getLongitude(node), bounds.minLon, bounds.maxLon);
+            int y = toHilbertCoordinate(na.getLatitude(node), bounds.minLat, bounds.maxLat);
+            nodeKeys[node] = hilbertIndex(x, y) << 32 | node;
+        }
+        Arrays.sort(nodeKeys);
+        GHIntArrayList nodeList = new GHIntArrayList(nodes);
+        nodeList.fill(nodes, -1);
+        for (int i = 0; i < nodes; i++) {
+            nodeList.set((int) nodeKeys[i], i);
+        }
+
+        int edges = g.getEdges();
+        long[] edgeKeys = new long[edges];
+        for (int edge = 0; edge < edges; edge++) {
+            edgeKeys[edge] = (long) nodeList.get(g.getEdgeIteratorState(edge, Integer.MIN_VALUE).getBaseNode()) << 32 | edge;
+        }
+        Arrays.sort(edgeKeys);
+        GHIntArrayList edgeList = new GHIntArrayList(edges);
+        for (int i = 0; i < edges; i++) {
+            edgeList.add((int) edgeKeys[i]);
+        }
+        return createSortedGraph(g, sortedGraph, nodeList, edgeList);
+    }
+
+    private static int toHilbertCoordinate(double value, double min, double max) {
+        int maxCoordinate = (1 << HILBERT_ORDER) - 1;
+        if (max <= min)
+            return 0;
+        return Math.max(0, Math.min(maxCoordinate, (int) ((value - min) / (max - min) * maxCoordinate)));
+    }
+
+    /**
+     * @return the distance of the specified cell along a Hilbert curve of order HILBERT_ORDER
+     */
+    static long hilbertIndex(int x, int y) {
+        int n = 1 << HILBERT_ORDER;
+        long index = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+        }
+        return index;
+    }
+
     static Graph createSortedGraph(Graph fromGraph, Graph toSortedGraph, final IntIndexedContainer oldToNewNodeList, final IntIndexedContainer newToOldEdgeList) {
         if (fromGraph.getTurnCostStorage() != null) {
             throw new IllegalArgumentException("Sorting the graph is currently not supported in the presence of turn costs");
@@ -449,7 +522,9 @@ public class GHUtility {
     public static GraphHopperStorage newStorage(GraphHopperStorage store) {
         Directory outdir = guessDirectory(store);
         boolean is3D = store.getNodeAccess().is3D();
-        return new GraphHopperStorage(store.getCHProfiles(), outdir, store.getEncodingManager(), is3D, store.getTurnCostStorage() != null).create(store.getNodes());
+        return new GraphHopperStorage(store.getCHProfiles(), outdir, store.getEncodingManager(), is3D, store.getTurnCostStorage() != null).
+                setCompressedWayGeometry(store.isCompressedWayGeometry()).
+                setSpeedProfiles(store.getSpeedProfileStorage() != null).create(store.getNodes());
     }
 
     public static int getAdjNode(Graph g, int edge, int adjNode) {
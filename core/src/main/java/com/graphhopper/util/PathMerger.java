@@ -23,6 +23,7 @@ import com.graphhopper.routing.Path;
 import com.graphhopper.routing.profiles.BooleanEncodedValue;
 import com.graphhopper.routing.profiles.Roundabout;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.util.details.PathDetailsBuilderFactory;
@@ -58,6 +59,8 @@ public class PathMerger {
     private PathDetailsBuilderFactory pathBuilderFactory;
     private List<String> requestedPathDetails = Collections.emptyList();
     private double favoredHeading = Double.NaN;
+    private final StopWatch instructionsSW = new StopWatch();
+    private final StopWatch pathDetailsSW = new StopWatch();
 
     public PathMerger(Graph graph, Weighting weighting) {
         this.graph = graph;
@@ -108,11 +111,18 @@ public class PathMerger {
                 continue;
             }
             description.addAll(path.getDescription());
+            Weighting pathWeighting = weighting;
+            if (weighting instanceof TimeDependentWeighting) {
+                // like for the routing every leg departs when the previous leg arrives
+                TimeDependentWeighting tdWeighting = (TimeDependentWeighting) weighting;
+                pathWeighting = tdWeighting.withDepartureTime(tdWeighting.getDepartureTime() + fullTimeInMillis);
+            }
             fullTimeInMillis += path.getTime();
             fullDistance += path.getDistance();
             fullWeight += path.getWeight();
             if (enableInstructions) {
-                InstructionList il = InstructionsFromEdges.calcInstructions(path, graph, weighting, roundaboutEnc, tr);
+                instructionsSW.start();
+                InstructionList il = InstructionsFromEdges.calcInstructions(path, graph, pathWeighting, roundaboutEnc, tr);
 
                 if (!il.isEmpty()) {
                     fullInstructions.addAll(il);
@@ -124,7 +134,7 @@ public class PathMerger {
                         fullInstructions.set(fullInstructions.size() - 1, newInstr);
                     }
                 }
-
+                instructionsSW.stop();
             }
             if (calcPoints || enableInstructions) {
                 PointList tmpPoints = path.calcPoints();
@@ -137,7 +147,9 @@ public class PathMerger {
                 }
 
                 fullPoints.add(tmpPoints);
-                altRsp.addPathDetails(PathDetailsFromEdges.calcDetails(path, encodingManager, weighting, requestedPathDetails, pathBuilderFactory, origPoints));
+                pathDetailsSW.start();
+                altRsp.addPathDetails(PathDetailsFromEdges.calcDetails(path, encodingManager, pathWeighting, requestedPathDetails, pathBuilderFactory, origPoints));
+                pathDetailsSW.stop();
                 origPoints = fullPoints.size();
             }
 
@@ -152,7 +164,9 @@ public class PathMerger {
         }
 
         if (enableInstructions) {
+            instructionsSW.start();
             fullInstructions = updateInstructionsWithContext(fullInstructions);
+            instructionsSW.stop();
             altRsp.setInstructions(fullInstructions);
         }
 
@@ -171,6 +185,20 @@ public class PathMerger {
         }
     }
 
+    /**
+     * @return the time spent on the instructions of all paths merged so far in nanoseconds
+     */
+    public long getInstructionsNanos() {
+        return instructionsSW.getNanos();
+    }
+
+    /**
+     * @return the time spent on the path details of all paths merged so far in nanoseconds
+     */
+    public long getPathDetailsNanos() {
+        return pathDetailsSW.getNanos();
+    }
+
     /**
      * This method iterates over all instructions and uses the available context to improve the instructions.
      * If the requests contains a heading, this method can transform the first continue to a u-turn if the heading
@@ -1,5 +1,6 @@
 package com.graphhopper.util.details;
 
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.Helper;
@@ -13,6 +14,8 @@ public class AverageSpeedDetails extends AbstractPathDetailsBuilder {
     private double decimalValue = -1;
     // will include the turn time penalty
     private int prevEdgeId = -1;
+    // the time since the start of the path when the current edge is entered
+    private long elapsedMillis = 0;
 
     public AverageSpeedDetails(Weighting weighting) {
         this(weighting, 0.1);
@@ -35,7 +38,9 @@ public class AverageSpeedDetails extends AbstractPathDetailsBuilder {
 
     @Override
     public boolean isEdgeDifferentToLastEdge(EdgeIteratorState edge) {
-        double tmpVal = edge.getDistance() / weighting.calcMillis(edge, false, prevEdgeId) * 3600;
+        long millis = TimeDependentWeighting.calcMillis(weighting, edge, false, prevEdgeId, elapsedMillis);
+        elapsedMillis += millis;
+        double tmpVal = edge.getDistance() / millis * 3600;
         if (Double.isInfinite(tmpVal))
             throw new IllegalStateException("average_speed was infinite for " + edge.fetchWayGeometry(3));
 
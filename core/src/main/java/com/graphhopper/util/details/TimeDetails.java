@@ -17,6 +17,7 @@
  */
 package com.graphhopper.util.details;
 
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.util.EdgeIteratorState;
 
@@ -33,6 +34,8 @@ public class TimeDetails extends AbstractPathDetailsBuilder {
     private int prevEdgeId = -1;
     // will include the turn time penalty
     private long time = 0;
+    // the time since the start of the path when the current edge is entered
+    private long elapsedMillis = 0;
 
     public TimeDetails(Weighting weighting) {
         super(TIME);
@@ -42,7 +45,8 @@ public class TimeDetails extends AbstractPathDetailsBuilder {
     @Override
     public boolean isEdgeDifferentToLastEdge(EdgeIteratorState edge) {
         if (edge.getEdge() != prevEdgeId) {
-            time = weighting.calcMillis(edge, false, prevEdgeId);
+            time = TimeDependentWeighting.calcMillis(weighting, edge, false, prevEdgeId, elapsedMillis);
+            elapsedMillis += time;
             prevEdgeId = edge.getEdge();
             return true;
         }
@@ -21,14 +21,21 @@ import com.graphhopper.json.geo.JsonFeature;
 import com.graphhopper.routing.util.CarFlagEncoder;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.parsers.OSMRoadEnvironmentParser;
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphBuilder;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.SpeedProfileStorage;
 import com.graphhopper.storage.change.ChangeGraphHelper;
 import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.QueryResultCache;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.Instruction;
+import com.graphhopper.util.Parameters;
 import com.graphhopper.util.PointList;
+import com.graphhopper.util.details.PathDetail;
+import com.graphhopper.util.shapes.GHPoint;
 import com.graphhopper.util.shapes.BBox;
 import org.junit.Test;
 
@@ -90,6 +97,97 @@ public class GraphHopperAPITest {
         instance.close();
     }
 
+    @Test
+    public void testDepartureTime() {
+        GraphHopper instance = new GraphHopper().
+                setStoreOnFlush(false).
+                setEncodingManager(encodingManager).setCHEnabled(false).
+                loadGraph(createRushHourGraph(10));
+        // 0 -> 2
+        GHRequest request = new GHRequest(42, 10, 42.01, 10.01);
+        GHResponse rsp = instance.route(request);
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().size());
+        long freeFlowTime = rsp.getBest().getTime();
+
+        request.getHints().put(Parameters.Routing.DEPARTURE_TIME, "2019-10-07T08:00:00Z");
+        rsp = instance.route(request);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(4, rsp.getBest().getPoints().size());
+        assertTrue(rsp.getBest().getTime() > freeFlowTime);
+
+        request.getHints().put(Parameters.Routing.DEPARTURE_TIME, "2019-10-07T10:00:00Z");
+        rsp = instance.route(request);
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().size());
+        assertEquals(freeFlowTime, rsp.getBest().getTime());
+
+        request.getHints().put(Parameters.Routing.DEPARTURE_TIME, "tomorrow");
+        assertTrue(instance.route(request).hasErrors());
+        instance.close();
+    }
+
+    @Test
+    public void testDepartureTimeWithViaPointInRushHour() {
+        GraphHopper instance = new GraphHopper().
+                setStoreOnFlush(false).
+                setEncodingManager(encodingManager).setCHEnabled(false).
+                loadGraph(createRushHourGraph(50));
+        // 3 -> 0 -> 1, only the second leg uses the edge with the rush hour and it is not slow enough for a detour
+        GHRequest request = new GHRequest().addPoint(new GHPoint(41.99, 10)).addPoint(new GHPoint(42, 10)).
+                addPoint(new GHPoint(42.01, 10)).setPathDetails(Arrays.asList(Parameters.Details.TIME));
+        GHResponse rsp = instance.route(request);
+        assertFalse(rsp.hasErrors());
+        long freeFlowTime = rsp.getBest().getTime();
+        long firstLegTime = rsp.getBest().getInstructions().get(0).getTime();
+
+        // the departure is before the rush hour, but the via point is reached during the rush hour
+        long rushHourStart = TimeDependentWeighting.parseDepartureTime("2019-10-07T08:00:00Z");
+        request.getHints().put(Parameters.Routing.DEPARTURE_TIME, rushHourStart - firstLegTime / 2);
+        rsp = instance.route(request);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        PathWrapper best = rsp.getBest();
+        assertTrue(best.getTime() > freeFlowTime);
+        assertEquals(firstLegTime, best.getInstructions().get(0).getTime());
+
+        long instructionTime = 0;
+        for (Instruction instruction : best.getInstructions()) {
+            instructionTime += instruction.getTime();
+        }
+        assertEquals(best.getTime(), instructionTime);
+        long detailTime = 0;
+        for (PathDetail detail : best.getPathDetails().get(Parameters.Details.TIME)) {
+            detailTime += (Long) detail.getValue();
+        }
+        assertEquals(best.getTime(), detailTime);
+        instance.close();
+    }
+
+    /**
+     * @param rushHourSpeed the speed of the edge 0->1 during the rush hour in percent
+     */
+    private GraphHopperStorage createRushHourGraph(int rushHourSpeed) {
+        GraphHopperStorage graph = new GraphBuilder(encodingManager).setSpeedProfiles(true).create();
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 42, 10);
+        na.setNode(1, 42.01, 10);
+        na.setNode(2, 42.01, 10.01);
+        na.setNode(3, 41.99, 10);
+        na.setNode(4, 41.99, 10.01);
+        int[][] edges = {{0, 1}, {1, 2}, {0, 3}, {3, 4}, {4, 2}};
+        for (int[] edge : edges) {
+            graph.edge(edge[0], edge[1], Helper.DIST_EARTH.calcDist(na.getLat(edge[0]), na.getLon(edge[0]),
+                    na.getLat(edge[1]), na.getLon(edge[1])), true);
+        }
+        SpeedProfileStorage speedProfiles = graph.getSpeedProfileStorage();
+        int[] rushHour = new int[SpeedProfileStorage.BUCKETS];
+        Arrays.fill(rushHour, 100);
+        // Monday 08:00-09:00
+        Arrays.fill(rushHour, 8 * 4, 9 * 4, rushHourSpeed);
+        speedProfiles.setEdgeProfile(0, false, speedProfiles.addProfile(rushHour));
+        return graph;
+    }
+
     @Test
     public void testDisconnected179() {
         GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
@@ -183,6 +281,36 @@ public class GraphHopperAPITest {
         }
     }
 
+    @Test
+    public void testSnapCache() {
+        GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
+        initGraph(graph);
+        graph.edge(1, 2, 10, true);
+        GraphHopper graphHopper = new GraphHopper().setStoreOnFlush(false).setEncodingManager(encodingManager).
+                setCHEnabled(false).setSnapCacheSize(10).loadGraph(graph);
+        QueryResultCache snapCache = graphHopper.getSnapCache();
+
+        GHResponse rsp = graphHopper.route(new GHRequest(42, 10.4, 42, 10));
+        assertFalse(rsp.toString(), rsp.hasErrors());
+        assertEquals(0, snapCache.getHits());
+        assertEquals(2, snapCache.getMisses());
+        assertEquals(2, snapCache.size());
+
+        GHResponse cachedRsp = graphHopper.route(new GHRequest(42, 10.4, 42, 10));
+        assertFalse(cachedRsp.toString(), cachedRsp.hasErrors());
+        assertEquals(2, snapCache.getHits());
+        assertEquals(rsp.getBest().getDistance(), cachedRsp.getBest().getDistance(), 1.e-6);
+        assertEquals(rsp.getBest().getPoints(), cachedRsp.getBest().getPoints());
+
+        // change the edge 2-3 where the first point snapped to
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("speed", 5);
+        graphHopper.changeGraph(Collections.singletonList(new JsonFeature("1", "bbox",
+                new BBox(10.399, 10.4, 42.0, 42.001), null, properties)));
+        assertEquals(1, snapCache.size());
+        graphHopper.close();
+    }
+
     @Test
     public void testConcurrentGraphChange() throws InterruptedException {
         final GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
@@ -197,7 +325,7 @@ public class GraphHopperAPITest {
                 return new ChangeGraphHelper(graph, locationIndex) {
                     @Override
                     public long applyChanges(EncodingManager em, Collection<JsonFeature> features) {
-                        // force sleep inside the lock and let the main thread run until the lock barrier
+                        // force sleep while the graph is changed and let the main thread route meanwhile
                         latch.countDown();
                         try {
                             Thread.sleep(400);
@@ -234,14 +362,18 @@ public class GraphHopperAPITest {
         });
 
         latch.await();
-        assertEquals(0, checkPointCounter.get());
+        // the request is not blocked by the change and uses the old flags
         rsp = graphHopper.route(new GHRequest(42, 10.4, 42, 10));
+        assertEquals(0, checkPointCounter.get());
         assertFalse(rsp.toString(), rsp.hasErrors());
-        assertEquals(8400, rsp.getBest().getTime());
+        assertEquals(1800, rsp.getBest().getTime());
 
         executorService.shutdown();
         executorService.awaitTermination(3, TimeUnit.SECONDS);
 
         assertEquals(2, checkPointCounter.get());
+        rsp = graphHopper.route(new GHRequest(42, 10.4, 42, 10));
+        assertFalse(rsp.toString(), rsp.hasErrors());
+        assertEquals(8400, rsp.getBest().getTime());
     }
 }
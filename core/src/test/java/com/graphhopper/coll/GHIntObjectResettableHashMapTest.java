@@ -0,0 +1,66 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GHIntObjectResettableHashMapTest {
+    @Test
+    public void testReset() {
+        GHIntObjectResettableHashMap<String> map = new GHIntObjectResettableHashMap<>(1000);
+        int capacity = map.keys.length;
+        for (int i = 0; i < 10; i++) {
+            map.put(i * 7, "a" + i);
+        }
+        map.put(7, "b");
+        assertEquals(10, map.size());
+        assertEquals("b", map.get(7));
+
+        map.reset();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(7));
+        assertEquals(capacity, map.keys.length);
+
+        map.put(3, "c");
+        assertEquals(1, map.size());
+        assertEquals("c", map.get(3));
+    }
+
+    @Test
+    public void testResetAfterGrowing() {
+        GHIntObjectResettableHashMap<Integer> map = new GHIntObjectResettableHashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i, i);
+        }
+        map.remove(5);
+        map.reset();
+        assertTrue(map.isEmpty());
+        for (int i = 0; i < 10_000; i++) {
+            assertFalse(map.containsKey(i));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            map.put(i * 31, i);
+        }
+        map.reset();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(31));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.EdgeIterator;
+import org.junit.Test;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MinHeapWithUpdateTest {
+    @Test
+    public void testBasic() {
+        MinHeapWithUpdate heap = new MinHeapWithUpdate(10);
+        heap.push(1, 20);
+        heap.push(2, 123);
+        heap.push(3, 120);
+        heap.push(4, 130);
+        heap.push(5, 80);
+        assertEquals(5, heap.size());
+        assertEquals(1, heap.peekId());
+        assertEquals(20, heap.peekKey(), 1e-6);
+
+        assertEquals(1, heap.poll());
+        assertEquals(5, heap.poll());
+        assertEquals(3, heap.poll());
+        assertFalse(heap.contains(3));
+        assertTrue(heap.contains(2));
+        assertEquals(2, heap.size());
+    }
+
+    @Test
+    public void testUpdate() {
+        MinHeapWithUpdate heap = new MinHeapWithUpdate(10);
+        heap.push(1, 20);
+        heap.push(2, 123);
+        heap.push(3, 120);
+        heap.update(2, 10);
+        assertEquals(2, heap.peekId());
+        heap.update(2, 200);
+        assertEquals(1, heap.poll());
+        assertEquals(3, heap.poll());
+        assertEquals(2, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testClear() {
+        MinHeapWithUpdate heap = new MinHeapWithUpdate(10);
+        heap.push(1, 20);
+        heap.push(2, 123);
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(1));
+        heap.push(2, 12);
+        assertEquals(2, heap.poll());
+    }
+
+    @Test
+    public void testPushTwice() {
+        MinHeapWithUpdate heap = new MinHeapWithUpdate(10);
+        heap.push(1, 20);
+        try {
+            heap.push(1, 10);
+            fail("pushing an id twice should fail");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        int size = 1000;
+        MinHeapWithUpdate heap = new MinHeapWithUpdate(size);
+        double[] keys = new double[size];
+        PriorityQueue<SPTEntry> queue = new PriorityQueue<>();
+        for (int id = 0; id < size; id++) {
+            keys[id] = rnd.nextDouble() * 100;
+            heap.push(id, keys[id]);
+        }
+        for (int i = 0; i < 500; i++) {
+            int id = rnd.nextInt(size);
+            keys[id] = rnd.nextDouble() * 100;
+            heap.update(id, keys[id]);
+        }
+        for (int id = 0; id < size; id++) {
+            queue.add(new SPTEntry(EdgeIterator.NO_EDGE, id, keys[id]));
+        }
+        while (!queue.isEmpty()) {
+            SPTEntry expected = queue.poll();
+            assertEquals("seed: " + seed, expected.weight, heap.peekKey(), 0);
+            heap.poll();
+        }
+        assertTrue(heap.isEmpty());
+    }
+}
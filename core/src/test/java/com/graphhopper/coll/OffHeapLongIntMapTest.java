@@ -0,0 +1,101 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.carrotsearch.hppc.cursors.LongIntCursor;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class OffHeapLongIntMapTest {
+    private final String location = "./target/tmp/offheap-map";
+
+    @After
+    public void tearDown() {
+        Helper.removeDir(new File(location));
+    }
+
+    @Test
+    public void testPutAndGet() {
+        OffHeapLongIntMap map = new OffHeapLongIntMap(new RAMDirectory(), "map", DAType.RAM);
+        assertEquals(-1, map.get(10));
+        assertEquals(-1, map.put(10, 1));
+        assertEquals(-1, map.put(-5, 2));
+        assertEquals(-1, map.put(0, 3));
+        assertEquals(-1, map.put(Long.MAX_VALUE, 4));
+        assertEquals(-1, map.put(Long.MIN_VALUE, 5));
+        assertEquals(5, map.getSize());
+
+        assertEquals(1, map.get(10));
+        assertEquals(2, map.get(-5));
+        assertEquals(3, map.get(0));
+        assertEquals(4, map.get(Long.MAX_VALUE));
+        assertEquals(5, map.get(Long.MIN_VALUE));
+        assertEquals(-1, map.get(11));
+
+        assertEquals(1, map.put(10, -2));
+        assertEquals(3, map.put(0, 6));
+        assertEquals(-2, map.get(10));
+        assertEquals(6, map.get(0));
+        assertEquals(5, map.getSize());
+    }
+
+    @Test
+    public void testResize() {
+        OffHeapLongIntMap map = new OffHeapLongIntMap(new RAMDirectory(), "map", DAType.RAM, 10);
+        long capacity = map.getCapacity();
+        LongIntHashMap expected = new LongIntHashMap();
+        Random rand = new Random(123);
+        for (int i = 0; i < 50_000; i++) {
+            long key = rand.nextBoolean() ? i : rand.nextLong();
+            int value = rand.nextInt();
+            assertEquals(expected.getOrDefault(key, -1), map.put(key, value));
+            expected.put(key, value);
+        }
+        assertEquals(expected.size(), map.getSize());
+        assertEquals(true, map.getCapacity() > capacity);
+        for (LongIntCursor cursor : expected) {
+            assertEquals(cursor.value, map.get(cursor.key));
+        }
+    }
+
+    @Test
+    public void testMMap() {
+        GHDirectory dir = new GHDirectory(location, DAType.MMAP);
+        dir.create();
+        OffHeapLongIntMap map = new OffHeapLongIntMap(dir, "map", DAType.MMAP, 10);
+        for (int i = 0; i < 1000; i++) {
+            map.put(i * 3L, i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, map.get(i * 3L));
+            assertEquals(-1, map.get(i * 3L + 1));
+        }
+        map.release();
+        assertEquals(0, dir.getAll().size());
+    }
+}
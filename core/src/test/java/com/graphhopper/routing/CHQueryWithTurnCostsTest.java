@@ -32,6 +32,8 @@ import com.graphhopper.storage.CHGraph;
 import com.graphhopper.storage.CHProfile;
 import com.graphhopper.storage.GraphBuilder;
 import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.CHEdgeExplorer;
+import com.graphhopper.util.CHEdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.GHUtility;
 import org.junit.Test;
@@ -45,6 +47,7 @@ import java.util.Locale;
 import static com.graphhopper.routing.weighting.TurnWeighting.INFINITE_U_TURN_COSTS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests the correctness of the contraction hierarchies query in the presence of turn costs.
@@ -63,7 +66,7 @@ public class CHQueryWithTurnCostsTest {
 
     @Parameterized.Parameters(name = "{0}")
     public static Object[] parameters() {
-        return new Object[]{"astar", "dijkstra"};
+        return new Object[]{"astar", "dijkstra", "dijkstra_sod"};
     }
 
     public CHQueryWithTurnCostsTest(String algoString) {
@@ -126,6 +129,68 @@ public class CHQueryWithTurnCostsTest {
         assertEquals("wrong time", (26 * weightPerMeter + 14) * 1000, path.getTime(), 1.e-3);
     }
 
+    @Test
+    public void testStallOnDemand() {
+        // 1 --> 2 --> 5 --> 6
+        // ^ ^   |     ^
+        // |  \  v     |
+        // |   \ 4     7
+        // |    \      ^
+        // 0 --> 3 ----/
+        graph.edge(0, 1, 3, false);
+        graph.edge(1, 2, 1, false);
+        graph.edge(0, 3, 1, false);
+        graph.edge(3, 1, 1, false);
+        graph.edge(2, 4, 5, false);
+        graph.edge(2, 5, 1, false);
+        graph.edge(5, 6, 1, false);
+        graph.edge(3, 7, 1, false);
+        graph.edge(7, 5, 1, false);
+        graph.freeze();
+
+        // from contracting node 1
+        addShortcut(3, 2, 3, 1, 3, 1, 2);
+        // from contracting node 2, 3-2-5 has the witness 3-7-5
+        addShortcut(3, 4, 3, 4, 9, 4, 7);
+        // from contracting node 5
+        addShortcut(7, 6, 8, 6, 8, 6, 2);
+        setLevelEqualToNodeIdForAllNodes();
+        disconnectShortcutsFromHigherLevelNodes();
+
+        testPathCalculation(0, 4, 8, IntArrayList.from(0, 3, 1, 2, 4));
+        // node 2 is reached via edge 1-2 by the forward search, but the shortcut 3-2 ends with the same original
+        // edge and node 3 has a smaller weight, so node 2 is stalled and nodes 5 and 6 are not explored
+        AbstractBidirectionEdgeCHNoSOD algo = createAlgo();
+        algo.calcPath(0, 4);
+        AbstractBidirectionEdgeCHNoSOD algoNoSod = new DijkstraBidirectionEdgeCHNoSOD(chGraph, createTurnWeighting());
+        algoNoSod.setEdgeFilter(new LevelEdgeFilter(chGraph));
+        algoNoSod.calcPath(0, 4);
+        if ("dijkstra_sod".equals(algoString)) {
+            assertTrue(algo.getVisitedNodes() < algoNoSod.getVisitedNodes());
+        }
+    }
+
+    @Test
+    public void testStallOnDemand_differentOrigEdge() {
+        // node 2 can be reached cheaper via 3-2, but this is a different state than reaching it via 1-2 and only
+        // the latter is allowed to turn onto 2-4, so node 2 may not be stalled
+        // 1 --> 2 --> 4 --> 5
+        // ^     ^
+        // |     |
+        // 0 --> 3
+        graph.edge(0, 1, 10, false);
+        graph.edge(1, 2, 1, false);
+        graph.edge(0, 3, 1, false);
+        graph.edge(3, 2, 1, false);
+        graph.edge(2, 4, 1, false);
+        graph.edge(4, 5, 1, false);
+        setRestriction(3, 2, 4);
+        graph.freeze();
+        setLevelEqualToNodeIdForAllNodes();
+
+        testPathCalculation(0, 5, 13, IntArrayList.from(0, 1, 2, 4, 5));
+    }
+
     @Test
     public void testFindPathWithTurnCosts_loopShortcutBwdSearch() {
         // the loop shortcut 4-4 will be encountered during the bwd search
@@ -711,18 +776,44 @@ public class CHQueryWithTurnCostsTest {
     }
 
     private AbstractBidirectionEdgeCHNoSOD createAlgo() {
-        TurnWeighting chTurnWeighting = new TurnWeighting(new PreparationWeighting(weighting), graph.getTurnCostStorage());
-        AbstractBidirectionEdgeCHNoSOD algo = "astar".equals(algoString) ?
-                new AStarBidirectionEdgeCHNoSOD(chGraph, chTurnWeighting) :
-                new DijkstraBidirectionEdgeCHNoSOD(chGraph, chTurnWeighting);
+        TurnWeighting chTurnWeighting = createTurnWeighting();
+        AbstractBidirectionEdgeCHNoSOD algo;
+        if ("astar".equals(algoString)) {
+            algo = new AStarBidirectionEdgeCHNoSOD(chGraph, chTurnWeighting);
+        } else if ("dijkstra_sod".equals(algoString)) {
+            algo = new DijkstraBidirectionEdgeCHSOD(chGraph, chTurnWeighting);
+        } else {
+            algo = new DijkstraBidirectionEdgeCHNoSOD(chGraph, chTurnWeighting);
+        }
         algo.setEdgeFilter(new LevelEdgeFilter(chGraph));
         return algo;
     }
 
+    private TurnWeighting createTurnWeighting() {
+        return new TurnWeighting(new PreparationWeighting(weighting), graph.getTurnCostStorage());
+    }
+
     private void addShortcut(int from, int to, int firstOrigEdge, int lastOrigEdge, int skipped1, int skipped2, double weight) {
         chGraph.shortcutEdgeBased(from, to, PrepareEncoder.getScFwdDir(), weight, skipped1, skipped2, firstOrigEdge, lastOrigEdge);
     }
 
+    /**
+     * Like the real preparation does, this removes shortcuts leading to lower level nodes from the adjacency list of
+     * the higher level node, so they can only be found from the lower level node.
+     */
+    private void disconnectShortcutsFromHigherLevelNodes() {
+        CHEdgeExplorer explorer = chGraph.createEdgeExplorer();
+        CHEdgeExplorer disconnectExplorer = chGraph.createEdgeExplorer();
+        for (int node = 0; node < chGraph.getNodes(); ++node) {
+            CHEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (iter.isShortcut() && chGraph.getLevel(iter.getAdjNode()) > chGraph.getLevel(node)) {
+                    chGraph.disconnect(disconnectExplorer, iter);
+                }
+            }
+        }
+    }
+
     private void setLevelEqualToNodeIdForAllNodes() {
         for (int node = 0; node < chGraph.getNodes(); ++node) {
             chGraph.setLevel(node, node);
@@ -36,21 +36,25 @@ import java.util.Collection;
 public class DijkstraBidirectionRefTest extends AbstractRoutingAlgorithmTester {
     private final TraversalMode traversalMode;
     private final boolean allowUTurns;
+    private final boolean searchStatePool;
 
-    public DijkstraBidirectionRefTest(TraversalMode tMode, boolean allowUTurns) {
+    public DijkstraBidirectionRefTest(TraversalMode tMode, boolean allowUTurns, boolean searchStatePool) {
         this.traversalMode = tMode;
         this.allowUTurns = allowUTurns;
+        this.searchStatePool = searchStatePool;
     }
 
     /**
-     * Runs the same test with each of the supported traversal modes
+     * Runs the same test with each of the supported traversal modes, with and without the pooled collections
      */
     @Parameters(name = "{0}")
     public static Collection<Object[]> configs() {
         return Arrays.asList(new Object[][]{
-                {TraversalMode.NODE_BASED, false},
-                {TraversalMode.EDGE_BASED, false},
-                {TraversalMode.EDGE_BASED, true}
+                {TraversalMode.NODE_BASED, false, false},
+                {TraversalMode.EDGE_BASED, false, false},
+                {TraversalMode.EDGE_BASED, true, false},
+                {TraversalMode.NODE_BASED, false, true},
+                {TraversalMode.EDGE_BASED, true, true}
         });
     }
 
@@ -64,7 +68,7 @@ public class DijkstraBidirectionRefTest extends AbstractRoutingAlgorithmTester {
                     double uTurnCost = allowUTurns ? 40 : Double.POSITIVE_INFINITY;
                     w = new TurnWeighting(w, g.getTurnCostStorage(), uTurnCost);
                 }
-                return new DijkstraBidirectionRef(g, w, traversalMode);
+                return new DijkstraBidirectionRef(g, w, traversalMode).setUseSearchStatePool(searchStatePool);
             }
         };
     }
@@ -0,0 +1,236 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.lm.PrepareLandmarks;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.BeelineWeightApproximator;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.TimeDependentWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static com.graphhopper.storage.index.QueryResult.Position.EDGE;
+import static org.junit.Assert.*;
+
+public class TimeDependentAStarTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private FlagEncoder encoder;
+    private GraphHopperStorage graph;
+    private SpeedProfileStorage speedProfiles;
+    private Weighting weighting;
+
+    @Before
+    public void setUp() {
+        encoder = new CarFlagEncoder();
+        graph = GraphBuilder.start(EncodingManager.create(encoder)).setSpeedProfiles(true).create();
+        speedProfiles = graph.getSpeedProfileStorage();
+        weighting = new FastestWeighting(encoder);
+    }
+
+    private TimeDependentWeighting createWeighting(Graph graph, String departureTime) {
+        return new TimeDependentWeighting(weighting, graph, speedProfiles, TimeDependentWeighting.parseDepartureTime(departureTime), UTC);
+    }
+
+    private Path calcPath(Graph graph, String departureTime, int from, int to) {
+        return new TimeDependentAStar(graph, createWeighting(graph, departureTime), TraversalMode.NODE_BASED).calcPath(from, to);
+    }
+
+    //   1 --- 2
+    //   |     |
+    //   0     |
+    //   |     |
+    //   3 --- 4
+    private void initRushHourGraph() {
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 0, 0);
+        na.setNode(1, 0.01, 0);
+        na.setNode(2, 0.01, 0.01);
+        na.setNode(3, -0.01, 0);
+        na.setNode(4, -0.01, 0.01);
+        // the direct route 0-1-2 takes 120s without traffic, the detour 0-3-4-2 180s
+        graph.edge(0, 1, 1000, true);
+        graph.edge(1, 2, 1000, true);
+        graph.edge(0, 3, 1000, true);
+        graph.edge(3, 4, 1000, true);
+        graph.edge(4, 2, 1000, true);
+
+        int[] rushHour = new int[SpeedProfileStorage.BUCKETS];
+        Arrays.fill(rushHour, 100);
+        // Monday 08:00-09:00 the speed drops to 40%
+        Arrays.fill(rushHour, 8 * 4, 9 * 4, 40);
+        int rushHourId = speedProfiles.addProfile(rushHour);
+        // only the direction towards 2 is congested and both edges share the profile
+        speedProfiles.setEdgeProfile(0, false, rushHourId);
+        speedProfiles.setEdgeProfile(1, false, rushHourId);
+        assertEquals(1, speedProfiles.getProfileCount());
+    }
+
+    @Test
+    public void testRushHour() {
+        initRushHourGraph();
+        // 2019-10-07 is a Monday
+        Path path = calcPath(graph, "2019-10-07T10:00:00Z", 0, 2);
+        assertEquals(IntArrayList.from(0, 1, 2), path.calcNodes());
+        assertEquals(120_000, path.getTime());
+
+        // during the rush hour the detour is faster
+        path = calcPath(graph, "2019-10-07T08:00:00Z", 0, 2);
+        assertEquals(IntArrayList.from(0, 3, 4, 2), path.calcNodes());
+        assertEquals(180_000, path.getTime());
+
+        // the same time on a Tuesday and in another time zone
+        assertEquals(IntArrayList.from(0, 1, 2), calcPath(graph, "2019-10-08T08:00:00Z", 0, 2).calcNodes());
+        assertEquals(IntArrayList.from(0, 1, 2), calcPath(graph, "2019-10-07T08:00:00+02:00", 0, 2).calcNodes());
+
+        // the other direction is not congested
+        path = calcPath(graph, "2019-10-07T08:00:00Z", 2, 0);
+        assertEquals(IntArrayList.from(2, 1, 0), path.calcNodes());
+        assertEquals(120_000, path.getTime());
+    }
+
+    @Test
+    public void testSpeedAtArrivalTime() {
+        initRushHourGraph();
+        // the first edge is entered before the rush hour, but the second edge at 08:00:00 and takes 150s
+        Path path = calcPath(graph, "2019-10-07T07:59:00Z", 0, 1);
+        assertEquals(60_000, path.getTime());
+        path = calcPath(graph, "2019-10-07T07:59:00Z", 0, 2);
+        assertEquals(IntArrayList.from(0, 3, 4, 2), path.calcNodes());
+
+        // 07:57 arrives at node 1 at 07:58, so both edges are fast
+        path = calcPath(graph, "2019-10-07T07:57:00Z", 0, 2);
+        assertEquals(IntArrayList.from(0, 1, 2), path.calcNodes());
+        assertEquals(120_000, path.getTime());
+        assertEquals(path.getWeight(), 120, 1e-6);
+    }
+
+    @Test
+    public void testVirtualEdges() {
+        initRushHourGraph();
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, 1);
+        QueryResult qr = new QueryResult(0.005, 0.0001);
+        qr.setClosestEdge(edge);
+        qr.setWayIndex(0);
+        qr.setSnappedPosition(EDGE);
+        qr.calcSnappedPoint(Helper.DIST_PLANE);
+        QueryGraph queryGraph = QueryGraph.lookup(graph, qr);
+        int virtualNode = qr.getClosestNode();
+
+        Path freeFlowPath = new AStar(queryGraph, weighting, TraversalMode.NODE_BASED).calcPath(virtualNode, 1);
+        Path path = calcPath(queryGraph, "2019-10-07T08:00:00Z", virtualNode, 1);
+        assertEquals(freeFlowPath.calcNodes(), path.calcNodes());
+        // the virtual edge uses the profile of its original edge
+        assertEquals(freeFlowPath.getTime() / 0.4, path.getTime(), 1);
+        path = calcPath(queryGraph, "2019-10-07T08:00:00Z", 1, virtualNode);
+        assertEquals(freeFlowPath.getTime(), path.getTime(), 1);
+    }
+
+    @Test
+    public void testApproximations() {
+        Random rnd = new Random(42);
+        int size = 15;
+        NodeAccess na = graph.getNodeAccess();
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                na.setNode(row * size + col, row * 0.01, col * 0.01);
+            }
+        }
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int node = row * size + col;
+                if (col + 1 < size)
+                    addRandomEdge(rnd, node, node + 1);
+                if (row + 1 < size)
+                    addRandomEdge(rnd, node, node + size);
+            }
+        }
+        for (int i = 0; i < 5; i++) {
+            int[] profile = new int[SpeedProfileStorage.BUCKETS];
+            for (int bucket = 0; bucket < profile.length; bucket++) {
+                profile[bucket] = 30 + rnd.nextInt(150);
+            }
+            int profileId = speedProfiles.addProfile(profile);
+            for (int j = 0; j < graph.getEdges() / 5; j++) {
+                speedProfiles.setEdgeProfile(rnd.nextInt(graph.getEdges()), rnd.nextBoolean(), profileId);
+            }
+        }
+        assertTrue(speedProfiles.getMaxSpeedFactor() > 1);
+
+        PrepareLandmarks prepareLandmarks = new PrepareLandmarks(new RAMDirectory(), graph, weighting, 4, 2);
+        prepareLandmarks.setMinimumNodes(2);
+        prepareLandmarks.doWork();
+
+        for (int i = 0; i < 50; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            TimeDependentWeighting tdWeighting = createWeighting(graph, "2019-10-07T07:00:00Z").
+                    withDepartureTime(TimeDependentWeighting.parseDepartureTime("2019-10-07T07:00:00Z") + rnd.nextInt(7 * 24) * 3600_000L);
+            // an approximation of 0 makes the A* a Dijkstra
+            TimeDependentAStar dijkstra = new TimeDependentAStar(graph, tdWeighting, TraversalMode.NODE_BASED).
+                    setApproximation(new BeelineWeightApproximator(na, tdWeighting).setEpsilon(0));
+            Path expected = dijkstra.calcPath(from, to);
+
+            Path beelinePath = new TimeDependentAStar(graph, tdWeighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            assertEquals(expected.getWeight(), beelinePath.getWeight(), 1e-6);
+            assertEquals(expected.getTime(), beelinePath.getTime());
+
+            AlgorithmOptions opts = AlgorithmOptions.start().weighting(tdWeighting).build();
+            RoutingAlgorithm lmAlgo = prepareLandmarks.getDecoratedAlgorithm(graph,
+                    new TimeDependentAStar(graph, tdWeighting, TraversalMode.NODE_BASED), opts);
+            Path lmPath = lmAlgo.calcPath(from, to);
+            assertEquals(expected.getWeight(), lmPath.getWeight(), 1e-6);
+            assertEquals(expected.getTime(), lmPath.getTime());
+            assertTrue(lmAlgo.getVisitedNodes() <= dijkstra.getVisitedNodes());
+        }
+    }
+
+    private void addRandomEdge(Random rnd, int from, int to) {
+        NodeAccess na = graph.getNodeAccess();
+        double distance = Helper.DIST_PLANE.calcDist(na.getLat(from), na.getLon(from), na.getLat(to), na.getLon(to));
+        EdgeIteratorState edge = graph.edge(from, to, distance * (1 + rnd.nextDouble()), true);
+        edge.set(encoder.getAverageSpeedEnc(), 10 + 10 * rnd.nextInt(10));
+    }
+
+    @Test
+    public void testParseDepartureTime() {
+        assertEquals(1570435200000L, TimeDependentWeighting.parseDepartureTime("2019-10-07T08:00:00Z"));
+        assertEquals(1570435200000L, TimeDependentWeighting.parseDepartureTime("2019-10-07T10:00:00+02:00"));
+        assertEquals(1570435200000L, TimeDependentWeighting.parseDepartureTime("1570435200000"));
+        try {
+            TimeDependentWeighting.parseDepartureTime("2019-10-07 08:00");
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
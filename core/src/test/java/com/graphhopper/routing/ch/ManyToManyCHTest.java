@@ -0,0 +1,136 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.shapes.BBox;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ManyToManyCHTest {
+    private final CarFlagEncoder encoder = new CarFlagEncoder();
+    private final EncodingManager em = EncodingManager.create(encoder);
+    private final CHProfile chProfile = CHProfile.nodeBased(new FastestWeighting(encoder));
+    private GraphHopperStorage graph;
+    private CHGraph chGraph;
+    private long seed;
+    private Random rnd;
+    private PrepareContractionHierarchies pch;
+
+    @Before
+    public void setUp() {
+        graph = new GraphBuilder(em).setCHProfiles(chProfile).create();
+        seed = System.nanoTime();
+        rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 500, 2.2, true, true, encoder.getAverageSpeedEnc(), 0.7, 0.9, 0.8);
+        graph.freeze();
+        pch = PrepareContractionHierarchies.fromGraphHopperStorage(graph, chProfile);
+        pch.doWork();
+        chGraph = graph.getCHGraph(chProfile);
+    }
+
+    @Test
+    public void testCompareWithDijkstra() {
+        int[] sources = new int[20];
+        int[] targets = new int[15];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = rnd.nextInt(graph.getNodes());
+        }
+        for (int i = 0; i < targets.length; i++) {
+            // some targets are also sources
+            targets[i] = i % 3 == 0 ? sources[i] : rnd.nextInt(graph.getNodes());
+        }
+
+        ManyToManyCH.Matrix matrix = new ManyToManyCH(chGraph, chGraph, chProfile.getWeighting()).calcMatrix(sources, targets);
+        for (int i = 0; i < sources.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                Path path = new Dijkstra(graph, chProfile.getWeighting(), TraversalMode.NODE_BASED).calcPath(sources[i], targets[j]);
+                assertMatrixEntry(matrix, i, j, path);
+            }
+        }
+    }
+
+    @Test
+    public void testCompareWithCHRouting_virtualNodes() {
+        LocationIndexTree index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+        List<QueryResult> queryResults = new ArrayList<>();
+        BBox bounds = graph.getBounds();
+        while (queryResults.size() < 10) {
+            double lat = bounds.minLat + rnd.nextDouble() * (bounds.maxLat - bounds.minLat);
+            double lon = bounds.minLon + rnd.nextDouble() * (bounds.maxLon - bounds.minLon);
+            QueryResult qr = index.findClosest(lat, lon, DefaultEdgeFilter.allEdges(encoder));
+            if (qr.isValid())
+                queryResults.add(qr);
+        }
+        QueryGraph queryGraph = QueryGraph.lookup(chGraph, queryResults);
+
+        int[] nodes = new int[queryResults.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = queryResults.get(i).getClosestNode();
+        }
+        ManyToManyCH.Matrix matrix = new ManyToManyCH(queryGraph, chGraph, chProfile.getWeighting()).calcMatrix(nodes, nodes);
+        AlgorithmOptions opts = AlgorithmOptions.start().weighting(chProfile.getWeighting()).build();
+        for (int i = 0; i < nodes.length; i++) {
+            for (int j = 0; j < nodes.length; j++) {
+                Path path = pch.createAlgo(queryGraph, opts).calcPath(nodes[i], nodes[j]);
+                assertMatrixEntry(matrix, i, j, path);
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidNodesAndWeightsOnly() {
+        int node = rnd.nextInt(graph.getNodes());
+        ManyToManyCH.Matrix matrix = new ManyToManyCH(chGraph, chGraph, chProfile.getWeighting()).setCalcDistances(false).
+                setCalcTimes(false).calcMatrix(new int[]{node, -1}, new int[]{node});
+        assertTrue(matrix.isConnected(0, 0));
+        assertEquals(0, matrix.getWeight(0, 0), 1.e-6);
+        assertTrue(Double.isInfinite(matrix.getDistance(0, 0)));
+        assertEquals(Long.MAX_VALUE, matrix.getTime(0, 0));
+        assertFalse(matrix.isConnected(1, 0));
+    }
+
+    private void assertMatrixEntry(ManyToManyCH.Matrix matrix, int source, int target, Path path) {
+        String msg = "seed: " + seed + ", " + source + "->" + target;
+        assertEquals(msg, path.isFound(), matrix.isConnected(source, target));
+        if (!path.isFound())
+            return;
+        assertEquals(msg, path.getWeight(), matrix.getWeight(source, target), 1.e-1);
+        assertEquals(msg, path.getDistance(), matrix.getDistance(source, target), 1.e-3);
+        assertEquals(msg, path.getTime(), matrix.getTime(source, target), 1);
+    }
+}
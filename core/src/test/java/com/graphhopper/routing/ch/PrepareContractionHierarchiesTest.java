@@ -18,6 +18,7 @@
 package com.graphhopper.routing.ch;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntIndexedContainer;
 import com.graphhopper.routing.AlgorithmOptions;
 import com.graphhopper.routing.Dijkstra;
@@ -708,6 +709,161 @@ public class PrepareContractionHierarchiesTest {
         assertTrue("reusing node ordering should speed up ch contraction", timeMotorCycle < 0.5 * timeCar);
     }
 
+    @Test
+    public void testParallelContraction() {
+        CarFlagEncoder carFlagEncoder = new CarFlagEncoder();
+        EncodingManager em = EncodingManager.create(carFlagEncoder);
+        CHProfile carProfile = CHProfile.nodeBased(new FastestWeighting(carFlagEncoder));
+        GraphHopperStorage sequentialStorage = new GraphBuilder(em).setCHProfiles(carProfile).create();
+        GraphHopperStorage parallelStorage = new GraphBuilder(em).setCHProfiles(carProfile).create();
+
+        int numNodes = 5_000;
+        int numQueries = 100;
+        GHUtility.buildRandomGraph(sequentialStorage, new Random(123), numNodes, 1.3, true, true, carFlagEncoder.getAverageSpeedEnc(), 0.7, 0.9, 0.8);
+        GHUtility.buildRandomGraph(parallelStorage, new Random(123), numNodes, 1.3, true, true, carFlagEncoder.getAverageSpeedEnc(), 0.7, 0.9, 0.8);
+        sequentialStorage.freeze();
+        parallelStorage.freeze();
+
+        PrepareContractionHierarchies sequentialPch = PrepareContractionHierarchies.fromGraphHopperStorage(sequentialStorage, carProfile);
+        sequentialPch.doWork();
+        PrepareContractionHierarchies parallelPch = PrepareContractionHierarchies.fromGraphHopperStorage(parallelStorage, carProfile)
+                .setParams(new PMap().put(CHParameters.CONTRACTION_THREADS, 4));
+        parallelPch.doWork();
+        CHGraph sequentialCH = sequentialStorage.getCHGraph(carProfile);
+        CHGraph parallelCH = parallelStorage.getCHGraph(carProfile);
+
+        // the contraction order differs from the sequential one, but the hierarchy should be similarly good
+        assertTrue(parallelPch.getShortcuts() > 0);
+        assertEquals(sequentialPch.getShortcuts(), parallelPch.getShortcuts(), 0.1 * sequentialPch.getShortcuts());
+
+        Random rnd = new Random(123);
+        long sequentialVisitedNodes = 0;
+        long parallelVisitedNodes = 0;
+        for (int i = 0; i < numQueries; ++i) {
+            int from = rnd.nextInt(numNodes);
+            int to = rnd.nextInt(numNodes);
+            double dijkstraWeight = new Dijkstra(parallelStorage, carProfile.getWeighting(), TraversalMode.NODE_BASED).calcPath(from, to).getWeight();
+
+            RoutingAlgorithm sequentialAlgo = sequentialPch.createAlgo(sequentialCH, AlgorithmOptions.start().weighting(carProfile.getWeighting()).build());
+            assertEquals(dijkstraWeight, sequentialAlgo.calcPath(from, to).getWeight(), 1.e-1);
+            sequentialVisitedNodes += sequentialAlgo.getVisitedNodes();
+
+            RoutingAlgorithm parallelAlgo = parallelPch.createAlgo(parallelCH, AlgorithmOptions.start().weighting(carProfile.getWeighting()).build());
+            assertEquals(dijkstraWeight, parallelAlgo.calcPath(from, to).getWeight(), 1.e-1);
+            parallelVisitedNodes += parallelAlgo.getVisitedNodes();
+        }
+        assertTrue("parallel: " + parallelVisitedNodes + ", sequential: " + sequentialVisitedNodes,
+                parallelVisitedNodes < 1.2 * sequentialVisitedNodes);
+    }
+
+    @Test
+    public void testCustomizable() {
+        CarFlagEncoder carFlagEncoder = new CarFlagEncoder();
+        EncodingManager em = EncodingManager.create(carFlagEncoder);
+        CHProfile carProfile = CHProfile.nodeBased(new FastestWeighting(carFlagEncoder));
+        GraphHopperStorage ghStorage = new GraphBuilder(em).setCHProfiles(carProfile).create();
+
+        // customizable CH needs a node ordering with small separators, so unlike the random graphs above the graph
+        // has to be 'geometric'
+        int size = 60;
+        long seed = 123;
+        Random rnd = new Random(seed);
+        for (int i = 0; i < size * size; i++) {
+            ghStorage.getNodeAccess().setNode(i, 49.4 + 0.001 * (i / size), 9.7 + 0.001 * (i % size));
+        }
+        for (int i = 0; i < size * size; i++) {
+            if (i % size < size - 1)
+                ghStorage.edge(i, i + 1, 70 + rnd.nextInt(10), rnd.nextDouble() < 0.9).set(carFlagEncoder.getAverageSpeedEnc(), 10 + rnd.nextInt(100));
+            if (i / size < size - 1)
+                ghStorage.edge(i, i + size, 110 + rnd.nextInt(10), rnd.nextDouble() < 0.9).set(carFlagEncoder.getAverageSpeedEnc(), 10 + rnd.nextInt(100));
+        }
+        ghStorage.freeze();
+
+        PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraphHopperStorage(ghStorage, carProfile)
+                .setParams(new PMap().put(CHParameters.CUSTOMIZABLE, true));
+        pch.doWork();
+        assertTrue(pch.isCustomizable());
+        CHGraph chGraph = ghStorage.getCHGraph(carProfile);
+        checkCustomizedWeights(pch, chGraph, carProfile.getWeighting(), rnd, seed);
+
+        // in contrast to a normal CH the customized routes stay the shortest ones after a change of the graph, only
+        // the shortcuts that can depend on the changed edges are customized again
+        IntHashSet changedEdges = new IntHashSet();
+        for (int i = 0; i < 20; i++) {
+            int edge = rnd.nextInt(ghStorage.getEdges());
+            changedEdges.add(edge);
+            EdgeIteratorState edgeState = ghStorage.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            if (i % 5 == 0)
+                edgeState.set(carFlagEncoder.getAccessEnc(), false).setReverse(carFlagEncoder.getAccessEnc(), false);
+            else
+                edgeState.set(carFlagEncoder.getAverageSpeedEnc(), 10 + rnd.nextInt(100));
+        }
+        assertTrue(pch.customize(changedEdges) < chGraph.getNodes());
+        checkCustomizedWeights(pch, chGraph, carProfile.getWeighting(), rnd, seed);
+
+        // a full customization with several threads has to calculate the same shortcut weights
+        double[] weights = new double[chGraph.getEdges() - chGraph.getOriginalEdges()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = chGraph.getEdgeIteratorState(chGraph.getOriginalEdges() + i, Integer.MIN_VALUE).getWeight();
+        }
+        PrepareContractionHierarchies parallelPch = PrepareContractionHierarchies.fromGraphHopperStorage(ghStorage, carProfile)
+                .setParams(new PMap().put(CHParameters.CUSTOMIZABLE, true).put(CHParameters.CUSTOMIZATION_THREADS, 4));
+        parallelPch.customize();
+        for (int i = 0; i < weights.length; i++) {
+            assertEquals(weights[i], chGraph.getEdgeIteratorState(chGraph.getOriginalEdges() + i, Integer.MIN_VALUE).getWeight(), 1.e-6);
+        }
+
+        // a different weighting for the same vehicle can be used as well
+        Weighting shortestWeighting = new ShortestWeighting(carFlagEncoder);
+        parallelPch.customize(shortestWeighting);
+        assertSame(shortestWeighting, parallelPch.getCustomizationWeighting());
+        checkCustomizedWeights(parallelPch, chGraph, shortestWeighting, rnd, seed);
+        changedEdges.clear();
+        for (int i = 0; i < 20; i++) {
+            int edge = rnd.nextInt(ghStorage.getEdges());
+            changedEdges.add(edge);
+            ghStorage.getEdgeIteratorState(edge, Integer.MIN_VALUE).set(carFlagEncoder.getAccessEnc(), rnd.nextBoolean());
+        }
+        parallelPch.customize(changedEdges);
+        checkCustomizedWeights(parallelPch, chGraph, shortestWeighting, rnd, seed);
+    }
+
+    private void checkCustomizedWeights(PrepareContractionHierarchies pch, CHGraph chGraph, Weighting weighting, Random rnd, long seed) {
+        int numNodes = chGraph.getNodes();
+        for (int i = 0; i < 100; ++i) {
+            int from = rnd.nextInt(numNodes);
+            int to = rnd.nextInt(numNodes);
+            Path dijkstraPath = new Dijkstra(chGraph.getBaseGraph(), weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            Path chPath = pch.createAlgo(chGraph, AlgorithmOptions.start().weighting(weighting).build()).calcPath(from, to);
+            assertEquals("seed: " + seed, dijkstraPath.isFound(), chPath.isFound());
+            assertEquals("seed: " + seed, dijkstraPath.getWeight(), chPath.getWeight(), 1.e-1);
+        }
+    }
+
+    @Test
+    public void testCustomize_notCustomizable() {
+        GraphHopperStorage g = createExampleGraph();
+        PrepareContractionHierarchies prepare = createPrepareContractionHierarchies(g);
+        prepare.doWork();
+        try {
+            prepare.customize();
+            fail("there should have been an error");
+        } catch (IllegalStateException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testParallelContraction_invalidThreads() {
+        GraphHopperStorage g = createExampleGraph();
+        try {
+            createPrepareContractionHierarchies(g).setParams(new PMap().put(CHParameters.CONTRACTION_THREADS, 0));
+            fail("there should have been an error");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
     void checkPath(GraphHopperStorage g, CHProfile p, int expShortcuts, double expDistance, IntIndexedContainer expNodes) {
         CHGraph lg = g.getCHGraph(p);
         PrepareContractionHierarchies prepare = createPrepareContractionHierarchies(g, p);
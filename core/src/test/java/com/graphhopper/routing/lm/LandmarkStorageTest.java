@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.lm;
 
+import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.routing.AbstractRoutingAlgorithmTester;
 import com.graphhopper.routing.util.CarFlagEncoder;
 import com.graphhopper.routing.util.EncodingManager;
@@ -35,6 +36,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -287,6 +289,78 @@ public class LandmarkStorageTest {
         assertEquals(71361, storage.getToWeight(1, 15));
     }
 
+    @Test
+    public void testLandmarkThreads() {
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(ghStorage, rnd, 500, 2.2, true, true, encoder.getAverageSpeedEnc(), 0.7, 0.9, 0.8);
+        ghStorage.freeze();
+
+        LandmarkStorage sequential = new LandmarkStorage(ghStorage, new RAMDirectory(), new FastestWeighting(encoder), 8);
+        sequential.createLandmarks();
+        LandmarkStorage parallel = new LandmarkStorage(ghStorage, new RAMDirectory(), new FastestWeighting(encoder), 8).
+                setLandmarkThreads(4);
+        parallel.createLandmarks();
+
+        assertEquals(sequential.getSubnetworksWithLandmarks(), parallel.getSubnetworksWithLandmarks());
+        for (int subnetwork = 1; subnetwork < sequential.getSubnetworksWithLandmarks(); subnetwork++) {
+            assertArrayEquals(sequential.getLandmarks(subnetwork), parallel.getLandmarks(subnetwork));
+        }
+        for (int node = 0; node < ghStorage.getNodes(); node++) {
+            for (int lmIdx = 0; lmIdx < 8; lmIdx++) {
+                assertEquals(sequential.getFromWeight(lmIdx, node), parallel.getFromWeight(lmIdx, node));
+                assertEquals(sequential.getToWeight(lmIdx, node), parallel.getToWeight(lmIdx, node));
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateWeights() {
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(ghStorage, rnd, 500, 2.2, true, true, encoder.getAverageSpeedEnc(), 0.7, 1, 0.8);
+        // without one-ways the 'from' and 'to' weights are equal and can be stored exactly, so the weights are updated
+        // without calculating all weights of a landmark again
+        int updates = assertUpdateWeights(rnd, 5);
+        assertTrue(updates > 0);
+        assertTrue(updates < ghStorage.getNodes());
+    }
+
+    @Test
+    public void testUpdateWeights_recalculate() {
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(ghStorage, rnd, 500, 2.2, true, true, encoder.getAverageSpeedEnc(), 0.7, 0.9, 0.8);
+        assertTrue(assertUpdateWeights(rnd, 30) > 0);
+    }
+
+    private int assertUpdateWeights(Random rnd, int changedEdgeCount) {
+        ghStorage.freeze();
+        LandmarkStorage storage = new LandmarkStorage(ghStorage, new RAMDirectory(), new FastestWeighting(encoder), 8);
+        storage.createLandmarks();
+
+        // faster edges make the stored weights too big
+        IntHashSet changedEdges = new IntHashSet();
+        for (int i = 0; i < changedEdgeCount; i++) {
+            int edge = rnd.nextInt(ghStorage.getEdges());
+            EdgeIteratorState edgeState = ghStorage.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            edgeState.set(encoder.getAverageSpeedEnc(), encoder.getMaxSpeed());
+            if (encoder.getAverageSpeedEnc().isStoreTwoDirections())
+                edgeState.setReverse(encoder.getAverageSpeedEnc(), encoder.getMaxSpeed());
+            changedEdges.add(edge);
+        }
+        int updates = storage.updateWeights(changedEdges);
+
+        LandmarkStorage expected = new LandmarkStorage(ghStorage, new RAMDirectory(), new FastestWeighting(encoder), 8);
+        expected.createLandmarks();
+        assertArrayEquals(expected.getLandmarks(1), storage.getLandmarks(1));
+        for (int node = 0; node < ghStorage.getNodes(); node++) {
+            for (int lmIdx = 0; lmIdx < 8; lmIdx++) {
+                // the weights are rounded down when they are stored, so they can differ slightly
+                assertEquals(expected.getFromWeight(lmIdx, node), storage.getFromWeight(lmIdx, node), 2);
+                assertEquals(expected.getToWeight(lmIdx, node), storage.getToWeight(lmIdx, node), 2);
+            }
+        }
+        return updates;
+    }
+
     @Test
     public void testDeltaWarning() {
         int distance = 1000000;
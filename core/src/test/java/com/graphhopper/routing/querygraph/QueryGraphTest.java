@@ -34,6 +34,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
@@ -264,6 +265,61 @@ public class QueryGraphTest {
         assertTrue(vi.next());
     }
 
+    @Test
+    public void testVirtualAndMainEdgesAtRealNode() {
+        NodeAccess na = g.getNodeAccess();
+        na.setNode(0, 0, 0);
+        na.setNode(1, 0, 1);
+        na.setNode(2, 1, 0);
+        na.setNode(3, -1, 0);
+        g.edge(0, 1, 10, true);
+        g.edge(0, 2, 10, true);
+        g.edge(0, 3, 10, true);
+
+        // two snaps on the same edge, only the virtual edge to the closer one replaces the edge at its tower nodes
+        EdgeIteratorState edge = GHUtility.getEdge(g, 0, 1);
+        QueryResult res1 = createLocationResult(0.1, 0.3, edge, 0, EDGE);
+        QueryResult res2 = createLocationResult(0.1, 0.6, edge, 0, EDGE);
+        QueryGraph queryGraph = lookup(Arrays.asList(res1, res2));
+        assertEquals(4, res1.getClosestNode());
+        assertEquals(5, res2.getClosestNode());
+        EdgeExplorer explorer = queryGraph.createEdgeExplorer();
+        assertEquals(Arrays.asList(4, 3, 2), getAdjNodes(explorer.setBaseNode(0)));
+        assertEquals(Arrays.asList(5), getAdjNodes(explorer.setBaseNode(1)));
+        assertEquals(Arrays.asList(0, 5), getAdjNodes(explorer.setBaseNode(4)));
+
+        // the removed edge is skipped, but the other edges of the main graph are iterated
+        EdgeIterator iter = explorer.setBaseNode(0);
+        while (iter.next()) {
+            assertNotEquals(edge.getEdge(), iter.getEdge());
+        }
+
+        // getEdges and toString do not change the position of the iteration, neither within the virtual edges nor
+        // within the edges of the main graph
+        iter = explorer.setBaseNode(0);
+        assertTrue(iter.next());
+        assertEquals(4, iter.getAdjNode());
+        assertEquals("[0->4, 2 0-3, 1 0-2]", ((VirtualEdgeIterator) iter).getEdges().toString());
+        assertTrue(iter.next());
+        assertEquals(3, iter.getAdjNode());
+        assertTrue(iter.toString(), iter.toString().endsWith("all: [0->4, 2 0-3, 1 0-2]"));
+        assertTrue(iter.next());
+        assertEquals(2, iter.getAdjNode());
+        assertFalse(iter.next());
+
+        // the iterator is reset for the next base node and again for the same one
+        assertEquals(Arrays.asList(5), getAdjNodes(explorer.setBaseNode(1)));
+        assertEquals(Arrays.asList(4, 3, 2), getAdjNodes(explorer.setBaseNode(0)));
+    }
+
+    private List<Integer> getAdjNodes(EdgeIterator iter) {
+        List<Integer> adjNodes = new ArrayList<>();
+        while (iter.next()) {
+            adjNodes.add(iter.getAdjNode());
+        }
+        return adjNodes;
+    }
+
     @Test
     public void testUseMeanElevation() {
         g.close();
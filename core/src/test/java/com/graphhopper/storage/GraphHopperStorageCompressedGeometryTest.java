@@ -0,0 +1,175 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs all tests of GraphHopperStorageTest with the compressed way geometry.
+ */
+public class GraphHopperStorageCompressedGeometryTest extends GraphHopperStorageTest {
+    @Override
+    protected GraphHopperStorage newGHStorage(Directory dir, boolean enabled3D, int segmentSize) {
+        return GraphBuilder.start(encodingManager).setDir(dir).set3D(enabled3D).setSegmentSize(segmentSize).
+                setCompressedWayGeometry(true).build();
+    }
+
+    @Override
+    @Test
+    public void testDontGrowOnUpdate() {
+        graph = createGHStorage(defaultGraphLoc, true);
+        EdgeIteratorState edge = graph.edge(0, 1, 100, true);
+        BaseGraph baseGraph = (BaseGraph) graph.getBaseGraph();
+        assertEquals(4, baseGraph.getMaxGeoRef());
+        edge.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7, 7, 8, 9));
+        long maxGeoRef = baseGraph.getMaxGeoRef();
+        assertTrue(maxGeoRef > 4);
+        edge.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5));
+        assertEquals(maxGeoRef, baseGraph.getMaxGeoRef());
+        edge.setWayGeometry(Helper.createPointList3D(1, 2, 3));
+        assertEquals(maxGeoRef, baseGraph.getMaxGeoRef());
+        assertEquals(Helper.createPointList3D(1, 2, 3), edge.fetchWayGeometry(0));
+
+        // more bytes are necessary
+        PointList pillars = Helper.createPointList3D(1.5, 1, 0, 2, 3, 0, 3.5, 4.5, 0, 5, 6, 0, 7, 8, 9);
+        edge.setWayGeometry(pillars);
+        assertTrue(baseGraph.getMaxGeoRef() > maxGeoRef);
+        assertEquals(pillars, edge.fetchWayGeometry(0));
+    }
+
+    @Test
+    public void testVarInt() {
+        byte[] bytes = new byte[5 * 6];
+        int[] values = {0, 1, -1, 127, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        int pos = 0;
+        for (int value : values) {
+            int next = BaseGraph.writeVarInt(bytes, pos, BaseGraph.zigZag(value));
+            assertEquals(next - pos, BaseGraph.varIntLength(BaseGraph.zigZag(value)));
+            pos = next;
+        }
+        // 0, 1 and -1 need one byte, 127 two bytes
+        assertEquals(1 + 1 + 1 + 2 + 5 + 5, pos);
+        DataAccess da = new RAMDirectory().find("varint");
+        da.create(100);
+        da.setBytes(0, bytes, pos);
+        pos = 0;
+        for (int value : values) {
+            int encoded = BaseGraph.readVarInt(da, pos);
+            assertEquals(value, BaseGraph.unZigZag(encoded));
+            pos += BaseGraph.varIntLength(encoded);
+        }
+    }
+
+    @Test
+    public void testShortEdgesSmallerThanUncompressed() {
+        graph = newGHStorage(new RAMDirectory(), true, -1).create(defaultSize);
+        GraphHopperStorage uncompressed = GraphBuilder.start(encodingManager).set3D(true).create();
+        for (GraphHopperStorage g : Arrays.asList(graph, uncompressed)) {
+            g.getNodeAccess().setNode(0, 50, 10, 100);
+            g.getNodeAccess().setNode(1, 50.001, 10.001, 120);
+        }
+        // the first pillar node is stored relative to the tower node, not as an absolute coordinate
+        PointList pillars = Helper.createPointList3D(50.0004, 10.0003, 110);
+        long compressedBytes = geometryBytes(graph, pillars);
+        long uncompressedBytes = geometryBytes(uncompressed, pillars);
+        assertEquals(16, uncompressedBytes);
+        assertEquals(12, compressedBytes);
+
+        pillars = Helper.createPointList3D(50.0004, 10.0003, 110, 50.0007, 10.0006, 115);
+        assertEquals(28, geometryBytes(uncompressed, pillars));
+        assertEquals(16, geometryBytes(graph, pillars));
+
+        graph = newGHStorage(new RAMDirectory(), false, -1).create(defaultSize);
+        uncompressed = GraphBuilder.start(encodingManager).create();
+        for (GraphHopperStorage g : Arrays.asList(graph, uncompressed)) {
+            g.getNodeAccess().setNode(0, 50, 10);
+            g.getNodeAccess().setNode(1, 50.001, 10.001);
+        }
+        pillars = Helper.createPointList(50.0004, 10.0003);
+        assertEquals(12, geometryBytes(uncompressed, pillars));
+        assertEquals(8, geometryBytes(graph, pillars));
+        pillars = Helper.createPointList(50.0004, 10.0003, 50.0007, 10.0006);
+        assertEquals(20, geometryBytes(uncompressed, pillars));
+        assertEquals(12, geometryBytes(graph, pillars));
+    }
+
+    /**
+     * @return the bytes used for the geometry of a new edge 0-1 with the specified pillar nodes
+     */
+    private static long geometryBytes(GraphHopperStorage g, PointList pillars) {
+        BaseGraph baseGraph = (BaseGraph) g.getBaseGraph();
+        long maxGeoRef = baseGraph.getMaxGeoRef();
+        EdgeIteratorState edge = g.edge(0, 1, 10, true).setWayGeometry(pillars);
+        assertEquals(pillars, edge.fetchWayGeometry(0));
+        assertEquals(pillars.clone(true), g.getEdgeIteratorState(edge.getEdge(), 0).fetchWayGeometry(0));
+        return (baseGraph.getMaxGeoRef() - maxGeoRef) * 4;
+    }
+
+    @Test
+    public void testLargeDifferences() {
+        graph = createGHStorage(defaultGraphLoc, true);
+        // the difference of the longitudes does not fit into an int
+        PointList pillars = Helper.createPointList3D(-89.9, -179.9, -100, 89.9, 179.9, 8000, 0, 0, 0);
+        EdgeIteratorState edge = graph.edge(0, 1, 10, true).setWayGeometry(pillars);
+        assertEquals(pillars, edge.fetchWayGeometry(0));
+        assertEquals(pillars.clone(true), graph.getEdgeIteratorState(edge.getEdge(), 0).fetchWayGeometry(0));
+    }
+
+    @Test
+    public void testSmallerThanUncompressed() {
+        graph = newGHStorage(new RAMDirectory(), false, -1).create(defaultSize);
+        GraphHopperStorage uncompressed = GraphBuilder.start(encodingManager).create();
+        PointList pillars = new PointList(100, false);
+        for (int i = 0; i < 100; i++) {
+            pillars.add(50 + i * 1e-4, 10 + i * 1e-4);
+        }
+        graph.edge(0, 1, 10, true).setWayGeometry(pillars);
+        uncompressed.edge(0, 1, 10, true).setWayGeometry(pillars);
+        assertEquals(pillars, graph.getEdgeIteratorState(0, 1).fetchWayGeometry(0));
+        // every value needs 2 instead of 4 bytes
+        assertTrue(((BaseGraph) graph.getBaseGraph()).getMaxGeoRef() * 2 <
+                ((BaseGraph) uncompressed.getBaseGraph()).getMaxGeoRef() + 10);
+
+        // a shorter geometry is stored in the existing space
+        long maxGeoRef = ((BaseGraph) graph.getBaseGraph()).getMaxGeoRef();
+        graph.getEdgeIteratorState(0, 1).setWayGeometry(Helper.createPointList(1, 1, 2, 2));
+        assertEquals(maxGeoRef, ((BaseGraph) graph.getBaseGraph()).getMaxGeoRef());
+        assertEquals(Helper.createPointList(1, 1, 2, 2), graph.getEdgeIteratorState(0, 1).fetchWayGeometry(0));
+    }
+
+    @Test
+    public void testLoadUsesStoredFormat() {
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).create(defaultSize);
+        graph.edge(0, 1, 10, true).setWayGeometry(Helper.createPointList(1.5, 1, 2, 3));
+        graph.flush();
+        graph.close();
+
+        graph = GraphBuilder.start(encodingManager).setRAM(defaultGraphLoc, true).build();
+        assertFalse(graph.isCompressedWayGeometry());
+        assertTrue(graph.loadExisting());
+        assertTrue(graph.isCompressedWayGeometry());
+        assertEquals(Helper.createPointList(1.5, 1, 2, 3), graph.getEdgeIteratorState(0, 1).fetchWayGeometry(0));
+    }
+}
@@ -17,6 +17,8 @@
  */
 package com.graphhopper.storage;
 
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
 import org.junit.Test;
@@ -280,4 +282,99 @@ public class GraphHopperStorageTest extends AbstractGraphStorageTester {
         assertEquals(13, edge1.getFlags().ints[0]);
     }
 
+    @Test
+    public void testChangeEdgeFlags() {
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).create(defaultSize);
+        GHUtility.setProperties(graph.edge(0, 1).setDistance(10), carEncoder, 60, true, true);
+        GHUtility.setProperties(graph.edge(1, 2).setDistance(10), carEncoder, 60, true, true);
+        graph.freeze();
+
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, Integer.MIN_VALUE);
+        IntsRef flags = IntsRef.deepCopyOf(edge.getFlags());
+        carAvSpeedEnc.setDecimal(false, flags, 20);
+        IntObjectMap<IntsRef> changes = new GHIntObjectHashMap<>();
+        changes.put(0, flags);
+        graph.changeEdgeFlags(changes);
+        // the flags are written to the storage
+        carAvSpeedEnc.setDecimal(false, flags, 30);
+
+        assertEquals(20, graph.getEdgeIteratorState(0, Integer.MIN_VALUE).get(carAvSpeedEnc), .1);
+        assertEquals(20, GHUtility.getEdge(graph, 1, 0).get(carAvSpeedEnc), .1);
+        assertEquals(60, graph.getEdgeIteratorState(1, Integer.MIN_VALUE).get(carAvSpeedEnc), .1);
+
+        // writing through an edge still works for a changed edge
+        graph.getEdgeIteratorState(0, Integer.MIN_VALUE).set(carAvSpeedEnc, 40);
+        assertEquals(40, graph.getEdgeIteratorState(0, Integer.MIN_VALUE).get(carAvSpeedEnc), .1);
+
+        try {
+            changes.clear();
+            changes.put(2, flags);
+            graph.changeEdgeFlags(changes);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        // nothing is written for an invalid change
+        changes.clear();
+        changes.put(1, flags);
+        changes.put(2, flags);
+        try {
+            graph.changeEdgeFlags(changes);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        assertEquals(60, graph.getEdgeIteratorState(1, Integer.MIN_VALUE).get(carAvSpeedEnc), .1);
+
+        graph.flush();
+        graph.close();
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false);
+        assertTrue(graph.loadExisting());
+        assertEquals(40, graph.getEdgeIteratorState(0, Integer.MIN_VALUE).get(carAvSpeedEnc), .1);
+        assertEquals(60, graph.getEdgeIteratorState(1, Integer.MIN_VALUE).get(carAvSpeedEnc), .1);
+    }
+
+    @Test
+    public void testChangeEdgeFlagsKeepsPinnedEpoch() throws InterruptedException {
+        graph = newGHStorage(new RAMDirectory(), false).create(defaultSize);
+        GHUtility.setProperties(graph.edge(0, 1).setDistance(10), carEncoder, 60, true, true);
+        graph.freeze();
+
+        IntsRef flags = IntsRef.deepCopyOf(graph.getEdgeIteratorState(0, Integer.MIN_VALUE).getFlags());
+        carAvSpeedEnc.setDecimal(false, flags, 20);
+        final IntObjectMap<IntsRef> changes = new GHIntObjectHashMap<>();
+        changes.put(0, flags);
+
+        GraphEpoch epoch = graph.pinEpoch();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                graph.changeEdgeFlags(changes);
+            }
+        };
+        writer.start();
+        // the writer waits for the pinned epoch, but we are not blocked and still see the old flags
+        writer.join(200);
+        assertTrue(writer.isAlive());
+        assertEquals(60, graph.getEdgeIteratorState(0, Integer.MIN_VALUE).get(carAvSpeedEnc), .1);
+
+        // a thread that pins the graph now sees the new flags already
+        final double[] speed = new double[1];
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                GraphEpoch newEpoch = graph.pinEpoch();
+                try {
+                    speed[0] = graph.getEdgeIteratorState(0, Integer.MIN_VALUE).get(carAvSpeedEnc);
+                } finally {
+                    newEpoch.unpin();
+                }
+            }
+        };
+        reader.start();
+        reader.join();
+        assertEquals(20, speed[0], .1);
+
+        epoch.unpin();
+        writer.join();
+        assertEquals(20, graph.getEdgeIteratorState(0, Integer.MIN_VALUE).get(carAvSpeedEnc), .1);
+    }
 }
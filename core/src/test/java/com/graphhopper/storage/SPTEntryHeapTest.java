@@ -0,0 +1,111 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import org.junit.Test;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SPTEntryHeapTest {
+    @Test
+    public void testUpdate() {
+        SPTEntryHeap<SPTEntry> heap = new SPTEntryHeap<>(2);
+        SPTEntry a = new SPTEntry(1, 20);
+        SPTEntry b = new SPTEntry(2, 123);
+        SPTEntry c = new SPTEntry(3, 120);
+        heap.add(a);
+        heap.add(b);
+        heap.add(c);
+        assertEquals(3, heap.size());
+        assertTrue(heap.contains(b));
+
+        b.weight = 10;
+        heap.update(b);
+        assertSame(b, heap.peek());
+        b.weight = 200;
+        heap.update(b);
+
+        assertSame(a, heap.poll());
+        assertFalse(heap.contains(a));
+        assertSame(c, heap.poll());
+        assertSame(b, heap.poll());
+        assertNull(heap.poll());
+    }
+
+    @Test
+    public void testEntryInOnlyOneHeap() {
+        SPTEntryHeap<SPTEntry> heap = new SPTEntryHeap<>();
+        SPTEntryHeap<SPTEntry> otherHeap = new SPTEntryHeap<>();
+        SPTEntry a = new SPTEntry(1, 20);
+        heap.add(a);
+        assertFalse(otherHeap.contains(a));
+        try {
+            otherHeap.add(a);
+            fail("an entry cannot be in two heaps");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        heap.clear();
+        assertFalse(heap.contains(a));
+        otherHeap.add(a);
+        assertSame(a, otherHeap.poll());
+    }
+
+    @Test
+    public void testUpdateAll() {
+        SPTEntryHeap<SPTEntry> heap = new SPTEntryHeap<>();
+        for (int i = 0; i < 10; i++) {
+            heap.add(new SPTEntry(i, i));
+        }
+        for (int i = 0; i < heap.size(); i++) {
+            heap.get(i).weight = 100 - heap.get(i).weight;
+        }
+        heap.updateAll();
+        for (int i = 9; i >= 0; i--) {
+            assertEquals(i, heap.poll().adjNode);
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        SPTEntryHeap<SPTEntry> heap = new SPTEntryHeap<>();
+        PriorityQueue<SPTEntry> queue = new PriorityQueue<>();
+        SPTEntry[] entries = new SPTEntry[1000];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new SPTEntry(i, rnd.nextDouble() * 100);
+            heap.add(entries[i]);
+        }
+        for (int i = 0; i < 500; i++) {
+            SPTEntry entry = entries[rnd.nextInt(entries.length)];
+            entry.weight = rnd.nextDouble() * 100;
+            heap.update(entry);
+        }
+        for (SPTEntry entry : entries) {
+            queue.add(new SPTEntry(entry.adjNode, entry.weight));
+        }
+        while (!queue.isEmpty()) {
+            assertEquals("seed: " + seed, queue.poll().weight, heap.poll().weight, 0);
+        }
+        assertTrue(heap.isEmpty());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.util.Helper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SpeedProfileStorageTest {
+    private final String location = "./target/speed-profile-storage-test";
+    private final EncodingManager encodingManager = EncodingManager.create(new CarFlagEncoder());
+
+    @Before
+    @After
+    public void cleanUp() {
+        Helper.removeDir(new File(location));
+    }
+
+    private static int[] createProfile(int percentage) {
+        int[] profile = new int[SpeedProfileStorage.BUCKETS];
+        Arrays.fill(profile, percentage);
+        return profile;
+    }
+
+    @Test
+    public void testSharedProfiles() {
+        GraphHopperStorage graph = GraphBuilder.start(encodingManager).setSpeedProfiles(true).create();
+        SpeedProfileStorage storage = graph.getSpeedProfileStorage();
+        int[] rushHour = createProfile(100);
+        // Monday 08:00-09:00
+        Arrays.fill(rushHour, 8 * 4, 9 * 4, 50);
+        int rushHourId = storage.addProfile(rushHour);
+        int fastId = storage.addProfile(createProfile(120));
+        assertNotEquals(rushHourId, fastId);
+        // an equal profile is shared
+        assertEquals(rushHourId, storage.addProfile(rushHour.clone()));
+        assertEquals(2, storage.getProfileCount());
+        assertEquals(1.2, storage.getMaxSpeedFactor(), 1e-6);
+
+        storage.setEdgeProfile(3, false, rushHourId);
+        storage.setEdgeProfile(3, true, fastId);
+        assertEquals(rushHourId, storage.getEdgeProfile(3, false));
+        assertEquals(fastId, storage.getEdgeProfile(3, true));
+        assertEquals(0.5, storage.getSpeedFactor(3, false, 8 * 4 + 1), 1e-6);
+        assertEquals(1, storage.getSpeedFactor(3, false, 9 * 4), 1e-6);
+        assertEquals(1.2, storage.getSpeedFactor(3, true, 8 * 4), 1e-6);
+        // edges without profile keep their speed
+        assertEquals(SpeedProfileStorage.NO_PROFILE, storage.getEdgeProfile(2, false));
+        assertEquals(1, storage.getSpeedFactor(100_000, true, 8 * 4), 1e-6);
+    }
+
+    @Test
+    public void testInvalidProfiles() {
+        SpeedProfileStorage storage = GraphBuilder.start(encodingManager).setSpeedProfiles(true).create().getSpeedProfileStorage();
+        try {
+            storage.addProfile(new int[10]);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            storage.addProfile(createProfile(0));
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            storage.setEdgeProfile(0, false, 1);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGetBucket() {
+        assertEquals(0, SpeedProfileStorage.getBucket(0));
+        assertEquals(1, SpeedProfileStorage.getBucket(15 * 60_000));
+        assertEquals(SpeedProfileStorage.BUCKETS - 1, SpeedProfileStorage.getBucket(7 * 24 * 3600_000L - 1));
+        // the next week starts again with the first bucket
+        assertEquals(2, SpeedProfileStorage.getBucket(7 * 24 * 3600_000L + 30 * 60_000));
+    }
+
+    @Test
+    public void testLoadExisting() {
+        GraphHopperStorage graph = GraphBuilder.start(encodingManager).setRAM(location, true).setSpeedProfiles(true).create();
+        graph.edge(0, 1, 10, true);
+        SpeedProfileStorage storage = graph.getSpeedProfileStorage();
+        int slowId = storage.addProfile(createProfile(80));
+        storage.setEdgeProfile(0, true, slowId);
+        graph.flush();
+        graph.close();
+
+        graph = GraphBuilder.start(encodingManager).setRAM(location, true).setSpeedProfiles(true).build();
+        assertTrue(graph.loadExisting());
+        storage = graph.getSpeedProfileStorage();
+        assertEquals(1, storage.getProfileCount());
+        assertEquals(SpeedProfileStorage.NO_PROFILE, storage.getEdgeProfile(0, false));
+        assertEquals(0.8, storage.getSpeedFactor(0, true, 5), 1e-6);
+        assertEquals(1, storage.getMaxSpeedFactor(), 1e-6);
+        // the loaded profiles are shared as well
+        assertEquals(slowId, storage.addProfile(createProfile(80)));
+        graph.close();
+    }
+}
@@ -101,6 +101,31 @@ public class LocationIndexTreeTest extends AbstractLocationIndexTester {
         assertEquals(new GHPoint(-0.441624, 0.317259), res.getSnappedPoint());
     }
 
+    @Test
+    public void testFindClosestBatch() {
+        Graph graph = createTestGraph2();
+        LocationIndexTree index = createIndex(graph, 500);
+        Random rand = new Random(42);
+        BBox bounds = graph.getBounds();
+        double[] lats = new double[50];
+        double[] lons = new double[50];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = bounds.minLat + rand.nextDouble() * (bounds.maxLat - bounds.minLat);
+            lons[i] = bounds.minLon + rand.nextDouble() * (bounds.maxLon - bounds.minLon);
+        }
+        List<QueryResult> results = index.findClosestBatch(lats, lons, EdgeFilter.ALL_EDGES);
+        assertEquals(lats.length, results.size());
+        for (int i = 0; i < lats.length; i++) {
+            QueryResult expected = index.findClosest(lats[i], lons[i], EdgeFilter.ALL_EDGES);
+            QueryResult res = results.get(i);
+            assertTrue(res.isValid());
+            // the network entries are iterated in a different order, so for equally close edges the closest node
+            // and edge can differ
+            assertEquals(expected.getQueryDistance(), res.getQueryDistance(), 1.e-6);
+            assertEquals(expected.getSnappedPoint(), res.getSnappedPoint());
+        }
+    }
+
     @Test
     public void testQuery() {
         Graph graph = createTestGraph2();
@@ -0,0 +1,110 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage.index;
+
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QueryResultCacheTest {
+    private GraphHopperStorage graph;
+    private LocationIndexTree index;
+
+    @Before
+    public void setUp() {
+        graph = new GraphBuilder(EncodingManager.create("car")).create();
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 50.00, 10.00);
+        na.setNode(1, 50.00, 10.01);
+        na.setNode(2, 50.01, 10.01);
+        graph.edge(0, 1, 700, true);
+        graph.edge(1, 2, 1100, true);
+        index = new LocationIndexTree(graph, new RAMDirectory());
+        index.prepareIndex();
+    }
+
+    @Test
+    public void testGetReturnsNewResult() {
+        QueryResultCache cache = new QueryResultCache(graph, 10);
+        assertNull(cache.get(50.001, 10.005, "car"));
+
+        QueryResult qr = index.findClosest(50.001, 10.005, EdgeFilter.ALL_EDGES);
+        cache.put(qr, "car", cache.getVersion());
+        assertNull(cache.get(50.001, 10.005, "bike"));
+
+        QueryResult cached = cache.get(50.001, 10.005, "car");
+        assertNotSame(qr, cached);
+        assertEquals(qr.getClosestNode(), cached.getClosestNode());
+        assertEquals(qr.getClosestEdge().getEdge(), cached.getClosestEdge().getEdge());
+        assertEquals(qr.getClosestEdge().getAdjNode(), cached.getClosestEdge().getAdjNode());
+        assertEquals(qr.getWayIndex(), cached.getWayIndex());
+        assertEquals(qr.getSnappedPosition(), cached.getSnappedPosition());
+        assertEquals(qr.getSnappedPoint(), cached.getSnappedPoint());
+        assertEquals(qr.getQueryDistance(), cached.getQueryDistance(), 1.e-6);
+
+        // coordinates are rounded to 1e-6 degrees but the result keeps the requested point
+        cached = cache.get(50.0010001, 10.005, "car");
+        assertNotNull(cached);
+        assertEquals(50.0010001, cached.getQueryPoint().lat, 1.e-9);
+
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        QueryResultCache cache = new QueryResultCache(graph, 2);
+        cache.put(index.findClosest(50.001, 10.005, EdgeFilter.ALL_EDGES), "car", cache.getVersion());
+        cache.put(index.findClosest(50.005, 10.009, EdgeFilter.ALL_EDGES), "car", cache.getVersion());
+        assertNotNull(cache.get(50.001, 10.005, "car"));
+        cache.put(index.findClosest(50.009, 10.009, EdgeFilter.ALL_EDGES), "car", cache.getVersion());
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(50.001, 10.005, "car"));
+        assertNull(cache.get(50.005, 10.009, "car"));
+    }
+
+    @Test
+    public void testInvalidateEdges() {
+        QueryResultCache cache = new QueryResultCache(graph, 10);
+        QueryResult qr0 = index.findClosest(50.001, 10.005, EdgeFilter.ALL_EDGES);
+        QueryResult qr1 = index.findClosest(50.005, 10.009, EdgeFilter.ALL_EDGES);
+        assertEquals(0, qr0.getClosestEdge().getEdge());
+        assertEquals(1, qr1.getClosestEdge().getEdge());
+        int version = cache.getVersion();
+        cache.put(qr0, "car", version);
+
+        GHIntHashSet changedEdges = new GHIntHashSet();
+        changedEdges.add(0);
+        cache.invalidateEdges(changedEdges);
+        assertNull(cache.get(50.001, 10.005, "car"));
+
+        // a result that was looked up before the change is not stored
+        cache.put(qr1, "car", version);
+        assertNull(cache.get(50.005, 10.009, "car"));
+        cache.put(qr1, "car", cache.getVersion());
+        assertNotNull(cache.get(50.005, 10.009, "car"));
+    }
+}
@@ -25,6 +25,7 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.storage.*;
+import com.graphhopper.util.shapes.BBox;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -110,6 +111,61 @@ public class GHUtilityTest {
         assertEquals(1, newG.getEdgeIteratorState(2, Integer.MIN_VALUE).getBaseNode());
     }
 
+    @Test
+    public void testSortHilbert() {
+        Graph g = initUnsorted(createGraph());
+        Graph newG = GHUtility.sortHilbert(g, createGraph());
+        assertEquals(g.getNodes(), newG.getNodes());
+        assertEquals(g.getEdges(), newG.getEdges());
+        assertEquals(getLengthOfAllEdges(g), getLengthOfAllEdges(newG), 1e-4);
+
+        // the curve starts in the south west corner and the nodes are ordered along it
+        NodeAccess na = newG.getNodeAccess();
+        assertEquals(0, na.getLatitude(0), 1e-4);
+        assertEquals(1, na.getLongitude(0), 1e-4);
+        long prevIndex = -1;
+        for (int node = 0; node < newG.getNodes(); node++) {
+            BBox bounds = g.getBounds();
+            int x = (int) ((na.getLongitude(node) - bounds.minLon) / (bounds.maxLon - bounds.minLon) * ((1 << 15) - 1));
+            int y = (int) ((na.getLatitude(node) - bounds.minLat) / (bounds.maxLat - bounds.minLat) * ((1 << 15) - 1));
+            long index = GHUtility.hilbertIndex(x, y);
+            assertTrue(index >= prevIndex);
+            prevIndex = index;
+        }
+
+        // the edges are ordered by their base node
+        int prevBase = -1;
+        AllEdgesIterator iter = newG.getAllEdges();
+        while (iter.next()) {
+            assertTrue(iter.getBaseNode() >= prevBase);
+            prevBase = iter.getBaseNode();
+        }
+        // the direction of the one-way edge 7->3 is kept
+        EdgeIteratorState edge = GHUtility.getEdge(newG, findNode(newG, 5, 1.5), findNode(newG, 3, 0.5));
+        assertTrue(edge.get(accessEnc));
+        assertFalse(edge.getReverse(accessEnc));
+    }
+
+    @Test
+    public void testHilbertIndex() {
+        // the quadrants are visited in the order (0,0), (0,1), (1,1), (1,0)
+        assertEquals(0, GHUtility.hilbertIndex(0, 0));
+        assertEquals(1, GHUtility.hilbertIndex(0, 1 << 14) >> 28);
+        assertEquals(2, GHUtility.hilbertIndex(1 << 14, 1 << 14) >> 28);
+        assertEquals(3, GHUtility.hilbertIndex(1 << 14, 0) >> 28);
+        // the next cell on the curve is a neighbour
+        assertEquals(1, Math.min(GHUtility.hilbertIndex(1, 0), GHUtility.hilbertIndex(0, 1)));
+    }
+
+    private static int findNode(Graph g, double lat, double lon) {
+        NodeAccess na = g.getNodeAccess();
+        for (int node = 0; node < g.getNodes(); node++) {
+            if (Math.abs(na.getLatitude(node) - lat) < 1e-6 && Math.abs(na.getLongitude(node) - lon) < 1e-6)
+                return node;
+        }
+        throw new IllegalArgumentException("node not found " + lat + "," + lon);
+    }
+
     @Test
     public void testSortDirected() {
         Graph g = createGraph();
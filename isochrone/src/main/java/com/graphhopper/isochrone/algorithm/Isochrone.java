@@ -28,6 +28,7 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.storage.SPTEntryHeap;
 import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.shapes.GHPoint;
@@ -64,7 +65,7 @@ public class Isochrone extends AbstractRoutingAlgorithm {
     }
 
     private IntObjectHashMap<IsoLabel> fromMap;
-    private PriorityQueue<IsoLabel> fromHeap;
+    private SPTEntryHeap<IsoLabel> fromHeap;
     private IsoLabel currEdge;
     private int visitedNodes;
     private double limit = -1;
@@ -74,7 +75,7 @@ public class Isochrone extends AbstractRoutingAlgorithm {
 
     public Isochrone(Graph g, Weighting weighting, boolean reverseFlow) {
         super(g, weighting, TraversalMode.NODE_BASED);
-        fromHeap = new PriorityQueue<>(1000);
+        fromHeap = new SPTEntryHeap<>(1000);
         fromMap = new GHIntObjectHashMap<>(1000);
         this.reverseFlow = reverseFlow;
     }
@@ -254,13 +255,15 @@ public class Isochrone extends AbstractRoutingAlgorithm {
                     fromMap.put(tmpNode, nEdge);
                     fromHeap.add(nEdge);
                 } else if (nEdge.weight > tmpWeight) {
-                    fromHeap.remove(nEdge);
                     nEdge.edge = iter.getEdge();
                     nEdge.weight = tmpWeight;
                     nEdge.distance = tmpDistance;
                     nEdge.time = tmpTime;
                     nEdge.parent = currEdge;
-                    fromHeap.add(nEdge);
+                    if (fromHeap.contains(nEdge))
+                        fromHeap.update(nEdge);
+                    else
+                        fromHeap.add(nEdge);
                 }
             }
 
@@ -47,7 +47,11 @@ public class GraphHopperOSM extends GraphHopper {
 
     @Override
     protected DataReader createReader(GraphHopperStorage ghStorage) {
-        return initDataReader(new OSMReader(ghStorage));
+        OSMReader reader = new OSMReader(ghStorage);
+        if (getDataReaderNodeMapDAType() != null)
+            reader.setNodeMapDAType(getDataReaderNodeMapDAType());
+        reader.setWayWorkerThreads(getWayWorkerThreads());
+        return initDataReader(reader);
     }
 
     public String getOSMFile() {
@@ -36,6 +36,7 @@ import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static com.graphhopper.util.Helper.nf;
 
@@ -87,6 +88,8 @@ public class OSMReader implements DataReader, TurnCostParser.ExternalInternalMap
     private long skippedLocations;
     private final EncodingManager encodingManager;
     private int workerThreads = 2;
+    private int wayWorkerThreads = 1;
+    private int wayBatchSize = 10_000;
     // Using the correct Map<Long, Integer> is hard. We need a memory efficient and fast solution for big data sets!
     //
     // very slow: new SparseLongLongArray
@@ -96,6 +99,7 @@ public class OSMReader implements DataReader, TurnCostParser.ExternalInternalMap
     //        nodeOsmIdToIndexMap = new BigLongIntMap(expectedNodes, EMPTY);
     // smaller memory overhead for bigger data sets because of avoiding a "rehash"
     // remember how many times a node was used to identify tower nodes
+    // off-heap alternative for big data sets, see setNodeMapDAType: new OffHeapLongIntMap
     private LongIntMap osmNodeIdToInternalNodeMap;
     private GHLongLongHashMap osmNodeIdToNodeFlagsMap;
     private GHLongLongHashMap osmWayIdToRouteWeightMap;
@@ -255,11 +259,16 @@ public class OSMReader implements DataReader, TurnCostParser.ExternalInternalMap
         long wayStart = -1;
         long relationStart = -1;
         long counter = 1;
+        ParallelWayProcessor wayProcessor = wayWorkerThreads > 1 ? new ParallelWayProcessor(wayWorkerThreads) : null;
         try (OSMInput in = openOsmInputFile(osmFile)) {
             LongIntMap nodeFilter = getNodeMap();
 
             ReaderElement item;
             while ((item = in.getNext()) != null) {
+                // all ways have to be written before the next nodes or relations are processed
+                if (wayProcessor != null && !item.isType(ReaderElement.WAY))
+                    wayProcessor.flush();
+
                 switch (item.getType()) {
                     case ReaderElement.NODE:
                         if (nodeFilter.get(item.getId()) != EMPTY_NODE) {
@@ -272,7 +281,10 @@ public class OSMReader implements DataReader, TurnCostParser.ExternalInternalMap
                             LOGGER.info(nf(counter) + ", now parsing ways");
                             wayStart = counter;
                         }
-                        processWay((ReaderWay) item);
+                        if (wayProcessor != null)
+                            wayProcessor.add((ReaderWay) item);
+                        else
+                            processWay((ReaderWay) item);
                         break;
                     case ReaderElement.RELATION:
                         if (relationStart < 0) {
@@ -290,6 +302,8 @@ public class OSMReader implements DataReader, TurnCostParser.ExternalInternalMap
                     LOGGER.info(nf(counter) + ", locs:" + nf(locations) + " (" + skippedLocations + ") " + Helper.getMemInfo());
                 }
             }
+            if (wayProcessor != null)
+                wayProcessor.flush();
 
             if (in.getUnprocessedElements() > 0)
                 throw new IllegalStateException("Still unprocessed elements in reader queue " + in.getUnprocessedElements());
@@ -297,6 +311,9 @@ public class OSMReader implements DataReader, TurnCostParser.ExternalInternalMap
             // logger.info("storage nodes:" + storage.nodes() + " vs. graph nodes:" + storage.getGraph().nodes());
         } catch (Exception ex) {
             throw new RuntimeException("Couldn't process file " + osmFile + ", error: " + ex.getMessage(), ex);
+        } finally {
+            if (wayProcessor != null)
+                wayProcessor.close();
         }
 
         finishedReading();
@@ -312,21 +329,32 @@ public class OSMReader implements DataReader, TurnCostParser.ExternalInternalMap
      * Process properties, encode flags and create edges for the way.
      */
     void processWay(ReaderWay way) {
-        if (way.getNodes().size() < 2)
-            return;
-
-        // ignore multipolygon geometry
-        if (!way.hasTags())
+        if (!isWayToProcess(way))
             return;
 
-        long wayOsmId = way.getId();
-
         EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
         if (!encodingManager.acceptWay(way, acceptWay))
             return;
 
         IntsRef relationFlags = getRelFlagsMap(way.getId());
+        setArtificialWayTags(way);
+        IntsRef edgeFlags = encodingManager.handleWayTags(way, acceptWay, relationFlags);
+        addWay(way, edgeFlags);
+    }
 
+    private static boolean isWayToProcess(ReaderWay way) {
+        if (way.getNodes().size() < 2)
+            return false;
+
+        // ignore multipolygon geometry
+        return way.hasTags();
+    }
+
+    /**
+     * Adds the tags estimated_distance, estimated_center and duration:seconds that the encoders need in addition to
+     * the OSM tags. This requires the coordinates of the way nodes.
+     */
+    private void setArtificialWayTags(ReaderWay way) {
         // TODO move this after we have created the edge and know the coordinates => encodingManager.applyWayTags
         LongArrayList osmNodeIds = way.getNodes();
         // Estimate length of ways containing a route tag e.g. for ferry speed calculation
@@ -350,11 +378,18 @@ public class OSMReader implements DataReader, TurnCostParser.ExternalInternalMap
                 LOGGER.warn("Parsing error in way with OSMID=" + way.getId() + " : " + ex.getMessage());
             }
         }
+    }
 
-        IntsRef edgeFlags = encodingManager.handleWayTags(way, acceptWay, relationFlags);
+    /**
+     * Creates the edges for the way from the already encoded edge flags. This modifies the graph and has to be called
+     * in the order of the OSM file.
+     */
+    private void addWay(ReaderWay way, IntsRef edgeFlags) {
         if (edgeFlags.isEmpty())
             return;
 
+        long wayOsmId = way.getId();
+        LongArrayList osmNodeIds = way.getNodes();
         List<EdgeIteratorState> createdEdges = new ArrayList<>();
         // look for barriers along the way
         final int size = osmNodeIds.size();
@@ -768,6 +803,8 @@ public class OSMReader implements DataReader, TurnCostParser.ExternalInternalMap
     protected void finishedReading() {
         printInfo("way");
         pillarInfo.clear();
+        if (osmNodeIdToInternalNodeMap instanceof OffHeapLongIntMap)
+            ((OffHeapLongIntMap) osmNodeIdToInternalNodeMap).release();
         encodingManager.releaseParsers();
         eleProvider.release();
         osmNodeIdToInternalNodeMap = null;
@@ -929,6 +966,39 @@ public class OSMReader implements DataReader, TurnCostParser.ExternalInternalMap
         return this;
     }
 
+    /**
+     * Stores the map from OSM node IDs to internal node IDs in a DataAccess of the specified type instead of the Java
+     * heap. E.g. with DAType.MMAP the map lives off-heap, which reduces heap usage and GC pauses for big imports.
+     */
+    public OSMReader setNodeMapDAType(DAType daType) {
+        if (osmNodeIdToInternalNodeMap.getSize() > 0)
+            throw new IllegalStateException("Cannot change the node map after reading started");
+        osmNodeIdToInternalNodeMap = new OffHeapLongIntMap(ghStorage.getDirectory(), "tmp_osm_node_map", daType);
+        return this;
+    }
+
+    /**
+     * Sets the number of threads that parse the tags of the ways and encode the edge flags. The edges are still
+     * created from the reading thread in the order of the OSM file, so the resulting graph does not depend on the
+     * number of threads. The default of 1 processes every way directly.
+     */
+    public OSMReader setWayWorkerThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("The number of way worker threads must be positive but was " + threads);
+        this.wayWorkerThreads = threads;
+        return this;
+    }
+
+    /**
+     * Sets the number of ways that are parsed together by one way worker thread, only used for tests
+     */
+    OSMReader setWayBatchSize(int wayBatchSize) {
+        if (wayBatchSize < 1)
+            throw new IllegalArgumentException("The way batch size must be positive but was " + wayBatchSize);
+        this.wayBatchSize = wayBatchSize;
+        return this;
+    }
+
     @Override
     public OSMReader setWorkerThreads(int numOfWorkers) {
         this.workerThreads = numOfWorkers;
@@ -978,4 +1048,109 @@ public class OSMReader implements DataReader, TurnCostParser.ExternalInternalMap
     public String toString() {
         return getClass().getSimpleName();
     }
+
+    /**
+     * Parses the tags of the ways in batches from several threads. The edges of a batch are created from the reading
+     * thread once its parsing has finished, so the graph is only modified from one thread and in the order of the OSM
+     * file. While the oldest batch is written the following batches are parsed.
+     */
+    private class ParallelWayProcessor {
+        private final ExecutorService executorService;
+        private final int maxPendingBatches;
+        private final Deque<WayBatch> pendingBatches = new ArrayDeque<>();
+        private WayBatch currentBatch = new WayBatch();
+
+        ParallelWayProcessor(int threads) {
+            maxPendingBatches = threads;
+            executorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, Thread.currentThread().getName() + "-ways");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        void add(ReaderWay way) {
+            if (!isWayToProcess(way))
+                return;
+
+            // the coordinates and the relation flags come from the reading thread, getRelFlagsMap reuses its IntsRef
+            setArtificialWayTags(way);
+            currentBatch.ways.add(way);
+            currentBatch.relationFlags.add(IntsRef.deepCopyOf(getRelFlagsMap(way.getId())));
+            if (currentBatch.ways.size() >= wayBatchSize)
+                submitCurrentBatch();
+        }
+
+        private void submitCurrentBatch() {
+            final WayBatch batch = currentBatch;
+            batch.edgeFlags = executorService.submit(new Callable<List<IntsRef>>() {
+                @Override
+                public List<IntsRef> call() {
+                    return batch.parse();
+                }
+            });
+            pendingBatches.add(batch);
+            currentBatch = new WayBatch();
+            // limit the number of ways in memory
+            while (pendingBatches.size() > maxPendingBatches) {
+                writeOldestBatch();
+            }
+        }
+
+        private void writeOldestBatch() {
+            WayBatch batch = pendingBatches.poll();
+            List<IntsRef> edgeFlags;
+            try {
+                edgeFlags = batch.edgeFlags.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            } catch (ExecutionException ex) {
+                throw new RuntimeException("Problem while parsing ways", ex.getCause());
+            }
+            for (int i = 0; i < batch.ways.size(); i++) {
+                addWay(batch.ways.get(i), edgeFlags.get(i));
+            }
+        }
+
+        /**
+         * Creates the edges of all ways added so far.
+         */
+        void flush() {
+            if (!currentBatch.ways.isEmpty())
+                submitCurrentBatch();
+            while (!pendingBatches.isEmpty()) {
+                writeOldestBatch();
+            }
+        }
+
+        void close() {
+            executorService.shutdownNow();
+        }
+    }
+
+    private class WayBatch {
+        final List<ReaderWay> ways = new ArrayList<>(wayBatchSize);
+        final List<IntsRef> relationFlags = new ArrayList<>(wayBatchSize);
+        Future<List<IntsRef>> edgeFlags;
+
+        /**
+         * @return the edge flags of every way, an empty IntsRef if the way is not accepted
+         */
+        List<IntsRef> parse() {
+            List<IntsRef> result = new ArrayList<>(ways.size());
+            for (int i = 0; i < ways.size(); i++) {
+                ReaderWay way = ways.get(i);
+                EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
+                if (encodingManager.acceptWay(way, acceptWay))
+                    result.add(encodingManager.handleWayTags(way, acceptWay, relationFlags.get(i)));
+                else
+                    result.add(IntsRef.EMPTY);
+            }
+            return result;
+        }
+    }
 }
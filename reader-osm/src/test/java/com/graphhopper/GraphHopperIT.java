@@ -17,19 +17,23 @@
  */
 package com.graphhopper;
 
+import com.graphhopper.json.geo.JsonFeature;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.osm.GraphHopperOSM;
 import com.graphhopper.routing.ch.CHAlgoFactoryDecorator;
+import com.graphhopper.routing.ch.CHParameters;
 import com.graphhopper.routing.util.CarFlagEncoder;
 import com.graphhopper.routing.util.DefaultFlagEncoderFactory;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.parsers.OSMMaxSpeedParser;
+import com.graphhopper.routing.weighting.ShortestWeighting;
 import com.graphhopper.util.*;
 import com.graphhopper.util.Parameters.CH;
 import com.graphhopper.util.Parameters.Landmark;
 import com.graphhopper.util.Parameters.Routing;
 import com.graphhopper.util.details.PathDetail;
 import com.graphhopper.util.exceptions.PointDistanceExceededException;
+import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 import com.graphhopper.util.shapes.GHPoint3D;
 import org.junit.*;
@@ -479,6 +483,173 @@ public class GraphHopperIT {
         assertEquals(3363, rsp.getBest().getDistance(), 1);
     }
 
+    @Test
+    public void testMonacoViaInParallel() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(osmFile).
+                setStoreOnFlush(true).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(EncodingManager.create(importVehicles));
+        tmpHopper.getCHFactoryDecorator().setCHProfileStrings(weightCalcStr);
+        tmpHopper.importOrLoad();
+
+        GHRequest req = new GHRequest().
+                addPoint(new GHPoint(43.727687, 7.418737)).
+                addPoint(new GHPoint(43.74958, 7.436566)).
+                addPoint(new GHPoint(43.739213, 7.427806)).
+                addPoint(new GHPoint(43.730729, 7.421288)).
+                addPoint(new GHPoint(43.727687, 7.418737)).
+                setVehicle(vehicle).setWeighting(weightCalcStr);
+        GHResponse expected = tmpHopper.route(req);
+        assertFalse(expected.getErrors().toString(), expected.hasErrors());
+
+        tmpHopper.setViaThreads(3);
+        for (int i = 0; i < 5; i++) {
+            GHResponse rsp = tmpHopper.route(req);
+            assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+            assertEquals(expected.getBest().getDistance(), rsp.getBest().getDistance(), 1e-6);
+            assertEquals(expected.getBest().getTime(), rsp.getBest().getTime());
+            assertEquals(expected.getBest().getPoints(), rsp.getBest().getPoints());
+            assertEquals(expected.getBest().getInstructions().size(), rsp.getBest().getInstructions().size());
+            assertEquals(expected.getHints().getLong("visited_nodes.sum", 0), rsp.getHints().getLong("visited_nodes.sum", -1));
+        }
+        tmpHopper.close();
+    }
+
+    @Test
+    public void testMonacoChangeGraphWithCHAndLM() {
+        GraphHopper tmpHopper = createChangeGraphHopper();
+
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setVehicle("car");
+        GHResponse rsp = tmpHopper.route(req);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+        assertEquals(3587, rsp.getBest().getDistance(), 1);
+
+        // block the road in the middle of the route
+        PointList points = rsp.getBest().getPoints();
+        double lat = points.getLat(points.size() / 2), lon = points.getLon(points.size() / 2);
+        BBox blocked = new BBox(lon - 0.0002, lon + 0.0002, lat - 0.0002, lat + 0.0002);
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("access", false);
+        tmpHopper.changeGraph(Collections.singletonList(new JsonFeature("1", "bbox", blocked, null, properties)));
+        assertChangedGraphRoutes(tmpHopper, req, blocked);
+
+        // make the roads faster, which requires an update of the landmark weights to keep the hybrid mode optimal
+        properties = new HashMap<>();
+        properties.put("speed", 100);
+        tmpHopper.changeGraph(Collections.singletonList(new JsonFeature("2", "bbox",
+                new BBox(7.42, 7.435, 43.73, 43.745), null, properties)));
+        assertChangedGraphRoutes(tmpHopper, req, blocked);
+        tmpHopper.getGraphHopperStorage().flush();
+        tmpHopper.close();
+
+        // the CH graph is still stale after loading the changed graph
+        tmpHopper = createChangeGraphHopper();
+        assertChangedGraphRoutes(tmpHopper, req, blocked);
+        tmpHopper.close();
+    }
+
+    private GraphHopper createChangeGraphHopper() {
+        GraphHopper tmpHopper = new GraphHopperOSM().
+                setOSMFile(osmFile).
+                setStoreOnFlush(true).
+                setGraphHopperLocation(tmpGraphFile).
+                setEncodingManager(EncodingManager.create("car"));
+        tmpHopper.getCHFactoryDecorator().setEnabled(true).
+                setCHProfilesAsStrings(Collections.singletonList("fastest")).
+                setDisablingAllowed(true).
+                setChangeGraphAllowed(true);
+        tmpHopper.getLMFactoryDecorator().setEnabled(true).
+                setWeightingsAsStrings(Collections.singletonList("fastest|maximum=2000")).
+                setDisablingAllowed(true);
+        tmpHopper.importOrLoad();
+        return tmpHopper;
+    }
+
+    private void assertChangedGraphRoutes(GraphHopper tmpHopper, GHRequest req, BBox blocked) {
+        req.setAlgorithm(ASTAR_BI);
+        req.getHints().put(CH.DISABLE, true);
+        req.getHints().put(Landmark.DISABLE, true);
+        GHResponse flexRsp = tmpHopper.route(req);
+        assertFalse(flexRsp.getErrors().toString(), flexRsp.hasErrors());
+        double flexWeight = flexRsp.getBest().getRouteWeight();
+
+        // the landmark weights are updated, so the hybrid mode still finds the optimal route
+        req.getHints().put(Landmark.DISABLE, false);
+        GHResponse lmRsp = tmpHopper.route(req);
+        assertFalse(lmRsp.getErrors().toString(), lmRsp.hasErrors());
+        assertEquals(flexWeight, lmRsp.getBest().getRouteWeight(), 1e-3);
+
+        // the shortcuts are stale, so the CH request falls back to the hybrid mode
+        req.setAlgorithm("");
+        req.getHints().put(CH.DISABLE, false);
+        GHResponse chRsp = tmpHopper.route(req);
+        assertFalse(chRsp.getErrors().toString(), chRsp.hasErrors());
+        assertTrue(chRsp.getDebugInfo(), chRsp.getDebugInfo().contains("landmarks-routing"));
+        assertEquals(flexWeight, chRsp.getBest().getRouteWeight(), 1e-3);
+        PointList points = chRsp.getBest().getPoints();
+        for (int i = 0; i < points.size(); i++) {
+            assertFalse(points.toString(), blocked.contains(points.getLat(i), points.getLon(i)));
+        }
+    }
+
+    @Test
+    public void testMonacoCustomizableCH() {
+        GraphHopper tmpHopper = createCustomizableCHHopper();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setVehicle("car");
+        assertCustomizedCHRoute(tmpHopper, req, "fastest");
+
+        // after the customization the CH requests use another weighting for the same vehicle
+        ShortestWeighting shortestWeighting = new ShortestWeighting(tmpHopper.getEncodingManager().getEncoder("car"));
+        tmpHopper.customizeCH(tmpHopper.getCHFactoryDecorator().getCHProfiles().get(0), shortestWeighting);
+        GHResponse rsp = assertCustomizedCHRoute(tmpHopper, req, "shortest");
+
+        // the customized CH stays optimal after a change of the graph
+        PointList points = rsp.getBest().getPoints();
+        double lat = points.getLat(points.size() / 2), lon = points.getLon(points.size() / 2);
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("access", false);
+        tmpHopper.changeGraph(Collections.singletonList(new JsonFeature("1", "bbox",
+                new BBox(lon - 0.0002, lon + 0.0002, lat - 0.0002, lat + 0.0002), null, properties)));
+        assertNotEquals(rsp.getBest().getDistance(), assertCustomizedCHRoute(tmpHopper, req, "shortest").getBest().getDistance(), 1);
+        tmpHopper.getGraphHopperStorage().flush();
+        tmpHopper.close();
+
+        // only the CH profile is stored, so the loaded CH graph is customized for its weighting again
+        tmpHopper = createCustomizableCHHopper();
+        assertCustomizedCHRoute(tmpHopper, req, "fastest");
+        tmpHopper.close();
+    }
+
+    private GraphHopper createCustomizableCHHopper() {
+        GraphHopper tmpHopper = new GraphHopperOSM().init(new CmdArgs().
+                put("graph.flag_encoders", "car").
+                put(CH.PREPARE + "weightings", "fastest").
+                put(CHParameters.CUSTOMIZABLE, true).
+                put(CH.INIT_DISABLING_ALLOWED, true).
+                put("graph.location", tmpGraphFile).
+                put("datareader.file", osmFile));
+        tmpHopper.importOrLoad();
+        return tmpHopper;
+    }
+
+    /**
+     * Compares the route of the customized CH with the flexible route for the specified weighting
+     */
+    private GHResponse assertCustomizedCHRoute(GraphHopper tmpHopper, GHRequest req, String weighting) {
+        GHRequest flexReq = new GHRequest(req.getPoints()).setVehicle("car").setWeighting(weighting).setAlgorithm(ASTAR_BI);
+        flexReq.getHints().put(CH.DISABLE, true);
+        GHResponse flexRsp = tmpHopper.route(flexReq);
+        assertFalse(flexRsp.getErrors().toString(), flexRsp.hasErrors());
+
+        GHResponse chRsp = tmpHopper.route(req);
+        assertFalse(chRsp.getErrors().toString(), chRsp.hasErrors());
+        assertTrue(chRsp.getDebugInfo(), chRsp.getDebugInfo().contains("|ch-"));
+        assertEquals(flexRsp.getBest().getRouteWeight(), chRsp.getBest().getRouteWeight(), 1e-2);
+        assertEquals(flexRsp.getBest().getDistance(), chRsp.getBest().getDistance(), 1e-3);
+        return chRsp;
+    }
+
     @Test
     public void testMonacoVia() {
         Translation tr = hopper.getTranslationMap().getWithFallBack(Locale.US);
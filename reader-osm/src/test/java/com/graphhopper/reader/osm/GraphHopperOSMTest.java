@@ -147,6 +147,101 @@ public class GraphHopperOSMTest {
         gh.close();
     }
 
+    @Test
+    public void testLoadReadOnlyMemoryMapped() {
+        CmdArgs args = new CmdArgs().put("graph.flag_encoders", "car").
+                put(Parameters.CH.PREPARE + "weightings", "fastest").
+                put(Parameters.Landmark.PREPARE + "weightings", "fastest").
+                put(Parameters.Landmark.PREPARE + "landmarks", "2").
+                put("prepare.min_network_size", "0").
+                put("prepare.min_one_way_network_size", "0").
+                put(Parameters.CH.INIT_DISABLING_ALLOWED, "true").
+                put("graph.location", ghLoc).
+                put("datareader.file", testOsm);
+        GraphHopper gh = new GraphHopperOSM().init(args.put("graph.dataaccess", "MMAP"));
+        gh.importOrLoad();
+        GHResponse expected = gh.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(expected.hasErrors());
+        gh.close();
+
+        // several instances, e.g. in different JVMs, can share the mapped files
+        GraphHopper gh1 = new GraphHopperOSM().init(args.put("graph.dataaccess", "MMAP_RO"));
+        GraphHopper gh2 = new GraphHopperOSM().init(args);
+        assertFalse(gh1.isAllowWrites());
+        try {
+            assertTrue(gh1.load(ghLoc));
+            assertTrue(gh2.load(ghLoc));
+            assertEquals(DAType.MMAP_RO, gh1.getGraphHopperStorage().getDirectory().getDefaultType());
+            for (GraphHopper tmpGH : Arrays.asList(gh1, gh2)) {
+                GHResponse rsp = tmpGH.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+                assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+                assertEquals(expected.getBest().getDistance(), rsp.getBest().getDistance(), 1e-6);
+
+                GHRequest req = new GHRequest(51.2492152, 9.4317166, 51.2, 9.4);
+                req.getHints().put(Parameters.CH.DISABLE, true);
+                rsp = tmpGH.route(req);
+                assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+                assertEquals(expected.getBest().getDistance(), rsp.getBest().getDistance(), 1e-6);
+            }
+        } finally {
+            gh1.close();
+            gh2.close();
+        }
+    }
+
+    @Test
+    public void testLoadReadOnlyFailsIfNotPrepared() {
+        CmdArgs args = new CmdArgs().put("graph.flag_encoders", "car").
+                put(Parameters.CH.PREPARE + "weightings", "no").
+                put("graph.location", ghLoc).
+                put("datareader.file", testOsm);
+        GraphHopper gh = new GraphHopperOSM().init(args.put("graph.dataaccess", "MMAP"));
+        gh.importOrLoad();
+        gh.close();
+
+        gh = new GraphHopperOSM().init(args.put("graph.dataaccess", "MMAP_RO").
+                put(Parameters.Landmark.PREPARE + "weightings", "fastest"));
+        try {
+            gh.load(ghLoc);
+            fail();
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("prepared"));
+        } finally {
+            gh.close();
+        }
+    }
+
+    @Test
+    public void testRoutingPhaseListener() {
+        instance = new GraphHopperOSM().setStoreOnFlush(true).
+                setEncodingManager(EncodingManager.create("car")).
+                setGraphHopperLocation(ghLoc).
+                setDataReaderFile(testOsm);
+        instance.getCHFactoryDecorator().setDisablingAllowed(true);
+        instance.importOrLoad();
+        final List<String> phases = new ArrayList<>();
+        instance.setRoutingPhaseListener(new RoutingPhaseListener() {
+            @Override
+            public void onPhaseFinished(Phase phase, String profile, String mode, long nanos) {
+                assertTrue(nanos >= 0);
+                phases.add(phase.getName() + "," + profile + "," + mode);
+            }
+        });
+
+        GHResponse rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertFalse(rsp.hasErrors());
+        assertEquals(Arrays.asList("lookup,car_fastest,ch", "query_graph,car_fastest,ch", "search,car_fastest,ch",
+                "path_extraction,car_fastest,ch", "instructions,car_fastest,ch"), phases);
+
+        phases.clear();
+        GHRequest request = new GHRequest(51.2492152, 9.4317166, 51.2, 9.4).setPathDetails(Arrays.asList("average_speed"));
+        request.getHints().put(Parameters.CH.DISABLE, true);
+        rsp = instance.route(request);
+        assertFalse(rsp.hasErrors());
+        assertEquals(Arrays.asList("lookup,car_fastest,flex", "query_graph,car_fastest,flex", "search,car_fastest,flex",
+                "path_extraction,car_fastest,flex", "instructions,car_fastest,flex", "path_details,car_fastest,flex"), phases);
+    }
+
     @Test
     public void testQueryLocationIndexWithBBox() {
         final GraphHopper gh = new GraphHopperOSM().setStoreOnFlush(true).
@@ -373,6 +468,26 @@ public class GraphHopperOSMTest {
         assertEquals("route method should not change instance field", old, instance.getEncodingManager().isEnableInstructions());
     }
 
+    @Test
+    public void testSortedGraphHilbert() {
+        instance = new GraphHopperOSM().setStoreOnFlush(false).
+                setSortGraph(true).setSortType("hilbert").
+                setEncodingManager(EncodingManager.create("car")).
+                setGraphHopperLocation(ghLoc).
+                setDataReaderFile(testOsm);
+        instance.importOrLoad();
+        PathWrapper rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4)).getBest();
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getPoints().getSize());
+        assertEquals(new GHPoint(52.0, 9.0), rsp.getPoints().get(1));
+
+        try {
+            new GraphHopperOSM().setSortType("bfs");
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
     @Test
     public void testFootAndCar() {
         // now all ways are imported
@@ -150,6 +150,58 @@ public class OSMReaderTest {
         return index.findClosest(lat, lon, EdgeFilter.ALL_EDGES).getClosestNode();
     }
 
+    @Test
+    public void testOffHeapNodeMap() {
+        GraphHopper hopper = new GraphHopperFacade(file1) {
+            @Override
+            protected DataReader createReader(GraphHopperStorage tmpGraph) {
+                return initDataReader(new OSMReader(tmpGraph).setNodeMapDAType(DAType.MMAP));
+            }
+        }.importOrLoad();
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        assertEquals(4, graph.getNodes());
+        int n20 = AbstractGraphStorageTester.getIdOf(graph, 52);
+        int n10 = AbstractGraphStorageTester.getIdOf(graph, 51.2492152);
+        int n30 = AbstractGraphStorageTester.getIdOf(graph, 51.2);
+        assertEquals(GHUtility.asSet(n20), GHUtility.getNeighbors(carOutExplorer.setBaseNode(n10)));
+        assertEquals(3, GHUtility.count(carOutExplorer.setBaseNode(n20)));
+        assertEquals(GHUtility.asSet(n20), GHUtility.getNeighbors(carOutExplorer.setBaseNode(n30)));
+        assertFalse(new File(dir, "tmp_osm_node_map_0").exists());
+    }
+
+    @Test
+    public void testWayWorkerThreads() {
+        for (String file : Arrays.asList(file1, file4, fileBarriers, "test-restrictions.xml")) {
+            List<String> expected = getEdgeDescriptions(importWithWayWorkerThreads(file, 1, 10_000));
+            assertFalse(expected.isEmpty());
+            // the test files are small, so only small batches keep several of them in flight
+            for (int batchSize : new int[]{1, 2, 3, 10_000}) {
+                List<String> edges = getEdgeDescriptions(importWithWayWorkerThreads(file, 3, batchSize));
+                assertEquals(file + ", batch size: " + batchSize, expected, edges);
+            }
+        }
+    }
+
+    private GraphHopperStorage importWithWayWorkerThreads(String file, final int threads, final int batchSize) {
+        GraphHopper hopper = new GraphHopperFacade(file, true, "") {
+            @Override
+            protected DataReader createReader(GraphHopperStorage tmpGraph) {
+                return initDataReader(new OSMReader(tmpGraph).setWayWorkerThreads(threads).setWayBatchSize(batchSize));
+            }
+        }.importOrLoad();
+        return hopper.getGraphHopperStorage();
+    }
+
+    private static List<String> getEdgeDescriptions(GraphHopperStorage graph) {
+        List<String> result = new ArrayList<>();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            result.add(iter.getBaseNode() + "-" + iter.getAdjNode() + " " + iter.getFlags() + " "
+                    + iter.getDistance() + " " + iter.getName() + " " + iter.fetchWayGeometry(3));
+        }
+        return result;
+    }
+
     @Test
     public void testSort() {
         GraphHopper hopper = new GraphHopperFacade(file1).setSortGraph(true).importOrLoad();
@@ -22,6 +22,7 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.reader.osm.GraphHopperOSM;
 import com.graphhopper.routing.ch.CHAlgoFactoryDecorator;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.lm.LMAlgoFactoryDecorator;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.NodeAccess;
@@ -31,6 +32,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -55,7 +58,7 @@ public class CHMeasurement {
      */
     private static void testPerformanceAutomaticNodeOrdering(String[] args) {
         // example args:
-        // map=berlin.pbf stats_file=stats.dat period_updates=0 lazy_updates=100 neighbor_updates=0 contract_nodes=100 log_messages=20 edge_quotient_weight=1.0 orig_edge_quotient_weight=3.0 hierarchy_depth_weight=2.0 sigma_factor=3.0 min_max_settled_edges=100 reset_interval=10000 landmarks=0 cleanup=true turncosts=true threshold=0.1 seed=456 comp_iterations=10 perf_iterations=100 quick=false
+        // map=berlin.pbf stats_file=stats.dat period_updates=0 lazy_updates=100 neighbor_updates=0 contract_nodes=100 log_messages=20 contraction_threads=1 edge_quotient_weight=1.0 orig_edge_quotient_weight=3.0 hierarchy_depth_weight=2.0 sigma_factor=3.0 min_max_settled_edges=100 reset_interval=10000 search_state_pool=false landmarks=0 cleanup=true turncosts=true threshold=0.1 seed=456 comp_iterations=10 perf_iterations=100 quick=false
         long start = nanoTime();
         CmdArgs cmdArgs = CmdArgs.read(args);
         LOGGER.info("Running analysis with parameters {}", cmdArgs);
@@ -67,6 +70,8 @@ public class CHMeasurement {
         final int neighborUpdates = cmdArgs.getInt("neighbor_updates", 0);
         final int contractedNodes = cmdArgs.getInt("contract_nodes", 100);
         final int logMessages = cmdArgs.getInt("log_messages", 20);
+        // only used for node-based CH, i.e. with turncosts=false
+        final int contractionThreads = cmdArgs.getInt("contraction_threads", 1);
         final float edgeQuotientWeight = cmdArgs.getFloat("edge_quotient_weight", 1.0f);
         final float origEdgeQuotientWeight = cmdArgs.getFloat("orig_edge_quotient_weight", 3.0f);
         final float hierarchyDepthWeight = cmdArgs.getFloat("hierarchy_depth_weight", 2.0f);
@@ -82,6 +87,7 @@ public class CHMeasurement {
         final int compIterations = cmdArgs.getInt("comp_iterations", 100);
         final int perfIterations = cmdArgs.getInt("perf_iterations", 1000);
         final boolean quick = cmdArgs.getBool("quick", false);
+        final boolean searchStatePool = cmdArgs.getBool("search_state_pool", false);
 
         final GraphHopper graphHopper = new GraphHopperOSM();
         if (withTurnCosts) {
@@ -103,12 +109,14 @@ public class CHMeasurement {
         cmdArgs.put(NEIGHBOR_UPDATES, neighborUpdates);
         cmdArgs.put(CONTRACTED_NODES, contractedNodes);
         cmdArgs.put(LOG_MESSAGES, logMessages);
+        cmdArgs.put(CONTRACTION_THREADS, contractionThreads);
         cmdArgs.put(EDGE_QUOTIENT_WEIGHT, edgeQuotientWeight);
         cmdArgs.put(ORIGINAL_EDGE_QUOTIENT_WEIGHT, origEdgeQuotientWeight);
         cmdArgs.put(HIERARCHY_DEPTH_WEIGHT, hierarchyDepthWeight);
         cmdArgs.put(SIGMA_FACTOR, sigmaFactor);
         cmdArgs.put(MIN_MAX_SETTLED_EDGES, minMaxSettledEdges);
         cmdArgs.put(SETTLED_EDGES_RESET_INTERVAL, resetInterval);
+        cmdArgs.put(Parameters.Routing.INIT_SEARCH_STATE_POOL, searchStatePool);
 
         LMAlgoFactoryDecorator lmDecorator = graphHopper.getLMFactoryDecorator();
         lmDecorator.setEnabled(landmarks > 0);
@@ -129,6 +137,11 @@ public class CHMeasurement {
         sw.stop();
         results.put("_prepare_time", sw.getSeconds());
         LOGGER.info("Import and preparation took {}s", sw.getMillis() / 1000);
+        for (PrepareContractionHierarchies pch : chDecorator.getPreparations()) {
+            String key = "_prepare_" + (pch.getCHProfile().isEdgeBased() ? "edge" : "node");
+            results.put(key + ".time", fmt(pch.getTotalPrepareTime() * 1.e-3));
+            results.put(key + ".shortcuts", pch.getShortcuts());
+        }
 
         if (!quick) {
             runCompareTest(DIJKSTRA_BI, graphHopper, withTurnCosts, uTurnCosts, seed, compIterations, errorThreshold, results);
@@ -141,6 +154,17 @@ public class CHMeasurement {
 
         runPerformanceTest(ASTAR_BI, graphHopper, withTurnCosts, seed, perfIterations, results);
 
+        if (withTurnCosts) {
+            // the node-based CH is prepared as well, so we can compare the edge-based queries with the same queries
+            // without turn costs
+            if (!quick) {
+                runPerformanceTest(DIJKSTRA_BI, graphHopper, false, seed, perfIterations, results);
+                putEdgeToNodeRatio(DIJKSTRA_BI, results);
+            }
+            runPerformanceTest(ASTAR_BI, graphHopper, false, seed, perfIterations, results);
+            putEdgeToNodeRatio(ASTAR_BI, results);
+        }
+
         if (!quick && landmarks > 0) {
             runPerformanceTest("lm", graphHopper, withTurnCosts, seed, perfIterations, results);
         }
@@ -279,6 +303,23 @@ public class CHMeasurement {
         compareTest.setIterations(iterations).start();
     }
 
+    /**
+     * Puts the ratio of the query times and visited nodes of the edge-based and the node-based CH for the given
+     * algorithm, see {@link #runPerformanceTest}.
+     */
+    private static void putEdgeToNodeRatio(String algo, PMap results) {
+        String edgePrefix = "_" + algo;
+        String nodePrefix = "_" + algo + ".node";
+        results.put(edgePrefix + ".time_ch_edge_node_ratio", fmt(results.getDouble(edgePrefix + ".time_ch", 0) /
+                results.getDouble(nodePrefix + ".time_ch", 1)));
+        results.put(edgePrefix + ".visited_nodes_edge_node_ratio", fmt(results.getDouble(edgePrefix + ".visited_nodes", 0) /
+                results.getDouble(nodePrefix + ".visited_nodes", 1)));
+    }
+
+    /**
+     * Runs random queries, the results of node-based queries on a graph with turn costs are stored with the
+     * prefix "_algo.node" to be able to compare them with the edge-based results stored with the prefix "_algo".
+     */
     private static void runPerformanceTest(final String algo, final GraphHopper graphHopper, final boolean withTurnCosts,
                                            long seed, final int iterations, final PMap results) {
         Graph g = graphHopper.getGraphHopperStorage();
@@ -286,9 +327,12 @@ public class CHMeasurement {
         final NodeAccess nodeAccess = g.getNodeAccess();
         final Random random = new Random(seed);
         final boolean lm = "lm".equals(algo);
+        final boolean nodeBasedWithTurnCosts = !withTurnCosts && graphHopper.getEncodingManager().needsTurnCostsSupport();
+        final String prefix = "_" + algo + (nodeBasedWithTurnCosts ? ".node" : "");
 
-        LOGGER.info("Running performance test for {}, seed = {}", algo, seed);
+        LOGGER.info("Running performance test for {}, edge-based: {}, seed = {}", algo, withTurnCosts, seed);
         final long[] numVisitedNodes = {0};
+        final long[] queryTimes = new long[iterations];
         MiniPerfTest performanceTest = new MiniPerfTest() {
             private long queryTime;
 
@@ -301,7 +345,7 @@ public class CHMeasurement {
                 if (run == iterations - 1) {
                     String avg = fmt(queryTime * 1.e-6 / run);
                     LOGGER.info("Finished all ({}) runs, avg time: {}ms", iterations, avg);
-                    results.put("_" + algo + ".time_ch", avg);
+                    results.put(prefix + ".time_ch", avg);
                 }
                 GHRequest req = buildRandomRequest(random, numNodes, nodeAccess);
                 req.getHints().put(Parameters.Routing.EDGE_BASED, withTurnCosts);
@@ -315,13 +359,23 @@ public class CHMeasurement {
                 }
                 long start = nanoTime();
                 GHResponse route = graphHopper.route(req);
-                numVisitedNodes[0] += route.getHints().getInt("visited_nodes.sum", 0);
-                if (!warmup)
-                    queryTime += nanoTime() - start;
+                if (!warmup) {
+                    numVisitedNodes[0] += route.getHints().getInt("visited_nodes.sum", 0);
+                    queryTimes[run] = nanoTime() - start;
+                    queryTime += queryTimes[run];
+                }
                 return getRealErrors(route).size();
             }
         };
+        long gcTime = getGCTime();
         performanceTest.setIterations(iterations).start();
+        gcTime = getGCTime() - gcTime;
+        Arrays.sort(queryTimes);
+        String p99 = fmt(queryTimes[(int) (0.99 * (iterations - 1))] * 1.e-6);
+        results.put(prefix + ".time_ch_p99", p99);
+        results.put(prefix + ".gc_time", gcTime);
+        results.put(prefix + ".visited_nodes", fmt(numVisitedNodes[0] / (double) iterations));
+        LOGGER.info("99th percentile of the query time for {}: {}ms, garbage collection time: {}ms", algo, p99, gcTime);
         if (performanceTest.getDummySum() > 0.01 * iterations) {
             throw new IllegalStateException("too many errors, probably something is wrong");
         }
@@ -329,6 +383,17 @@ public class CHMeasurement {
         LOGGER.info("Visited nodes for {}: {}", algo, Helper.nf(numVisitedNodes[0]));
     }
 
+    /**
+     * @return the accumulated time of all garbage collections in milliseconds
+     */
+    private static long getGCTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gcBean.getCollectionTime());
+        }
+        return time;
+    }
+
     private static String getWeightDifferenceString(double chWeight, double noChWeight) {
         return String.format(Locale.ROOT, "route weight: %.6f (CH) vs. %.6f (no CH) (diff = %.6f)",
                 chWeight, noChWeight, (chWeight - noChWeight));
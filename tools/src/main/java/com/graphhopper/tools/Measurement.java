@@ -95,6 +95,10 @@ public class Measurement {
         put("measurement.gitinfo", args.get("measurement.gitinfo", ""));
         int count = args.getInt("measurement.count", 5000);
         put("measurement.map", args.get("datareader.file", "unknown"));
+        // compare the query times of runs with different node and edge orders, e.g. graph.sort_type=hilbert. For the
+        // cache misses run the measurement e.g. via perf stat -e cache-misses
+        put("graph.do_sort", args.getBool("graph.do_sort", false));
+        put("graph.sort_type", args.get("graph.sort_type", "dfs"));
 
         GraphHopper hopper = new GraphHopperOSM() {
             @Override
@@ -0,0 +1,683 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.graphhopper.GHResponse;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.NumberFormat;
+import java.util.*;
+
+/**
+ * Writes and reads the binary application/x-protobuf format of a route response. It contains the same information as
+ * the JSON of {@link WebHelper#jsonObject} but the points are always delta encoded integers. The schema is in
+ * route.proto next to this class. The messages are written and parsed with the protobuf runtime directly, i.e.
+ * without generated classes.
+ */
+public class RouteProtobuf {
+    public static final String MEDIA_TYPE = "application/x-protobuf";
+
+    private static final double COORDINATE_FACTOR = 1e6;
+    private static final double ELEVATION_FACTOR = 1e2;
+
+    public static void write(OutputStream output, GHResponse ghRsp, boolean enableInstructions, boolean calcPoints, boolean enableElevation, float took) throws IOException {
+        CodedOutputStream out = CodedOutputStream.newInstance(output);
+        for (Map.Entry<String, String> hint : ghRsp.getHints().toMap().entrySet()) {
+            writeMessageHeader(out, 1, CodedOutputStream.computeStringSize(1, hint.getKey())
+                    + CodedOutputStream.computeStringSize(2, hint.getValue()));
+            out.writeString(1, hint.getKey());
+            out.writeString(2, hint.getValue());
+        }
+        out.writeInt64(2, Math.round(took * 1000));
+        for (PathWrapper path : ghRsp.getAll()) {
+            EncodedPath encodedPath = new EncodedPath(path, enableInstructions, calcPoints, enableElevation);
+            writeMessageHeader(out, 3, encodedPath.size);
+            writePath(out, encodedPath);
+        }
+        out.flush();
+    }
+
+    /**
+     * The nested messages are written directly to the stream, so the size of every message has to be known before its
+     * content is written. The parts of a path that are expensive to create are created only once for the size and
+     * for writing.
+     */
+    private static class EncodedPath {
+        final PathWrapper path;
+        final boolean calcPoints;
+        final EncodedPoints points;
+        final EncodedPoints waypoints;
+        final List<EncodedInstruction> instructions = new ArrayList<>();
+        final String fare;
+        final int size;
+
+        EncodedPath(PathWrapper path, boolean enableInstructions, boolean calcPoints, boolean enableElevation) {
+            this.path = path;
+            this.calcPoints = calcPoints;
+            points = calcPoints ? new EncodedPoints(path.getPoints(), enableElevation) : null;
+            waypoints = new EncodedPoints(path.getWaypoints(), enableElevation);
+            if (calcPoints && enableInstructions) {
+                InstructionList instructionList = path.getInstructions();
+                int pointsIndex = 0;
+                for (Instruction instruction : instructionList) {
+                    int first = pointsIndex;
+                    pointsIndex += instruction.getLength();
+                    instructions.add(new EncodedInstruction(instruction, instructionList.getTr(), first, pointsIndex));
+                }
+            }
+            fare = path.getFare() == null ? null : NumberFormat.getCurrencyInstance(Locale.ROOT).format(path.getFare());
+            size = computeSize();
+        }
+
+        private int computeSize() {
+            int size = CodedOutputStream.computeDoubleSize(1, Helper.round(path.getDistance(), 3))
+                    + CodedOutputStream.computeDoubleSize(2, Helper.round6(path.getRouteWeight()))
+                    + CodedOutputStream.computeInt64Size(3, path.getTime())
+                    + CodedOutputStream.computeInt32Size(4, path.getNumChanges());
+            for (String description : path.getDescription()) {
+                size += CodedOutputStream.computeStringSize(5, description);
+            }
+            if (calcPoints) {
+                size += computeMessageSize(6, points.size);
+                for (EncodedInstruction instruction : instructions) {
+                    size += computeMessageSize(7, instruction.size);
+                }
+                for (Map.Entry<String, List<PathDetail>> details : path.getPathDetails().entrySet()) {
+                    size += computeMessageSize(8, computeDetailsSize(details.getKey(), details.getValue()));
+                }
+                size += CodedOutputStream.computeDoubleSize(9, path.getAscend())
+                        + CodedOutputStream.computeDoubleSize(10, path.getDescend());
+            }
+            size += computeMessageSize(11, waypoints.size);
+            if (fare != null)
+                size += CodedOutputStream.computeStringSize(12, fare);
+            return size;
+        }
+    }
+
+    private static void writePath(CodedOutputStream out, EncodedPath encodedPath) throws IOException {
+        PathWrapper path = encodedPath.path;
+        out.writeDouble(1, Helper.round(path.getDistance(), 3));
+        out.writeDouble(2, Helper.round6(path.getRouteWeight()));
+        out.writeInt64(3, path.getTime());
+        out.writeInt32(4, path.getNumChanges());
+        for (String description : path.getDescription()) {
+            out.writeString(5, description);
+        }
+        if (encodedPath.calcPoints) {
+            writeMessageHeader(out, 6, encodedPath.points.size);
+            writePoints(out, encodedPath.points);
+            for (EncodedInstruction instruction : encodedPath.instructions) {
+                writeMessageHeader(out, 7, instruction.size);
+                writeInstruction(out, instruction);
+            }
+            for (Map.Entry<String, List<PathDetail>> details : path.getPathDetails().entrySet()) {
+                writeMessageHeader(out, 8, computeDetailsSize(details.getKey(), details.getValue()));
+                out.writeString(1, details.getKey());
+                for (PathDetail detail : details.getValue()) {
+                    writeMessageHeader(out, 2, computeDetailSize(detail));
+                    out.writeInt32(1, detail.getFirst());
+                    out.writeInt32(2, detail.getLast());
+                    writeMessageHeader(out, 3, computeValueSize(null, detail.getValue()));
+                    writeValue(out, null, detail.getValue());
+                }
+            }
+            out.writeDouble(9, path.getAscend());
+            out.writeDouble(10, path.getDescend());
+        }
+        writeMessageHeader(out, 11, encodedPath.waypoints.size);
+        writePoints(out, encodedPath.waypoints);
+        if (encodedPath.fare != null)
+            out.writeString(12, encodedPath.fare);
+    }
+
+    private static int computeDetailsSize(String key, List<PathDetail> details) {
+        int size = CodedOutputStream.computeStringSize(1, key);
+        for (PathDetail detail : details) {
+            size += computeMessageSize(2, computeDetailSize(detail));
+        }
+        return size;
+    }
+
+    private static int computeDetailSize(PathDetail detail) {
+        return CodedOutputStream.computeInt32Size(1, detail.getFirst())
+                + CodedOutputStream.computeInt32Size(2, detail.getLast())
+                + computeMessageSize(3, computeValueSize(null, detail.getValue()));
+    }
+
+    /**
+     * The points as delta encoded integers.
+     */
+    private static class EncodedPoints {
+        final int[] lats, lons, eles;
+        final int size;
+
+        EncodedPoints(PointList points, boolean enableElevation) {
+            int count = points.getSize();
+            lats = new int[count];
+            lons = new int[count];
+            int prevLat = 0, prevLon = 0;
+            for (int i = 0; i < count; i++) {
+                int lat = (int) Math.round(points.getLatitude(i) * COORDINATE_FACTOR);
+                int lon = (int) Math.round(points.getLongitude(i) * COORDINATE_FACTOR);
+                lats[i] = lat - prevLat;
+                lons[i] = lon - prevLon;
+                prevLat = lat;
+                prevLon = lon;
+            }
+            if (enableElevation && points.is3D()) {
+                eles = new int[count];
+                int prevEle = 0;
+                for (int i = 0; i < count; i++) {
+                    int ele = (int) Math.round(points.getElevation(i) * ELEVATION_FACTOR);
+                    eles[i] = ele - prevEle;
+                    prevEle = ele;
+                }
+            } else {
+                eles = null;
+            }
+            size = computePackedSize(1, lats) + computePackedSize(2, lons) + (eles == null ? 0 : computePackedSize(3, eles));
+        }
+    }
+
+    private static void writePoints(CodedOutputStream out, EncodedPoints points) throws IOException {
+        writePacked(out, 1, points.lats);
+        writePacked(out, 2, points.lons);
+        if (points.eles != null)
+            writePacked(out, 3, points.eles);
+    }
+
+    private static int computePackedDataSize(int[] values) {
+        int size = 0;
+        for (int value : values) {
+            size += CodedOutputStream.computeSInt32SizeNoTag(value);
+        }
+        return size;
+    }
+
+    private static int computePackedSize(int field, int[] values) {
+        if (values.length == 0)
+            return 0;
+        return computeMessageSize(field, computePackedDataSize(values));
+    }
+
+    private static void writePacked(CodedOutputStream out, int field, int[] values) throws IOException {
+        if (values.length == 0)
+            return;
+        writeMessageHeader(out, field, computePackedDataSize(values));
+        for (int value : values) {
+            out.writeSInt32NoTag(value);
+        }
+    }
+
+    private static class EncodedInstruction {
+        final Instruction instruction;
+        final String text;
+        final int first;
+        final int last;
+        final int size;
+
+        EncodedInstruction(Instruction instruction, Translation tr, int first, int last) {
+            this.instruction = instruction;
+            String text = instruction.getTurnDescription(tr);
+            if (Helper.isEmpty(text))
+                text = instruction.getAnnotation().getMessage();
+            this.text = text == null ? null : Helper.firstBig(text);
+            this.first = first;
+            this.last = last;
+            size = computeSize();
+        }
+
+        private int computeSize() {
+            InstructionAnnotation ia = instruction.getAnnotation();
+            int size = CodedOutputStream.computeInt32Size(1, instruction.getSign());
+            if (text != null)
+                size += CodedOutputStream.computeStringSize(2, text);
+            if (instruction.getName() != null)
+                size += CodedOutputStream.computeStringSize(3, instruction.getName());
+            size += CodedOutputStream.computeDoubleSize(4, Helper.round(instruction.getDistance(), 3))
+                    + CodedOutputStream.computeInt64Size(5, instruction.getTime())
+                    + CodedOutputStream.computeInt32Size(6, first)
+                    + CodedOutputStream.computeInt32Size(7, last);
+            if (!ia.isEmpty()) {
+                size += CodedOutputStream.computeStringSize(8, ia.getMessage())
+                        + CodedOutputStream.computeInt32Size(9, ia.getImportance());
+            }
+            for (Map.Entry<String, Object> extra : instruction.getExtraInfoJSON().entrySet()) {
+                size += computeMessageSize(10, computeValueSize(extra.getKey(), extra.getValue()));
+            }
+            return size;
+        }
+    }
+
+    private static void writeInstruction(CodedOutputStream out, EncodedInstruction encodedInstruction) throws IOException {
+        Instruction instruction = encodedInstruction.instruction;
+        InstructionAnnotation ia = instruction.getAnnotation();
+        out.writeInt32(1, instruction.getSign());
+        if (encodedInstruction.text != null)
+            out.writeString(2, encodedInstruction.text);
+        if (instruction.getName() != null)
+            out.writeString(3, instruction.getName());
+        out.writeDouble(4, Helper.round(instruction.getDistance(), 3));
+        out.writeInt64(5, instruction.getTime());
+        out.writeInt32(6, encodedInstruction.first);
+        out.writeInt32(7, encodedInstruction.last);
+        if (!ia.isEmpty()) {
+            out.writeString(8, ia.getMessage());
+            out.writeInt32(9, ia.getImportance());
+        }
+        for (Map.Entry<String, Object> extra : instruction.getExtraInfoJSON().entrySet()) {
+            writeMessageHeader(out, 10, computeValueSize(extra.getKey(), extra.getValue()));
+            writeValue(out, extra.getKey(), extra.getValue());
+        }
+    }
+
+    private static int computeValueSize(String key, Object value) {
+        int size = key == null ? 0 : CodedOutputStream.computeStringSize(1, key);
+        if (value instanceof Double || value instanceof Float)
+            size += CodedOutputStream.computeDoubleSize(2, ((Number) value).doubleValue());
+        else if (value instanceof Long || value instanceof Integer)
+            size += CodedOutputStream.computeSInt64Size(3, ((Number) value).longValue());
+        else if (value instanceof Boolean)
+            size += CodedOutputStream.computeBoolSize(4, (Boolean) value);
+        else if (value instanceof String)
+            size += CodedOutputStream.computeStringSize(5, (String) value);
+        else if (value != null)
+            throw new IllegalArgumentException("Unsupported type for protobuf value " + value.getClass());
+        return size;
+    }
+
+    private static void writeValue(CodedOutputStream out, String key, Object value) throws IOException {
+        if (key != null)
+            out.writeString(1, key);
+        if (value instanceof Double || value instanceof Float)
+            out.writeDouble(2, ((Number) value).doubleValue());
+        else if (value instanceof Long || value instanceof Integer)
+            out.writeSInt64(3, ((Number) value).longValue());
+        else if (value instanceof Boolean)
+            out.writeBool(4, (Boolean) value);
+        else if (value instanceof String)
+            out.writeString(5, (String) value);
+    }
+
+    private static int computeMessageSize(int field, int size) {
+        return CodedOutputStream.computeTagSize(field) + CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+    }
+
+    private static void writeMessageHeader(CodedOutputStream out, int field, int size) throws IOException {
+        out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeUInt32NoTag(size);
+    }
+
+    /**
+     * Reads a response written by {@link #write}. The instructions get the text of the server if turnDescription is
+     * true and the street name otherwise, like for the JSON of PathWrapperDeserializer.
+     */
+    public static GHResponse read(InputStream input, boolean turnDescription) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(input);
+        GHResponse rsp = new GHResponse();
+        while (true) {
+            int tag = in.readTag();
+            if (tag == 0)
+                break;
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    readHint(in, rsp);
+                    break;
+                case 3:
+                    rsp.add(readPath(in, turnDescription));
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        return rsp;
+    }
+
+    private static void readHint(CodedInputStream in, GHResponse rsp) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        String key = "", value = "";
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    key = in.readString();
+                    break;
+                case 2:
+                    value = in.readString();
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        in.popLimit(limit);
+        rsp.getHints().put(key, value);
+    }
+
+    private static PathWrapper readPath(CodedInputStream in, boolean turnDescription) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        PathWrapper path = new PathWrapper();
+        List<String> description = new ArrayList<>();
+        List<InstructionData> instructions = new ArrayList<>();
+        Map<String, List<PathDetail>> pathDetails = new HashMap<>();
+        PointList points = null;
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    path.setDistance(in.readDouble());
+                    break;
+                case 2:
+                    path.setRouteWeight(in.readDouble());
+                    break;
+                case 3:
+                    path.setTime(in.readInt64());
+                    break;
+                case 4:
+                    path.setNumChanges(in.readInt32());
+                    break;
+                case 5:
+                    description.add(in.readString());
+                    break;
+                case 6:
+                    points = readPoints(in);
+                    path.setPoints(points);
+                    break;
+                case 7:
+                    instructions.add(readInstruction(in));
+                    break;
+                case 8:
+                    readDetails(in, pathDetails);
+                    break;
+                case 9:
+                    path.setAscend(in.readDouble());
+                    break;
+                case 10:
+                    path.setDescend(in.readDouble());
+                    break;
+                case 11:
+                    path.setWaypoints(readPoints(in));
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        in.popLimit(limit);
+        if (!description.isEmpty())
+            path.setDescription(description);
+        if (points != null) {
+            if (!instructions.isEmpty())
+                path.setInstructions(createInstructions(instructions, points, turnDescription));
+            path.addPathDetails(pathDetails);
+        }
+        List<Integer> pointsOrder = new ArrayList<>(path.getWaypoints().size());
+        for (int i = 0; i < path.getWaypoints().size(); i++) {
+            pointsOrder.add(i);
+        }
+        path.setPointsOrder(pointsOrder);
+        return path;
+    }
+
+    private static PointList readPoints(CodedInputStream in) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        int[] lats = new int[0], lons = new int[0], eles = new int[0];
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    lats = readPacked(in);
+                    break;
+                case 2:
+                    lons = readPacked(in);
+                    break;
+                case 3:
+                    eles = readPacked(in);
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        in.popLimit(limit);
+
+        boolean is3D = eles.length > 0;
+        PointList points = new PointList(lats.length, is3D);
+        int lat = 0, lon = 0, ele = 0;
+        for (int i = 0; i < lats.length; i++) {
+            lat += lats[i];
+            lon += lons[i];
+            if (is3D) {
+                ele += eles[i];
+                points.add(lat / COORDINATE_FACTOR, lon / COORDINATE_FACTOR, ele / ELEVATION_FACTOR);
+            } else {
+                points.add(lat / COORDINATE_FACTOR, lon / COORDINATE_FACTOR);
+            }
+        }
+        return points;
+    }
+
+    private static int[] readPacked(CodedInputStream in) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        int[] values = new int[16];
+        int size = 0;
+        while (!in.isAtEnd()) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = in.readSInt32();
+        }
+        in.popLimit(limit);
+        return Arrays.copyOf(values, size);
+    }
+
+    private static class InstructionData {
+        int sign;
+        String text = "";
+        String streetName = "";
+        double distance;
+        long time;
+        int first;
+        int last;
+        String annotationText;
+        int annotationImportance;
+        Map<String, Object> extraInfo = new HashMap<>();
+    }
+
+    private static InstructionData readInstruction(CodedInputStream in) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        InstructionData data = new InstructionData();
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    data.sign = in.readInt32();
+                    break;
+                case 2:
+                    data.text = in.readString();
+                    break;
+                case 3:
+                    data.streetName = in.readString();
+                    break;
+                case 4:
+                    data.distance = in.readDouble();
+                    break;
+                case 5:
+                    data.time = in.readInt64();
+                    break;
+                case 6:
+                    data.first = in.readInt32();
+                    break;
+                case 7:
+                    data.last = in.readInt32();
+                    break;
+                case 8:
+                    data.annotationText = in.readString();
+                    break;
+                case 9:
+                    data.annotationImportance = in.readInt32();
+                    break;
+                case 10:
+                    readValue(in, data.extraInfo);
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        in.popLimit(limit);
+        return data;
+    }
+
+    private static InstructionList createInstructions(List<InstructionData> instructions, PointList points, boolean turnDescription) {
+        InstructionList il = new InstructionList(null);
+        int viaCount = 1;
+        for (InstructionData data : instructions) {
+            String text = turnDescription ? data.text : data.streetName;
+            PointList instPL = new PointList(data.last - data.first, points.is3D());
+            for (int j = data.first; j <= data.last; j++) {
+                instPL.add(points, j);
+            }
+            InstructionAnnotation ia = data.annotationText == null ? InstructionAnnotation.EMPTY
+                    : new InstructionAnnotation(data.annotationImportance, data.annotationText);
+
+            Instruction instr;
+            if (data.sign == Instruction.USE_ROUNDABOUT || data.sign == Instruction.LEAVE_ROUNDABOUT) {
+                RoundaboutInstruction ri = new RoundaboutInstruction(data.sign, text, ia, instPL);
+                if (data.extraInfo.containsKey("exit_number"))
+                    ri.setExitNumber(((Number) data.extraInfo.get("exit_number")).intValue());
+                if (Boolean.TRUE.equals(data.extraInfo.get("exited")))
+                    ri.setExited();
+                if (data.extraInfo.containsKey("turn_angle")) {
+                    double angle = ((Number) data.extraInfo.get("turn_angle")).doubleValue();
+                    ri.setDirOfRotation(angle);
+                    ri.setRadian((angle < 0 ? -Math.PI : Math.PI) - angle);
+                }
+                instr = ri;
+            } else if (data.sign == Instruction.REACHED_VIA) {
+                ViaInstruction tmpInstr = new ViaInstruction(text, ia, instPL);
+                tmpInstr.setViaCount(viaCount);
+                viaCount++;
+                instr = tmpInstr;
+            } else if (data.sign == Instruction.FINISH) {
+                instr = new FinishInstruction(text, instPL, 0);
+            } else {
+                instr = new Instruction(data.sign, text, ia, instPL);
+                if (data.sign == Instruction.CONTINUE_ON_STREET && data.extraInfo.containsKey("heading"))
+                    instr.setExtraInfo("heading", data.extraInfo.get("heading"));
+            }
+            if (turnDescription)
+                instr.setUseRawName();
+            instr.setDistance(data.distance).setTime(data.time);
+            il.add(instr);
+        }
+        return il;
+    }
+
+    private static void readDetails(CodedInputStream in, Map<String, List<PathDetail>> pathDetails) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        String name = "";
+        List<PathDetail> details = new ArrayList<>();
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    name = in.readString();
+                    break;
+                case 2:
+                    details.add(readPathDetail(in));
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        in.popLimit(limit);
+        pathDetails.put(name, details);
+    }
+
+    private static PathDetail readPathDetail(CodedInputStream in) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        int first = 0, last = 0;
+        Map<String, Object> value = new HashMap<>(1);
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    first = in.readInt32();
+                    break;
+                case 2:
+                    last = in.readInt32();
+                    break;
+                case 3:
+                    readValue(in, value);
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        in.popLimit(limit);
+
+        Object object = value.get("");
+        PathDetail detail;
+        if (object instanceof Double)
+            detail = new PathDetail((Double) object);
+        else if (object instanceof Long)
+            detail = new PathDetail((Long) object);
+        else if (object instanceof Boolean)
+            detail = new PathDetail((Boolean) object);
+        else
+            detail = new PathDetail((String) object);
+        detail.setFirst(first);
+        detail.setLast(last);
+        return detail;
+    }
+
+    private static void readValue(CodedInputStream in, Map<String, Object> values) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        String key = "";
+        Object value = null;
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    key = in.readString();
+                    break;
+                case 2:
+                    value = in.readDouble();
+                    break;
+                case 3:
+                    value = in.readSInt64();
+                    break;
+                case 4:
+                    value = in.readBool();
+                    break;
+                case 5:
+                    value = in.readString();
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        in.popLimit(limit);
+        values.put(key, value);
+    }
+}
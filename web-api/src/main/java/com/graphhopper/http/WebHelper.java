@@ -17,6 +17,7 @@
  */
 package com.graphhopper.http;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -25,6 +26,7 @@ import com.graphhopper.PathWrapper;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointList;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.text.NumberFormat;
@@ -193,4 +195,93 @@ public class WebHelper {
         return json;
     }
 
+    /**
+     * Writes the same JSON as {@link #jsonObject} but directly to the specified generator, i.e. without building the
+     * tree of nodes and the LineString geometries first. The generator needs a codec that knows the GraphHopper and
+     * JTS serializers, see com.graphhopper.jackson.Jackson.
+     */
+    public static void writeJson(JsonGenerator gen, GHResponse ghRsp, boolean enableInstructions, boolean calcPoints, boolean enableElevation, boolean pointsEncoded, float took) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName("hints");
+        gen.writeObject(ghRsp.getHints().toMap());
+        gen.writeObjectFieldStart("info");
+        gen.writeFieldName("copyrights");
+        gen.writeObject(COPYRIGHTS);
+        gen.writeNumberField("took", Math.round(took * 1000));
+        gen.writeEndObject();
+        gen.writeArrayFieldStart("paths");
+        for (PathWrapper ar : ghRsp.getAll()) {
+            gen.writeStartObject();
+            gen.writeNumberField("distance", Helper.round(ar.getDistance(), 3));
+            gen.writeNumberField("weight", Helper.round6(ar.getRouteWeight()));
+            gen.writeNumberField("time", ar.getTime());
+            gen.writeNumberField("transfers", ar.getNumChanges());
+            if (!ar.getDescription().isEmpty()) {
+                gen.writeFieldName("description");
+                gen.writeObject(ar.getDescription());
+            }
+            if (calcPoints) {
+                gen.writeBooleanField("points_encoded", pointsEncoded);
+                if (ar.getPoints().getSize() >= 2) {
+                    gen.writeFieldName("bbox");
+                    gen.writeObject(ar.calcBBox2D());
+                }
+                gen.writeFieldName("points");
+                writePoints(gen, ar.getPoints(), enableElevation, pointsEncoded);
+                if (enableInstructions) {
+                    gen.writeFieldName("instructions");
+                    gen.writeObject(ar.getInstructions());
+                }
+                gen.writeFieldName("legs");
+                gen.writeObject(ar.getLegs());
+                gen.writeFieldName("details");
+                gen.writeObject(ar.getPathDetails());
+                gen.writeNumberField("ascend", ar.getAscend());
+                gen.writeNumberField("descend", ar.getDescend());
+            }
+            gen.writeFieldName("snapped_waypoints");
+            writePoints(gen, ar.getWaypoints(), enableElevation, pointsEncoded);
+            if (ar.getFare() != null) {
+                gen.writeStringField("fare", NumberFormat.getCurrencyInstance(Locale.ROOT).format(ar.getFare()));
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes the points like {@link PointList#toLineString} would be serialized as GeoJSON, including the duplicated
+     * coordinate for a single point.
+     */
+    private static void writePoints(JsonGenerator gen, PointList points, boolean enableElevation, boolean pointsEncoded) throws IOException {
+        if (pointsEncoded) {
+            gen.writeString(encodePolyline(points, enableElevation));
+            return;
+        }
+
+        gen.writeStartObject();
+        gen.writeStringField("type", "LineString");
+        gen.writeArrayFieldStart("coordinates");
+        int size = points.getSize();
+        for (int i = 0; i < size; i++) {
+            writeCoordinate(gen, points, i, enableElevation);
+        }
+        if (size == 1)
+            writeCoordinate(gen, points, 0, enableElevation);
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private static void writeCoordinate(JsonGenerator gen, PointList points, int index, boolean enableElevation) throws IOException {
+        gen.writeStartArray();
+        gen.writeNumber(PointList.round6(points.getLongitude(index)));
+        gen.writeNumber(PointList.round6(points.getLatitude(index)));
+        if (enableElevation) {
+            double ele = PointList.round2(points.getElevation(index));
+            if (!Double.isNaN(ele))
+                gen.writeNumber(ele);
+        }
+        gen.writeEndArray();
+    }
 }
@@ -9,16 +9,18 @@ import com.graphhopper.util.InstructionAnnotation;
 import com.graphhopper.util.InstructionList;
 
 import java.io.IOException;
-import java.util.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 public class InstructionListSerializer extends JsonSerializer<InstructionList> {
     @Override
     public void serialize(InstructionList instructions, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
-        List<Map<String, Object>> instrList = new ArrayList<>(instructions.size());
+        jsonGenerator.writeStartArray();
         int pointsIndex = 0;
         for (Instruction instruction : instructions) {
+            // the fields are collected per instruction to keep the order of the previous JSON output
             Map<String, Object> instrJson = new HashMap<>();
-            instrList.add(instrJson);
 
             InstructionAnnotation ia = instruction.getAnnotation();
             String text = instruction.getTurnDescription(instructions.getTr());
@@ -40,7 +42,12 @@ public class InstructionListSerializer extends JsonSerializer<InstructionList> {
             instrJson.put("interval", Arrays.asList(pointsIndex, tmpIndex));
             pointsIndex = tmpIndex;
 
+            jsonGenerator.writeStartObject();
+            for (Map.Entry<String, Object> entry : instrJson.entrySet()) {
+                jsonGenerator.writeObjectField(entry.getKey(), entry.getValue());
+            }
+            jsonGenerator.writeEndObject();
         }
-        jsonGenerator.writeObject(instrList);
+        jsonGenerator.writeEndArray();
     }
 }
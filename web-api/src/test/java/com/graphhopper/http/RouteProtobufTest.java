@@ -0,0 +1,167 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHResponse;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RouteProtobufTest {
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        PointList points = Helper.createPointList3D(51.2345671, 12.1234569, 123.456, 51.2346, 12.1239, 130, 51.235, 12.124, 121.5);
+        PathWrapper path = new PathWrapper();
+        path.setPoints(points);
+        PointList waypoints = new PointList(2, true);
+        waypoints.add(points, 0);
+        waypoints.add(points, 2);
+        path.setWaypoints(waypoints);
+        path.setDistance(1234.56789).setTime(123456).setRouteWeight(140.1234567).setAscend(6.544).setDescend(8.5);
+        path.setDescription(Arrays.asList("a", "b"));
+
+        InstructionList il = new InstructionList(null);
+        PointList firstPL = new PointList(2, true);
+        firstPL.add(points, 0);
+        firstPL.add(points, 1);
+        Instruction first = new Instruction(Instruction.CONTINUE_ON_STREET, "main street", InstructionAnnotation.EMPTY, firstPL);
+        first.setUseRawName();
+        first.setExtraInfo("heading", 12.5);
+        first.setDistance(100.5).setTime(9000);
+        il.add(first);
+        PointList finishPL = new PointList(1, true);
+        finishPL.add(points, 2);
+        Instruction finish = new FinishInstruction("arrive", finishPL, 0);
+        finish.setUseRawName();
+        il.add(finish);
+        path.setInstructions(il);
+
+        PathDetail detail = new PathDetail(50.0);
+        detail.setFirst(0);
+        detail.setLast(2);
+        PathDetail nameDetail = new PathDetail("main street");
+        nameDetail.setFirst(0);
+        nameDetail.setLast(2);
+        path.addPathDetails(Collections.singletonMap("max_speed", Collections.singletonList(detail)));
+        path.addPathDetails(Collections.singletonMap("street_name", Collections.singletonList(nameDetail)));
+        GHResponse rsp = new GHResponse();
+        rsp.add(path);
+        rsp.getHints().put("visited_nodes.sum", 42);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RouteProtobuf.write(bytes, rsp, true, true, true, 0.0123f);
+        GHResponse result = RouteProtobuf.read(new ByteArrayInputStream(bytes.toByteArray()), true);
+
+        assertEquals("42", result.getHints().get("visited_nodes.sum", ""));
+        assertEquals(1, result.getAll().size());
+        PathWrapper resultPath = result.getBest();
+        assertEquals(1234.568, resultPath.getDistance(), 1e-6);
+        assertEquals(123456, resultPath.getTime());
+        assertEquals(140.123457, resultPath.getRouteWeight(), 1e-6);
+        assertEquals(6.544, resultPath.getAscend(), 1e-6);
+        assertEquals(Arrays.asList("a", "b"), resultPath.getDescription());
+
+        PointList resultPoints = resultPath.getPoints();
+        assertTrue(resultPoints.is3D());
+        assertEquals(3, resultPoints.size());
+        assertEquals(51.234567, resultPoints.getLat(0), 1e-9);
+        assertEquals(12.123457, resultPoints.getLon(0), 1e-9);
+        assertEquals(123.46, resultPoints.getEle(0), 1e-9);
+        assertEquals(12.124, resultPoints.getLon(2), 1e-9);
+        assertEquals(121.5, resultPoints.getEle(2), 1e-9);
+        assertEquals(2, resultPath.getWaypoints().size());
+        assertEquals(Arrays.asList(0, 1), resultPath.getPointsOrder());
+
+        InstructionList resultInstructions = resultPath.getInstructions();
+        assertEquals(2, resultInstructions.size());
+        assertEquals("Main street", resultInstructions.get(0).getName());
+        assertEquals(Instruction.CONTINUE_ON_STREET, resultInstructions.get(0).getSign());
+        assertEquals(12.5, (Double) resultInstructions.get(0).getExtraInfoJSON().get("heading"), 1e-9);
+        assertEquals(9000, resultInstructions.get(0).getTime());
+        // like for JSON the interval includes the first point of the next instruction
+        assertEquals(3, resultInstructions.get(0).getPoints().size());
+        assertEquals(Instruction.FINISH, resultInstructions.get(1).getSign());
+
+        List<PathDetail> maxSpeed = resultPath.getPathDetails().get("max_speed");
+        assertEquals(1, maxSpeed.size());
+        assertEquals(50.0, maxSpeed.get(0).getValue());
+        assertEquals(2, maxSpeed.get(0).getLast());
+        assertEquals("main street", resultPath.getPathDetails().get("street_name").get(0).getValue());
+    }
+
+    @Test
+    public void testWithoutElevationAndPoints() throws IOException {
+        PathWrapper path = new PathWrapper();
+        path.setPoints(Helper.createPointList(51.1, 12.1, 51.2, 12.2));
+        path.setWaypoints(Helper.createPointList(51.1, 12.1, 51.2, 12.2));
+        path.setDistance(100).setTime(1000);
+        GHResponse rsp = new GHResponse();
+        rsp.add(path);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RouteProtobuf.write(bytes, rsp, false, false, false, 0);
+        PathWrapper resultPath = RouteProtobuf.read(new ByteArrayInputStream(bytes.toByteArray()), true).getBest();
+        assertTrue(resultPath.getPoints().isEmpty());
+        assertFalse(resultPath.getWaypoints().is3D());
+        assertEquals(51.2, resultPath.getWaypoints().getLat(1), 1e-9);
+        assertEquals(100, resultPath.getDistance(), 1e-9);
+    }
+
+    @Test
+    public void testLongMessages() throws IOException {
+        // the sizes of the nested messages need several bytes
+        PointList points = new PointList(10_000, false);
+        for (int i = 0; i < 10_000; i++) {
+            points.add(51 + i * 0.0001, 12 + i * 0.0003);
+        }
+        PathWrapper path = new PathWrapper();
+        path.setPoints(points);
+        path.setWaypoints(Helper.createPointList(51, 12, points.getLat(9_999), points.getLon(9_999)));
+        PathDetail detail = new PathDetail("a very long street name that does not fit into a single byte together with the rest of the detail ...");
+        detail.setFirst(0);
+        detail.setLast(9_999);
+        path.addPathDetails(Collections.singletonMap("street_name", Collections.singletonList(detail)));
+        path.setDistance(100_000).setTime(3_600_000);
+        GHResponse rsp = new GHResponse();
+        rsp.add(path);
+        rsp.add(path);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RouteProtobuf.write(bytes, rsp, false, true, false, 0);
+        GHResponse result = RouteProtobuf.read(new ByteArrayInputStream(bytes.toByteArray()), true);
+        assertEquals(2, result.getAll().size());
+        for (PathWrapper resultPath : result.getAll()) {
+            assertEquals(10_000, resultPath.getPoints().size());
+            assertEquals(points.getLat(9_999), resultPath.getPoints().getLat(9_999), 1e-9);
+            assertEquals(points.getLon(9_999), resultPath.getPoints().getLon(9_999), 1e-9);
+            assertEquals(detail.getValue(), resultPath.getPathDetails().get("street_name").get(0).getValue());
+            assertEquals(3_600_000, resultPath.getTime());
+        }
+    }
+}
@@ -17,11 +17,21 @@
  */
 package com.graphhopper.http;
 
-import com.graphhopper.util.Helper;
-import com.graphhopper.util.PointList;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GHResponse;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.jackson.Jackson;
+import com.graphhopper.util.*;
+import com.graphhopper.util.details.PathDetail;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.*;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -79,4 +89,100 @@ public class WebHelperTest {
     public void testEncode1e6() throws Exception {
         assertEquals("ohdfzAgt}bVoEL", WebHelper.encodePolyline(Helper.createPointList(47.827608, 12.123476, 47.827712, 12.123469), false, 1e6));
     }
+
+    @Test
+    public void testWriteJsonEqualsJsonObject() throws IOException {
+        PathWrapper path = new PathWrapper();
+        path.setPoints(Helper.createPointList3D(51.2345671, 12.1234569, 123.456, 51.2346, 12.1239, 130, 51.235, 12.124, 121.5));
+        PointList waypoints = new PointList(1, true);
+        waypoints.add(51.2345671, 12.1234569, 123.456);
+        path.setWaypoints(waypoints);
+        path.setDistance(1234.56789).setTime(123456).setRouteWeight(140.1234567).setAscend(6.544).setDescend(8.5);
+        path.setDescription(Arrays.asList("a", "b"));
+        path.setFare(new BigDecimal("2.50"));
+        PathDetail detail = new PathDetail(50.0);
+        detail.setFirst(0);
+        detail.setLast(2);
+        path.addPathDetails(Collections.singletonMap("max_speed", Collections.singletonList(detail)));
+        GHResponse rsp = new GHResponse();
+        rsp.add(path);
+        rsp.getHints().put("visited_nodes.sum", 42);
+
+        ObjectMapper objectMapper = Jackson.newObjectMapper();
+        for (boolean pointsEncoded : new boolean[]{true, false}) {
+            for (boolean elevation : new boolean[]{true, false}) {
+                for (boolean calcPoints : new boolean[]{true, false}) {
+                    assertWriteJsonEqualsJsonObject(objectMapper, rsp, false, calcPoints, elevation, pointsEncoded);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWriteJsonWithInstructionsEqualsJsonObject() throws IOException {
+        PathWrapper path = new PathWrapper();
+        path.setPoints(Helper.createPointList(51.2345671, 12.1234569, 51.2346, 12.1239, 51.235, 12.124));
+        path.setWaypoints(Helper.createPointList(51.2345671, 12.1234569, 51.235, 12.124));
+        path.setDistance(123.4).setTime(12345).setRouteWeight(14.5);
+        Translation tr = new Translation() {
+            @Override
+            public String tr(String key, Object... params) {
+                return params.length == 0 ? key : key + " " + params[0];
+            }
+
+            @Override
+            public Map<String, String> asMap() {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public Locale getLocale() {
+                return Locale.ENGLISH;
+            }
+
+            @Override
+            public String getLanguage() {
+                return "en";
+            }
+        };
+        InstructionList instructions = new InstructionList(tr);
+        Instruction instruction = new Instruction(Instruction.CONTINUE_ON_STREET, "main street",
+                new InstructionAnnotation(1, "toll"), Helper.createPointList(51.2345671, 12.1234569));
+        instruction.setDistance(100.12345).setTime(10000);
+        instruction.setExtraInfo("heading", 12.5);
+        instructions.add(instruction);
+        RoundaboutInstruction roundabout = new RoundaboutInstruction(Instruction.USE_ROUNDABOUT, "",
+                InstructionAnnotation.EMPTY, Helper.createPointList(51.2346, 12.1239));
+        roundabout.setExitNumber(2).setExited().setRadian(-1.5);
+        roundabout.setDistance(23.3).setTime(2345);
+        instructions.add(roundabout);
+        instructions.add(new FinishInstruction(51.235, 12.124, Double.NaN));
+        path.setInstructions(instructions);
+        GHResponse rsp = new GHResponse();
+        rsp.add(path);
+
+        ObjectMapper objectMapper = Jackson.newObjectMapper();
+        InstructionList first = new InstructionList(tr);
+        first.add(instruction);
+        // the field order must not change for existing clients
+        assertEquals("[{\"annotation_text\":\"toll\",\"distance\":100.123,\"heading\":12.5,\"sign\":0," +
+                        "\"annotation_importance\":1,\"interval\":[0,1],\"text\":\"Continue_onto main street\",\"time\":10000," +
+                        "\"street_name\":\"main street\"}]",
+                objectMapper.writeValueAsString(first));
+        for (boolean pointsEncoded : new boolean[]{true, false}) {
+            for (boolean calcPoints : new boolean[]{true, false}) {
+                assertWriteJsonEqualsJsonObject(objectMapper, rsp, true, calcPoints, false, pointsEncoded);
+            }
+        }
+    }
+
+    private static void assertWriteJsonEqualsJsonObject(ObjectMapper objectMapper, GHResponse rsp, boolean enableInstructions,
+                                                        boolean calcPoints, boolean elevation, boolean pointsEncoded) throws IOException {
+        String expected = objectMapper.writeValueAsString(WebHelper.jsonObject(rsp, enableInstructions, calcPoints, elevation, pointsEncoded, 0.0123f));
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(writer)) {
+            WebHelper.writeJson(gen, rsp, enableInstructions, calcPoints, elevation, pointsEncoded, 0.0123f);
+        }
+        assertEquals(expected, writer.toString());
+    }
 }
@@ -18,8 +18,10 @@
 
 package com.graphhopper.http;
 
+import com.codahale.metrics.Gauge;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationConfig;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
@@ -188,7 +190,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             // switch to different API implementation when using Pt
             runPtGraphHopper(configuration.getGraphHopperConfiguration(), environment);
         } else {
-            runRegularGraphHopper(configuration.getGraphHopperConfiguration(), environment);
+            runRegularGraphHopper(configuration.getGraphHopperConfiguration(), configuration.getRouteCacheConfiguration(), environment);
         }
     }
 
@@ -245,9 +247,14 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.healthChecks().register("graphhopper-storage", new GraphHopperStorageHealthCheck(graphHopperStorage));
     }
 
-    private void runRegularGraphHopper(CmdArgs configuration, Environment environment) {
+    private void runRegularGraphHopper(CmdArgs configuration, RouteCacheConfiguration routeCacheConfiguration, Environment environment) {
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration, environment.getObjectMapper());
         environment.lifecycle().manage(graphHopperManaged);
+        final RoutingMetrics routingMetrics = new RoutingMetrics(environment.metrics());
+        graphHopperManaged.getGraphHopper().setRoutingPhaseListener(routingMetrics);
+        if (configuration.getInt("index.snap_cache_size", 0) > 0)
+            registerSnapCacheMetrics(graphHopperManaged.getGraphHopper(), environment);
+        final RouteCache routeCache = new RouteCache(graphHopperManaged.getGraphHopper(), routeCacheConfiguration, environment.metrics());
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
@@ -255,6 +262,9 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
                 bind(graphHopperManaged).to(GraphHopperManaged.class);
                 bind(graphHopperManaged.getGraphHopper()).to(GraphHopper.class);
                 bind(graphHopperManaged.getGraphHopper()).to(GraphHopperAPI.class);
+                bind(routingMetrics).to(RoutingMetrics.class);
+                bind(routeCache).to(RouteCache.class);
+                bind(environment.getObjectMapper()).to(ObjectMapper.class);
 
                 bindFactory(HasElevation.class).to(Boolean.class).named("hasElevation");
                 bindFactory(LocationIndexFactory.class).to(LocationIndex.class);
@@ -271,6 +281,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(MVTResource.class);
         environment.jersey().register(NearestResource.class);
         environment.jersey().register(RouteResource.class);
+        environment.jersey().register(MatrixResource.class);
         environment.jersey().register(IsochroneResource.class);
         environment.jersey().register(SPTResource.class);
         environment.jersey().register(I18NResource.class);
@@ -278,4 +289,14 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopperManaged.getGraphHopper()));
     }
 
+    private static void registerSnapCacheMetrics(GraphHopper graphHopper, Environment environment) {
+        // the cache is created when the graph is loaded, i.e. after the bundle was run
+        environment.metrics().register("routing.snap_cache.hits", (Gauge<Long>) () ->
+                graphHopper.getSnapCache() == null ? 0 : graphHopper.getSnapCache().getHits());
+        environment.metrics().register("routing.snap_cache.misses", (Gauge<Long>) () ->
+                graphHopper.getSnapCache() == null ? 0 : graphHopper.getSnapCache().getMisses());
+        environment.metrics().register("routing.snap_cache.size", (Gauge<Integer>) () ->
+                graphHopper.getSnapCache() == null ? 0 : graphHopper.getSnapCache().size());
+    }
+
 }
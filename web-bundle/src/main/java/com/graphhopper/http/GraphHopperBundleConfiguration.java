@@ -24,4 +24,11 @@ public interface GraphHopperBundleConfiguration {
 
     CmdArgs getGraphHopperConfiguration();
 
+    /**
+     * @return the configuration of the cache for route responses, which is disabled by default
+     */
+    default RouteCacheConfiguration getRouteCacheConfiguration() {
+        return new RouteCacheConfiguration();
+    }
+
 }
@@ -0,0 +1,151 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperAPI;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A bounded cache of route responses for requests that are repeated exactly, e.g. by retrying clients or dashboards.
+ * The key is a canonical string of all parameters of the GHRequest. An entry is only used if it is younger than the
+ * configured ttl and if the graph was not changed in the meantime, see {@link GraphHopper#getGraphVersion()}. Only
+ * responses without errors are cached and they must not be modified by the caller.
+ * <p>
+ * The hits, misses and the size are visible as routing.route_cache.* on the metrics page of the admin port.
+ */
+public class RouteCache {
+    private final GraphHopperAPI graphHopper;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+    private final Meter hits;
+    private final Meter misses;
+
+    public RouteCache(GraphHopperAPI graphHopper, RouteCacheConfiguration config, MetricRegistry metricRegistry) {
+        this.graphHopper = graphHopper;
+        this.maxEntries = config.getMaxEntries();
+        this.ttlNanos = config.getTtl().toNanoseconds();
+        this.entries = new LinkedHashMap<String, Entry>(Math.min(maxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (isEnabled()) {
+            hits = metricRegistry.meter(MetricRegistry.name("routing", "route_cache", "hits"));
+            misses = metricRegistry.meter(MetricRegistry.name("routing", "route_cache", "misses"));
+            metricRegistry.register(MetricRegistry.name("routing", "route_cache", "size"), (Gauge<Integer>) this::size);
+        } else {
+            hits = null;
+            misses = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Returns the cached response for the request or calculates and caches it via GraphHopperAPI.route
+     */
+    public GHResponse route(GHRequest request) {
+        if (!isEnabled())
+            return graphHopper.route(request);
+
+        String key = createKey(request);
+        long graphVersion = getGraphVersion();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.graphVersion == graphVersion && System.nanoTime() - entry.createdNanos < ttlNanos) {
+                    hits.mark();
+                    return entry.response;
+                }
+                entries.remove(key);
+            }
+        }
+        misses.mark();
+
+        GHResponse response = graphHopper.route(request);
+        if (!response.hasErrors()) {
+            Entry entry = new Entry(response, graphVersion, System.nanoTime());
+            synchronized (this) {
+                entries.put(key, entry);
+            }
+        }
+        return response;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private long getGraphVersion() {
+        return graphHopper instanceof GraphHopper ? ((GraphHopper) graphHopper).getGraphVersion() : 0;
+    }
+
+    /**
+     * Creates a string that is equal for requests that lead to the same response. The hints are sorted by their key.
+     */
+    static String createKey(GHRequest request) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < request.getPoints().size(); i++) {
+            GHPoint point = request.getPoints().get(i);
+            sb.append(point.lat).append(',').append(point.lon);
+            if (request.hasFavoredHeading(i))
+                sb.append(',').append(request.getFavoredHeading(i));
+            sb.append(';');
+        }
+        sb.append('|').append(request.getVehicle()).
+                append('|').append(request.getWeighting()).
+                append('|').append(request.getAlgorithm()).
+                append('|').append(request.getLocale()).
+                append('|').append(new TreeMap<>(request.getHints().toMap())).
+                append('|').append(request.getPointHints()).
+                append('|').append(request.getCurbsides()).
+                append('|').append(request.getSnapPreventions()).
+                append('|').append(request.getPathDetails());
+        return sb.toString();
+    }
+
+    private static class Entry {
+        final GHResponse response;
+        final long graphVersion;
+        final long createdNanos;
+
+        Entry(GHResponse response, long graphVersion, long createdNanos) {
+            this.response = response;
+            this.graphVersion = graphVersion;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Configures the cache of route responses, see {@link RouteCache}. The cache is disabled by default.
+ */
+public class RouteCacheConfiguration {
+
+    @Min(0)
+    @JsonProperty
+    private int maxEntries = 0;
+
+    @NotNull
+    @JsonProperty
+    private Duration ttl = Duration.minutes(10);
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public RouteCacheConfiguration setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public RouteCacheConfiguration setTtl(Duration ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.routing.RoutingPhaseListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the duration of the phases of route requests as Dropwizard timers. The timers are named
+ * routing.&lt;phase&gt;.&lt;profile&gt;.&lt;mode&gt;, e.g. routing.search.car_fastest.ch, so the percentiles of every phase can
+ * be compared per profile and per routing mode (ch, lm or flex). They are visible on the metrics page of the admin
+ * port.
+ */
+public class RoutingMetrics implements RoutingPhaseListener {
+    private final MetricRegistry metricRegistry;
+    // GraphHopper reports the phases on the thread of the route request, so we can remember the profile and mode of the
+    // request for the serialization timer until RouteResource fetches them via finishRequest
+    private final ThreadLocal<String> currentProfileAndMode = new ThreadLocal<>();
+
+    public RoutingMetrics(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    @Override
+    public void onPhaseFinished(Phase phase, String profile, String mode, long nanos) {
+        String profileAndMode = MetricRegistry.name(profile, mode);
+        currentProfileAndMode.set(profileAndMode);
+        update(phase.getName(), profileAndMode, nanos);
+    }
+
+    /**
+     * Forgets the profile and mode of an earlier request of the current thread. Call this before a route request and
+     * finishRequest afterwards, also if the request fails.
+     */
+    public void startRequest() {
+        currentProfileAndMode.remove();
+    }
+
+    /**
+     * @return the profile and mode of the route request that the current thread finished last or null if no phases were
+     * reported, e.g. as the response came from the RouteCache. The value is removed, so it cannot leak into the next
+     * request of this thread.
+     */
+    public String finishRequest() {
+        String profileAndMode = currentProfileAndMode.get();
+        currentProfileAndMode.remove();
+        return profileAndMode;
+    }
+
+    /**
+     * Records the duration of the serialization of a response for the specified profile and mode, as returned from
+     * finishRequest. Does nothing if they are null.
+     */
+    public void onSerializationFinished(String profileAndMode, long nanos) {
+        if (profileAndMode != null)
+            update("serialization", profileAndMode, nanos);
+    }
+
+    private void update(String phase, String profileAndMode, long nanos) {
+        metricRegistry.timer(MetricRegistry.name("routing", phase, profileAndMode)).update(nanos, TimeUnit.NANOSECONDS);
+    }
+}
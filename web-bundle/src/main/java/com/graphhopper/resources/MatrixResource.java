@@ -0,0 +1,414 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.MultiException;
+import com.graphhopper.http.WebHelper;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.routing.ch.ManyToManyCH;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.lm.LMAlgoFactoryDecorator;
+import com.graphhopper.routing.profiles.RoadClass;
+import com.graphhopper.routing.profiles.RoadEnvironment;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.util.*;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.CHProfile;
+import com.graphhopper.storage.GraphEpoch;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import com.graphhopper.util.exceptions.PointNotFoundException;
+import com.graphhopper.util.shapes.GHPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.UriInfo;
+import java.util.*;
+
+import static com.graphhopper.util.Parameters.Routing.*;
+
+/**
+ * Calculates the weights, times and distances between many points with a node-based CH preparation, see
+ * ManyToManyCH. The response format is the one of the GraphHopper Matrix API, so the matrix clients of
+ * directions-api-client-hc can be used. The POST requests of the batch client are calculated synchronously and their
+ * solutions are kept until they are fetched or too many newer solutions exist.
+ */
+@Path("matrix")
+@Produces(MediaType.APPLICATION_JSON)
+@Singleton
+public class MatrixResource {
+    private static final Logger logger = LoggerFactory.getLogger(MatrixResource.class);
+    private static final int MAX_STORED_SOLUTIONS = 100;
+
+    private final GraphHopper graphHopper;
+    private final int maxPoints;
+    private final Map<String, ObjectNode> solutions = Collections.synchronizedMap(new LinkedHashMap<String, ObjectNode>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ObjectNode> eldest) {
+            return size() > MAX_STORED_SOLUTIONS;
+        }
+    });
+
+    @Inject
+    public MatrixResource(GraphHopper graphHopper, CmdArgs config) {
+        this.graphHopper = graphHopper;
+        this.maxPoints = config.getInt("web.matrix.max_points", 1000);
+    }
+
+    @GET
+    public ObjectNode doGet(
+            @Context UriInfo uriInfo,
+            @QueryParam("point") List<GHPoint> points,
+            @QueryParam("from_point") List<GHPoint> fromPoints,
+            @QueryParam("to_point") List<GHPoint> toPoints,
+            @QueryParam(POINT_HINT) List<String> pointHints,
+            @QueryParam("from_point_hint") List<String> fromPointHints,
+            @QueryParam("to_point_hint") List<String> toPointHints,
+            @QueryParam(SNAP_PREVENTION) List<String> snapPreventions,
+            @QueryParam("out_array") List<String> outArrays,
+            @QueryParam("vehicle") @DefaultValue("car") String vehicle,
+            @QueryParam("fail_fast") @DefaultValue("true") boolean failFast) {
+        HintsMap hints = new HintsMap();
+        RouteResource.initHints(hints, uriInfo.getQueryParameters());
+        hints.setVehicle(vehicle);
+        if (!points.isEmpty()) {
+            fromPoints = toPoints = points;
+            fromPointHints = toPointHints = pointHints;
+        }
+        return calcMatrix(fromPoints, toPoints, fromPointHints, toPointHints, snapPreventions, outArrays, failFast, hints);
+    }
+
+    @POST
+    @Path("calculate")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public ObjectNode doPost(JsonNode request) {
+        if (request == null)
+            throw new IllegalArgumentException("Empty request");
+
+        HintsMap hints = new HintsMap();
+        Iterator<Map.Entry<String, JsonNode>> fields = request.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isValueNode())
+                hints.put(field.getKey(), field.getValue().asText());
+        }
+        hints.setVehicle(Helper.isEmpty(hints.getVehicle()) ? "car" : hints.getVehicle());
+
+        List<GHPoint> fromPoints, toPoints;
+        List<String> fromPointHints, toPointHints;
+        if (request.has("points")) {
+            fromPoints = toPoints = readPoints(request.get("points"));
+            fromPointHints = toPointHints = readStrings(request.get("point_hints"));
+        } else {
+            fromPoints = readPoints(request.get("from_points"));
+            toPoints = readPoints(request.get("to_points"));
+            fromPointHints = readStrings(request.get("from_point_hints"));
+            toPointHints = readStrings(request.get("to_point_hints"));
+        }
+        ObjectNode solution = calcMatrix(fromPoints, toPoints, fromPointHints, toPointHints,
+                readStrings(request.get("snap_preventions")), readStrings(request.get("out_arrays")),
+                hints.getBool("fail_fast", true), hints);
+
+        String jobId = UUID.randomUUID().toString();
+        solutions.put(jobId, solution);
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        json.put("job_id", jobId);
+        return json;
+    }
+
+    @GET
+    @Path("solution/{jobId}")
+    public ObjectNode doGetSolution(@PathParam("jobId") String jobId) {
+        ObjectNode solution = solutions.get(jobId);
+        if (solution == null)
+            throw new IllegalArgumentException("Unknown job_id " + jobId + ", the solution is either not yet calculated or was already removed");
+
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        json.put("status", "finished");
+        json.set("solution", solution);
+        return json;
+    }
+
+    private ObjectNode calcMatrix(List<GHPoint> fromPoints, List<GHPoint> toPoints, List<String> fromPointHints,
+                                  List<String> toPointHints, List<String> snapPreventions, List<String> outArrays,
+                                  boolean failFast, HintsMap hints) {
+        // like a route request the matrix sees the same edge flags until it is finished, even if the graph is changed
+        GraphEpoch epoch = graphHopper.pinEpoch();
+        try {
+            return calcMatrix(fromPoints, toPoints, fromPointHints, toPointHints, snapPreventions, outArrays, failFast, hints, epoch);
+        } finally {
+            epoch.unpin();
+        }
+    }
+
+    private ObjectNode calcMatrix(List<GHPoint> fromPoints, List<GHPoint> toPoints, List<String> fromPointHints,
+                                  List<String> toPointHints, List<String> snapPreventions, List<String> outArrays,
+                                  boolean failFast, HintsMap hints, GraphEpoch epoch) {
+        StopWatch sw = new StopWatch().start();
+        if (fromPoints.isEmpty() || toPoints.isEmpty())
+            throw new IllegalArgumentException("You have to pass at least one point or one from_point and one to_point");
+        if (fromPoints.size() > maxPoints || toPoints.size() > maxPoints)
+            throw new IllegalArgumentException("Too many points, the maximum is " + maxPoints + " from and to points");
+        if (!fromPointHints.isEmpty() && fromPointHints.size() != fromPoints.size()
+                || !toPointHints.isEmpty() && toPointHints.size() != toPoints.size())
+            throw new IllegalArgumentException("If you pass " + POINT_HINT + ", you need to pass exactly one hint for every point, empty hints will be ignored");
+        if (hints.getBool(EDGE_BASED, false))
+            throw new IllegalArgumentException("The matrix calculation does not support " + EDGE_BASED + "=true");
+        if (outArrays.isEmpty())
+            outArrays = Collections.singletonList("weights");
+
+        EncodingManager encodingManager = graphHopper.getEncodingManager();
+        if (!encodingManager.hasEncoder(hints.getVehicle()))
+            throw new IllegalArgumentException("Vehicle not supported: " + hints.getVehicle() + ". Supported are: " + encodingManager.toString());
+        FlagEncoder encoder = encodingManager.getEncoder(hints.getVehicle());
+        if (Helper.isEmpty(hints.getWeighting()))
+            hints.setWeighting("fastest");
+        hints.put(EDGE_BASED, false);
+        CHProfile chProfile = getCHProfile(hints, epoch);
+        CHGraph chGraph = graphHopper.getGraphHopperStorage().getCHGraph(chProfile);
+
+        // for equal lists the points are looked up only once
+        boolean identicalLists = fromPoints == toPoints;
+        List<QueryResult> fromResults = lookup(fromPoints, fromPointHints, snapPreventions, encoder);
+        List<QueryResult> toResults = identicalLists ? fromResults : lookup(toPoints, toPointHints, snapPreventions, encoder);
+        List<Integer> invalidFromPoints = getInvalidPoints(fromResults);
+        List<Integer> invalidToPoints = getInvalidPoints(toResults);
+        if (failFast && (!invalidFromPoints.isEmpty() || !invalidToPoints.isEmpty())) {
+            List<Throwable> errors = new ArrayList<>();
+            for (int index : invalidFromPoints) {
+                errors.add(new PointNotFoundException("Cannot find " + (identicalLists ? "point " : "from_point ") + index + ": " + fromPoints.get(index), index));
+            }
+            if (!identicalLists) {
+                for (int index : invalidToPoints) {
+                    errors.add(new PointNotFoundException("Cannot find to_point " + index + ": " + toPoints.get(index), index));
+                }
+            }
+            throw new MultiException(errors);
+        }
+
+        List<QueryResult> validResults = new ArrayList<>();
+        addValid(validResults, fromResults);
+        if (!identicalLists)
+            addValid(validResults, toResults);
+        QueryGraph queryGraph = QueryGraph.lookup(chGraph, validResults);
+        boolean withTimes = outArrays.contains("times");
+        boolean withDistances = outArrays.contains("distances");
+        ManyToManyCH manyToMany = new ManyToManyCH(queryGraph, chGraph, chProfile.getWeighting()).
+                setCalcTimes(withTimes).setCalcDistances(withDistances);
+        ManyToManyCH.Matrix matrix = manyToMany.calcMatrix(getNodes(fromResults), getNodes(toResults));
+
+        List<int[]> disconnectedPairs = new ArrayList<>();
+        for (int from = 0; from < fromResults.size(); from++) {
+            if (!fromResults.get(from).isValid())
+                continue;
+            for (int to = 0; to < toResults.size(); to++) {
+                if (toResults.get(to).isValid() && !matrix.isConnected(from, to))
+                    disconnectedPairs.add(new int[]{from, to});
+            }
+        }
+        if (failFast && !disconnectedPairs.isEmpty()) {
+            Map<String, Object> details = new HashMap<>();
+            details.put("from_point", disconnectedPairs.get(0)[0]);
+            details.put("to_point", disconnectedPairs.get(0)[1]);
+            throw new MultiException(Collections.<Throwable>singletonList(
+                    new ConnectionNotFoundException("Connection between locations not found", details)));
+        }
+
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        if (outArrays.contains("weights")) {
+            ArrayNode weights = json.putArray("weights");
+            for (int from = 0; from < fromResults.size(); from++) {
+                ArrayNode row = weights.addArray();
+                for (int to = 0; to < toResults.size(); to++) {
+                    if (matrix.isConnected(from, to))
+                        row.add(Helper.round(matrix.getWeight(from, to), 3));
+                    else
+                        row.addNull();
+                }
+            }
+        }
+        if (withTimes) {
+            ArrayNode times = json.putArray("times");
+            for (int from = 0; from < fromResults.size(); from++) {
+                ArrayNode row = times.addArray();
+                for (int to = 0; to < toResults.size(); to++) {
+                    if (matrix.isConnected(from, to))
+                        row.add(Math.round(matrix.getTime(from, to) / 1000d));
+                    else
+                        row.addNull();
+                }
+            }
+        }
+        if (withDistances) {
+            ArrayNode distances = json.putArray("distances");
+            for (int from = 0; from < fromResults.size(); from++) {
+                ArrayNode row = distances.addArray();
+                for (int to = 0; to < toResults.size(); to++) {
+                    if (matrix.isConnected(from, to))
+                        row.add(Math.round(matrix.getDistance(from, to)));
+                    else
+                        row.addNull();
+                }
+            }
+        }
+        if (!disconnectedPairs.isEmpty() || !invalidFromPoints.isEmpty() || !invalidToPoints.isEmpty()) {
+            ArrayNode problems = json.putArray("hints");
+            if (!disconnectedPairs.isEmpty()) {
+                ObjectNode problem = problems.addObject();
+                problem.put("message", "There are disconnected points");
+                ArrayNode pairs = problem.putArray("point_pairs");
+                for (int[] pair : disconnectedPairs) {
+                    pairs.addArray().add(pair[0]).add(pair[1]);
+                }
+            }
+            if (!invalidFromPoints.isEmpty() || !invalidToPoints.isEmpty()) {
+                ObjectNode problem = problems.addObject();
+                problem.put("message", "Cannot find some points");
+                ArrayNode invalidFrom = problem.putArray("invalid_from_points");
+                for (int index : invalidFromPoints) {
+                    invalidFrom.add(index);
+                }
+                ArrayNode invalidTo = problem.putArray("invalid_to_points");
+                for (int index : invalidToPoints) {
+                    invalidTo.add(index);
+                }
+            }
+        }
+        float took = sw.stop().getSeconds();
+        WebHelper.jsonResponsePutInfo(json, took);
+        logger.info("matrix " + fromPoints.size() + "x" + toPoints.size() + ", took:" + took + ", " + hints.getWeighting()
+                + ", " + hints.getVehicle() + ", visited nodes:" + manyToMany.getVisitedNodes());
+        return json;
+    }
+
+    private CHProfile getCHProfile(HintsMap hints, GraphEpoch epoch) {
+        if (!graphHopper.getCHFactoryDecorator().isEnabled())
+            throw new IllegalArgumentException("The matrix calculation requires a CH preparation, see prepare.ch.weightings");
+
+        // if LM is enabled we have the LMFactory with the CH algo!
+        RoutingAlgorithmFactory algoFactory = graphHopper.getAlgorithmFactory(hints);
+        if (algoFactory instanceof LMAlgoFactoryDecorator.LMRAFactory)
+            algoFactory = ((LMAlgoFactoryDecorator.LMRAFactory) algoFactory).getDefaultAlgoFactory();
+        if (!(algoFactory instanceof PrepareContractionHierarchies))
+            throw new IllegalArgumentException("The matrix calculation requires CH, it cannot be disabled");
+        if (GraphHopper.isStale(epoch, algoFactory))
+            throw new IllegalArgumentException("The matrix calculation requires CH, but the CH preparation for "
+                    + ((PrepareContractionHierarchies) algoFactory).getCHProfile() + " is stale after a change of the graph");
+        return ((PrepareContractionHierarchies) algoFactory).getCHProfile();
+    }
+
+    private List<QueryResult> lookup(List<GHPoint> points, List<String> pointHints, List<String> snapPreventions, FlagEncoder encoder) {
+        LocationIndex locationIndex = graphHopper.getLocationIndex();
+        EdgeFilter edgeFilter = DefaultEdgeFilter.allEdges(encoder);
+        EdgeFilter strictEdgeFilter = snapPreventions.isEmpty() ? edgeFilter : new SnapPreventionEdgeFilter(edgeFilter,
+                encoder.getEnumEncodedValue(RoadClass.KEY, RoadClass.class),
+                encoder.getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class), snapPreventions);
+        // without point hints all points use the same filter and can be looked up together
+        List<QueryResult> batchResults = null;
+        if (pointHints.isEmpty() && locationIndex instanceof LocationIndexTree) {
+            double[] lats = new double[points.size()];
+            double[] lons = new double[points.size()];
+            for (int i = 0; i < points.size(); i++) {
+                lats[i] = points.get(i).lat;
+                lons[i] = points.get(i).lon;
+            }
+            batchResults = ((LocationIndexTree) locationIndex).findClosestBatch(lats, lons, strictEdgeFilter);
+        }
+
+        List<QueryResult> results = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            GHPoint point = points.get(i);
+            QueryResult qr = null;
+            if (batchResults != null)
+                qr = batchResults.get(i);
+            else if (!pointHints.isEmpty() && !Helper.isEmpty(pointHints.get(i)))
+                qr = locationIndex.findClosest(point.lat, point.lon, new NameSimilarityEdgeFilter(strictEdgeFilter, pointHints.get(i)));
+            else if (!snapPreventions.isEmpty())
+                qr = locationIndex.findClosest(point.lat, point.lon, strictEdgeFilter);
+            // a batch lookup without snap preventions already used edgeFilter
+            if (qr == null || !qr.isValid() && (batchResults == null || !snapPreventions.isEmpty()))
+                qr = locationIndex.findClosest(point.lat, point.lon, edgeFilter);
+            results.add(qr);
+        }
+        return results;
+    }
+
+    private static List<Integer> getInvalidPoints(List<QueryResult> results) {
+        List<Integer> invalidPoints = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).isValid())
+                invalidPoints.add(i);
+        }
+        return invalidPoints;
+    }
+
+    private static void addValid(List<QueryResult> validResults, List<QueryResult> results) {
+        for (QueryResult qr : results) {
+            if (qr.isValid())
+                validResults.add(qr);
+        }
+    }
+
+    /**
+     * @return the node of every query result after the QueryGraph lookup or -1 if it is invalid
+     */
+    private static int[] getNodes(List<QueryResult> results) {
+        int[] nodes = new int[results.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = results.get(i).isValid() ? results.get(i).getClosestNode() : -1;
+        }
+        return nodes;
+    }
+
+    private static List<GHPoint> readPoints(JsonNode array) {
+        List<GHPoint> points = new ArrayList<>();
+        if (array == null)
+            return points;
+        for (JsonNode point : array) {
+            if (point.size() < 2)
+                throw new IllegalArgumentException("A point has to be an array [longitude,latitude] but was " + point);
+            points.add(new GHPoint(point.get(1).asDouble(), point.get(0).asDouble()));
+        }
+        return points;
+    }
+
+    private static List<String> readStrings(JsonNode array) {
+        List<String> strings = new ArrayList<>();
+        if (array == null)
+            return strings;
+        for (JsonNode str : array) {
+            strings.add(str.asText());
+        }
+        return strings;
+    }
+}
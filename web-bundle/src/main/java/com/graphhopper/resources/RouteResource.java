@@ -17,11 +17,15 @@
  */
 package com.graphhopper.resources;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
-import com.graphhopper.GraphHopperAPI;
 import com.graphhopper.MultiException;
 import com.graphhopper.http.WebHelper;
+import com.graphhopper.http.RouteCache;
+import com.graphhopper.http.RouteProtobuf;
+import com.graphhopper.http.RoutingMetrics;
 import com.graphhopper.routing.util.HintsMap;
 import com.graphhopper.util.Constants;
 import com.graphhopper.util.InstructionList;
@@ -57,17 +61,21 @@ public class RouteResource {
 
     private static final Logger logger = LoggerFactory.getLogger(RouteResource.class);
 
-    private final GraphHopperAPI graphHopper;
+    private final RouteCache routeCache;
     private final Boolean hasElevation;
+    private final RoutingMetrics routingMetrics;
+    private final ObjectMapper objectMapper;
 
     @Inject
-    public RouteResource(GraphHopperAPI graphHopper, @Named("hasElevation") Boolean hasElevation) {
-        this.graphHopper = graphHopper;
+    public RouteResource(RouteCache routeCache, @Named("hasElevation") Boolean hasElevation, RoutingMetrics routingMetrics, ObjectMapper objectMapper) {
+        this.routeCache = routeCache;
         this.hasElevation = hasElevation;
+        this.routingMetrics = routingMetrics;
+        this.objectMapper = objectMapper;
     }
 
     @GET
-    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml"})
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml", RouteProtobuf.MEDIA_TYPE})
     public Response doGet(
             @Context HttpServletRequest httpReq,
             @Context UriInfo uriInfo,
@@ -94,6 +102,7 @@ public class RouteResource {
             @QueryParam("gpx.trackname") @DefaultValue("GraphHopper Track") String trackName,
             @QueryParam("gpx.millis") String timeString) {
         boolean writeGPX = "gpx".equalsIgnoreCase(type);
+        boolean writeProtobuf = "protobuf".equalsIgnoreCase(type);
         instructions = writeGPX || instructions;
 
         StopWatch sw = new StopWatch().start();
@@ -140,7 +149,14 @@ public class RouteResource {
                 put(INSTRUCTIONS, instructions).
                 put(WAY_POINT_MAX_DISTANCE, minPathPrecision);
 
-        GHResponse ghResponse = graphHopper.route(request);
+        GHResponse ghResponse;
+        String profileAndMode;
+        routingMetrics.startRequest();
+        try {
+            ghResponse = routeCache.route(request);
+        } finally {
+            profileAndMode = routingMetrics.finishRequest();
+        }
 
         float took = sw.stop().getSeconds();
         String infoStr = httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent");
@@ -157,29 +173,42 @@ public class RouteResource {
                     + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
                     + ", points0: " + ghResponse.getBest().getPoints().getSize()
                     + ", debugInfo: " + ghResponse.getDebugInfo());
-            return writeGPX ?
+            StopWatch serializationSW = new StopWatch().start();
+            Response response = writeGPX ?
                     gpxSuccessResponseBuilder(ghResponse, timeString, trackName, enableElevation, withRoute, withTrack, withWayPoints, Constants.VERSION).
                             header("X-GH-Took", "" + Math.round(took * 1000)).
                             build()
                     :
-                    Response.ok(WebHelper.jsonObject(ghResponse, instructions, calcPoints, enableElevation, pointsEncoded, took)).
+                    streamingResponseBuilder(ghResponse, profileAndMode, writeProtobuf, instructions, calcPoints, enableElevation, pointsEncoded, took).
                             header("X-GH-Took", "" + Math.round(took * 1000)).
                             build();
+            if (writeGPX)
+                routingMetrics.onSerializationFinished(profileAndMode, serializationSW.stop().getNanos());
+            return response;
         }
     }
 
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml"})
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, "application/gpx+xml", RouteProtobuf.MEDIA_TYPE})
     public Response doPost(GHRequest request, @Context HttpServletRequest httpReq) {
         if (request == null)
             throw new IllegalArgumentException("Empty request");
 
         StopWatch sw = new StopWatch().start();
-        GHResponse ghResponse = graphHopper.route(request);
+        GHResponse ghResponse;
+        String profileAndMode;
+        routingMetrics.startRequest();
+        try {
+            ghResponse = routeCache.route(request);
+        } finally {
+            profileAndMode = routingMetrics.finishRequest();
+        }
 
         boolean instructions = request.getHints().getBool(INSTRUCTIONS, true);
-        boolean writeGPX = "gpx".equalsIgnoreCase(request.getHints().get("type", "json"));
+        String type = request.getHints().get("type", "json");
+        boolean writeGPX = "gpx".equalsIgnoreCase(type);
+        boolean writeProtobuf = "protobuf".equalsIgnoreCase(type);
         instructions = writeGPX || instructions;
         boolean enableElevation = request.getHints().getBool("elevation", false);
         boolean calcPoints = request.getHints().getBool(CALC_POINTS, true);
@@ -206,17 +235,44 @@ public class RouteResource {
                     + ", time0: " + Math.round(ghResponse.getBest().getTime() / 60000f) + "min"
                     + ", points0: " + ghResponse.getBest().getPoints().getSize()
                     + ", debugInfo: " + ghResponse.getDebugInfo());
-            return writeGPX ?
+            StopWatch serializationSW = new StopWatch().start();
+            Response response = writeGPX ?
                     gpxSuccessResponseBuilder(ghResponse, timeString, trackName, enableElevation, withRoute, withTrack, withWayPoints, Constants.VERSION).
                             header("X-GH-Took", "" + Math.round(took * 1000)).
                             build()
                     :
-                    Response.ok(WebHelper.jsonObject(ghResponse, instructions, calcPoints, enableElevation, pointsEncoded, took)).
+                    streamingResponseBuilder(ghResponse, profileAndMode, writeProtobuf, instructions, calcPoints, enableElevation, pointsEncoded, took).
                             header("X-GH-Took", "" + Math.round(took * 1000)).
                             build();
+            if (writeGPX)
+                routingMetrics.onSerializationFinished(profileAndMode, serializationSW.stop().getNanos());
+            return response;
         }
     }
 
+    /**
+     * The JSON or protobuf is written straight to the response stream while Jersey sends the response, so the
+     * serialization time is reported from there.
+     */
+    private Response.ResponseBuilder streamingResponseBuilder(GHResponse ghResponse, String profileAndMode, boolean writeProtobuf,
+                                                              boolean instructions, boolean calcPoints, boolean enableElevation,
+                                                              boolean pointsEncoded, float took) {
+        StreamingOutput out = output -> {
+            StopWatch serializationSW = new StopWatch().start();
+            if (writeProtobuf) {
+                RouteProtobuf.write(output, ghResponse, instructions, calcPoints, enableElevation, took);
+            } else {
+                try (JsonGenerator gen = objectMapper.getFactory().createGenerator(output)) {
+                    // Jersey closes the entity stream itself
+                    gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    WebHelper.writeJson(gen, ghResponse, instructions, calcPoints, enableElevation, pointsEncoded, took);
+                }
+            }
+            routingMetrics.onSerializationFinished(profileAndMode, serializationSW.stop().getNanos());
+        };
+        return Response.ok(out, writeProtobuf ? RouteProtobuf.MEDIA_TYPE : MediaType.APPLICATION_JSON);
+    }
+
     private void enableEdgeBasedIfThereAreCurbsides(List<String> curbsides, GHRequest request) {
         if (!curbsides.isEmpty()) {
             if (!request.getHints().getBool(EDGE_BASED, true)) {
@@ -0,0 +1,50 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.codahale.metrics.MetricRegistry;
+import com.graphhopper.routing.RoutingPhaseListener;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RoutingMetricsTest {
+
+    @Test
+    public void testProfileDoesNotLeakIntoNextRequest() {
+        MetricRegistry registry = new MetricRegistry();
+        RoutingMetrics metrics = new RoutingMetrics(registry);
+
+        metrics.startRequest();
+        metrics.onPhaseFinished(RoutingPhaseListener.Phase.SEARCH, "car_fastest", "ch", 1000);
+        String profileAndMode = metrics.finishRequest();
+        assertEquals("car_fastest.ch", profileAndMode);
+        metrics.onSerializationFinished(profileAndMode, 500);
+        assertEquals(1, registry.timer("routing.search.car_fastest.ch").getCount());
+        assertEquals(1, registry.timer("routing.serialization.car_fastest.ch").getCount());
+
+        // e.g. a failed request or a response from the RouteCache does not report any phases
+        metrics.onPhaseFinished(RoutingPhaseListener.Phase.LOOKUP, "car_fastest", "ch", 1000);
+        metrics.startRequest();
+        profileAndMode = metrics.finishRequest();
+        assertNull(profileAndMode);
+        metrics.onSerializationFinished(profileAndMode, 500);
+        assertEquals(1, registry.timer("routing.serialization.car_fastest.ch").getCount());
+    }
+}
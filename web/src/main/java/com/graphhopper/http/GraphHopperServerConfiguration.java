@@ -45,6 +45,10 @@ public class GraphHopperServerConfiguration extends Configuration implements Gra
     @JsonProperty
     private final RealtimeConfiguration gtfsRealtime = new RealtimeConfiguration();
 
+    @Valid
+    @JsonProperty
+    private final RouteCacheConfiguration routeCache = new RouteCacheConfiguration();
+
     public GraphHopperServerConfiguration() {
     }
 
@@ -62,4 +66,9 @@ public class GraphHopperServerConfiguration extends Configuration implements Gra
     public RealtimeConfiguration gtfsrealtime() {
         return gtfsRealtime;
     }
+
+    @Override
+    public RouteCacheConfiguration getRouteCacheConfiguration() {
+        return routeCache;
+    }
 }
@@ -49,6 +49,8 @@ public class ChangeGraphResourceTest {
                 put("web.change_graph.enabled", "true").
                 put("graph.location", DIR).
                 put("datareader.file", "../core/files/andorra.osm.pbf"));
+        // the cached route must not be used after the change
+        config.getRouteCacheConfiguration().setMaxEntries(100);
     }
 
     @ClassRule
@@ -71,6 +73,11 @@ public class ChangeGraphResourceTest {
         assertTrue("distance wasn't correct:" + distance, distance > 3000);
         assertTrue("distance wasn't correct:" + distance, distance < 3500);
 
+        response = app.client().target("http://localhost:8080/route?point=42.531453,1.518946&point=42.511178,1.54006").request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        assertEquals(distance, response.readEntity(JsonNode.class).get("paths").get(0).get("distance").asDouble(), 1.e-6);
+        assertEquals(1, app.getEnvironment().metrics().getMeters().get("routing.route_cache.hits").getCount());
+
         // block road
         String geoJson = "{"
                 + "\"type\": \"FeatureCollection\","
@@ -97,6 +104,7 @@ public class ChangeGraphResourceTest {
         assertFalse(json.get("info").has("errors"));
 
         distance = json.get("paths").get(0).get("distance").asDouble();
+        assertEquals(1, app.getEnvironment().metrics().getMeters().get("routing.route_cache.hits").getCount());
         assertTrue("distance wasn't correct:" + distance, distance > 5300);
         assertTrue("distance wasn't correct:" + distance, distance < 5800);
     }
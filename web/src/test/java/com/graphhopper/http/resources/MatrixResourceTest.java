@@ -0,0 +1,134 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.PathWrapper;
+import com.graphhopper.api.*;
+import com.graphhopper.http.GraphHopperApplication;
+import com.graphhopper.http.GraphHopperServerConfiguration;
+import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.GHPoint;
+import io.dropwizard.testing.junit.DropwizardAppRule;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MatrixResourceTest {
+    private static final String DIR = "./target/andorra-gh/";
+    private static final List<GHPoint> POINTS = Arrays.asList(new GHPoint(42.554851, 1.536198),
+            new GHPoint(42.510071, 1.548128), new GHPoint(42.546757, 1.528645), new GHPoint(42.520573, 1.557999));
+
+    private static final GraphHopperServerConfiguration config = new GraphHopperServerConfiguration();
+
+    static {
+        config.getGraphHopperConfiguration().merge(new CmdArgs().
+                put("graph.flag_encoders", "car").
+                put("prepare.ch.weightings", "fastest").
+                put("prepare.min_network_size", "0").
+                put("prepare.min_one_way_network_size", "0").
+                put("datareader.file", "../core/files/andorra.osm.pbf").
+                put("graph.location", DIR));
+    }
+
+    @ClassRule
+    public static final DropwizardAppRule<GraphHopperServerConfiguration> app = new DropwizardAppRule<>(GraphHopperApplication.class, config);
+
+    @BeforeClass
+    @AfterClass
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void testSyncRequesterComparedToRoute() {
+        GraphHopperMatrixWeb matrixWeb = new GraphHopperMatrixWeb(new GHMatrixSyncRequester("http://localhost:8080/matrix"));
+        assertMatrixEqualsRoutes(matrixWeb);
+    }
+
+    @Test
+    public void testBatchRequesterComparedToRoute() {
+        GraphHopperMatrixWeb matrixWeb = new GraphHopperMatrixWeb(new GHMatrixBatchRequester("http://localhost:8080/matrix"));
+        assertMatrixEqualsRoutes(matrixWeb);
+    }
+
+    private void assertMatrixEqualsRoutes(GraphHopperMatrixWeb matrixWeb) {
+        GHMRequest request = new GHMRequest();
+        request.addAllPoints(POINTS);
+        request.addOutArray("weights");
+        request.addOutArray("times");
+        request.addOutArray("distances");
+        MatrixResponse rsp = matrixWeb.route(request);
+        assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+
+        GraphHopperWeb routeWeb = new GraphHopperWeb();
+        assertTrue(routeWeb.load("http://localhost:8080/route"));
+        for (int from = 0; from < POINTS.size(); from++) {
+            for (int to = 0; to < POINTS.size(); to++) {
+                GHResponse routeRsp = routeWeb.route(new GHRequest(POINTS.get(from), POINTS.get(to)));
+                assertFalse(routeRsp.getErrors().toString(), routeRsp.hasErrors());
+                PathWrapper path = routeRsp.getBest();
+                String msg = from + "->" + to;
+                assertTrue(msg, rsp.isConnected(from, to));
+                assertEquals(msg, path.getDistance(), rsp.getDistance(from, to), 1);
+                assertEquals(msg, path.getTime(), rsp.getTime(from, to), 1000);
+            }
+        }
+    }
+
+    @Test
+    public void testFromAndToPoints() {
+        JsonNode json = app.client().target("http://localhost:8080/matrix?from_point=42.554851,1.536198&to_point=42.510071,1.548128" +
+                "&to_point=42.546757,1.528645&out_array=distances&out_array=weights").request().buildGet().invoke().readEntity(JsonNode.class);
+        assertEquals(1, json.get("distances").size());
+        assertEquals(2, json.get("distances").get(0).size());
+        assertEquals(2, json.get("weights").get(0).size());
+        assertFalse(json.has("times"));
+        assertTrue(json.get("distances").get(0).get(0).asDouble() > 5000);
+    }
+
+    @Test
+    public void testPointNotFound() {
+        Response response = app.client().target("http://localhost:8080/matrix?point=42.554851,1.536198&point=43.510071,1.548128").
+                request().buildGet().invoke();
+        assertEquals(400, response.getStatus());
+        JsonNode json = response.readEntity(JsonNode.class);
+        assertTrue(json.get("message").asText(), json.get("message").asText().contains("Cannot find point 1"));
+        assertEquals(1, json.get("hints").get(0).get("point_index").asInt());
+    }
+
+    @Test
+    public void testPointNotFoundWithoutFailFast() {
+        JsonNode json = app.client().target("http://localhost:8080/matrix?point=42.554851,1.536198&point=43.510071,1.548128" +
+                "&fail_fast=false").request().buildGet().invoke().readEntity(JsonNode.class);
+        assertTrue(json.get("weights").get(0).get(0).isNumber());
+        assertTrue(json.get("weights").get(0).get(1).isNull());
+        assertEquals(1, json.get("hints").get(0).get("invalid_from_points").get(0).asInt());
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.http.resources;
 
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
@@ -106,6 +107,19 @@ public class RouteResourceTest {
         assertTrue("distance wasn't correct:" + distance, distance < 9500);
     }
 
+    @Test
+    public void testRoutingMetrics() {
+        final Response response = app.client().target("http://localhost:8080/route?point=42.554851,1.536198&point=42.510071,1.548128" +
+                "&details=average_speed").request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        Map<String, Timer> timers = app.getEnvironment().metrics().getTimers();
+        for (String phase : Arrays.asList("lookup", "query_graph", "search", "path_extraction", "instructions", "path_details", "serialization")) {
+            Timer timer = timers.get("routing." + phase + ".car_fastest.ch");
+            assertNotNull(phase + " not found in " + timers.keySet(), timer);
+            assertTrue(timer.getCount() > 0);
+        }
+    }
+
     @Test
     public void testWrongPointFormat() {
         final Response response = app.client().target("http://localhost:8080/route?point=1234&point=42.510071,1.548128").request().buildGet().invoke();
@@ -189,6 +203,48 @@ public class RouteResourceTest {
         assertEquals(false, instructions.get(23).getExtraInfoJSON().get("exited"));
     }
 
+    @Test
+    public void testGraphHopperWebProtobuf() {
+        GraphHopperWeb jsonHopper = new GraphHopperWeb();
+        assertTrue(jsonHopper.load("http://localhost:8080/route"));
+        GraphHopperWeb protobufHopper = new GraphHopperWeb().setProtobuf(true);
+        assertTrue(protobufHopper.load("http://localhost:8080/route"));
+        for (boolean post : new boolean[]{true, false}) {
+            jsonHopper.setPostRequest(post);
+            protobufHopper.setPostRequest(post);
+            GHRequest request = new GHRequest().
+                    addPoint(new GHPoint(42.554851, 1.536198)).
+                    addPoint(new GHPoint(42.531896, 1.553278)).
+                    addPoint(new GHPoint(42.510071, 1.548128));
+            request.setPathDetails(Arrays.asList("average_speed", "edge_id"));
+            PathWrapper expected = jsonHopper.route(request).getBest();
+            GHResponse rsp = protobufHopper.route(request);
+            assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+            PathWrapper arsp = rsp.getBest();
+            assertEquals(expected.getDistance(), arsp.getDistance(), 1.e-3);
+            assertEquals(expected.getTime(), arsp.getTime());
+            assertEquals(expected.getPoints().size(), arsp.getPoints().size());
+            assertEquals(expected.getPoints().getLat(10), arsp.getPoints().getLat(10), 1.e-5);
+            assertEquals(expected.getWaypoints().size(), arsp.getWaypoints().size());
+
+            InstructionList instructions = arsp.getInstructions();
+            assertEquals(25, instructions.size());
+            assertEquals("Continue onto la Callisa", instructions.get(0).getTurnDescription(null));
+            assertEquals("At roundabout, take exit 2", instructions.get(4).getTurnDescription(null));
+            assertEquals(true, instructions.get(4).getExtraInfoJSON().get("exited"));
+            assertEquals(expected.getInstructions().get(7).getPoints().size(), instructions.get(7).getPoints().size());
+
+            assertEquals(expected.getPathDetails().get("average_speed").size(), arsp.getPathDetails().get("average_speed").size());
+            assertEquals(30.0, arsp.getPathDetails().get("average_speed").get(0).getValue());
+            assertEquals(expected.getPathDetails().get("edge_id").get(1).getValue(), arsp.getPathDetails().get("edge_id").get(1).getValue());
+        }
+
+        // errors are still sent as JSON
+        GHResponse rsp = protobufHopper.route(new GHRequest(42.554851, 1.536198, 42.510071, 1.548128).setVehicle("SPACE-SHUTTLE"));
+        assertFalse("Errors expected but not found.", rsp.getErrors().isEmpty());
+        assertTrue(rsp.getErrors().get(0) instanceof IllegalArgumentException);
+    }
+
     @Test
     public void testPathDetailsRoadClass() {
         GraphHopperAPI hopper = new com.graphhopper.api.GraphHopperWeb();